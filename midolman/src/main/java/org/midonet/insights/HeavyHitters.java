@@ -0,0 +1,169 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.insights;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import org.midonet.Util;
+
+/**
+ * A count-min sketch with a table of its heaviest keys. The sketch estimates
+ * the count of any key in constant space, and the table keeps the keys with
+ * the largest estimates seen so far, replacing its smallest entry when a key
+ * with a larger estimate arrives.
+ *
+ * A key is either an object reference, such as an IP address or a device
+ * identifier that is already allocated by the caller, or a primitive long
+ * when the reference is null, such that adding a key never allocates. The
+ * class is not thread-safe: it is written by a single packet worker, and it
+ * is merged by the timer thread only after the worker has switched to
+ * another instance.
+ */
+final class HeavyHitters {
+
+    private final long[][] sketch;
+    private final int widthMask;
+
+    private final Object[] refs;
+    private final long[] keys;
+    private final long[] counts;
+    private int size = 0;
+    private int minIndex = 0;
+
+    HeavyHitters(int entries, int width, int depth) {
+        int w = Util.findNextPositivePowerOfTwo(Math.max(width, 2));
+        this.sketch = new long[depth][w];
+        this.widthMask = w - 1;
+        this.refs = new Object[entries];
+        this.keys = new long[entries];
+        this.counts = new long[entries];
+    }
+
+    /**
+     * Adds the count to the key, given as an object reference, or as a
+     * primitive value if the reference is null.
+     */
+    void add(Object ref, long key, long count) {
+        int hash = hash(ref, key);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < sketch.length; row++) {
+            int index = index(hash, row);
+            long value = sketch[row][index] += count;
+            if (value < estimate)
+                estimate = value;
+        }
+
+        int index = indexOf(ref, key);
+        if (index >= 0) {
+            counts[index] = estimate;
+            if (index == minIndex)
+                updateMin();
+        } else if (size < counts.length) {
+            put(size++, ref, key, estimate);
+            updateMin();
+        } else if (estimate > counts[minIndex]) {
+            put(minIndex, ref, key, estimate);
+            updateMin();
+        }
+    }
+
+    /** Returns the count estimate for the key. */
+    long estimate(Object ref, long key) {
+        int hash = hash(ref, key);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < sketch.length; row++) {
+            long value = sketch[row][index(hash, row)];
+            if (value < estimate)
+                estimate = value;
+        }
+        return estimate;
+    }
+
+    /** Adds the sketch of another instance with the same dimensions. */
+    void mergeSketch(HeavyHitters other) {
+        for (int row = 0; row < sketch.length; row++) {
+            long[] src = other.sketch[row];
+            long[] dst = sketch[row];
+            for (int index = 0; index < dst.length; index++) {
+                dst[index] += src[index];
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    Object ref(int index) {
+        return refs[index];
+    }
+
+    long key(int index) {
+        return keys[index];
+    }
+
+    long count(int index) {
+        return counts[index];
+    }
+
+    void clear() {
+        for (long[] row : sketch) {
+            Arrays.fill(row, 0L);
+        }
+        Arrays.fill(refs, null);
+        Arrays.fill(keys, 0L);
+        Arrays.fill(counts, 0L);
+        size = 0;
+        minIndex = 0;
+    }
+
+    private void put(int index, Object ref, long key, long count) {
+        refs[index] = ref;
+        keys[index] = key;
+        counts[index] = count;
+    }
+
+    private int indexOf(Object ref, long key) {
+        for (int index = 0; index < size; index++) {
+            if (keys[index] == key && Objects.equals(refs[index], ref))
+                return index;
+        }
+        return -1;
+    }
+
+    private void updateMin() {
+        int min = 0;
+        for (int index = 1; index < size; index++) {
+            if (counts[index] < counts[min])
+                min = index;
+        }
+        minIndex = min;
+    }
+
+    private int index(int hash, int row) {
+        int h = hash + row * 0x9e3779b9;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h & widthMask;
+    }
+
+    private static int hash(Object ref, long key) {
+        return ref != null ? ref.hashCode() : Long.hashCode(key);
+    }
+}
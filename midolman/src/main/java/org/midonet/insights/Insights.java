@@ -118,6 +118,52 @@ public final class Insights {
 
     private static final Listener EMPTY_LISTENER = new EmptyListener();
 
+    /**
+     * A listener that records into both an installed listener and the
+     * built-in listener.
+     */
+    private static final class TeeListener implements Listener {
+        private final Listener first;
+        private final Listener second;
+
+        TeeListener(Listener first, Listener second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void flowAdded(FlowMatch flowMatch,
+                              List<FlowTagger.FlowTag> flowTags,
+                              long expiration) {
+            first.flowAdded(flowMatch, flowTags, expiration);
+            second.flowAdded(flowMatch, flowTags, expiration);
+        }
+
+        @Override
+        public void flowSimulation(long cookie,
+                                   Packet packet,
+                                   UUID inputPort,
+                                   FlowMatch flowMatch,
+                                   List<FlowTagger.FlowTag> flowTags,
+                                   PacketWorkflow.SimulationResult result) {
+            first.flowSimulation(cookie, packet, inputPort, flowMatch,
+                                 flowTags, result);
+            second.flowSimulation(cookie, packet, inputPort, flowMatch,
+                                  flowTags, result);
+        }
+
+        @Override
+        public void flowDeleted(FlowMatch flowMatch, FlowMetadata metadata) {
+            first.flowDeleted(flowMatch, metadata);
+            second.flowDeleted(flowMatch, metadata);
+        }
+
+        @Override
+        public String toString() {
+            return first + " + " + second;
+        }
+    }
+
     public static final Insights NONE = new Insights();
 
     private final Listener listener;
@@ -127,6 +173,27 @@ public final class Insights {
     }
 
     public Insights(Reflections reflections, MetricRegistry metrics) {
+        this(reflections, metrics, null);
+    }
+
+    /**
+     * Creates an Insights instance with the installed listener, if any, and
+     * the built-in top talkers listener, if not null.
+     */
+    public Insights(Reflections reflections, MetricRegistry metrics,
+                    TopTalkers topTalkers) {
+        Listener installed = installedListener(reflections, metrics);
+        if (topTalkers == null) {
+            listener = installed;
+            return;
+        }
+        LOG.info("Insights built-in listener enabled: {}", topTalkers);
+        listener = installed == EMPTY_LISTENER
+                   ? topTalkers : new TeeListener(installed, topTalkers);
+    }
+
+    private static Listener installedListener(Reflections reflections,
+                                              MetricRegistry metrics) {
         Set<Class<? extends Listener>> listeners =
             reflections.getSubTypesOf(Listener.class);
 
@@ -150,11 +217,11 @@ public final class Insights {
 
         if (listeners.size() == 0) {
             LOG.info("No Insights listener installed");
-            listener = EMPTY_LISTENER;
+            return EMPTY_LISTENER;
         } else if (listeners.size() > 1) {
             LOG.info("Multiple Insights listeners installed: insights will "
                      + "be disabled");
-            listener = EMPTY_LISTENER;
+            return EMPTY_LISTENER;
         } else {
             Listener l = EMPTY_LISTENER;
             try {
@@ -167,7 +234,7 @@ public final class Insights {
                 LOG.warn("Installing Insights listener failed: insights will "
                          + "be disabled", e);
             }
-            listener = l;
+            return l;
         }
     }
 
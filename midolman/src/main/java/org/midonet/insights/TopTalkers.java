@@ -0,0 +1,378 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.insights;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import javax.management.ObjectName;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.AbstractService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.midonet.management.TopTalker;
+import org.midonet.management.TopTalkersMXBean;
+import org.midonet.midolman.PacketWorkflow;
+import org.midonet.odp.FlowMatch;
+import org.midonet.odp.FlowMetadata;
+import org.midonet.odp.Packet;
+import org.midonet.sdn.flows.FlowTagger;
+
+/**
+ * A built-in Insights listener that finds the top talkers of this agent: the
+ * source and destination addresses and the destination ports with the most
+ * new flows, the virtual ports with the most simulations, and the addresses
+ * with the most bytes in the deleted flows.
+ *
+ * Every packet worker records into its own pair of {@link HeavyHitters}
+ * buffers per dimension, selected by the current epoch, such that the
+ * listener methods are lock-free and do not allocate once the worker has
+ * recorded its first event. On every interval, a timer thread advances the
+ * epoch, merges the buffers of the previous epoch from all workers and
+ * publishes the merged tables over JMX and to the stats HTTP server. A worker
+ * may still add one event to the previous buffers while they are merged,
+ * which only affects the estimates.
+ *
+ * Only the worker thread clears its buffers, when it records the first event
+ * of a new epoch in them, and it then records that epoch for the buffers. The
+ * timer thread skips the buffers of the workers that did not record any event
+ * during the previous epoch.
+ */
+public final class TopTalkers extends AbstractService
+                              implements Insights.Listener, TopTalkersMXBean {
+
+    private static final Logger LOG =
+        LoggerFactory.getLogger("org.midonet.insights.top-talkers");
+
+    static final int FLOW_SOURCES = 0;
+    static final int FLOW_DESTINATIONS = 1;
+    static final int FLOW_PORTS = 2;
+    static final int SIMULATION_DEVICES = 3;
+    static final int BYTE_SOURCES = 4;
+    static final int BYTE_DESTINATIONS = 5;
+    static final int DIMENSIONS = 6;
+
+    public static final String[] DIMENSION_NAMES = {
+        "flow_sources", "flow_destinations", "flow_ports",
+        "simulation_devices", "byte_sources", "byte_destinations" };
+
+    private static final TopTalker[] EMPTY = new TopTalker[0];
+
+    private final class Worker {
+        final HeavyHitters[][] buffers = new HeavyHitters[2][DIMENSIONS];
+        // The epoch of the events in every buffer.
+        final AtomicIntegerArray epochs = new AtomicIntegerArray(2);
+
+        Worker() {
+            for (HeavyHitters[] buffer : buffers) {
+                for (int dim = 0; dim < DIMENSIONS; dim++) {
+                    buffer[dim] = newHeavyHitters();
+                }
+            }
+            epochs.set(0, -1);
+            epochs.set(1, -1);
+        }
+    }
+
+    private final int entries;
+    private final int sketchWidth;
+    private final int sketchDepth;
+    private final long intervalMillis;
+
+    private final List<Worker> workers = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Worker> currentWorker =
+        new ThreadLocal<Worker>() {
+            @Override
+            protected Worker initialValue() {
+                Worker worker = new Worker();
+                workers.add(worker);
+                return worker;
+            }
+        };
+
+    private volatile int epoch = 0;
+
+    // Only accessed by the timer thread.
+    private final HeavyHitters[] merged = new HeavyHitters[DIMENSIONS];
+
+    private volatile TopTalker[][] snapshot = new TopTalker[DIMENSIONS][];
+    private volatile long lastUpdate = 0L;
+
+    private ScheduledExecutorService executor;
+
+    public TopTalkers(int entries, int sketchWidth, int sketchDepth,
+                      long intervalMillis) {
+        if (entries <= 0 || sketchWidth <= 0 || sketchDepth <= 0)
+            throw new IllegalArgumentException(
+                "Invalid top talkers dimensions: entries " + entries +
+                " sketch " + sketchWidth + "x" + sketchDepth);
+        this.entries = entries;
+        this.sketchWidth = sketchWidth;
+        this.sketchDepth = sketchDepth;
+        this.intervalMillis = intervalMillis;
+        for (int dim = 0; dim < DIMENSIONS; dim++) {
+            merged[dim] = newHeavyHitters();
+            snapshot[dim] = EMPTY;
+        }
+    }
+
+    @Override
+    protected void doStart() {
+        executor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("top-talkers").build());
+        executor.scheduleAtFixedRate(this::tick, intervalMillis,
+                                     intervalMillis, TimeUnit.MILLISECONDS);
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                this, new ObjectName(TopTalkersMXBean.NAME));
+        } catch (Exception e) {
+            LOG.error("Failed to register top talkers JMX bean", e);
+        }
+        notifyStarted();
+    }
+
+    @Override
+    protected void doStop() {
+        executor.shutdownNow();
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+                new ObjectName(TopTalkersMXBean.NAME));
+        } catch (Exception e) {
+            LOG.debug("Failed to unregister top talkers JMX bean", e);
+        }
+        notifyStopped();
+    }
+
+    @Override
+    public void flowAdded(FlowMatch flowMatch,
+                          List<FlowTagger.FlowTag> flowTags,
+                          long expiration) {
+        recordFlow(flowMatch, FLOW_SOURCES, FLOW_DESTINATIONS, FLOW_PORTS, 1L);
+    }
+
+    @Override
+    public void flowSimulation(long cookie,
+                               Packet packet,
+                               UUID inputPort,
+                               FlowMatch flowMatch,
+                               List<FlowTagger.FlowTag> flowTags,
+                               PacketWorkflow.SimulationResult result) {
+        // The tunnelled packets do not have an input port.
+        if (inputPort != null) {
+            buffers()[SIMULATION_DEVICES].add(inputPort, 0L, 1L);
+        }
+    }
+
+    @Override
+    public void flowDeleted(FlowMatch flowMatch, FlowMetadata metadata) {
+        long bytes = metadata.getStats().getBytes();
+        if (bytes > 0) {
+            recordFlow(flowMatch, BYTE_SOURCES, BYTE_DESTINATIONS, -1, bytes);
+        }
+    }
+
+    @Override
+    public TopTalker[] getFlowSources() {
+        return snapshot[FLOW_SOURCES];
+    }
+
+    @Override
+    public TopTalker[] getFlowDestinations() {
+        return snapshot[FLOW_DESTINATIONS];
+    }
+
+    @Override
+    public TopTalker[] getFlowPorts() {
+        return snapshot[FLOW_PORTS];
+    }
+
+    @Override
+    public TopTalker[] getSimulationDevices() {
+        return snapshot[SIMULATION_DEVICES];
+    }
+
+    @Override
+    public TopTalker[] getByteSources() {
+        return snapshot[BYTE_SOURCES];
+    }
+
+    @Override
+    public TopTalker[] getByteDestinations() {
+        return snapshot[BYTE_DESTINATIONS];
+    }
+
+    @Override
+    public long getLastUpdate() {
+        return lastUpdate;
+    }
+
+    /**
+     * @return The top talkers of the last interval for every dimension, in
+     * the order of {@link #DIMENSION_NAMES}.
+     */
+    public TopTalker[][] topTalkers() {
+        return snapshot;
+    }
+
+    @Override
+    public String toString() {
+        return "TopTalkers[entries=" + entries + " sketch=" + sketchWidth +
+               "x" + sketchDepth + " interval=" + intervalMillis + "ms]";
+    }
+
+    private HeavyHitters newHeavyHitters() {
+        return new HeavyHitters(entries, sketchWidth, sketchDepth);
+    }
+
+    private HeavyHitters[] buffers() {
+        Worker worker = currentWorker.get();
+        int current = epoch;
+        int buffer = current & 1;
+        HeavyHitters[] hitters = worker.buffers[buffer];
+        if (worker.epochs.get(buffer) != current) {
+            // The buffer contains the events of an epoch already merged.
+            for (int dim = 0; dim < DIMENSIONS; dim++) {
+                hitters[dim].clear();
+            }
+            worker.epochs.set(buffer, current);
+        }
+        return hitters;
+    }
+
+    private void recordFlow(FlowMatch flowMatch, int sources, int destinations,
+                            int ports, long count) {
+        // Reading the match must not change the fields seen by the
+        // simulation, which determine the wildcards of the flow.
+        long seen = flowMatch.getSeenFields();
+        Object srcIp = flowMatch.getNetworkSrcIP();
+        Object dstIp = flowMatch.getNetworkDstIP();
+        byte proto = flowMatch.getNetworkProto();
+        int dstPort = flowMatch.getDstPort();
+        unsee(flowMatch, seen, FlowMatch.Field.NetworkSrc);
+        unsee(flowMatch, seen, FlowMatch.Field.NetworkDst);
+        unsee(flowMatch, seen, FlowMatch.Field.NetworkProto);
+        unsee(flowMatch, seen, FlowMatch.Field.DstPort);
+
+        if (srcIp == null || dstIp == null)
+            return;
+
+        HeavyHitters[] buffers = buffers();
+        buffers[sources].add(srcIp, 0L, count);
+        buffers[destinations].add(dstIp, 0L, count);
+        if (ports >= 0 && dstPort != 0) {
+            buffers[ports].add(null, portKey(proto, dstPort), count);
+        }
+    }
+
+    private static void unsee(FlowMatch flowMatch, long seen,
+                              FlowMatch.Field field) {
+        if ((seen & (1L << field.ordinal())) == 0) {
+            flowMatch.fieldUnseen(field);
+        }
+    }
+
+    private static long portKey(byte proto, int port) {
+        return ((proto & 0xFFL) << 16) | (port & 0xFFFFL);
+    }
+
+    private static String portLabel(long key) {
+        int proto = (int) (key >>> 16);
+        int port = (int) (key & 0xFFFF);
+        switch (proto) {
+            case 6: return "tcp/" + port;
+            case 17: return "udp/" + port;
+            case 132: return "sctp/" + port;
+            default: return proto + "/" + port;
+        }
+    }
+
+    /**
+     * Advances the epoch, and merges the buffers of the previous epoch. This
+     * method is called by the timer thread.
+     */
+    @VisibleForTesting
+    void tick() {
+        try {
+            int previous = epoch++;
+            TopTalker[][] next = new TopTalker[DIMENSIONS][];
+            for (int dim = 0; dim < DIMENSIONS; dim++) {
+                next[dim] = merge(dim, previous);
+            }
+            snapshot = next;
+            lastUpdate = System.currentTimeMillis();
+        } catch (Throwable e) {
+            LOG.error("Failed to merge the top talkers", e);
+        }
+    }
+
+    private TopTalker[] merge(int dim, int previous) {
+        int buffer = previous & 1;
+        HeavyHitters total = merged[dim];
+        for (Worker worker : workers) {
+            if (worker.epochs.get(buffer) == previous) {
+                total.mergeSketch(worker.buffers[buffer][dim]);
+            }
+        }
+
+        // The candidates are the heaviest keys of every worker, estimated
+        // over the merged sketch.
+        Map<Object, Long> candidates = new HashMap<>();
+        for (Worker worker : workers) {
+            if (worker.epochs.get(buffer) != previous) {
+                continue;
+            }
+            HeavyHitters hitters = worker.buffers[buffer][dim];
+            for (int index = 0; index < hitters.size(); index++) {
+                Object ref = hitters.ref(index);
+                long key = hitters.key(index);
+                Object candidate = ref != null ? ref : Long.valueOf(key);
+                if (!candidates.containsKey(candidate)) {
+                    candidates.put(candidate, total.estimate(ref, key));
+                }
+            }
+        }
+        total.clear();
+
+        List<Map.Entry<Object, Long>> sorted =
+            new ArrayList<>(candidates.entrySet());
+        sorted.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        int count = Math.min(entries, sorted.size());
+        TopTalker[] result = new TopTalker[count];
+        for (int index = 0; index < count; index++) {
+            Map.Entry<Object, Long> entry = sorted.get(index);
+            String label = dim == FLOW_PORTS
+                           ? portLabel((Long) entry.getKey())
+                           : entry.getKey().toString();
+            result[index] = new TopTalker(label, entry.getValue());
+        }
+        return result;
+    }
+}
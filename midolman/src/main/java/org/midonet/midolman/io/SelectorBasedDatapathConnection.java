@@ -28,6 +28,7 @@ import org.midonet.midolman.config.MidolmanConfig;
 import org.midonet.netlink.BufferPool;
 import org.midonet.netlink.Netlink;
 import org.midonet.netlink.NetlinkMetrics;
+import org.midonet.netlink.ReceiveBatch;
 import org.midonet.odp.protos.OvsDatapathConnection;
 import org.midonet.util.Bucket;
 import org.midonet.util.eventloop.SelectListener;
@@ -47,6 +48,7 @@ public class SelectorBasedDatapathConnection implements ManagedDatapathConnectio
     private SelectLoop readLoop;
     private SelectLoop writeLoop;
     private BufferPool sendPool;
+    private ReceiveBatch receiveBatch;
     private OvsDatapathConnection conn = null;
     private final boolean singleThreaded;
     private final Bucket bucket;
@@ -119,6 +121,12 @@ public class SelectorBasedDatapathConnection implements ManagedDatapathConnectio
         conn.getChannel().configureBlocking(false);
         conn.setMaxBatchIoOps(200); // FIXME - deprecated
 
+        int receiveBatchSize = config.datapath().receiveBatchSize();
+        if (receiveBatchSize > 1) {
+            receiveBatch = ReceiveBatch.allocate(receiveBatchSize);
+            conn.setReceiveBatch(receiveBatch);
+        }
+
         readLoop.register(
                 conn.getChannel(),
                 SelectionKey.OP_READ,
@@ -161,8 +169,12 @@ public class SelectorBasedDatapathConnection implements ManagedDatapathConnectio
             }
 
             conn.getChannel().close();
+
+            if (receiveBatch != null)
+                receiveBatch.close();
         } finally {
             conn = null;
+            receiveBatch = null;
             writeLoop = null;
             readLoop = null;
             readThread = null;
@@ -30,6 +30,7 @@ import org.midonet.midolman.config.MidolmanConfig;
 import org.midonet.netlink.BufferPool;
 import org.midonet.netlink.Netlink;
 import org.midonet.netlink.NetlinkMetrics;
+import org.midonet.netlink.ReceiveBatch;
 import org.midonet.odp.protos.OvsDatapathConnection;
 import org.midonet.util.Bucket;
 import org.midonet.util.eventloop.SelectListener;
@@ -50,6 +51,10 @@ public class SelectorThreadPair {
     private final boolean singleThreaded;
     private final MetricRegistry metrics;
 
+    // Shared by all the connections, because they are read from the same
+    // thread.
+    private ReceiveBatch receiveBatch;
+
     private Set<ManagedDatapathConnection> conns = new HashSet<>();
 
     public SelectorThreadPair(String name, MidolmanConfig config,
@@ -97,6 +102,8 @@ public class SelectorThreadPair {
 
         conn.getChannel().configureBlocking(false);
         conn.setMaxBatchIoOps(200); // FIXME - deprecated
+        if (receiveBatch != null)
+            conn.setReceiveBatch(receiveBatch);
 
         readLoop.register(
                 conn.getChannel(),
@@ -160,6 +167,10 @@ public class SelectorThreadPair {
         readLoop = new SimpleSelectLoop();
         writeLoop = singleThreaded ? readLoop : new SimpleSelectLoop();
 
+        int receiveBatchSize = config.datapath().receiveBatchSize();
+        if (receiveBatchSize > 1)
+            receiveBatch = ReceiveBatch.allocate(receiveBatchSize);
+
         readThread = startLoop(readLoop, name + (singleThreaded ? "" : ".read"));
         writeThread = singleThreaded ? readThread :
                                        startLoop(writeLoop, name + ".write");
@@ -182,7 +193,10 @@ public class SelectorThreadPair {
             }
 
         } finally {
+            if (receiveBatch != null)
+                receiveBatch.close();
             conns.clear();
+            receiveBatch = null;
             writeLoop = null;
             readLoop = null;
             readThread = null;
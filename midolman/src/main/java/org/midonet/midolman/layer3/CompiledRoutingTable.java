@@ -0,0 +1,318 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.midolman.layer3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.midonet.odp.FlowMatch;
+import org.midonet.packets.IPv4Addr;
+import org.midonet.packets.IPv4Subnet;
+
+/**
+ * An immutable IPv4 routing table, compiled from a set of routes into a
+ * multibit trie with a stride of 8 bits, stored in primitive arrays.
+ *
+ * Routes with the same destination prefix are grouped, and each trie entry
+ * holds the group of the longest prefix that covers it (controlled prefix
+ * expansion), such that a lookup takes at most four array reads. Each group
+ * also references the group of the next shorter prefix that covers it, which
+ * is used when none of the routes of a group match the source address.
+ *
+ * The lookup semantics are the same as for the {@link RoutingTable}: starting
+ * from the longest matching prefix, return the routes matching the source
+ * address with the minimum weight. The lookup(int, int, FlowMatch) method
+ * selects one of those routes using the flow's hash, without allocating.
+ *
+ * Because the table is immutable, it must be rebuilt when the routes change,
+ * and it can be safely shared between the simulation threads. For this
+ * reason it does not implement the {@link RoutingTableIfc}, which allows
+ * adding routes.
+ */
+public final class CompiledRoutingTable {
+
+    private final static Logger log =
+        LoggerFactory.getLogger("org.midonet.devices.router");
+
+    private static final int STRIDE = 8;
+    private static final int FANOUT = 1 << STRIDE;
+    private static final int LEVELS = 32 / STRIDE;
+    private static final int NONE = -1;
+    private static final long NO_WEIGHT = Long.MAX_VALUE;
+
+    private static final Route[][] NO_GROUPS = new Route[0][];
+
+    /* For each trie entry, the group of its longest matching prefix. */
+    private final int[] entryGroups;
+    /* For each trie entry, the index of its child node, or 0 if none. */
+    private final int[] entryChildren;
+    /* The group of the default (zero length) prefix. */
+    private final int defaultGroup;
+    /* The routes of each group. */
+    private final Route[][] groups;
+    /* For each group, the group of the next shorter covering prefix. */
+    private final int[] groupParents;
+    private final int numRoutes;
+
+    public CompiledRoutingTable(Collection<Route> routes) {
+        Builder builder = new Builder(routes);
+        entryGroups = Arrays.copyOf(builder.entryGroups,
+                                    builder.nodes * FANOUT);
+        entryChildren = Arrays.copyOf(builder.entryChildren,
+                                      builder.nodes * FANOUT);
+        defaultGroup = builder.defaultGroup;
+        groups = builder.groups;
+        groupParents = builder.groupParents;
+        numRoutes = routes.size();
+    }
+
+    /**
+     * Compiles the routes: routes are grouped by their destination prefix,
+     * and the prefixes are inserted in ascending order of their length, such
+     * that the longer prefixes overwrite the expansion of the shorter ones.
+     */
+    private static final class Builder {
+        int[] entryGroups = new int[FANOUT];
+        int[] entryChildren = new int[FANOUT];
+        int nodes = 1;
+        int defaultGroup = NONE;
+        Route[][] groups = NO_GROUPS;
+        int[] groupParents = new int[0];
+
+        Builder(Collection<Route> routes) {
+            Arrays.fill(entryGroups, NONE);
+            if (routes.isEmpty())
+                return;
+
+            Route[] sorted = routes.toArray(new Route[routes.size()]);
+            Arrays.sort(sorted, new Comparator<Route>() {
+                @Override
+                public int compare(Route r1, Route r2) {
+                    if (r1.dstNetworkLength != r2.dstNetworkLength)
+                        return r1.dstNetworkLength < r2.dstNetworkLength
+                               ? -1 : 1;
+                    return Integer.compare(prefixOf(r1), prefixOf(r2));
+                }
+            });
+
+            List<Route[]> groupList = new ArrayList<>();
+            int[] parents = new int[sorted.length];
+            int start = 0;
+            while (start < sorted.length) {
+                int end = start + 1;
+                while (end < sorted.length &&
+                       sorted[end].dstNetworkLength ==
+                           sorted[start].dstNetworkLength &&
+                       prefixOf(sorted[end]) == prefixOf(sorted[start])) {
+                    end++;
+                }
+                int group = groupList.size();
+                groupList.add(Arrays.copyOfRange(sorted, start, end));
+                int length = sorted[start].dstNetworkLength;
+                int prefix = prefixOf(sorted[start]);
+                parents[group] = length == 0 ? NONE : find(prefix);
+                insert(prefix, length, group);
+                start = end;
+            }
+            groups = groupList.toArray(new Route[groupList.size()][]);
+            groupParents = Arrays.copyOf(parents, groups.length);
+        }
+
+        private int find(int addr) {
+            int group = defaultGroup;
+            int node = 0;
+            for (int level = 0; level < LEVELS; level++) {
+                int entry = node * FANOUT + byteAt(addr, level);
+                if (entryGroups[entry] != NONE)
+                    group = entryGroups[entry];
+                node = entryChildren[entry];
+                if (node == 0)
+                    break;
+            }
+            return group;
+        }
+
+        private void insert(int prefix, int length, int group) {
+            if (length == 0) {
+                defaultGroup = group;
+                return;
+            }
+            int node = 0;
+            int level = 0;
+            while ((level + 1) * STRIDE < length) {
+                int entry = node * FANOUT + byteAt(prefix, level);
+                if (entryChildren[entry] == 0) {
+                    entryChildren[entry] = newNode();
+                }
+                node = entryChildren[entry];
+                level++;
+            }
+            // Expand the prefix to all the entries it covers at this level.
+            int span = 1 << ((level + 1) * STRIDE - length);
+            int first = node * FANOUT + byteAt(prefix, level);
+            for (int entry = first; entry < first + span; entry++) {
+                entryGroups[entry] = group;
+            }
+        }
+
+        private int newNode() {
+            if ((nodes + 1) * FANOUT > entryGroups.length) {
+                int size = entryGroups.length * 2;
+                int oldSize = entryGroups.length;
+                entryGroups = Arrays.copyOf(entryGroups, size);
+                entryChildren = Arrays.copyOf(entryChildren, size);
+                Arrays.fill(entryGroups, oldSize, size, NONE);
+            }
+            return nodes++;
+        }
+    }
+
+    private static int prefixOf(Route route) {
+        return route.dstNetworkLength == 0 ? 0 :
+               route.dstNetworkAddr & (0xffffffff << (32 - route.dstNetworkLength));
+    }
+
+    private static int byteAt(int addr, int level) {
+        return (addr >>> (32 - (level + 1) * STRIDE)) & (FANOUT - 1);
+    }
+
+    /**
+     * Returns the group of the longest prefix that matches the destination
+     * address, or NONE.
+     */
+    private int findGroup(int dst) {
+        int group = defaultGroup;
+        int node = 0;
+        for (int level = 0; level < LEVELS; level++) {
+            int entry = node * FANOUT + byteAt(dst, level);
+            if (entryGroups[entry] != NONE)
+                group = entryGroups[entry];
+            node = entryChildren[entry];
+            if (node == 0)
+                break;
+        }
+        return group;
+    }
+
+    /**
+     * Returns the minimum weight of the routes in the group that match the
+     * source address, or NO_WEIGHT if none match.
+     */
+    private static long minWeight(Route[] routes, int src) {
+        long minWeight = NO_WEIGHT;
+        for (Route rt : routes) {
+            if (rt.weight < minWeight &&
+                IPv4Subnet.addrMatch(src, rt.srcNetworkAddr,
+                                     rt.srcNetworkLength)) {
+                minWeight = rt.weight;
+            }
+        }
+        return minWeight;
+    }
+
+    /**
+     * Returns the route for the given source and destination addresses,
+     * or null if there is no route. If several routes match with the same
+     * weight, one of them is selected with the connection hash of the flow
+     * match, which is only computed in that case. This method does not
+     * allocate.
+     */
+    public Route lookup(int src, int dst, FlowMatch flowMatch) {
+        for (int group = findGroup(dst); group != NONE;
+             group = groupParents[group]) {
+            Route[] routes = groups[group];
+            long minWeight = minWeight(routes, src);
+            if (minWeight == NO_WEIGHT)
+                continue;
+
+            int count = 0;
+            for (Route rt : routes) {
+                if (rt.weight == minWeight &&
+                    IPv4Subnet.addrMatch(src, rt.srcNetworkAddr,
+                                         rt.srcNetworkLength)) {
+                    count++;
+                }
+            }
+            int selected = count == 1 ? 0 :
+                           Math.abs(flowMatch.connectionHash()) % count;
+            for (Route rt : routes) {
+                if (rt.weight == minWeight &&
+                    IPv4Subnet.addrMatch(src, rt.srcNetworkAddr,
+                                         rt.srcNetworkLength) &&
+                    selected-- == 0) {
+                    return rt;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns all the routes with the minimum weight for the given source and
+     * destination addresses.
+     */
+    public List<Route> lookup(int src, int dst, Logger logger) {
+        List<Route> ret = new ArrayList<>();
+        for (int group = findGroup(dst); group != NONE && ret.isEmpty();
+             group = groupParents[group]) {
+            Route[] routes = groups[group];
+            long minWeight = minWeight(routes, src);
+            for (Route rt : routes) {
+                if (rt.weight == minWeight &&
+                    IPv4Subnet.addrMatch(src, rt.srcNetworkAddr,
+                                         rt.srcNetworkLength)) {
+                    ret.add(rt);
+                }
+            }
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug(String.format("lookup: return %s for src %s dst %s " +
+                                       "in table with %d routes",
+                                       ret.toString(),
+                                       IPv4Addr.intToString(src),
+                                       IPv4Addr.intToString(dst),
+                                       numRoutes));
+        }
+        return ret;
+    }
+
+    public List<Route> lookup(IPv4Addr src, IPv4Addr dst) {
+        return lookup(src.toInt(), dst.toInt(), log);
+    }
+
+    public List<Route> lookup(IPv4Addr src, IPv4Addr dst, Logger logger) {
+        return lookup(src.toInt(), dst.toInt(), logger);
+    }
+
+    public int numRoutes() {
+        return numRoutes;
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledRoutingTable [routes=" + numRoutes +
+               ", prefixes=" + groups.length +
+               ", nodes=" + entryGroups.length / FANOUT + "]";
+    }
+}
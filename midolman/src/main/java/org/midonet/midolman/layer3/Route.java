@@ -174,10 +174,20 @@ public class Route extends ZoomObject implements Serializable {
 
     @Override
     public int hashCode() {
-        return Objects.hashCode(srcNetworkAddr, srcNetworkLength,
-                                dstNetworkAddr, dstNetworkLength, nextHop,
-                                nextHopPort, nextHopGateway,
-                                routerId, learned);
+        // Same value as Objects.hashCode over the fields below, without the
+        // varargs array and boxing, since the route hash is computed when
+        // tagging every routed flow.
+        int result = 1;
+        result = 31 * result + srcNetworkAddr;
+        result = 31 * result + srcNetworkLength;
+        result = 31 * result + dstNetworkAddr;
+        result = 31 * result + dstNetworkLength;
+        result = 31 * result + (nextHop == null ? 0 : nextHop.hashCode());
+        result = 31 * result + (nextHopPort == null ? 0 : nextHopPort.hashCode());
+        result = 31 * result + nextHopGateway;
+        result = 31 * result + (routerId == null ? 0 : routerId.hashCode());
+        result = 31 * result + (learned ? 1231 : 1237);
+        return result;
     }
 
     @Override
@@ -245,8 +245,7 @@ public class Condition extends BaseConfig {
             return conjunctionInv;
         if (!matchPort(this.outPortIds, outPortId, this.outPortInv))
             return conjunctionInv;
-        if (!matchField(unsignShort(etherType),
-                        Unsigned.unsign(pktMatch.getEtherType()), invDlType))
+        if (!matchEtherType(etherType, pktMatch.getEtherType(), invDlType))
             return conjunctionInv;
         if (!matchMAC(ethSrc, pktMatch.getEthSrc(), ethSrcMask, invDlSrc))
             return conjunctionInv;
@@ -262,9 +261,9 @@ public class Condition extends BaseConfig {
             return conjunctionInv;
         if (!matchIP(nwDstIp, pmDstIP, nwDstInv))
             return conjunctionInv;
-        if (!matchRange(tpSrc, pktMatch.getSrcPort(), tpSrcInv))
+        if (!matchPortRange(tpSrc, pktMatch.getSrcPort(), tpSrcInv))
             return conjunctionInv;
-        if (!matchRange(
+        if (!matchPortRange(
                 tpDst, pktMatch.getDstPort(), tpDstInv))
             return conjunctionInv;
         if (!matchIpToGroup(ipAddrGroupSrc, pmSrcIP, invIpAddrGroupIdSrc))
@@ -305,6 +304,14 @@ public class Condition extends BaseConfig {
                 negate ^ condField.equals(pktField);
     }
 
+    // Compares the unsigned values without boxing the packet field, since
+    // this is evaluated for every rule of every simulated packet.
+    private boolean matchEtherType(Integer condType, short pktType,
+                                   boolean negate) {
+        return condType == null ||
+                negate ^ ((condType & 0xffff) == (pktType & 0xffff));
+    }
+
     private boolean matchMAC(MAC condMAC, MAC pktMAC,
                              long mask, boolean negate) {
         return condMAC == null ||
@@ -379,10 +386,16 @@ public class Condition extends BaseConfig {
                 negate ^ (pktGroups != null && pktGroups.contains(condGroup));
     }
 
-    private <E extends Comparable<E>> boolean matchRange(
-            Range<E> range, E pktField, boolean negate) {
-        return range == null ||
-                negate ^ (null == pktField || range.isInside(pktField));
+    // Equivalent to Range.isInside, where a null bound is unbounded, but
+    // without boxing the packet port.
+    private boolean matchPortRange(
+            Range<Integer> range, int pktPort, boolean negate) {
+        if (range == null)
+            return true;
+        Integer start = range.start();
+        Integer end = range.end();
+        return negate ^ ((start == null || start <= pktPort) &&
+                         (end == null || end >= pktPort));
     }
 
     private boolean isNotNullOrEmpty(Object value) {
@@ -18,6 +18,7 @@ package org.midonet.midolman.services;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nullable;
@@ -31,7 +32,9 @@ import org.midonet.midolman.host.services.QosService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.midonet.insights.TopTalkers;
 import org.midonet.midolman.PacketWorkersService;
+import org.midonet.midolman.datapath.FlowStatsCollector;
 import org.midonet.midolman.host.services.HostService;
 import org.midonet.midolman.host.services.TcRequestHandler;
 import org.midonet.midolman.management.SimpleHTTPServerService;
@@ -57,6 +60,9 @@ public class MidolmanService extends AbstractService {
     @Inject
     PacketWorkersService packetWorkersService;
 
+    @Inject
+    FlowStatsCollector flowStatsCollector;
+
     @Inject
     QosService qosService;
 
@@ -90,6 +96,9 @@ public class MidolmanService extends AbstractService {
     @Inject(optional = true)
     SimpleHTTPServerService statsHttpService;
 
+    @Inject(optional = true)
+    TopTalkers topTalkers;
+
     private JmxReporter jmxReporter = null;
 
     @Override
@@ -170,18 +179,28 @@ public class MidolmanService extends AbstractService {
                 log.warn("Stopping the I/O executor timed out");
                 virtualTopology.ioExecutor().shutdownNow();
             }
+            for (ExecutorService executor :
+                     virtualTopology.shardExecutorServices()) {
+                executor.shutdown();
+                if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                    log.warn("Stopping a VT shard executor timed out");
+                    executor.shutdownNow();
+                }
+            }
         } catch (InterruptedException e) {
             log.error("Exception while stopping the executors", e);
         }
 
         virtualTopology.stopRuleLogEventChannel();
+        virtualTopology.stopSnapshot();
+        virtualTopology.stopStateTableWriter();
 
         if (state() != State.FAILED)
             notifyStopped();
     }
 
     private List<Service> services() {
-        ArrayList<Service> services = new ArrayList<>(9);
+        ArrayList<Service> services = new ArrayList<>(10);
         services.add(datapathService);
         services.add(selectLoopService);
         if (hostService != null)
@@ -189,11 +208,14 @@ public class MidolmanService extends AbstractService {
         services.add(virtualToPhysicalMapper);
         services.add(actorsService);
         services.add(packetWorkersService);
+        services.add(flowStatsCollector);
         services.add(tcRequestHandler);
         services.add(vppController);
         services.add(qosService);
         if (statsHttpService != null)
             services.add(statsHttpService);
+        if (topTalkers != null)
+            services.add(topTalkers);
         return services;
     }
 }
@@ -29,9 +29,10 @@ import org.midonet.midolman.flows.FlowExpirationIndexer.{Expiration, ExpirationQ
 import org.midonet.midolman.flows._
 import org.midonet.midolman.logging.MidolmanLogging
 import org.midonet.midolman.management.Metering
-import org.midonet.midolman.monitoring.MeterRegistry
+import org.midonet.midolman.monitoring.{MeterRegistry, MeteredFlowIndex}
 import org.midonet.midolman.monitoring.metrics.PacketPipelineMetrics
-import org.midonet.odp.FlowMatch
+import org.midonet.odp.flows.FlowAction
+import org.midonet.odp.{Flow, FlowMatch}
 import org.midonet.sdn.flows.FlowTagger.FlowTag
 import org.midonet.util.collection.{ArrayObjectPool, NoOpPool}
 import org.midonet.util.concurrent.WakerUpper.Parkable
@@ -58,15 +59,16 @@ class FlowTablePreallocation(config: MidolmanConfig) extends MidolmanLogging {
         numWorkers)
     private val meterRegistries = new ArrayList[MeterRegistry](numWorkers)
 
-    private val errorExpirationQueues = new ArrayList[ExpirationQueue](
-        numWorkers)
-    private val flowExpirationQueues = new ArrayList[ExpirationQueue](
-        numWorkers)
-    private val statefulFlowExpirationQueues =
-        new ArrayList[ExpirationQueue](numWorkers)
-    private val tunnelFlowExpirationQueues =
-        new ArrayList[ExpirationQueue](numWorkers)
+    private val expirationQueues = new ArrayList[ExpirationQueue](numWorkers)
 
+    /**
+     * The index of the metered flows by their masked match, which is only
+     * maintained when the datapath flow statistics are collected.
+     */
+    val meteredFlows: MeteredFlowIndex =
+        if (config.datapath.flowStatsInterval > 0)
+            new MeteredFlowIndex(numWorkers)
+        else null
 
     val maxFlows = Math.min(
         ((config.datapath.maxFlowCount / numWorkers) * 1.2).toInt,
@@ -82,12 +84,9 @@ class FlowTablePreallocation(config: MidolmanConfig) extends MidolmanLogging {
             indexToFlows.add(new Array[ManagedFlowImpl](indexToFlowsSize))
             managedFlowPools.add(new ArrayObjectPool[ManagedFlowImpl](
                                      maxFlows, new ManagedFlowImpl(_)))
-            meterRegistries.add(new MeterRegistry(maxFlows))
+            meterRegistries.add(new MeterRegistry(maxFlows, i, meteredFlows))
 
-            errorExpirationQueues.add(new ExpirationQueue(maxFlows/3))
-            flowExpirationQueues.add(new ExpirationQueue(maxFlows))
-            statefulFlowExpirationQueues.add(new ExpirationQueue(maxFlows))
-            tunnelFlowExpirationQueues.add(new ExpirationQueue(maxFlows/3))
+            expirationQueues.add(new ExpirationQueue(maxFlows))
 
             i += 1
         }
@@ -98,24 +97,20 @@ class FlowTablePreallocation(config: MidolmanConfig) extends MidolmanLogging {
     def takeIndexToFlow(): Array[ManagedFlowImpl] = indexToFlows.remove(0)
     def takeManagedFlowPool(): ArrayObjectPool[ManagedFlowImpl] =
         managedFlowPools.remove(0)
-    def takeMeterRegistry(): MeterRegistry = meterRegistries.remove(0)
-    def takeErrorExpirationQueue(): ExpirationQueue =
-        errorExpirationQueues.remove(0)
-    def takeFlowExpirationQueue(): ExpirationQueue =
-        flowExpirationQueues.remove(0)
-    def takeStatefulFlowExpirationQueue(): ExpirationQueue =
-        statefulFlowExpirationQueues.remove(0)
-    def takeTunnelFlowExpirationQueue(): ExpirationQueue =
-        tunnelFlowExpirationQueues.remove(0)
+    def takeMeterRegistry(workerId: Int): MeterRegistry =
+        meterRegistries.set(workerId, null)
+    def takeExpirationQueue(): ExpirationQueue = expirationQueues.remove(0)
 }
 
 
 trait FlowController extends DisruptorBackChannel {
-    def addFlow(fmatch: FlowMatch, flowTags: ArrayList[FlowTag],
+    def addFlow(fmatch: FlowMatch, flowActions: ArrayList[FlowAction],
+                flowTags: ArrayList[FlowTag],
                 removeCallbacks: ArrayList[Callback0],
                 expiration: Expiration): ManagedFlow
     def addRecircFlow(fmatch: FlowMatch,
                       recircMatch: FlowMatch,
+                      recircActions: ArrayList[FlowAction],
                       flowTags: ArrayList[FlowTag],
                       removeCallbacks: ArrayList[Callback0],
                       expiration: Expiration): ManagedFlow
@@ -123,6 +118,7 @@ trait FlowController extends DisruptorBackChannel {
     def duplicateFlow(mark: Int): Unit
 
     def invalidateFlowsFor(tag: FlowTag): Unit
+    def updateFlowStats(flows: ArrayList[Flow]): Unit
     def recordPacket(packetLen: Int, tags: ArrayList[FlowTag]): Unit
     def expirationInterval(expiration: Expiration): Long
 }
@@ -144,7 +140,7 @@ class FlowControllerImpl(config: MidolmanConfig,
     private var indexToFlow = preallocation.takeIndexToFlow()
     private var mask = indexToFlow.length - 1
 
-    val meters = preallocation.takeMeterRegistry()
+    val meters = preallocation.takeMeterRegistry(workerId)
     Metering.registerAsMXBean(meters)
 
     private val managedFlowPool = preallocation.takeManagedFlowPool()
@@ -161,18 +157,20 @@ class FlowControllerImpl(config: MidolmanConfig,
     private val flowRemoveCommandsToRetry = new ArrayList[FlowOperation](
         flowProcessor.capacity)
 
-    override def addFlow(fmatch: FlowMatch, flowTags: ArrayList[FlowTag],
+    override def addFlow(fmatch: FlowMatch, flowActions: ArrayList[FlowAction],
+                         flowTags: ArrayList[FlowTag],
                          removeCallbacks: ArrayList[Callback0],
                          expiration: Expiration): ManagedFlow = {
         val flow = takeFlow()
         flow.reset(fmatch, flowTags, removeCallbacks,
                    0L, expiration, clock.tick)
-        registerFlow(flow)
+        registerFlow(flow, flowActions)
         flow
     }
 
     override def addRecircFlow(fmatch: FlowMatch,
                                recircMatch: FlowMatch,
+                               recircActions: ArrayList[FlowAction],
                                flowTags: ArrayList[FlowTag],
                                removeCallbacks: ArrayList[Callback0],
                                expiration: Expiration): ManagedFlow = {
@@ -184,7 +182,7 @@ class FlowControllerImpl(config: MidolmanConfig,
                         0L, expiration, clock.tick, flow)
         flow.reset(recircMatch, flowTags, removeCallbacks,
                    0L, expiration, clock.tick, outerFlow)
-        registerFlow(flow)
+        registerFlow(flow, recircActions)
         flow
     }
 
@@ -236,14 +234,16 @@ class FlowControllerImpl(config: MidolmanConfig,
         }
     }
 
-    private def registerFlow(flow: ManagedFlowImpl): Unit = {
+    private def registerFlow(flow: ManagedFlowImpl,
+                             actions: ArrayList[FlowAction]): Unit = {
         indexFlow(flow)
-        expirationIndexer.enqueueFlowExpiration(flow.id,
-                                                flow.absoluteResetTimeNanos,
-                                                flow.expiration)
+        flow.expirationEntry =
+            expirationIndexer.enqueueFlowExpiration(flow.id,
+                                                    flow.absoluteResetTimeNanos,
+                                                    flow.expiration)
         tagIndexer.indexFlowTags(flow)
 
-        meters.trackFlow(flow.flowMatch, flow.tags)
+        meters.trackFlow(flow.flowMatch, flow.tags, actions)
         insights.flowAdded(flow.flowMatch, flow.tags,
                            flow.absoluteResetTimeNanos)
         var flowsAdded = 1
@@ -271,6 +271,10 @@ class FlowControllerImpl(config: MidolmanConfig,
     }
 
     private def forgetFlow(flow: ManagedFlowImpl): Unit = {
+        if (flow.expirationEntry != FlowExpirationIndexer.NoEntry) {
+            expirationIndexer.cancelFlowExpiration(flow.id, flow.expirationEntry)
+            flow.expirationEntry = FlowExpirationIndexer.NoEntry
+        }
         tagIndexer.removeFlowTags(flow)
         clearFlowIndex(flow)
         flow.callbacks.runAndClear()
@@ -391,6 +395,19 @@ class FlowControllerImpl(config: MidolmanConfig,
         }
     }
 
+    /**
+     * Updates the meters with the statistics of the dumped datapath flows
+     * tracked by this worker.
+     */
+    override def updateFlowStats(flows: ArrayList[Flow]): Unit = {
+        var i = 0
+        while (i < flows.size()) {
+            val flow = flows.get(i)
+            meters.updateFlow(flow.getMatch, flow.getStats)
+            i += 1
+        }
+    }
+
     override def recordPacket(packetLen: Int, tags: ArrayList[FlowTag]): Unit =
         meters.recordPacket(packetLen, tags)
 
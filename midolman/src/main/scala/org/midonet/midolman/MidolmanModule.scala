@@ -19,8 +19,10 @@ package org.midonet.midolman
 import java.nio.channels.spi.SelectorProvider
 import java.util.UUID
 import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.{Callable, ExecutorService}
 
 import scala.collection.IndexedSeq
+import scala.concurrent.duration._
 import scala.concurrent.{ExecutionContext, Future}
 
 import akka.actor.{ActorSystem, OneForOneStrategy, SupervisorStrategy}
@@ -41,7 +43,7 @@ import org.midonet.cluster.backend.cassandra.CassandraClient
 import org.midonet.cluster.services.MidonetBackend
 import org.midonet.cluster.storage.{FlowStateStorage, MidonetBackendConfig}
 import org.midonet.conf.HostIdGenerator
-import org.midonet.insights.Insights
+import org.midonet.insights.{Insights, TopTalkers}
 import org.midonet.midolman.config.MidolmanConfig
 import org.midonet.midolman.datapath.DisruptorDatapathChannel.PacketContextHolder
 import org.midonet.midolman.datapath._
@@ -50,7 +52,7 @@ import org.midonet.midolman.host.services.{HostService, QosService, TcRequestHan
 import org.midonet.midolman.io._
 import org.midonet.midolman.logging.rule.{DisruptorRuleLogEventChannel, RuleLogEventChannel}
 import org.midonet.midolman.logging.{FlowTracingAppender, FlowTracingSchema}
-import org.midonet.midolman.management.{SimpleHTTPServer, SimpleHTTPServerService, MeteringHTTPHandler}
+import org.midonet.midolman.management.{SimpleHTTPServer, SimpleHTTPServerService, MeteringHTTPHandler, TopTalkersHTTPHandler}
 import org.midonet.midolman.monitoring.metrics.{DatapathMetrics, PacketExecutorMetrics}
 import org.midonet.midolman.openstack.metadata.{DatapathInterface, Plumber}
 import org.midonet.midolman.services._
@@ -64,6 +66,7 @@ import org.midonet.odp.OvsNetlinkFamilies
 import org.midonet.util._
 import org.midonet.util.concurrent._
 import org.midonet.util.eventloop.{Reactor, SelectLoop, SimpleSelectLoop}
+import org.midonet.util.functors.makeRunnable
 
 class MidolmanModule(injector: Injector,
                      config: MidolmanConfig,
@@ -84,7 +87,10 @@ class MidolmanModule(injector: Injector,
         bind(classOf[UnixClock]).toInstance(UnixClock.DEFAULT)
 
         bind(classOf[MetricRegistry]).toInstance(metricRegistry)
-        val insights = new Insights(reflections, metricRegistry)
+        val topTalkers = topTalkersListener()
+        topTalkers foreach { bind(classOf[TopTalkers]).toInstance(_) }
+        val insights = new Insights(reflections, metricRegistry,
+                                    topTalkers.orNull)
         bind(classOf[Insights]).toInstance(insights)
 
         // We add an extra slot so that channels can return tokens
@@ -122,6 +128,8 @@ class MidolmanModule(injector: Injector,
             ringBuffer, barrier, fp, dpState, families, channelFactory)
         bind(classOf[FlowProcessor]).toInstance(fp)
         bind(classOf[DatapathChannel]).toInstance(channel)
+        bind(classOf[FlowStatsCollector]).toInstance(
+            flowStatsCollector(dpState, families, channelFactory, backChannel))
 
         bind(classOf[DatapathConnectionPool]).toInstance(connectionPool())
 
@@ -145,7 +153,7 @@ class MidolmanModule(injector: Injector,
         val qService = qosService(scanner, host, tcRequestHandler)
         bind(classOf[QosService]).toInstance(qService)
 
-        val statsHttpSvc = statsHttpService()
+        val statsHttpSvc = statsHttpService(topTalkers)
         bind(classOf[SimpleHTTPServerService]).toInstance(statsHttpSvc)
 
         bind(classOf[FlowTracingAppender]).toInstance(flowTracingAppender())
@@ -249,7 +257,23 @@ class MidolmanModule(injector: Injector,
             SelectorProvider.provider,
             backChannel,
             new DatapathMetrics(metricRegistry),
-            NanoClock.DEFAULT)
+            NanoClock.DEFAULT,
+            config.datapath.flowCreateBatchSize)
+
+    protected def flowStatsCollector(
+            dpState: DatapathState,
+            families: OvsNetlinkFamilies,
+            channelFactory: NetlinkChannelFactory,
+            backChannel: SimulationBackChannel) =
+        new FlowStatsCollector(
+            dpState,
+            families,
+            channelFactory,
+            backChannel,
+            new DatapathMetrics(metricRegistry),
+            NanoClock.DEFAULT,
+            config.datapath.flowStatsInterval.millis,
+            flowTablePreallocation.meteredFlows)
 
     protected def createProcessors(
             ringBuffer: RingBuffer[PacketContextHolder],
@@ -385,10 +409,22 @@ class MidolmanModule(injector: Injector,
                              tcRequestHandler: TcRequestHandler): QosService =
         QosService(scanner, hostId, tcRequestHandler)
 
-    protected def statsHttpService(): SimpleHTTPServerService = {
-        new SimpleHTTPServerService(
-            config.statsHttpServerPort,
-                Lists.newArrayList(new MeteringHTTPHandler))
+    protected def topTalkersListener(): Option[TopTalkers] = {
+        val insightsConfig = config.insights
+        if (insightsConfig.topTalkersEnabled) {
+            Some(new TopTalkers(insightsConfig.topTalkersEntries,
+                                insightsConfig.topTalkersSketchWidth,
+                                insightsConfig.topTalkersSketchDepth,
+                                insightsConfig.topTalkersInterval))
+        } else None
+    }
+
+    protected def statsHttpService(topTalkers: Option[TopTalkers])
+    : SimpleHTTPServerService = {
+        val handlers = Lists.newArrayList[SimpleHTTPServer.Handler](
+            new MeteringHTTPHandler)
+        topTalkers foreach { handlers add new TopTalkersHTTPHandler(_) }
+        new SimpleHTTPServerService(config.statsHttpServerPort, handlers)
     }
 
     protected def bindHostService(): Unit =
@@ -449,6 +485,15 @@ class MidolmanModule(injector: Injector,
                 vtThread.get == Thread.currentThread().getId
             }
         }
+        val shardExecutors =
+            for (index <- 1 until config.topologyThreads) yield {
+                topologyExecutor(s"devices-service-$index")
+            }
+        if (shardExecutors.nonEmpty) {
+            // The thread checks of all shards may be called from any shard
+            // thread, so the default thread is registered eagerly.
+            vtExecutor.submit(makeRunnable { vtExecutorCheck() }).get()
+        }
 
         new VirtualTopology(
             injector.getInstance(classOf[MidonetBackend]),
@@ -458,10 +503,25 @@ class MidolmanModule(injector: Injector,
             metricRegistry,
             vtExecutor,
             ioExecutor,
-            vtExecutorCheck
+            vtExecutorCheck,
+            shardExecutors
             )
     }
 
+    /**
+      * Creates the executor of an additional virtual topology shard, and a
+      * function that checks whether the caller executes on its thread.
+      */
+    private def topologyExecutor(name: String)
+    : (ExecutorService, () => Boolean) = {
+        val executor = Executors.singleThreadScheduledExecutor(
+            name, isDaemon = true, Executors.CallerRunsPolicy)
+        val thread = executor.submit(new Callable[Thread] {
+            override def call(): Thread = Thread.currentThread()
+        }).get()
+        (executor, () => Thread.currentThread() eq thread)
+    }
+
     protected def virtualToPhysicalMapper(hostId: UUID, vt: VirtualTopology) =
         new VirtualToPhysicalMapper(
             injector.getInstance(classOf[MidonetBackend]),
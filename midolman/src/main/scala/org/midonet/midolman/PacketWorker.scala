@@ -27,6 +27,17 @@ import org.midonet.Util
 
 trait PacketWorker {
     def submit(packet: Packet): Boolean
+
+    /** Claims a slot in the worker queue for a packet, and returns the
+      * sequence number of the slot, or -1 if the worker queue is full and
+      * the packet is dropped. The worker does not process the packet until
+      * the slot is published. The default implementation submits the packet
+      * immediately. */
+    def claim(packet: Packet): Long = if (submit(packet)) 0L else -1L
+
+    /** Publishes the claimed slots from `lo` to `hi`, such that the worker
+      * is signalled once for all of them. */
+    def publish(lo: Long, hi: Long): Unit = { }
 }
 
 object DisruptorPacketWorker {
@@ -73,6 +84,27 @@ class DisruptorPacketWorker(packetWorkflow: PacketWorkflow,
         }
     }
 
+    /* Claims the slot for a packet of a batch, such that a packet accepted by
+     * the upcall handler is never dropped later. The producer publishes the
+     * slots claimed during a batch together, such that the worker is
+     * signalled once per batch instead of once per packet.
+     */
+    override def claim(packet: Packet): Long = {
+        try {
+            val seq = ringBuffer.tryNext()
+            ringBuffer.get(seq).packet = packet
+            seq
+        } catch {
+            case ice: InsufficientCapacityException =>
+                log.debug("Disruptor ring buffer full, packet dropped")
+                metrics.workerQueueOverflow.mark()
+                -1L
+        }
+    }
+
+    override def publish(lo: Long, hi: Long): Unit =
+        ringBuffer.publish(lo, hi)
+
     def isRunning() = eventProcessor.isRunning
 
     def shutdown(): Unit =
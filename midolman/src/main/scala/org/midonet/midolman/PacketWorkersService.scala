@@ -35,13 +35,13 @@ import org.midonet.midolman.logging.MidolmanLogging
 import org.midonet.midolman.monitoring.{FlowRecorder, FlowSenderWorker}
 import org.midonet.midolman.monitoring.metrics.PacketPipelineMetrics
 import org.midonet.midolman.services.HostIdProvider
-import org.midonet.midolman.state.ConnTrackState.{ConnTrackKey, ConnTrackValue}
-import org.midonet.midolman.state.NatState.NatKey
+import org.midonet.midolman.state.ConnTrackState.{ConnTrackKey, ConnTrackKeyCodec, ConnTrackValue, ConnTrackValueCodec}
+import org.midonet.midolman.state.NatState.{NatBindingCodec, NatKey, NatKeyCodec}
 import org.midonet.midolman.state.TraceState.{TraceContext, TraceKey}
 import org.midonet.midolman.state.{NatBlockAllocator, NatLeaser, PeerResolver}
 import org.midonet.midolman.topology.VirtualTopology
 import org.midonet.packets.NatState.NatBinding
-import org.midonet.sdn.state.OnHeapShardedFlowStateTable
+import org.midonet.sdn.state.{OffHeapShardedFlowStateTable, OnHeapShardedFlowStateTable}
 import org.midonet.util.StatisticalCounter
 import org.midonet.util.concurrent.NanoClock
 import org.midonet.util.logging.Logger
@@ -84,8 +84,20 @@ class PacketWorkersServiceImpl(config: MidolmanConfig,
 
     val numWorkers = PacketWorkersService.numWorkers(config)
 
-    val connTrackStateTable = new OnHeapShardedFlowStateTable[ConnTrackKey, ConnTrackValue](clock)
-    val natStateTable = new OnHeapShardedFlowStateTable[NatKey, NatBinding](clock)
+    val connTrackStateTable =
+        if (config.offHeapFlowState)
+            new OffHeapShardedFlowStateTable[ConnTrackKey, ConnTrackValue](
+                ConnTrackKeyCodec, ConnTrackValueCodec,
+                config.offHeapFlowStateCapacity, clock)
+        else
+            new OnHeapShardedFlowStateTable[ConnTrackKey, ConnTrackValue](clock)
+    val natStateTable =
+        if (config.offHeapFlowState)
+            new OffHeapShardedFlowStateTable[NatKey, NatBinding](
+                NatKeyCodec, NatBindingCodec,
+                config.offHeapFlowStateCapacity, clock)
+        else
+            new OnHeapShardedFlowStateTable[NatKey, NatBinding](clock)
     val natLeaser: NatLeaser = new NatLeaser {
         val log: Logger = Logger(LoggerFactory.getLogger(classOf[NatLeaser]))
         val allocator = natBlockAllocator
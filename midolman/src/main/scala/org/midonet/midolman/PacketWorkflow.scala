@@ -34,6 +34,7 @@ import org.midonet.midolman.HostRequestProxy.FlowStateBatch
 import org.midonet.midolman.SimulationBackChannel.BackChannelMessage
 import org.midonet.midolman.config.MidolmanConfig
 import org.midonet.midolman.datapath.FlowProcessor.{DuplicateFlow, FlowError}
+import org.midonet.midolman.datapath.FlowStatsCollector.FlowStatsDump
 import org.midonet.midolman.datapath.{DatapathChannel, FlowProcessor}
 import org.midonet.midolman.flows.FlowExpirationIndexer
 import org.midonet.midolman.flows.FlowExpirationIndexer.Expiration
@@ -273,7 +274,7 @@ class PacketWorkflow(
     protected val connTrackTx = new FlowStateTransaction(connTrackStateTable)
     protected val natTx = new FlowStateTransaction(natStateTable)
     protected val traceStateTx = new FlowStateTransaction(traceStateTable)
-    protected var replicator = new FlowStateReplicator(
+    protected var replicator: FlowStateReplicator = new FlowStateReplicator(
             connTrackStateTable,
             natStateTable,
             traceStateTable,
@@ -281,7 +282,12 @@ class PacketWorkflow(
             peerResolver,
             dpState,
             flowController,
-            config)
+            config) {
+        // State messages are only delivered to one worker: invalidating the
+        // flows through the back channel reaches the flows of all workers.
+        override protected def peerFlowInvalidation(key: FlowTag): Unit =
+            backChannel tell key
+    }
 
     protected val arpBroker = new ArpRequestBroker(config, backChannel, clock)
 
@@ -359,6 +365,9 @@ class PacketWorkflow(
         case m: FlowStateBatch => replicator.importFromStorage(m)
         case DuplicateFlow(index) => flowController.duplicateFlow(index)
         case FlowError(index) => // Do nothing.
+        case FlowStatsDump(worker, flows) =>
+            if (worker == workerId)
+                flowController.updateFlowStats(flows)
     }
 
     override def process(): Unit = {
@@ -407,6 +416,7 @@ class PacketWorkflow(
                         backChannel, arpBroker)
         context.initialize(connTrackTx, natTx, natLeaser, traceStateTx)
         context.log = PacketTracing.loggerFor(fmatch)
+        context.recordSkippedRules = flowRecorder.enabled
         context
     }
 
@@ -611,11 +621,13 @@ class PacketWorkflow(
                 val flow = if (context.isRecirc) {
                     flowController.addRecircFlow(context.origMatch,
                                                  context.recircMatch,
+                                                 context.recircFlowActions,
                                                  context.flowTags,
                                                  context.flowRemovedCallbacks,
                                                  expiration)
                 } else {
                     flowController.addFlow(context.origMatch,
+                                           context.flowActions,
                                            context.flowTags,
                                            context.flowRemovedCallbacks,
                                            expiration)
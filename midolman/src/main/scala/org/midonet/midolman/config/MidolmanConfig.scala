@@ -82,6 +82,7 @@ class MidolmanConfig(config: Config, val schema: Config = ConfigFactory.empty(),
 
     def dhcpMtu = Math.min(getInt(s"$PREFIX.midolman.dhcp_mtu"), 0xffff)
     def simulationThreads = getInt(s"$PREFIX.midolman.simulation_threads")
+    def topologyThreads = getInt(s"$PREFIX.midolman.topology_threads")
     def maxPooledContexts = getInt(s"$PREFIX.midolman.max_pooled_contexts")
     def outputChannels = getInt(s"$PREFIX.midolman.output_channels")
     def inputChannelThreading = getString(s"$PREFIX.midolman.input_channel_threading")
@@ -90,6 +91,23 @@ class MidolmanConfig(config: Config, val schema: Config = ConfigFactory.empty(),
 
     def lockMemory = getBoolean(s"$PREFIX.midolman.lock_memory")
 
+    def offHeapFlowState = getBoolean(s"$PREFIX.midolman.off_heap_flow_state")
+    def offHeapFlowStateCapacity =
+        getInt(s"$PREFIX.midolman.off_heap_flow_state_capacity")
+
+    def topologySnapshot = getBoolean(s"$PREFIX.midolman.topology_snapshot")
+    def topologySnapshotFile =
+        getString(s"$PREFIX.midolman.topology_snapshot_file")
+    def topologySnapshotInterval =
+        getDuration(s"$PREFIX.midolman.topology_snapshot_interval",
+                    TimeUnit.MILLISECONDS)
+
+    def stateTableWriteInterval =
+        getDuration(s"$PREFIX.midolman.state_table_write_interval",
+                    TimeUnit.MILLISECONDS)
+    def stateTableMaxWrites =
+        getInt(s"$PREFIX.midolman.state_table_max_writes")
+
     def statsHttpServerPort: Int =
         getInt(s"$PREFIX.midolman.stats_http_server_port")
 
@@ -111,6 +129,7 @@ class MidolmanConfig(config: Config, val schema: Config = ConfigFactory.empty(),
     val flowState = new FlowStateConfig(conf, schema)
     val bindingApi = new BindingApiConfig(conf, schema)
     val ruleLogging = new RuleLoggingConfig(conf, schema)
+    val insights = new InsightsConfig(conf, schema)
     val fip64 = new Fip64Config(conf, schema)
 }
 
@@ -135,8 +154,11 @@ class DatapathConfig(val conf: Config, val schema: Config) extends TypeFailureFa
     def sendBufferPoolInitialSize = getInt(s"$PREFIX.send_buffer_pool_initial_size")
     def sendBufferPoolMaxSize = getInt(s"$PREFIX.send_buffer_pool_max_size")
     def sendBufferPoolBufSizeKb = getInt(s"$PREFIX.send_buffer_pool_buf_size_kb")
+    def receiveBatchSize = getInt(s"$PREFIX.receive_batch_size")
 
     def maxFlowCount = getInt(s"$PREFIX.max_flow_count")
+    def flowCreateBatchSize = getInt(s"$PREFIX.flow_create_batch_size")
+    def flowStatsInterval = getDuration(s"$PREFIX.flow_stats_interval", TimeUnit.MILLISECONDS)
 
     def vxlanVtepUdpPort = getInt(s"$PREFIX.vxlan_vtep_udp_port")
     def vxlanOverlayUdpPort = getInt(s"$PREFIX.vxlan_overlay_udp_port")
@@ -206,6 +228,18 @@ class MetadataConfig(val conf: Config, val schema: Config)
     def novaMetadataUrl =
         getString("agent.openstack.metadata.nova_metadata_url")
     def sharedSecret = getString("agent.openstack.metadata.shared_secret")
+    def maxConnections = getInt("agent.openstack.metadata.max_connections")
+    def maxQueuedRequests =
+        getInt("agent.openstack.metadata.max_queued_requests")
+    def requestTimeout =
+        getDuration("agent.openstack.metadata.request_timeout",
+                    TimeUnit.MILLISECONDS)
+    def idleTimeout =
+        getDuration("agent.openstack.metadata.idle_timeout",
+                    TimeUnit.MILLISECONDS)
+    def cacheTtl =
+        getDuration("agent.openstack.metadata.cache_ttl", TimeUnit.MILLISECONDS)
+    def cacheMaxEntries = getInt("agent.openstack.metadata.cache_max_entries")
 }
 
 class FlowHistoryConfig(val conf: Config, val schema: Config) extends TypeFailureFallback {
@@ -291,6 +325,21 @@ class RuleLoggingConfig(val conf: Config, val schema: Config)
     def maxFiles = getInt(s"$prefix.max_files")
     def logDirectory = getString(s"$prefix.log_directory")
     def rotationFrequency = getString(s"$prefix.rotation_frequency")
+    def aggregationInterval = getDuration(s"$prefix.aggregation_interval", TimeUnit.MILLISECONDS)
+    def aggregationMaxEntries = getInt(s"$prefix.aggregation_max_entries")
+    def samplingRate = getDouble(s"$prefix.sampling_rate")
+    def loggerEventBudget = getInt(s"$prefix.logger_event_budget")
+}
+
+class InsightsConfig(val conf: Config, val schema: Config)
+    extends TypeFailureFallback {
+    val prefix = "agent.insights"
+
+    def topTalkersEnabled = getBoolean(s"$prefix.top_talkers.enabled")
+    def topTalkersInterval = getDuration(s"$prefix.top_talkers.interval", TimeUnit.MILLISECONDS)
+    def topTalkersEntries = getInt(s"$prefix.top_talkers.entries")
+    def topTalkersSketchWidth = getInt(s"$prefix.top_talkers.sketch_width")
+    def topTalkersSketchDepth = getInt(s"$prefix.top_talkers.sketch_depth")
 }
 
 class Fip64Config(val conf: Config, val schema: Config) {
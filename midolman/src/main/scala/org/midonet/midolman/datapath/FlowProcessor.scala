@@ -79,7 +79,8 @@ class FlowProcessor(dpState: DatapathState,
                     selectorProvider: SelectorProvider,
                     backChannel: SimulationBackChannel,
                     datapathMetrics: DatapathMetrics,
-                    clock: NanoClock)
+                    clock: NanoClock,
+                    maxBatchSize: Int = 1)
     extends EventPoller.Handler[PacketContextHolder]
     with DisruptorBackChannel
     with LifecycleAware {
@@ -93,6 +94,19 @@ class FlowProcessor(dpState: DatapathState,
     private val supportsMegaflow = dpState.datapath.supportsMegaflow()
 
     private var writeBuf = BytesUtil.instance.allocateDirect(64 * 1024)
+    /**
+     * Holds the flow create messages of the current Disruptor batch, which
+     * are written to the datapath with a single write when the batch ends or
+     * when [[maxBatchSize]] messages have been accumulated. Each message
+     * keeps its own sequence number, so the kernel still reports errors on a
+     * per flow basis.
+     */
+    private var batchBuf = BytesUtil.instance.allocateDirect(64 * 1024)
+    private var batchedFlows = 0
+    // The end offsets of the batched messages, starting at index 1, used to
+    // process every message once the batch is written.
+    private val batchOffsets = new Array[Int](maxBatchSize + 1)
+    private var batchedSequence = Sequencer.INITIAL_CURSOR_VALUE
     private val selector = selectorProvider.openSelector()
     private val createChannel = channelFactory.create(blocking = false)
     private val createChannelPid = createChannel.getLocalAddress.getPid
@@ -133,21 +147,24 @@ class FlowProcessor(dpState: DatapathState,
             val index = context.flow.mark
             try {
                 createFlow(context.origMatch, context.flowActions, context, index)
-                datapathMetrics.flowsCreated.mark()
                 if (context.isRecirc) {
                     // Note we created the after-recirc flow first, so new
                     // packets will still go to midolman before recirculation.
                     createFlow(
                         context.recircMatch, context.recircFlowActions, context, index)
-                    datapathMetrics.flowsCreated.mark()
                 }
             } catch { case t: Throwable =>
                 context.log.error("Failed to create datapath flow", t)
             }
 
-            lastSequence = sequence
+            if (batchedFlows > 0)
+                batchedSequence = sequence
+            else
+                lastSequence = sequence
         }
         context.setFlowProcessed()
+        if (endOfBatch || batchedFlows >= maxBatchSize)
+            flushBatch()
         true
     }
 
@@ -173,21 +190,127 @@ class FlowProcessor(dpState: DatapathState,
             createProtocol.prepareFlowCreate(
                 datapathId, keys, actions, mask, writeBuf)
             writeBuf.putInt(NetlinkMessage.NLMSG_SEQ_OFFSET, index)
-            writer.write(writeBuf)
-            writeBuf.rewind()
-            sixwind.processFlow(writeBuf, writeBuf.limit())
+            if (maxBatchSize > 1) {
+                batchFlow(writeBuf)
+            } else {
+                datapathMetrics.flowCreateBatchSize.update(1)
+                try {
+                    writer.write(writeBuf)
+                    writeBuf.rewind()
+                    flowWritten(writeBuf)
+                } catch { case NonFatal(e) =>
+                    flowWriteFailed(index, e)
+                }
+            }
         } catch { case e: BufferOverflowException =>
             val capacity = writeBuf.capacity()
             if (capacity >= MAX_BUF_CAPACITY)
                 throw e
             val newCapacity = capacity * 2
             writeBuf = BytesUtil.instance.allocateDirect(newCapacity)
+            flushBatch()
+            batchBuf = BytesUtil.instance.allocateDirect(newCapacity)
             log.debug(s"Increasing buffer size to $newCapacity")
             writeFlow(datapathId, keys, actions, mask, index)
         } finally {
             writeBuf.clear()
         }
 
+    /**
+     * Appends the prepared flow create message to the current batch, flushing
+     * the batch first if it is full or if the message doesn't fit. Messages
+     * are already padded for 4B alignment, so they can be concatenated in the
+     * same datagram.
+     */
+    private def batchFlow(msg: ByteBuffer): Unit = {
+        if (batchBuf.remaining() < msg.remaining() ||
+            batchedFlows == maxBatchSize)
+            flushBatch()
+        batchBuf.put(msg)
+        batchedFlows += 1
+        batchOffsets(batchedFlows) = batchBuf.position()
+    }
+
+    /**
+     * Writes all the flow create messages of the current batch with a single
+     * write operation. If the write fails, the messages are written one at a
+     * time, such that a failure only affects the flow that caused it.
+     */
+    private def flushBatch(): Unit = {
+        if (batchedFlows > 0) {
+            batchBuf.flip()
+            try {
+                val written = try {
+                    writer.write(batchBuf)
+                    true
+                } catch { case NonFatal(e) =>
+                    log.warn(s"Failed to write $batchedFlows batched flow " +
+                             "create requests: writing them one at a time", e)
+                    false
+                }
+                if (written) {
+                    log.debug(s"Wrote $batchedFlows batched flow create requests")
+                    var i = 0
+                    while (i < batchedFlows) {
+                        batchedMessage(i)
+                        flowWritten(batchBuf)
+                        i += 1
+                    }
+                } else {
+                    writeBatchedFlows()
+                }
+            } finally {
+                datapathMetrics.flowCreateBatchSize.update(batchedFlows)
+                batchedFlows = 0
+                batchBuf.clear()
+            }
+            lastSequence = batchedSequence
+        }
+    }
+
+    private def writeBatchedFlows(): Unit = {
+        var i = 0
+        while (i < batchedFlows) {
+            batchedMessage(i)
+            val index = batchBuf.getInt(
+                batchOffsets(i) + NetlinkMessage.NLMSG_SEQ_OFFSET)
+            try {
+                writer.write(batchBuf)
+                batchedMessage(i)
+                flowWritten(batchBuf)
+            } catch { case NonFatal(e) =>
+                flowWriteFailed(index, e)
+            }
+            i += 1
+        }
+    }
+
+    /** Sets the batch buffer bounds to the message at the given position. */
+    private def batchedMessage(i: Int): Unit = {
+        batchBuf.limit(batchOffsets(i + 1))
+        batchBuf.position(batchOffsets(i))
+    }
+
+    /**
+     * Completes a flow create message once written to the datapath. The
+     * buffer is positioned at the start of the message.
+     */
+    private def flowWritten(msg: ByteBuffer): Unit = {
+        sixwind.processFlow(msg, msg.remaining())
+        datapathMetrics.flowsCreated.mark()
+    }
+
+    /**
+     * Handles a flow create message that could not be written, in the same
+     * way as a flow create error reported by the datapath.
+     */
+    private def flowWriteFailed(index: Int, e: Throwable): Unit = {
+        datapathMetrics.flowCreateErrors.mark()
+        log.error("Failed to write flow with index " +
+                  s"0x${Integer.toHexString(index)}", e)
+        backChannel.tell(FlowError(index))
+    }
+
     def capacity = broker.capacity
 
     /**
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.midolman.datapath
+
+import java.nio.ByteBuffer
+import java.util.ArrayList
+import java.util.concurrent.{Executors, TimeUnit}
+
+import scala.concurrent.duration._
+import scala.util.control.NonFatal
+
+import com.google.common.util.concurrent.AbstractService
+import com.typesafe.scalalogging.Logger
+
+import org.slf4j.LoggerFactory
+
+import rx.Observer
+
+import org.midonet.midolman.datapath.FlowProcessor.FlowMessage
+import org.midonet.midolman.monitoring.MeteredFlowIndex
+import org.midonet.midolman.monitoring.metrics.DatapathMetrics
+import org.midonet.midolman.{DatapathState, SimulationBackChannel}
+import org.midonet.netlink._
+import org.midonet.odp.{Flow, OvsNetlinkFamilies, OvsProtocol}
+import org.midonet.util.concurrent.{NamedThreadFactory, NanoClock}
+import org.midonet.util.functors.makeRunnable
+
+object FlowStatsCollector {
+
+    private val ReplyTimeout = 10 seconds
+
+    /**
+      * Back-channel message with the dumped datapath flows tracked by a
+      * packet worker. As for the other flow messages, the message is
+      * broadcast and only the given worker updates the statistics of the
+      * flows. The list must not be modified after the message is sent.
+      */
+    case class FlowStatsDump(worker: Int, flows: ArrayList[Flow])
+        extends FlowMessage
+
+}
+
+/**
+  * Periodically dumps the flows of the datapath, with their statistics, using
+  * a single OVS_FLOW_CMD_GET request with the NLM_F_DUMP flag over a dedicated
+  * Netlink channel. The metered flows that have forwarded packets are sent in
+  * bulk to the packet workers through the simulation back-channel, such that
+  * the meters of long-lived flows are updated while the flows are installed
+  * and not only when they are deleted.
+  *
+  * Because the kernel does not keep the flow mark, the dumped flows are
+  * matched to the tracked flows by their flow match, which for a megaflow is
+  * the match with the wildcarded fields set to zero. The index of the
+  * metered flows gives the worker that tracks each dumped flow, such that
+  * every worker only receives its own flows, and the flows that are not
+  * metered are dropped. The statistics are cumulative, and the workers only
+  * account the difference from the last update. A zero interval disables
+  * the collector.
+  */
+class FlowStatsCollector(dpState: DatapathState,
+                         families: OvsNetlinkFamilies,
+                         channelFactory: NetlinkChannelFactory,
+                         backChannel: SimulationBackChannel,
+                         datapathMetrics: DatapathMetrics,
+                         clock: NanoClock,
+                         interval: Duration,
+                         meteredFlows: MeteredFlowIndex)
+    extends AbstractService {
+
+    import FlowStatsCollector._
+
+    private val log = Logger(LoggerFactory.getLogger(
+        "org.midonet.datapath.flow-stats"))
+
+    private val executor = Executors.newSingleThreadScheduledExecutor(
+        new NamedThreadFactory("flow-stats", true))
+
+    private var channel: NetlinkChannel = _
+    private var protocol: OvsProtocol = _
+    private var broker: NetlinkRequestBroker = _
+
+    private var flows: ArrayList[Flow] = _
+    private var lastDumpSize = 64
+    private var dumpCompleted = false
+    private var dumpError: Throwable = null
+
+    private val dumpObserver = new Observer[ByteBuffer] {
+        override def onNext(buf: ByteBuffer): Unit = {
+            val flow = Flow.buildFrom(buf)
+            if (!flow.hasEmptyMatch && flow.getStats.packets > 0)
+                flows.add(flow)
+        }
+
+        override def onCompleted(): Unit =
+            dumpCompleted = true
+
+        override def onError(e: Throwable): Unit = {
+            dumpError = e
+            dumpCompleted = true
+        }
+    }
+
+    override def doStart(): Unit = {
+        if (interval.toMillis <= 0 || (meteredFlows eq null)) {
+            log.info("Datapath flow statistics collection disabled")
+            notifyStarted()
+            return
+        }
+        try {
+            channel = channelFactory.create(blocking = true)
+            protocol = new OvsProtocol(channel.getLocalAddress.getPid, families)
+            broker = new NetlinkRequestBroker(
+                new NetlinkBlockingWriter(channel),
+                new NetlinkTimeoutReader(channel, ReplyTimeout),
+                maxPendingRequests = 1,
+                maxRequestSize = 512,
+                BytesUtil.instance.allocateDirect(64 * 1024),
+                clock,
+                ReplyTimeout)
+            log.debug("Created flow statistics channel with pid " +
+                      s"${channel.getLocalAddress.getPid}")
+            executor.scheduleWithFixedDelay(makeRunnable { collect() },
+                                            interval.toMillis,
+                                            interval.toMillis,
+                                            TimeUnit.MILLISECONDS)
+            log.info("Collecting datapath flow statistics every " +
+                     s"${interval.toMillis} ms")
+            notifyStarted()
+        } catch {
+            case NonFatal(e) =>
+                log.error("Failed to start the flow statistics collector", e)
+                notifyFailed(e)
+        }
+    }
+
+    override def doStop(): Unit = {
+        executor.shutdown()
+        if (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+            executor.shutdownNow()
+        }
+        if (channel ne null) {
+            channel.close()
+        }
+        notifyStopped()
+    }
+
+    private def collect(): Unit = {
+        try {
+            val start = clock.tick
+            val dumped = dump()
+            if (dumped ne null) {
+                lastDumpSize = Math.max(dumped.size(), 64)
+                datapathMetrics.flowStatsDumpSize.update(dumped.size())
+                route(dumped)
+                log.debug(s"Dumped statistics of ${dumped.size()} active " +
+                          s"flows in ${(clock.tick - start) / 1000} us")
+            }
+        } catch {
+            case NonFatal(e) =>
+                datapathMetrics.flowStatsDumpErrors.mark()
+                log.warn("Failed to dump the datapath flow statistics", e)
+        }
+    }
+
+    /**
+      * Sends the dumped flows to the packet workers that track them, with one
+      * message per worker.
+      */
+    private def route(dumped: ArrayList[Flow]): Unit = {
+        val flowsByWorker = new Array[ArrayList[Flow]](meteredFlows.numWorkers)
+        var i = 0
+        while (i < dumped.size()) {
+            val flow = dumped.get(i)
+            val worker = meteredFlows.ownerOf(flow.getMatch)
+            if (worker >= 0 && worker < flowsByWorker.length) {
+                if (flowsByWorker(worker) eq null)
+                    flowsByWorker(worker) = new ArrayList[Flow]()
+                flowsByWorker(worker).add(flow)
+            }
+            i += 1
+        }
+        var worker = 0
+        while (worker < flowsByWorker.length) {
+            if (flowsByWorker(worker) ne null)
+                backChannel.tell(FlowStatsDump(worker, flowsByWorker(worker)))
+            worker += 1
+        }
+    }
+
+    /**
+      * Dumps the datapath flows, and returns the flows that have forwarded
+      * packets, or null if the previous request is still pending.
+      */
+    private def dump(): ArrayList[Flow] = {
+        val seq = broker.nextSequence()
+        if (seq == NetlinkRequestBroker.FULL) {
+            broker.timeoutExpiredRequests()
+            return null
+        }
+        flows = new ArrayList[Flow](lastDumpSize)
+        dumpCompleted = false
+        dumpError = null
+        protocol.prepareFlowEnum(dpState.datapath.getIndex, broker.get(seq))
+        broker.publishRequest(seq, dumpObserver)
+        broker.writePublishedRequests()
+        while (!dumpCompleted) {
+            broker.readReply()
+        }
+        if (dumpError ne null) {
+            throw dumpError
+        }
+        flows
+    }
+}
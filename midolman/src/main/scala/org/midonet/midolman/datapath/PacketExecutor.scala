@@ -70,7 +70,7 @@ object PacketExecutor {
     private[datapath] def clampMss(ctx: PacketContext, log: Logger): Unit = {
         // Don't do MSS clamping on packet tunneled here from another Midolman
         // node, since the other node already did it if needed.
-        if (ctx.inputPort != null) {
+        if (ctx.inputPort != null && mayClampMss(ctx.packet)) {
             try clampMss(ctx.packet.getEthernet, 0, log) catch {
                 case ex: ArrayIndexOutOfBoundsException =>
                     log.debug(
@@ -79,6 +79,26 @@ object PacketExecutor {
         }
     }
 
+    /**
+      * Indicates whether the packet may include a TCP SYN whose MSS must be
+      * clamped. A packet not yet deserialized is checked using its view, such
+      * that ARP packets and TCP packets without the SYN flag are not
+      * deserialized only to be executed.
+      */
+    private def mayClampMss(packet: Packet): Boolean = {
+        val view = packet.view
+        if (view eq null) {
+            return true
+        }
+        val etherType = view.etherType
+        if (etherType == IPv4.ETHERTYPE) {
+            view.ipProtocol != TCP.PROTOCOL_NUMBER ||
+            view.hasTcpFlag(TCP.Flag.Syn)
+        } else {
+            etherType != ARP.ETHERTYPE
+        }
+    }
+
     @tailrec
     private def clampMss(pkt: IPacket, wrapperSize: Int, log: Logger)
     : Unit = pkt match {
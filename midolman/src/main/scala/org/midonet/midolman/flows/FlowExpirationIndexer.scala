@@ -16,7 +16,7 @@
 
 package org.midonet.midolman.flows
 
-import java.util.ArrayDeque
+import java.util.Arrays
 
 import scala.concurrent.duration._
 import org.midonet.midolman.logging.MidolmanLogging
@@ -43,32 +43,135 @@ object FlowExpirationIndexer {
 
     private final val maxType = 4
 
-    class ExpirationQueue(size: Int) {
-        private val expiries = new ArrayDeque[Long](size)
-        private val ids = new ArrayDeque[Long](size)
+    /** Identifies the absence of an expiration entry. */
+    final val NoEntry = -1
+    private final val FreeEntry: Byte = -1
 
-        def size(): Int = expiries.size()
-        def empty(): Boolean = expiries.size() == 0
-        def peekExpiry(): Long = expiries.peek()
+    /**
+     * The expirations of the flows of a packet worker, as one doubly-linked
+     * list per expiration type. Since all flows of the same type have the
+     * same expiration interval, each list is sorted by expiration time. The
+     * entries are stored in primitive arrays indexed by entry number, such
+     * that adding, polling and removing an entry is O(1) and does not
+     * allocate. The arrays double in size if the number of flows exceeds the
+     * initial capacity.
+     */
+    final class ExpirationQueue(initialCapacity: Int) {
+        private var ids = new Array[Long](initialCapacity)
+        private var expiries = new Array[Long](initialCapacity)
+        private var nexts = new Array[Int](initialCapacity)
+        private var prevs = new Array[Int](initialCapacity)
+        private var types = new Array[Byte](initialCapacity)
 
-        def removeId(): ManagedFlow.FlowId = {
-            expiries.removeFirst()
-            ids.removeFirst()
+        private val heads = Array.fill(maxType)(NoEntry)
+        private val tails = Array.fill(maxType)(NoEntry)
+        private val sizes = new Array[Int](maxType)
+
+        private var freeHead = NoEntry
+        private var used = 0
+        private var count = 0
+
+        Arrays.fill(types, FreeEntry)
+
+        /** The number of entries in all lists. */
+        def size(): Int = count
+
+        /** The number of entries for the given expiration type. */
+        def size(typeId: Int): Int = sizes(typeId)
+
+        def empty(typeId: Int): Boolean = sizes(typeId) == 0
+
+        /** The first entry for the given expiration type, or [[NoEntry]]. */
+        def head(typeId: Int): Int = heads(typeId)
+
+        def id(entry: Int): ManagedFlow.FlowId = ids(entry)
+
+        def expiry(entry: Int): Long = expiries(entry)
+
+        /**
+         * Appends an expiration to the list of the given type, and returns
+         * the entry number.
+         */
+        def add(typeId: Int, id: ManagedFlow.FlowId, expiry: Long): Int = {
+            val entry = allocate()
+            ids(entry) = id
+            expiries(entry) = expiry
+            types(entry) = typeId.toByte
+            nexts(entry) = NoEntry
+            prevs(entry) = tails(typeId)
+            if (tails(typeId) == NoEntry) heads(typeId) = entry
+            else nexts(tails(typeId)) = entry
+            tails(typeId) = entry
+            sizes(typeId) += 1
+            count += 1
+            entry
         }
-        def add(id: ManagedFlow.FlowId,
-                expiry: Long): Unit = {
-            expiries.add(expiry)
-            ids.add(id)
+
+        /**
+         * Removes the entry for the given flow, if the entry still belongs
+         * to that flow, and returns whether the entry was removed.
+         */
+        def remove(entry: Int, id: ManagedFlow.FlowId): Boolean = {
+            if (entry < 0 || entry >= used || types(entry) == FreeEntry ||
+                ids(entry) != id) {
+                return false
+            }
+            removeEntry(entry)
+            true
+        }
+
+        /** Removes the given entry and returns its flow identifier. */
+        def removeEntry(entry: Int): ManagedFlow.FlowId = {
+            val typeId = types(entry).toInt
+            val prev = prevs(entry)
+            val next = nexts(entry)
+            if (prev == NoEntry) heads(typeId) = next
+            else nexts(prev) = next
+            if (next == NoEntry) tails(typeId) = prev
+            else prevs(next) = prev
+            sizes(typeId) -= 1
+            count -= 1
+
+            types(entry) = -1
+            nexts(entry) = freeHead
+            freeHead = entry
+            ids(entry)
+        }
+
+        private def allocate(): Int = {
+            if (freeHead != NoEntry) {
+                val entry = freeHead
+                freeHead = nexts(entry)
+                entry
+            } else {
+                if (used == ids.length) {
+                    grow()
+                }
+                used += 1
+                used - 1
+            }
+        }
+
+        private def grow(): Unit = {
+            val capacity = Math.max(ids.length * 2, 16)
+            ids = Arrays.copyOf(ids, capacity)
+            expiries = Arrays.copyOf(expiries, capacity)
+            nexts = Arrays.copyOf(nexts, capacity)
+            prevs = Arrays.copyOf(prevs, capacity)
+            val oldLength = types.length
+            types = Arrays.copyOf(types, capacity)
+            Arrays.fill(types, oldLength, capacity, FreeEntry)
         }
     }
 }
 
 /**
  * This trait deals with flow expiration. It registers all new flows and removes
- * them when the specified expiration time has elapsed. Note that a flow may
- * be removed from the kernel via another mechanism (such as flow invalidation),
- * but it is still kept in these data structures until it expires. This is to
- * avoid linear remove operations or smarter, more expensive data structures.
+ * them when the specified expiration time has elapsed. A flow removed from the
+ * kernel via another mechanism (such as flow invalidation) should cancel its
+ * expiration, such that it no longer counts towards the maximum number of
+ * flows. When there are more flows than the maximum, the flow closest to its
+ * expiration is evicted first.
  */
 class FlowExpirationIndexer(config: MidolmanConfig, preallocation: FlowTablePreallocation)
         extends MidolmanLogging {
@@ -83,34 +186,36 @@ class FlowExpirationIndexer(config: MidolmanConfig, preallocation: FlowTablePrea
         case TUNNEL_FLOW_EXPIRATION => flowExpirationDuration.toNanos * 5
     }
 
-    private val expirationQueues = new Array[ExpirationQueue](maxType)
-
-    {
-        expirationQueues(ERROR_CONDITION_EXPIRATION.typeId) =
-            preallocation.takeErrorExpirationQueue()
-        expirationQueues(FLOW_EXPIRATION.typeId) =
-            preallocation.takeFlowExpirationQueue()
-        expirationQueues(STATEFUL_FLOW_EXPIRATION.typeId) =
-            preallocation.takeStatefulFlowExpirationQueue()
-        expirationQueues(TUNNEL_FLOW_EXPIRATION.typeId) =
-            preallocation.takeTunnelFlowExpirationQueue()
-    }
+    private val expirationQueue = preallocation.takeExpirationQueue()
 
+    /**
+     * Schedules the expiration of a flow, and returns the expiration entry
+     * to use when cancelling it.
+     */
     def enqueueFlowExpiration(flowId: ManagedFlow.FlowId,
                               now: Long,
-                              expiration: Expiration): Unit = {
-        expirationQueues(expiration.typeId).add(flowId, now + expirationInterval(expiration))
+                              expiration: Expiration): Int = {
+        expirationQueue.add(expiration.typeId, flowId,
+                            now + expirationInterval(expiration))
+    }
+
+    /**
+     * Cancels the expiration of a flow removed before its expiration time.
+     * It has no effect if the flow has already been polled for expiration.
+     */
+    def cancelFlowExpiration(flowId: ManagedFlow.FlowId, entry: Int): Unit = {
+        expirationQueue.remove(entry, flowId)
     }
 
     def pollForExpired(now: Long): ManagedFlow.FlowId = {
         var i = 0
         while (i < maxType &&
-                   (expirationQueues(i).empty() ||
-                        now < expirationQueues(i).peekExpiry)) {
+                   (expirationQueue.empty(i) ||
+                        now < expirationQueue.expiry(expirationQueue.head(i)))) {
             i += 1
         }
         if (i < maxType) {
-            val flow = expirationQueues(i).removeId()
+            val flow = expirationQueue.removeEntry(expirationQueue.head(i))
             log.debug(s"Removing flow $flow for hard expiration")
             flow
         } else {
@@ -119,29 +224,33 @@ class FlowExpirationIndexer(config: MidolmanConfig, preallocation: FlowTablePrea
     }
 
     private def maybeEvictExcessFlow(): ManagedFlow.FlowId = {
-        var excessFlows = 0
-        var i = 0
-        while (i < maxType) {
-            excessFlows += expirationQueues(i).size()
-            i += 1
-        }
-        excessFlows -= preallocation.maxFlows
+        val excessFlows = expirationQueue.size() - preallocation.maxFlows
         if (excessFlows > 0) {
             log.debug(s"$excessFlows excess flows, evicting one")
-            removeOldestDpFlow()
+            removeEarliestExpiringFlow()
         } else {
             ManagedFlow.NoFlow
         }
     }
 
-    private def removeOldestDpFlow(): ManagedFlow.FlowId = {
+    /* Each list is sorted by expiration time, so the flow that would expire
+     * first is at the head of one of the lists: evicting it loses the least
+     * remaining flow lifetime.
+     */
+    private def removeEarliestExpiringFlow(): ManagedFlow.FlowId = {
+        var entry = NoEntry
         var i = 0
-        while (i < maxType &&
-                   expirationQueues(i).empty) {
+        while (i < maxType) {
+            val head = expirationQueue.head(i)
+            if (head != NoEntry &&
+                (entry == NoEntry ||
+                 expirationQueue.expiry(head) < expirationQueue.expiry(entry))) {
+                entry = head
+            }
             i += 1
         }
-        if (i < maxType) {
-            expirationQueues(i).removeId()
+        if (entry != NoEntry) {
+            expirationQueue.removeEntry(entry)
         } else {
             ManagedFlow.NoFlow
         }
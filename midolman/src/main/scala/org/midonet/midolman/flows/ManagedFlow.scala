@@ -62,6 +62,8 @@ final class ManagedFlowImpl(override val pool: ObjectPool[ManagedFlowImpl])
     var _mark = 0
 
     var _id = -1L
+    // The entry of the flow in the expiration queue of its worker
+    var expirationEntry = FlowExpirationIndexer.NoEntry
 
     var removed = true
     var linkedFlow: ManagedFlowImpl = null
@@ -78,6 +80,7 @@ final class ManagedFlowImpl(override val pool: ObjectPool[ManagedFlowImpl])
         this._sequence = sequence
         this.linkedFlow = linkedFlow
         this._id = -1L
+        this.expirationEntry = FlowExpirationIndexer.NoEntry
         removed = false
     }
 
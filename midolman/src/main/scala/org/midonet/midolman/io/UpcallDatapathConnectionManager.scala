@@ -20,6 +20,7 @@ import java.util.concurrent.locks.ReentrantLock
 
 import scala.collection.IndexedSeq
 import scala.concurrent.{ExecutionContext, Future}
+import scala.util.control.NonFatal
 import scala.util.{Failure, Success}
 
 import akka.actor.ActorSystem
@@ -27,7 +28,7 @@ import akka.actor.ActorSystem
 import com.codahale.metrics.MetricRegistry
 
 import org.midonet.ErrorCode.{EBUSY, EEXIST, EADDRINUSE}
-import org.midonet.midolman.state.FlowState
+import org.midonet.midolman.state.{FlowState, FlowStateAgentPackets}
 import org.midonet.midolman.config.MidolmanConfig
 import org.midonet.midolman.logging.MidolmanLogging
 import org.midonet.midolman.{NetlinkCallbackDispatcher, PacketWorker}
@@ -35,6 +36,7 @@ import org.midonet.netlink.BufferPool
 import org.midonet.netlink.exceptions.NetlinkException
 import org.midonet.odp._
 import org.midonet.odp.protos.OvsDatapathConnection
+import org.midonet.packets.SbeEncoder
 import org.midonet.util.concurrent.NanoClock
 import org.midonet.util.{BatchCollector, Bucket}
 import org.midonet.util.eventloop.SelectLoop
@@ -157,8 +159,34 @@ abstract class UpcallDatapathConnectionManagerBase(
 
             val NUM_WORKERS = workers.length
 
+            private val stateEncoder = new SbeEncoder
+
+            /* The first and last slots claimed in the queue of each worker
+             * during the current batch, or -1 if none. The handler is only
+             * called from the thread reading its channels, and the claimed
+             * slots are published when the read event ends, such that each
+             * worker is signalled once per batch. A packet is accepted only
+             * if it has a slot in the worker queue, otherwise it is rejected
+             * immediately, so that its token is given back to the bucket.
+             */
+            private val firstClaimed = Array.fill(NUM_WORKERS)(-1L)
+            private val lastClaimed = Array.fill(NUM_WORKERS)(-1L)
+
             override def endBatch() {
-                // noop
+                var worker = 0
+                while (worker < NUM_WORKERS) {
+                    publish(worker)
+                    worker += 1
+                }
+            }
+
+            private def publish(worker: Int): Unit = {
+                if (firstClaimed(worker) >= 0) {
+                    workers(worker).publish(firstClaimed(worker),
+                                            lastClaimed(worker))
+                    firstClaimed(worker) = -1L
+                    lastClaimed(worker) = -1L
+                }
             }
 
             override def submit(data: Packet): Boolean = {
@@ -166,29 +194,52 @@ abstract class UpcallDatapathConnectionManagerBase(
 
                 data.startTimeNanos = NanoClock.DEFAULT.tick
 
-                if (FlowState.isStateMessage(data.getMatch)) {
-                    var i = 0
-
-                    /* This code is problematic for the HTB. The HTB will take
-                     * one token for a flow state message, but each worker will
-                     * return one token for the flow state message.
-                     * This can potentially cause the number of HTB messages
-                     * available to explode.
-                     * MI-1273 should fix this by only sending flow state to
-                     * the correct thread.
-                     */
-                    var submitted = false
-                    while (i < workers.length) {
-                        // order is important here, we want submit to run, even
-                        // if submitted is already true
-                        submitted = workers(i).submit(data) || submitted
-                        i += 1
+                val hash =
+                    if (FlowState.isStateMessage(data.getMatch))
+                        stateMessageHash(data)
+                    else
+                        data.getMatch.connectionHash
+                val worker = Math.abs(hash % NUM_WORKERS)
+                val seq = workers(worker).claim(data)
+                if (seq < 0) {
+                    // The worker queue is full: the worker drops the packet.
+                    return false
+                }
+                if (firstClaimed(worker) >= 0 &&
+                    seq != lastClaimed(worker) + 1) {
+                    // Publish the previous slots, since another producer
+                    // claimed the slots in between.
+                    publish(worker)
+                }
+                if (firstClaimed(worker) < 0) {
+                    firstClaimed(worker) = seq
+                }
+                lastClaimed(worker) = seq
+                true
+            }
+
+            /* Flow state messages are delivered to a single worker, selected
+             * by the connection they describe, such that the state of a
+             * connection is always imported into the same shard of the flow
+             * state tables, and the message takes a single token from the
+             * HTB. Messages that cannot be decoded are delivered by their
+             * flow match, and rejected by the worker.
+             */
+            private def stateMessageHash(packet: Packet): Int = {
+                val datagram =
+                    FlowStateAgentPackets.parseDatagram(packet.getEthernet)
+                if (datagram ne null) {
+                    try {
+                        val hash = FlowStateAgentPackets.connectionHash(
+                            stateEncoder.decodeFrom(datagram.getData))
+                        if (hash != 0)
+                            return hash
+                    } catch {
+                        case NonFatal(e) =>
+                            log.trace("Cannot decode flow state message", e)
                     }
-                    submitted
-                } else {
-                    val worker = Math.abs(data.getMatch.connectionHash) % NUM_WORKERS
-                    workers(worker).submit(data)
                 }
+                packet.getMatch.connectionHash
             }
         }
 }
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.midolman.logging.rule
+
+import java.util.UUID
+
+import org.midonet.Util
+import org.midonet.logging.rule.Result
+import org.midonet.midolman.logging.rule.DisruptorRuleLogEventChannel.RuleLogEvent
+import org.midonet.midolman.rules.Rule
+import org.midonet.midolman.simulation.Chain
+import org.midonet.packets.IPAddr
+
+/**
+  * A bounded table of rule log event counters, keyed by the logger, the
+  * chain, the rule, the result, the protocol, the source and destination
+  * addresses and the destination port of the events. The source port is not
+  * part of the key, such that the connections from the ephemeral ports of a
+  * client to the same service are counted together.
+  *
+  * The table uses open addressing with linear probing over parallel arrays,
+  * and it never allocates after construction. It holds at most `maxEntries`
+  * counters: the events with a new key are discarded when the table is full,
+  * until the table is drained. The table is not thread-safe, and it is only
+  * used by the rule log event handler thread.
+  */
+class RuleLogAggregator(val maxEntries: Int) {
+
+    private val capacity = Util.findNextPositivePowerOfTwo(maxEntries * 2)
+    private val mask = capacity - 1
+
+    private val loggerIds = new Array[UUID](capacity)
+    private val chains = new Array[Chain](capacity)
+    private val rules = new Array[Rule](capacity)
+    private val srcIps = new Array[IPAddr](capacity)
+    private val dstIps = new Array[IPAddr](capacity)
+    private val nwProtos = new Array[Byte](capacity)
+    private val dstPorts = new Array[Int](capacity)
+    private val results = new Array[Result](capacity)
+    private val counts = new Array[Long](capacity)
+
+    private var entries = 0
+    private var discarded = 0L
+
+    // The event passed to the drain function, reused for all the summaries.
+    private val summary =
+        new RuleLogEvent(null, 0, null, null, null, null, 0, 0, null)
+
+    /** The number of counters in the table. */
+    def size: Int = entries
+
+    /** The number of events discarded since the last drain, because the
+      * table was full. */
+    def discardedEvents: Long = discarded
+
+    /** Counts the specified event, and returns false if the event was
+      * discarded because the table is full. */
+    def add(event: RuleLogEvent): Boolean = {
+        var index = hash(event) & mask
+        while (counts(index) > 0) {
+            if (matches(index, event)) {
+                counts(index) += 1
+                return true
+            }
+            index = (index + 1) & mask
+        }
+        if (entries >= maxEntries) {
+            discarded += 1
+            return false
+        }
+        loggerIds(index) = event.loggerId
+        chains(index) = event.chain
+        rules(index) = event.rule
+        srcIps(index) = event.srcIp
+        dstIps(index) = event.dstIp
+        nwProtos(index) = event.nwProto
+        dstPorts(index) = event.dstPort
+        results(index) = event.result
+        counts(index) = 1
+        entries += 1
+        true
+    }
+
+    /** Calls the function with a summary event and its number of events for
+      * every counter, and clears the table. The summary event has a source
+      * port of zero, and it is only valid during the call. */
+    def drain(f: (RuleLogEvent, Long) => Unit): Unit = {
+        var index = 0
+        while (index < capacity && entries > 0) {
+            val count = counts(index)
+            if (count > 0) {
+                summary.loggerId = loggerIds(index)
+                summary.chain = chains(index)
+                summary.rule = rules(index)
+                summary.srcIp = srcIps(index)
+                summary.dstIp = dstIps(index)
+                summary.nwProto = nwProtos(index)
+                summary.srcPort = 0
+                summary.dstPort = dstPorts(index)
+                summary.result = results(index)
+                clear(index)
+                f(summary, count)
+            }
+            index += 1
+        }
+        summary.chain = null
+        summary.rule = null
+        discarded = 0
+    }
+
+    private def clear(index: Int): Unit = {
+        loggerIds(index) = null
+        chains(index) = null
+        rules(index) = null
+        srcIps(index) = null
+        dstIps(index) = null
+        results(index) = null
+        counts(index) = 0
+        entries -= 1
+    }
+
+    private def matches(index: Int, event: RuleLogEvent): Boolean = {
+        dstPorts(index) == event.dstPort &&
+        nwProtos(index) == event.nwProto &&
+        (results(index) eq event.result) &&
+        rules(index).id == event.rule.id &&
+        chains(index).id == event.chain.id &&
+        loggerIds(index) == event.loggerId &&
+        srcIps(index) == event.srcIp &&
+        dstIps(index) == event.dstIp
+    }
+
+    private def hash(event: RuleLogEvent): Int = {
+        var h = event.loggerId.hashCode
+        h = 31 * h + event.rule.id.hashCode
+        h = 31 * h + event.srcIp.hashCode
+        h = 31 * h + event.dstIp.hashCode
+        h = 31 * h + event.dstPort
+        h = 31 * h + event.nwProto
+        h = 31 * h + event.result.ordinal
+        // Spread the bits, since the table index uses the lower bits.
+        h ^= h >>> 16
+        h *= 0x85ebca6b
+        h ^= h >>> 13
+        h
+    }
+}
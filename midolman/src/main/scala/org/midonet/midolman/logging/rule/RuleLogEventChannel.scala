@@ -17,6 +17,8 @@
 package org.midonet.midolman.logging.rule
 
 import java.util.UUID
+import java.util.concurrent.atomic.{AtomicInteger, AtomicLong}
+import java.util.concurrent.{ConcurrentHashMap, ThreadLocalRandom, TimeUnit}
 
 import com.google.common.util.concurrent.AbstractService
 import com.lmax.disruptor._
@@ -28,6 +30,7 @@ import org.midonet.midolman.logging.rule.DisruptorRuleLogEventChannel.RuleLogEve
 import org.midonet.midolman.rules.Rule
 import org.midonet.midolman.simulation.Chain
 import org.midonet.packets.IPAddr
+import org.midonet.util.UnixClock
 
 abstract class RuleLogEventChannel extends AbstractService {
      def handoff(loggerId: UUID, nwProto: Byte,
@@ -62,10 +65,28 @@ object DisruptorRuleLogEventChannel {
             new RuleLogEvent(null, 0, null, null, null, null, 0, 0, null)
     }
 
+    /**
+      * The number of events handed off by a logger during the current one
+      * second window, used to enforce the per-logger event budget.
+      */
+    private[rule] final class LoggerBudget {
+        val window = new AtomicLong(0L)
+        val count = new AtomicInteger(0)
+    }
+
     def apply(capacity: Int, config: RuleLoggingConfig)
     : DisruptorRuleLogEventChannel = {
+        // When aggregating, the handler must write the summary records even
+        // if no events arrive, so the processor wakes up at least every
+        // second.
+        val waitStrategy =
+            if (config.aggregationInterval > 0)
+                new TimeoutBlockingWaitStrategy(
+                    Math.min(config.aggregationInterval, 1000L),
+                    TimeUnit.MILLISECONDS)
+            else new BlockingWaitStrategy
         val ringBuffer = RingBuffer
-            .createMultiProducer(Factory, capacity)
+            .createMultiProducer(Factory, capacity, waitStrategy)
         val barrier = ringBuffer.newBarrier()
 
         val eventHandler = if (config.logDirectory == "") {
@@ -80,16 +101,24 @@ object DisruptorRuleLogEventChannel {
         ringBuffer.addGatingSequences(batchProcessor.getSequence)
 
         new DisruptorRuleLogEventChannel(ringBuffer, batchProcessor,
-                                         eventHandler)
+                                         eventHandler, config.samplingRate,
+                                         config.loggerEventBudget)
     }
 }
 
 class DisruptorRuleLogEventChannel(
         private val ringBuffer: RingBuffer[RuleLogEvent],
         private val processor: EventProcessor,
-        private val eventHandler: RuleLogEventHandler)
+        private val eventHandler: RuleLogEventHandler,
+        samplingRate: Double = 1.0,
+        loggerEventBudget: Int = 0)
     extends RuleLogEventChannel with MidolmanLogging {
 
+    import DisruptorRuleLogEventChannel.LoggerBudget
+
+    private val clock = UnixClock()
+    private val budgets = new ConcurrentHashMap[UUID, LoggerBudget]
+
     override def doStart(): Unit = {
         log.debug("Starting DisruptorRuleLogEventChannel")
         val t = new Thread(processor, "rule-event-logger")
@@ -109,6 +138,16 @@ class DisruptorRuleLogEventChannel(
                          srcIp: IPAddr, dstIp: IPAddr,
                          srcPort: Int, dstPort: Int,
                          result: Result): Long = {
+        // Sampling and budgeting happen before claiming a slot, such that the
+        // dropped events never reach the ring buffer.
+        if (samplingRate < 1.0 &&
+            ThreadLocalRandom.current().nextDouble() >= samplingRate) {
+            return -1
+        }
+        if (loggerEventBudget > 0 && !withinBudget(loggerId)) {
+            return -1
+        }
+
         val seq = try ringBuffer.tryNext() catch {
             case ex: InsufficientCapacityException =>
                 // TODO: Increment metric
@@ -130,6 +169,30 @@ class DisruptorRuleLogEventChannel(
         seq
     }
 
+    /** Counts an event for the logger, and returns false if the logger has
+      * exceeded its event budget for the current second. */
+    private def withinBudget(loggerId: UUID): Boolean = {
+        var budget = budgets.get(loggerId)
+        if (budget eq null) {
+            val newBudget = new LoggerBudget
+            budget = budgets.putIfAbsent(loggerId, newBudget)
+            if (budget eq null) budget = newBudget
+        }
+
+        val window = clock.time / 1000L
+        val current = budget.window.get
+        if (current != window && budget.window.compareAndSet(current, window)) {
+            budget.count.set(0)
+        }
+        val count = budget.count.incrementAndGet()
+        if (count == loggerEventBudget + 1) {
+            log.info(s"Rule logger $loggerId exceeded its budget of " +
+                     s"$loggerEventBudget events per second: dropping " +
+                     "events until the next second")
+        }
+        count <= loggerEventBudget
+    }
+
     override def flush(): Unit = {
         while (ringBuffer.remainingCapacity() < ringBuffer.getBufferSize) {
             Thread.sleep(50)
@@ -23,7 +23,7 @@ import scala.concurrent.duration.Duration
 import scala.util.Try
 import scala.util.control.NonFatal
 
-import com.lmax.disruptor.{EventHandler, ExceptionHandler, LifecycleAware}
+import com.lmax.disruptor.{EventHandler, ExceptionHandler, LifecycleAware, TimeoutHandler}
 
 import uk.co.real_logic.sbe.codec.java.DirectBuffer
 
@@ -33,14 +33,28 @@ import org.midonet.midolman.config.RuleLoggingConfig
 import org.midonet.midolman.logging.MidolmanLogging
 import org.midonet.midolman.logging.rule.DisruptorRuleLogEventChannel.RuleLogEvent
 import org.midonet.midolman.management.RuleLogging
+import org.midonet.midolman.simulation.Chain
 import org.midonet.packets.{IPAddr, IPv4Addr, IPv6Addr}
 import org.midonet.util.UnixClock
 import org.midonet.util.logging.{RollingOutputStream, SizeBasedRollingStaticHeaderBufferedOutputStream, TimeBasedRollingStaticHeaderBufferedOutputStream}
 
-abstract class RuleLogEventHandler extends EventHandler[RuleLogEvent]
-                                           with LifecycleAware
-                                           with MidolmanLogging
-                                           with ExceptionHandler {
+/**
+  * Writes the rule log events to an output stream, one record per event.
+  *
+  * When the aggregation interval is greater than zero, the handler counts
+  * the events in a [[RuleLogAggregator]] instead, and every interval writes
+  * one summary record per counter. The summary records use the same format,
+  * with a source port of zero and an "events" metadata entry appended to the
+  * chain metadata, such that the existing tools can decode them.
+  */
+abstract class RuleLogEventHandler(aggregationInterval: Long = 0L,
+                                   aggregationMaxEntries: Int = 0,
+                                   samplingRate: Double = 1.0)
+    extends EventHandler[RuleLogEvent]
+            with TimeoutHandler
+            with LifecycleAware
+            with MidolmanLogging
+            with ExceptionHandler {
 
     protected val headerEncoder = new MessageHeader
     protected val eventEncoder = new RuleLogEventEncoder
@@ -57,6 +71,12 @@ abstract class RuleLogEventHandler extends EventHandler[RuleLogEvent]
 
     protected val clock = UnixClock()
 
+    private val aggregator =
+        if (aggregationInterval > 0)
+            new RuleLogAggregator(aggregationMaxEntries)
+        else null
+    private var nextAggregation = 0L
+
     override def onEvent(event: RuleLogEvent, sequence: Long,
                          endOfBatch: Boolean): Unit = {
         log.debug("RuleLogEventHandler received {}", event)
@@ -73,6 +93,27 @@ abstract class RuleLogEventHandler extends EventHandler[RuleLogEvent]
             return
         }
 
+        if (aggregator ne null) {
+            aggregator.add(event)
+            aggregate(now)
+            return
+        }
+
+        write(event, event.chain.metadata, now)
+
+        // Flush on every statement when debug is enabled.
+        if (log.underlying.isDebugEnabled)
+            os.flush()
+    }
+
+    override def onTimeout(sequence: Long): Unit = {
+        if ((aggregator ne null) && (os ne null)) {
+            aggregate(clock.time)
+        }
+    }
+
+    private def write(event: RuleLogEvent, metadata: Array[Byte],
+                      time: Long): Unit = {
         eventEncoder.wrapForEncode(eventBuffer, 0)
             .srcPort(event.srcPort)
             .dstPort(event.dstPort)
@@ -86,7 +127,7 @@ abstract class RuleLogEventHandler extends EventHandler[RuleLogEvent]
         eventEncoder.ruleId(1, event.rule.id.getLeastSignificantBits)
         eventEncoder.loggerId(0, event.loggerId.getMostSignificantBits)
         eventEncoder.loggerId(1, event.loggerId.getLeastSignificantBits)
-        eventEncoder.time(clock.time)
+        eventEncoder.time(time)
 
         // Src/dst IP
         fillIpBuffer(event.srcIp)
@@ -94,13 +135,45 @@ abstract class RuleLogEventHandler extends EventHandler[RuleLogEvent]
         fillIpBuffer(event.dstIp)
         eventEncoder.putDstIp(ipBuffer.array, 0, ipBuffer.position)
 
-        eventEncoder.putMetadata(chain.metadata, 0, chain.metadata.length)
+        eventEncoder.putMetadata(metadata, 0, metadata.length)
 
         os.write(eventBuffer.array, 0, eventEncoder.limit)
+    }
 
-        // Flush on every statement when debug is enabled.
-        if (log.underlying.isDebugEnabled)
-            os.flush()
+    /** Writes the summary records if the aggregation interval elapsed. */
+    private def aggregate(now: Long): Unit = {
+        if (now >= nextAggregation) {
+            writeSummaries(now)
+            nextAggregation = now + aggregationInterval
+        }
+    }
+
+    private def writeSummaries(now: Long): Unit = {
+        if (aggregator.discardedEvents > 0) {
+            log.warn(s"Discarded ${aggregator.discardedEvents} rule log " +
+                     s"events because the aggregation table is full with " +
+                     s"${aggregator.maxEntries} entries")
+        }
+        aggregator.drain { (summary, count) =>
+            val metadata = summaryMetadata(summary.chain, count)
+            write(summary, metadata, now)
+        }
+        os.flush()
+    }
+
+    private def summaryMetadata(chain: Chain, count: Long): Array[Byte] = {
+        val entries =
+            if (samplingRate < 1.0)
+                Seq("events" -> count.toString,
+                    "sampling_rate" -> samplingRate.toString)
+            else
+                Seq("events" -> count.toString)
+        val summary = encodeMetadata(entries)
+        val metadata = new Array[Byte](chain.metadata.length + summary.length)
+        System.arraycopy(chain.metadata, 0, metadata, 0, chain.metadata.length)
+        System.arraycopy(summary, 0, metadata, chain.metadata.length,
+                         summary.length)
+        metadata
     }
 
     private def fillIpBuffer(ip: IPAddr): Unit = {
@@ -115,10 +188,14 @@ abstract class RuleLogEventHandler extends EventHandler[RuleLogEvent]
 
     override def onStart(): Unit = {
         log.debug("Starting RuleLogEventHandler")
+        nextAggregation = clock.time + aggregationInterval
     }
 
     override def onShutdown(): Unit = {
         log.debug("Stopping RuleLogEventHandler")
+        if ((aggregator ne null) && (os ne null)) {
+            writeSummaries(clock.time)
+        }
         if (os != null) {
             log.debug("Closing RuleLogEventHandler's output stream.")
             os.close()
@@ -162,12 +239,15 @@ object FileRuleLogEventHandler {
 
 class FileRuleLogEventHandler(config: RuleLoggingConfig,
                               logDir: String = FileRuleLogEventHandler.LogDir)
-    extends RuleLogEventHandler {
+    extends RuleLogEventHandler(config.aggregationInterval,
+                                config.aggregationMaxEntries,
+                                config.samplingRate) {
     import FileRuleLogEventHandler.SizePrefixes
 
     val logPath = logDir.stripSuffix("/") + '/' + config.logFileName
 
     override def onStart(): Unit = {
+        super.onStart()
         log.debug("Starting FileRuleLogEventHandler")
 
         try {
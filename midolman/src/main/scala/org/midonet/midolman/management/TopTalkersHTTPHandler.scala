@@ -0,0 +1,46 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.midonet.midolman.management
+
+import java.io.BufferedWriter
+
+import org.midonet.insights.TopTalkers
+import org.midonet.util.StringUtil
+
+/**
+  * Writes the top talkers of the last interval as a text table, with one
+  * line per entry: the table name, the key and the estimated count.
+  */
+class TopTalkersHTTPHandler(topTalkers: TopTalkers)
+    extends SimpleHTTPServer.Handler {
+    override def path: String = "/top_talkers"
+
+    override def writeResponse(writer: BufferedWriter): Unit = {
+        val tables = topTalkers.topTalkers()
+        var dim = 0
+        while (dim < tables.length) {
+            val table = tables(dim)
+            var index = 0
+            while (index < table.length) {
+                writer.append(TopTalkers.DIMENSION_NAMES(dim)).append('\t')
+                writer.append(table(index).key).append('\t')
+                StringUtil.append(writer, table(index).count).append('\n')
+                index += 1
+            }
+            dim += 1
+        }
+    }
+}
@@ -35,6 +35,9 @@ import org.midonet.sdn.flows.FlowTagger._
 
 trait FlowRecorder {
     def record(pktContext: PacketContext, simRes: MMSimRes): Unit
+
+    /** Whether the recorder records the flows. */
+    def enabled: Boolean = true
 }
 
 object FlowRecorder {
@@ -75,6 +78,8 @@ class NullFlowRecorder extends FlowRecorder {
             Unit = {
         // do nothing
     }
+
+    override def enabled: Boolean = false
 }
 
 object NullFlowRecorder {
@@ -22,23 +22,38 @@ import com.typesafe.scalalogging.Logger
 
 import org.slf4j.LoggerFactory
 
-import org.midonet.odp.FlowMatch
-import org.midonet.odp.flows.FlowStats
+import org.midonet.odp.{FlowMask, FlowMatch}
+import org.midonet.odp.flows.{FlowAction, FlowStats}
 import org.midonet.sdn.flows.FlowTagger.{FlowTag, MeterTag}
 import org.midonet.util.collection.ArrayObjectPool
 import org.midonet.management.{FlowStats => JmxFlowStats}
 
-class MeterRegistry(val maxFlows: Int) {
+object MeterRegistry {
+    val NoActions = new ArrayList[FlowAction](0)
+}
+
+/**
+ * Tracks the meters of the flows of a packet worker. When the index of the
+ * metered flows is set, which is only when the datapath flow statistics are
+ * collected, the registry also computes the masked match of every metered
+ * flow and adds it to the index.
+ */
+class MeterRegistry(val maxFlows: Int, workerId: Int = 0,
+                    meteredFlows: MeteredFlowIndex = null) {
+    import MeterRegistry._
+
     val log = Logger(LoggerFactory.getLogger("org.midonet.metering"))
 
     class FlowData {
         val meters = new ArrayList[MeterTag](8)
         val stats = new FlowStats()
+        var maskedMatch: FlowMatch = null
 
         def reset() {
             stats.bytes = 0
             stats.packets = 0
             meters.clear()
+            maskedMatch = null
         }
     }
 
@@ -49,7 +64,15 @@ class MeterRegistry(val maxFlows: Int) {
     private val trackedFlows = new JHashMap[FlowMatch, FlowData]()
     private val DELTA = new FlowStats()
 
-    def trackFlow(flowMatch: FlowMatch, tags: ArrayList[FlowTag]): Unit = {
+    // The kernel returns the masked match of a megaflow when dumping the
+    // datapath flows, where the wildcarded fields are zero, so the tracked
+    // flows are also indexed by their match with the mask that is computed
+    // from the match and the actions when the flow is created.
+    private val maskedFlows = new JHashMap[FlowMatch, FlowData]()
+    private val flowMask = new FlowMask()
+
+    def trackFlow(flowMatch: FlowMatch, tags: ArrayList[FlowTag],
+                  actions: ArrayList[FlowAction] = NoActions): Unit = {
         if (trackedFlows.containsKey(flowMatch))
             return
 
@@ -76,10 +99,25 @@ class MeterRegistry(val maxFlows: Int) {
         }
 
         log.debug(s"new flow is associated with ${metadata.meters.size} meters")
-        if (metadata.meters.size() > 0)
+        if (metadata.meters.size() > 0) {
             trackedFlows.put(flowMatch, metadata)
-        else
+            if (meteredFlows ne null)
+                indexMaskedMatch(flowMatch, actions, metadata)
+        } else {
             metadataPool.offer(metadata)
+        }
+    }
+
+    private def indexMaskedMatch(flowMatch: FlowMatch,
+                                 actions: ArrayList[FlowAction],
+                                 metadata: FlowData): Unit = {
+        flowMask.clear()
+        flowMask.calculateFor(flowMatch, actions)
+        metadata.maskedMatch = flowMask.applyTo(flowMatch)
+        if (!maskedFlows.containsKey(metadata.maskedMatch)) {
+            maskedFlows.put(metadata.maskedMatch, metadata)
+            meteredFlows.add(metadata.maskedMatch, workerId)
+        }
     }
 
     def recordPacket(packetLen: Int, tags: ArrayList[FlowTag]): Unit = {
@@ -103,8 +141,15 @@ class MeterRegistry(val maxFlows: Int) {
         }
     }
 
+    /**
+     * Updates the meters of the flow with its cumulative statistics. The
+     * flow match is either the match of the tracked flow, or the masked
+     * match of a megaflow dumped from the datapath.
+     */
     def updateFlow(flowMatch: FlowMatch, stats: FlowStats): Unit = {
-        val metadata = trackedFlows.get(flowMatch)
+        var metadata = trackedFlows.get(flowMatch)
+        if (metadata eq null)
+            metadata = maskedFlows.get(flowMatch)
         if (metadata ne null) {
             metadata.stats.updateAndGetDelta(stats, DELTA)
             if (DELTA.packets < 0) {
@@ -124,7 +169,11 @@ class MeterRegistry(val maxFlows: Int) {
 
     def forgetFlow(flowMatch: FlowMatch) {
         val metadata = trackedFlows.remove(flowMatch)
-        if (metadata ne null)
+        if (metadata ne null) {
+            if ((metadata.maskedMatch ne null) &&
+                maskedFlows.remove(metadata.maskedMatch, metadata))
+                meteredFlows.remove(metadata.maskedMatch, workerId)
             metadataPool.offer(metadata)
+        }
     }
 }
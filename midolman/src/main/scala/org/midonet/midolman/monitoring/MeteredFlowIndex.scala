@@ -0,0 +1,48 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.midonet.midolman.monitoring
+
+import java.util.concurrent.ConcurrentHashMap
+
+import org.midonet.odp.FlowMatch
+
+/**
+ * Maps the masked match of every metered flow, which is the match that the
+ * datapath returns when dumping the flows, to the packet worker tracking the
+ * flow. The meter registries of the packet workers add and remove their own
+ * flows, and the flow statistics collector uses the index to send each dumped
+ * flow only to its owner. If several workers track flows with the same
+ * masked match, the first one owns it.
+ */
+final class MeteredFlowIndex(val numWorkers: Int) {
+
+    private val owners = new ConcurrentHashMap[FlowMatch, Integer]()
+
+    def add(maskedMatch: FlowMatch, workerId: Int): Unit =
+        owners.putIfAbsent(maskedMatch, Integer.valueOf(workerId))
+
+    def remove(maskedMatch: FlowMatch, workerId: Int): Unit =
+        owners.remove(maskedMatch, Integer.valueOf(workerId))
+
+    /**
+     * Returns the packet worker that tracks the flow with the given masked
+     * match, or -1 if the flow is not metered.
+     */
+    def ownerOf(maskedMatch: FlowMatch): Int = {
+        val owner = owners.get(maskedMatch)
+        if (owner eq null) -1 else owner.intValue()
+    }
+}
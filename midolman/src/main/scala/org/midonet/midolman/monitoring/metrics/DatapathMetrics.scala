@@ -32,11 +32,20 @@ class DatapathMetrics(val registry: MetricRegistry) {
     val flowCreateDupes = registry.meter(
         name(classOf[DatapathMeter], "flows", "createDupeErrors"))
 
+    val flowCreateBatchSize = registry.histogram(
+        name(classOf[DatapathMeter], "flows", "createBatchSize"))
+
     val flowsDeleted = registry.meter(
         name(classOf[DatapathMeter], "flows", "deleted"))
 
     val flowDeleteErrors = registry.meter(
         name(classOf[DatapathMeter], "flows", "deleteErrors"))
 
+    val flowStatsDumpSize = registry.histogram(
+        name(classOf[DatapathMeter], "flows", "statsDumpSize"))
+
+    val flowStatsDumpErrors = registry.meter(
+        name(classOf[DatapathMeter], "flows", "statsDumpErrors"))
+
 }
 
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.midolman.monitoring.metrics
+
+import com.codahale.metrics.MetricRegistry
+import com.codahale.metrics.MetricRegistry.name
+
+trait MetadataProxyMeter
+
+class MetadataProxyMetrics(val registry: MetricRegistry) {
+
+    val requests = registry.meter(
+        name(classOf[MetadataProxyMeter], "requests"))
+
+    val cacheHits = registry.meter(
+        name(classOf[MetadataProxyMeter], "cache", "hits"))
+
+    val cacheMisses = registry.meter(
+        name(classOf[MetadataProxyMeter], "cache", "misses"))
+
+    val rejected = registry.meter(
+        name(classOf[MetadataProxyMeter], "requests", "rejected"))
+
+    val errors = registry.meter(
+        name(classOf[MetadataProxyMeter], "requests", "errors"))
+
+    val latency = registry.timer(
+        name(classOf[MetadataProxyMeter], "requests", "latency"))
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.midolman.monitoring.metrics
+
+import com.codahale.metrics.MetricRegistry
+import com.codahale.metrics.MetricRegistry.name
+
+/**
+  * Metrics for the write-behind of the ARP and MAC learning state tables.
+  * The difference between the requested and the flushed writes is the
+  * number of storage writes saved by coalescing the writes to the same key.
+  */
+class StateTableWriterMetrics(registry: MetricRegistry) {
+
+    val requestedWrites =
+        registry.meter(name(classOf[VirtualTopologyMeter],
+                            "stateTableRequestedWrites"))
+    val flushedWrites =
+        registry.meter(name(classOf[VirtualTopologyMeter],
+                            "stateTableFlushedWrites"))
+    val coalescedWrites =
+        registry.meter(name(classOf[VirtualTopologyMeter],
+                            "stateTableCoalescedWrites"))
+    val failedWrites =
+        registry.counter(name(classOf[VirtualTopologyCounter],
+                              "stateTableFailedWrites"))
+    val flushBatchSize =
+        registry.histogram(name(classOf[VirtualTopologyHistogram],
+                                "stateTableFlushBatchSize"))
+
+    /** Records a write requested by the agent. */
+    def writeRequested(coalesced: Boolean): Unit = {
+        requestedWrites.mark()
+        if (coalesced) coalescedWrites.mark()
+    }
+
+    /** Records a flush of the specified number of writes to storage. */
+    def flushed(writes: Int): Unit = {
+        flushedWrites.mark(writes)
+        flushBatchSize.update(writes)
+    }
+
+}
@@ -52,6 +52,9 @@ object VirtualTopologyMetrics {
         val lifetimeHistogram =
             registry.histogram(name(classOf[VirtualTopologyHistogram],
                                     clazz.getSimpleName, "deviceLifetime"))
+        val buildHistogram =
+            registry.histogram(name(classOf[VirtualTopologyHistogram],
+                                    clazz.getSimpleName, "deviceBuild"))
 
     }
 
@@ -99,6 +102,8 @@ class VirtualTopologyMetrics(registry: MetricRegistry,
         registry.histogram(name(classOf[VirtualTopologyHistogram], "deviceLatency"))
     val deviceLifetimeHistogram =
         registry.histogram(name(classOf[VirtualTopologyHistogram], "deviceLifetime"))
+    val deviceBuildHistogram =
+        registry.histogram(name(classOf[VirtualTopologyHistogram], "deviceBuild"))
 
     val deviceClasses: Map[Class[_], DeviceClassMetrics] =
         classes.map { case c => c -> new DeviceClassMetrics(registry, c) }.toMap
@@ -154,6 +159,30 @@ class VirtualTopologyMetrics(registry: MetricRegistry,
         }
     }
 
+    /**
+      * Records the time spent by the virtual topology thread to build a
+      * device, from the start of the task that processed the update until
+      * the device is emitted.
+      */
+    def deviceBuild(clazz: Class[_], latency: Long): Unit = {
+        deviceBuildHistogram.update(latency)
+        deviceClasses.get(clazz) match {
+            case Some(metrics) =>
+                metrics.buildHistogram.update(latency)
+            case None =>
+        }
+    }
+
+    /**
+      * Registers the queue depth gauge for a virtual topology shard, which
+      * indicates the number of tasks waiting for the shard thread.
+      */
+    def registerShard(index: Int, queueDepth: => Int): Unit = {
+        registry.register(name(classOf[VirtualTopologyGauge], "queueDepth",
+                               index.toString),
+                          gauge(queueDepth))
+    }
+
     private def gauge(f: => Long): Gauge[Long] = {
         new Gauge[Long] { override def getValue = f }
     }
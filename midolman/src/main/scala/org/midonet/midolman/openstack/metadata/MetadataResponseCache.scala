@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.midolman.openstack.metadata
+
+import java.util.concurrent.ConcurrentHashMap
+
+import org.midonet.midolman.openstack.metadata.MetadataResponseCache.{Entry, Key}
+import org.midonet.util.UnixClock
+
+object MetadataResponseCache {
+    private[metadata] case class Key(instanceId: String, path: String)
+    private[metadata] case class Entry(data: String, expires: Long)
+
+    /*
+     * The password documents are written by the instances with POST
+     * requests, so they are never cached.  The other documents do not
+     * change during the lifetime of an instance, or they change rarely
+     * enough for a short time-to-live.
+     */
+    def isCacheable(method: String, path: String): Boolean =
+        method == "GET" && (path ne null) && !path.contains("password")
+}
+
+/*
+ * A short time-to-live cache of the Nova metadata responses, keyed by the
+ * instance and the path.  It absorbs the bursts of identical requests
+ * issued by cloud-init when many instances boot at the same time.
+ *
+ * The cache holds at most maxEntries responses: the expired entries are
+ * purged when the cache is full, and new responses are not cached while
+ * it remains full.
+ */
+class MetadataResponseCache(ttl: Long, maxEntries: Int,
+                            clock: UnixClock = UnixClock.DEFAULT) {
+
+    private val entries = new ConcurrentHashMap[Key, Entry]()
+
+    def enabled: Boolean = ttl > 0
+
+    def size: Int = entries.size
+
+    def get(instanceId: String, path: String): Option[String] = {
+        if (!enabled) return None
+        val key = Key(instanceId, path)
+        val entry = entries.get(key)
+        if (entry eq null) {
+            None
+        } else if (entry.expires <= clock.time) {
+            entries.remove(key, entry)
+            None
+        } else {
+            Some(entry.data)
+        }
+    }
+
+    def put(instanceId: String, path: String, data: String): Unit = {
+        if (!enabled) return
+        if (entries.size >= maxEntries) {
+            purge()
+            if (entries.size >= maxEntries) return
+        }
+        entries.put(Key(instanceId, path), Entry(data, clock.time + ttl))
+    }
+
+    private def purge(): Unit = {
+        val now = clock.time
+        val iterator = entries.values.iterator()
+        while (iterator.hasNext) {
+            if (iterator.next().expires <= now) {
+                iterator.remove()
+            }
+        }
+    }
+}
@@ -16,13 +16,18 @@
 
 package org.midonet.midolman.openstack.metadata
 
-import java.io.InputStream
+import java.util.concurrent.{RejectedExecutionException, TimeUnit}
 
-import com.sun.jersey.api.client.config.DefaultClientConfig
-import com.sun.jersey.api.client.{Client, ClientResponse, UniformInterfaceException}
-import com.sun.jersey.core.impl.provider.entity.ByteArrayProvider
+import scala.concurrent.{Future, Promise}
 
-import org.apache.commons.io.IOUtils
+import org.eclipse.jetty.client.HttpClient
+import org.eclipse.jetty.client.api.Result
+import org.eclipse.jetty.client.util.{BufferingResponseListener, BytesContentProvider}
+import org.eclipse.jetty.util.thread.QueuedThreadPool
+
+import org.midonet.midolman.config.MetadataConfig
+import org.midonet.midolman.monitoring.metrics.MetadataProxyMetrics
+import org.midonet.util.UnixClock
 
 object Conv {
     implicit def toHexstring(bytes: Array[Byte]): String =
@@ -57,87 +62,163 @@ object Conv {
 class NovaMetadataClientException(message: String)
     extends RuntimeException(message)
 
+/*
+ * An unexpected HTTP status returned by the Nova Metadata API, which is
+ * returned to the instance.
+ */
+class NovaMetadataHttpException(val status: Int, message: String)
+    extends RuntimeException(message)
+
 object NovaMetadataClient {
 
     import Conv._
 
-    private def signInstanceId(sharedSecret: String,
+    private[metadata] def signInstanceId(sharedSecret: String,
                                instanceId: String): String =
         Hmac.hmac(sharedSecret, instanceId)
 
-    private def readAll(stream: InputStream) = IOUtils.toByteArray(stream)
+}
+
+/*
+ * The client is shared by all the requests of the metadata proxy.  It keeps
+ * a bounded pool of keep-alive connections to the Nova Metadata API, and it
+ * completes the requests asynchronously, such that the proxy threads are
+ * not blocked during the upstream calls.  The requests exceeding the pool
+ * and its queue are rejected.
+ */
+class NovaMetadataClient(config: MetadataConfig,
+                         metrics: MetadataProxyMetrics,
+                         clock: UnixClock = UnixClock.DEFAULT) {
+
+    import NovaMetadataClient._
+
+    private val cache = new MetadataResponseCache(config.cacheTtl,
+                                                  config.cacheMaxEntries,
+                                                  clock)
+
+    private val httpClient = {
+        val client = new HttpClient()
+        val executor = new QueuedThreadPool()
+        executor.setName("metadata-client")
+        executor.setDaemon(true)
+        client.setExecutor(executor)
+        client.setMaxConnectionsPerDestination(config.maxConnections)
+        client.setMaxRequestsQueuedPerDestination(config.maxQueuedRequests)
+        client.setIdleTimeout(config.idleTimeout)
+        client.setFollowRedirects(false)
+        client
+    }
+
+    def start(): Unit = {
+        httpClient.start()
+    }
+
+    def stop(): Unit = {
+        httpClient.stop()
+    }
 
     def proxyRequest(method: String,
                      path: String,
-                     content: InputStream,
-                     remoteAddr: String,
-                     novaMetadataUrl: String,
-                     sharedSecret: String): String = {
+                     content: Array[Byte],
+                     remoteAddr: String): Future[String] = {
         Log debug s"$method request from $remoteAddr for path $path"
+        metrics.requests.mark()
         InstanceInfoMap getByAddr remoteAddr match {
             case Some(info) =>
                 Log debug s"Request matches instance $info"
-                proxyRequest(method, path, content,
-                             info, novaMetadataUrl, sharedSecret)
+                proxyRequest(method, path, content, info)
             case None =>
                 /*
                  * This shouldn't happen normally as datapath flows are
                  * installed using InstanceInfo.
                  */
                 Log warn s"Received request from unknown address $remoteAddr"
-                throw new NovaMetadataClientException(
-                    s"Unknown remote address $remoteAddr")
+                Future.failed(new NovaMetadataClientException(
+                    s"Unknown remote address $remoteAddr"))
         }
     }
 
     private def proxyRequest(method: String,
-                     path: String,
-                     content: InputStream,
-                     info: InstanceInfo,
-                     novaMetadataUrl: String,
-                     sharedSecret: String): String = {
-        val instanceIdSig = signInstanceId(sharedSecret, info.instanceId)
-        val cc = new DefaultClientConfig(classOf[ByteArrayProvider])
-        val client = Client.create(cc)
-        val url = novaMetadataUrl + path
+                             path: String,
+                             content: Array[Byte],
+                             info: InstanceInfo): Future[String] = {
+        val cacheable = MetadataResponseCache.isCacheable(method, path)
+        if (cacheable && cache.enabled) {
+            cache.get(info.instanceId, path) match {
+                case Some(data) =>
+                    Log debug s"Cached response for instance:" +
+                              s"${info.instanceId} path:$path"
+                    metrics.cacheHits.mark()
+                    return Future.successful(data)
+                case None =>
+                    metrics.cacheMisses.mark()
+            }
+        }
+
+        val url = config.novaMetadataUrl + path
         Log debug s"$method request from instance:${info.instanceId} to $url"
 
-        val resource = client.resource(url)
+        val request = method match {
+            case "GET" => httpClient.newRequest(url).method("GET")
+            // POST is used by nova blueprint get-password
+            // https://blueprints.launchpad.net/nova/+spec/get-password
+            case "POST" =>
+                httpClient.newRequest(url).method("POST")
+                    .content(new BytesContentProvider(
+                        if (content eq null) Array.emptyByteArray else content))
+            case _ =>
+                return Future.failed(new NovaMetadataClientException(
+                    s"Unsupported method $method"))
+        }
+        request
             .header("X-Tenant-ID", info.tenantId)
             .header("X-Instance-ID", info.instanceId)
-            .header("X-Instance-ID-Signature", instanceIdSig)
+            .header("X-Instance-ID-Signature",
+                    signInstanceId(config.sharedSecret, info.instanceId))
             .header("X-Forwarded-For", info.address)
-        try {
-            val response = method match {
-                case "GET" => resource.get(classOf[ClientResponse])
-                // POST is used by nova blueprint get-password
-                // https://blueprints.launchpad.net/nova/+spec/get-password
-                case "POST" => resource.post(classOf[ClientResponse],
-                                             readAll(content))
-                case _ => throw new NovaMetadataClientException(
-                    s"Unsupported method $method")
-            }
-            if (response.getStatus >= 300) {
-                throw new UniformInterfaceException(response)
-            }
-            val encoding = {
-                val respType = response.getType
-                if (respType == null) "UTF-8"
-                else respType.getParameters.getOrDefault("charset", "UTF-8")
+            .timeout(config.requestTimeout, TimeUnit.MILLISECONDS)
+
+        val promise = Promise[String]()
+        val startTime = clock.timeNanos
+        request.send(new BufferingResponseListener() {
+            override def onComplete(result: Result): Unit = {
+                metrics.latency.update(clock.timeNanos - startTime,
+                                       TimeUnit.NANOSECONDS)
+                if (result.isFailed) {
+                    result.getFailure match {
+                        case e: RejectedExecutionException =>
+                            Log warn s"Rejected request: $url $info: " +
+                                     s"${e.getMessage}"
+                            metrics.rejected.mark()
+                        case e =>
+                            Log error s"Failed request: $url $info: $e"
+                            metrics.errors.mark()
+                    }
+                    promise failure result.getFailure
+                    return
+                }
+                val response = result.getResponse
+                if (response.getStatus >= 300) {
+                    Log error s"Unexpected HTTP response: " +
+                              s"${response.getStatus} ${response.getReason} " +
+                              s"for request: $url $info"
+                    metrics.errors.mark()
+                    promise failure new NovaMetadataHttpException(
+                        response.getStatus, response.getReason)
+                    return
+                }
+                val data = getContentAsString
+                Log debug s"Response for instance:${info.instanceId} " +
+                          s"status:${response.getStatus} " +
+                          s"length:${getContent.length} " +
+                          s"media-type:$getMediaType " +
+                          s"data:$data"
+                if (cacheable) {
+                    cache.put(info.instanceId, path, data)
+                }
+                promise success data
             }
-            val data = IOUtils.toString(response.getEntityInputStream,
-                                        encoding)
-            Log debug s"Response for instance:${info.instanceId} " +
-                      s"status:${response.getStatus} " +
-                      s"length:${response.getLength} " +
-                      s"media-type:${response.getType} " +
-                      s"data:$data"
-            data
-        } catch {
-            case e: UniformInterfaceException =>
-                Log error s"Unexpected HTTP response: $e for request: " +
-                          s"$url $info"
-                throw e
-        }
+        })
+        promise.future
     }
 }
@@ -20,9 +20,12 @@ import java.net.{InetAddress, InetSocketAddress}
 
 import scala.util.control.NonFatal
 
+import com.codahale.metrics.MetricRegistry
+
 import org.eclipse.jetty.server.Server
 
 import org.midonet.midolman.config.MidolmanConfig
+import org.midonet.midolman.monitoring.metrics.MetadataProxyMetrics
 
 /**
   * Metadata proxy server; a http proxy running on the hypervisor.
@@ -32,18 +35,24 @@ object Proxy {
     final val Address = InetAddress getByName MetadataApi.Address
     final val Port = 9697  // REVISIT(yamamoto): should be a config?
     private var server: Server = _
+    private var client: NovaMetadataClient = _
 
-    def start(config: MidolmanConfig): Unit = {
+    def start(config: MidolmanConfig, metrics: MetricRegistry): Unit = {
         val sa = new InetSocketAddress(Address, Port)
         Log info s"Starting metadata proxy on $sa"
+        val c = new NovaMetadataClient(config.openstack.metadata,
+                                       new MetadataProxyMetrics(metrics))
         val s = new Server(sa)
-        s.setHandler(new ProxyHandler(config))
+        s.setHandler(new ProxyHandler(c))
         try {
+            c.start()
             s.start()
+            client = c
             server = s
         } catch {
             case NonFatal(e) =>
                 Log.error("Failed to start metadata proxy", e)
+                c.stop()
         }
     }
 
@@ -54,5 +63,9 @@ object Proxy {
             server.join()
             server = null
         }
+        if (client != null) {
+            client.stop()
+            client = null
+        }
     }
 }
@@ -16,34 +16,60 @@
 
 package org.midonet.midolman.openstack.metadata
 
+import java.util.concurrent.RejectedExecutionException
 import javax.servlet.http.{HttpServletRequest, HttpServletResponse}
 
-import com.sun.jersey.api.client.UniformInterfaceException
+import scala.util.control.NonFatal
+import scala.util.{Failure, Success}
 
+import org.apache.commons.io.IOUtils
 import org.eclipse.jetty.server.Request
 import org.eclipse.jetty.server.handler.AbstractHandler
 
-import org.midonet.midolman.config.MidolmanConfig
+import org.midonet.util.concurrent.CallingThreadExecutionContext
 
-class ProxyHandler(val config: MidolmanConfig) extends AbstractHandler {
+/*
+ * Forwards the metadata requests to the shared Nova metadata client.  The
+ * request is suspended while the client waits for the Nova Metadata API,
+ * such that a slow upstream does not hold the server threads.
+ */
+class ProxyHandler(val client: NovaMetadataClient) extends AbstractHandler {
 
     def handle(target: String, baseReq: Request, request: HttpServletRequest,
                response: HttpServletResponse) = {
         baseReq setHandled true
-        try {
-            val result = NovaMetadataClient.proxyRequest(
-                                request.getMethod,
-                                request.getPathInfo,
-                                request.getInputStream,
-                                request.getRemoteAddr,
-                                config.openstack.metadata.novaMetadataUrl,
-                                config.openstack.metadata.sharedSecret)
-            response.getWriter print result
-        } catch {
-            case e: UniformInterfaceException =>
-                response.sendError(e.getResponse.getStatus, e.getMessage)
-            case e: NovaMetadataClientException =>
-                response.sendError(HttpServletResponse.SC_FORBIDDEN, e.getMessage)
-        }
+        val content =
+            if (request.getMethod == "POST")
+                IOUtils.toByteArray(request.getInputStream)
+            else null
+        val async = request.startAsync()
+        // The client request has its own timeout.
+        async.setTimeout(0)
+        client.proxyRequest(request.getMethod,
+                            request.getPathInfo,
+                            content,
+                            request.getRemoteAddr) onComplete { result =>
+            try result match {
+                case Success(data) =>
+                    response.getWriter print data
+                case Failure(e: NovaMetadataHttpException) =>
+                    response.sendError(e.status, e.getMessage)
+                case Failure(e: NovaMetadataClientException) =>
+                    response.sendError(HttpServletResponse.SC_FORBIDDEN,
+                                       e.getMessage)
+                case Failure(e: RejectedExecutionException) =>
+                    response.sendError(
+                        HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                        e.getMessage)
+                case Failure(e) =>
+                    response.sendError(HttpServletResponse.SC_BAD_GATEWAY,
+                                       e.getMessage)
+            } catch {
+                case NonFatal(e) =>
+                    Log debug s"Failed to write metadata response: $e"
+            } finally {
+                async.complete()
+            }
+        }(CallingThreadExecutionContext)
     }
 }
@@ -113,6 +113,26 @@ class Bridge(val id: UUID,
 
     override val deviceTag = tagForBridge(id)
 
+    // Java copies of the maps used when simulating every packet, since their
+    // lookups return null rather than allocating an Option.
+    private val logicalPortIdByMac = new util.HashMap[MAC, UUID]()
+    private val macByIp = new util.HashMap[IPAddr, MAC]()
+    private val macTableByVlan = new util.HashMap[JShort, MacLearningTable]()
+    for ((mac, portId) <- macToLogicalPortId) logicalPortIdByMac.put(mac, portId)
+    for ((ip, mac) <- ipToMac) macByIp.put(ip, mac)
+    for ((vlanId, table) <- vlanMacTableMap) macTableByVlan.put(vlanId, table)
+
+    /**
+      * Returns the MAC for the given IP address, if it belongs to a router
+      * port connected to this bridge or if it has been pre-seeded, or null
+      * otherwise.
+      */
+    def macForIp(ip: IPv4Addr): MAC = {
+        val mac = macByIp.get(ip)
+        if ((mac eq null) && (ip4MacMap ne null)) ip4MacMap.get(ip)
+        else mac
+    }
+
     override def toString =
         s"Bridge [id=$id adminStateUp=$adminStateUp tunnelKey=$tunnelKey " +
         s"vlans=${vlanMacTableMap.keys} inboundFilters=$inboundFilters " +
@@ -200,49 +220,47 @@ class Bridge(val id: UUID,
         val ethDst = context.wcmatch.getEthDst
         val ethSrc = context.wcmatch.getEthSrc
         context.log.debug("Handling L2 unicast to {}", ethDst)
-        macToLogicalPortId.get(ethDst) match {
-            case Some(logicalPort: UUID) => // some device (router|vab-bridge)
-                context.log.debug("Packet intended for interior port {}", logicalPort)
-                context.addFlowTag(tagForBridgePort(id, logicalPort))
-                unicastAction(logicalPort)
-            case None => // not a logical port, is the dstMac learned?
-                val vlanId = srcVlanTag(context)
-                val portId =
-                    if (ethDst == ethSrc) {
-                        context.inPortId
-                    } else {
-                        vlanMacTableMap.get(vlanId) match {
-                            case Some(map: MacLearningTable) => map.get(ethDst)
-                            case _ => null
-                        }
-                    }
-                // Tag the flow with the (src-port, src-mac) pair so we can
-                // invalidate the flow if the MAC migrates.
-                context.addFlowTag(tagForVlanPort(id, ethSrc, vlanId,
-                                                  context.inPortId))
-                if (portId == null) {
-                    context.log.debug(s"Destination MAC $ethDst, VLAN $vlanId " +
-                                      s"is not learned: flooding")
-                    context.addFlowTag(
-                        tagForFloodedFlowsByDstMac(id, vlanId, ethDst))
-                    multicastAction()
-                } else if (portId == context.inPortId) {
-                    context.log.debug(s"Destination MAC $ethDst VLAN $vlanId " +
-                                      s"resolves to ingress port $portId: dropping")
-                    // No tags because temp flows aren't affected by
-                    // invalidations. would get byPort (ethDst, vlan, port)
-                    //
-                    // TODO: we may have to send it to InPort, instead of
-                    // dropping it. Some hardware vendors use L2 ping-pong
-                    // packets for their specific purposes (e.g. keepalive message)
-                    //
-                    ErrorDrop
+        val logicalPort = logicalPortIdByMac.get(ethDst)
+        if (logicalPort ne null) { // some device (router|vab-bridge)
+            context.log.debug("Packet intended for interior port {}", logicalPort)
+            context.addFlowTag(tagForBridgePort(id, logicalPort))
+            unicastAction(logicalPort)
+        } else { // not a logical port, is the dstMac learned?
+            val vlanId = srcVlanTag(context)
+            val portId =
+                if (ethDst == ethSrc) {
+                    context.inPortId
                 } else {
-                    context.log.debug(s"Destination MAC $ethDst, VLAN $vlanId " +
-                                      s"found on port $portId: forwarding")
-                    context.addFlowTag(tagForVlanPort(id, ethDst, vlanId, portId))
-                    unicastAction(portId)
+                    val map = macTableByVlan.get(vlanId)
+                    if (map ne null) map.get(ethDst) else null
                 }
+            // Tag the flow with the (src-port, src-mac) pair so we can
+            // invalidate the flow if the MAC migrates.
+            context.addFlowTag(tagForVlanPort(id, ethSrc, vlanId,
+                                              context.inPortId))
+            if (portId == null) {
+                context.log.debug(s"Destination MAC $ethDst, VLAN $vlanId " +
+                                  s"is not learned: flooding")
+                context.addFlowTag(
+                    tagForFloodedFlowsByDstMac(id, vlanId, ethDst))
+                multicastAction()
+            } else if (portId == context.inPortId) {
+                context.log.debug(s"Destination MAC $ethDst VLAN $vlanId " +
+                                  s"resolves to ingress port $portId: dropping")
+                // No tags because temp flows aren't affected by
+                // invalidations. would get byPort (ethDst, vlan, port)
+                //
+                // TODO: we may have to send it to InPort, instead of
+                // dropping it. Some hardware vendors use L2 ping-pong
+                // packets for their specific purposes (e.g. keepalive message)
+                //
+                ErrorDrop
+            } else {
+                context.log.debug(s"Destination MAC $ethDst, VLAN $vlanId " +
+                                  s"found on port $portId: forwarding")
+                context.addFlowTag(tagForVlanPort(id, ethDst, vlanId, portId))
+                unicastAction(portId)
+            }
         }
     }
 
@@ -279,27 +297,26 @@ class Bridge(val id: UUID,
             return tryGet(classOf[Port], toPort).action
         }
 
-        val vlanInFrame: Option[JShort] = context.ethernet.getVlanIDs match {
-            case l: java.util.List[_] if !l.isEmpty => Some(l.get(0))
-            case _ => None
-        }
+        val vlanIds = context.ethernet.getVlanIDs
+        val vlanInFrame: JShort =
+            if ((vlanIds ne null) && !vlanIds.isEmpty) vlanIds.get(0) else null
 
         vlanToPort.getVlan(toPort) match {
             case null => // the outbound port has no vlan assigned
                 context.log.debug("Egress port has no VLAN assigned: forwarding")
                 tryGet(classOf[Port], toPort).action
-            case vlanId if vlanInFrame.isEmpty =>
+            case vlanId if vlanInFrame eq null =>
                 context.log.debug("Egress port has VLAN {}, frame had none: " +
                                   "dropping", vlanId)
                 Drop
-            case vlanId if vlanInFrame.get == vlanId =>
+            case vlanId if vlanInFrame == vlanId =>
                 context.log.debug("Egress port tagged with VLAN {}: pop and " +
                                   "forward", vlanId)
                 context.wcmatch.removeVlanId(vlanId)
                 tryGet(classOf[Port], toPort).action
             case vlanId =>
                 context.log.debug("Egress port VLAN {} does not match frame " +
-                                  "VLAN {}: dropping", vlanId, vlanInFrame.get)
+                                  "VLAN {}: dropping", vlanId, vlanInFrame)
                 Drop
         }
     }
@@ -542,7 +559,7 @@ class Bridge(val id: UUID,
     private def updateFlowCount(srcDlAddress: MAC,
                                 context: PacketContext) {
         implicit val ctx = context
-        if (!macToLogicalPortId.contains(srcDlAddress)) {
+        if (!logicalPortIdByMac.containsKey(srcDlAddress)) {
             val vlanId = short2Short(srcVlanTag(context))
             val inPortId = context.inPortId
             context.log.debug("Increasing reference count for MAC {} VLAN {} " +
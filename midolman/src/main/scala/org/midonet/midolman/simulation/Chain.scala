@@ -48,6 +48,9 @@ case class Chain(id: UUID,
     import Chain._
 
     override val deviceTag: FlowTagger.FlowTag = FlowTagger.tagForChain(id)
+
+    // Compiled when the chain mapper builds the chain, null for short chains.
+    private val classifier = ChainClassifier(rules)
     override def adminStateUp = true
 
     def getJumpTarget(to: UUID): Chain = jumpTargets.get(to)
@@ -74,11 +77,26 @@ case class Chain(id: UUID,
 
         context.addFlowTag(deviceTag)
         traversedChains.add(id)
+        // Only evaluate the rules that may match the packet: all other rules
+        // would return CONTINUE. When the flow recorder reads the traversed
+        // rules, they are recorded as traversed without matching, such that
+        // the flow records are the same.
+        val candidates =
+            if (classifier eq null) null
+            else classifier.candidates(context.wcmatch)
+        val count = if (candidates eq null) rules.size() else candidates.length
+        val recordSkipped = (candidates ne null) && context.recordSkippedRules
         var i = 0
+        var next = 0
         var res = Continue
-        while ((i < rules.size()) && (res.action eq Action.CONTINUE)) {
-            val rule = rules.get(i)
+        while ((i < count) && (res.action eq Action.CONTINUE)) {
+            val index = if (candidates eq null) i else candidates(i)
+            val rule = rules.get(index)
             i += 1
+            if (recordSkipped) {
+                skipRules(context, next, index)
+                next = index + 1
+            }
             res = rule.process(context)
 
             res.action match {
@@ -106,10 +124,32 @@ case class Chain(id: UUID,
             if (res.action eq Action.JUMP)
                 res = jump(context, res.jumpToChain, traversedChains)
         }
+        if (recordSkipped && (res.action eq Action.CONTINUE))
+            skipRules(context, next, rules.size())
         assert(res.action ne Action.JUMP)
         res
     }
 
+    /**
+     * Records the rules left out by the classifier, between the given
+     * indices, as traversed rules that did not match.
+     */
+    private def skipRules(context: PacketContext, from: Int,
+                          until: Int): Unit = {
+        var index = from
+        while (index < until) {
+            val rule = rules.get(index)
+            context.recordMatchedRule(rule.id, false)
+            context.recordAppliedRule(rule.id, false)
+            if (rule.id == null) {
+                context.log.warn(s"Rule $rule missing identifier")
+            } else {
+                context.recordTraversedRule(rule.id, Continue)
+            }
+            index += 1
+        }
+    }
+
     private[this] def jump(context: PacketContext,
                            jumpChainId: UUID,
                            traversedChains:util.ArrayList[UUID]): RuleResult = {
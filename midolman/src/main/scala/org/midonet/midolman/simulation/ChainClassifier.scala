@@ -0,0 +1,218 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.midonet.midolman.simulation
+
+import java.util.{Arrays, TreeSet => JTreeSet, List => JList}
+
+import scala.collection.mutable
+
+import org.midonet.midolman.rules.{Condition, Rule}
+import org.midonet.odp.FlowMatch
+
+object ChainClassifier {
+
+    /** Chains with fewer rules are evaluated linearly. */
+    final val MinRules = 16
+
+    /** The maximum number of rule indices stored by the port partitions of a
+      * chain, which bounds the memory used by chains with many overlapping
+      * port ranges. */
+    final val MaxPortEntries = 1 << 20
+
+    private final val NoConstraint = -1
+
+    /**
+      * Compiles the rules of a chain into a classifier, or returns null if
+      * the chain is too short to benefit from it.
+      */
+    def apply(rules: JList[Rule]): ChainClassifier = {
+        if (rules.size < MinRules) null
+        else new ChainClassifier(rules)
+    }
+
+    /** Returns the network protocol that a rule's condition requires, or
+      * NoConstraint if the condition may match any protocol. */
+    private def protocolOf(condition: Condition): Int = {
+        if ((condition eq null) || (condition.getClass ne classOf[Condition]) ||
+            condition.conjunctionInv || condition.nwProtoInv ||
+            (condition.nwProto eq null)) NoConstraint
+        else condition.nwProto.byteValue() & 0xff
+    }
+
+    /** Returns true if the rule's condition requires the destination port
+      * to be in the condition's range. */
+    private def hasPortRange(condition: Condition): Boolean = {
+        (condition ne null) && (condition.getClass eq classOf[Condition]) &&
+        !condition.conjunctionInv && !condition.tpDstInv &&
+        (condition.tpDst ne null)
+    }
+
+    private def portStart(condition: Condition): Int = {
+        val start = condition.tpDst.start()
+        if (start eq null) Int.MinValue else start.intValue()
+    }
+
+    private def portEnd(condition: Condition): Int = {
+        val end = condition.tpDst.end()
+        if (end eq null) Int.MaxValue else end.intValue()
+    }
+
+    /**
+      * The candidate rules for a network protocol, partitioned by disjoint
+      * intervals of the destination port. The interval i starts at
+      * starts(i), and its candidate rules are candidates(i).
+      */
+    private final class PortPartition(val starts: Array[Int],
+                                      val candidates: Array[Array[Int]]) {
+
+        def lookup(fmatch: FlowMatch): Array[Int] = {
+            if (starts.length == 1) {
+                return candidates(0)
+            }
+            val port = fmatch.getDstPort
+            var index = Arrays.binarySearch(starts, port)
+            if (index < 0) {
+                index = -index - 2
+            }
+            candidates(index)
+        }
+
+        def entries: Int = {
+            var count = 0
+            var index = 0
+            while (index < candidates.length) {
+                count += candidates(index).length
+                index += 1
+            }
+            count
+        }
+    }
+}
+
+/**
+  * A classifier for the rules of a chain, which, for a given packet, returns
+  * the indices of the rules that may match the packet, in the order of the
+  * chain. The rules that are not returned are guaranteed not to match the
+  * packet, such that evaluating the candidate rules in order returns the
+  * same first matching rule as evaluating all the rules.
+  *
+  * The rules are partitioned on the network protocol and then on the
+  * destination port range of their condition, which is what security group
+  * rules typically match on. The classifier only reads those fields from
+  * the flow match through its getters when they discriminate between rules,
+  * such that the corresponding flow is wildcarded correctly.
+  *
+  * The classifier is immutable, and it is compiled when the chain is built
+  * by the chain mapper.
+  */
+final class ChainClassifier private(rules: JList[Rule]) {
+
+    import ChainClassifier._
+
+    private val anyProtocol: PortPartition = partition(NoConstraint)
+    private val byProtocol = new Array[PortPartition](256)
+    private val discriminatesProtocol: Boolean = compile()
+
+    private def compile(): Boolean = {
+        val constrained = new mutable.LinkedHashSet[Int]
+        var index = 0
+        while (index < rules.size) {
+            val protocol = protocolOf(rules.get(index).getCondition)
+            if (protocol != NoConstraint)
+                constrained += protocol
+            index += 1
+        }
+        index = 0
+        while (index < byProtocol.length) {
+            byProtocol(index) = anyProtocol
+            index += 1
+        }
+        var budget = MaxPortEntries - anyProtocol.entries
+        for (protocol <- constrained) {
+            byProtocol(protocol) = partition(protocol, budget)
+            budget -= byProtocol(protocol).entries
+        }
+        constrained.nonEmpty
+    }
+
+    /**
+      * Builds the port partition for the rules that may match the given
+      * protocol. If the candidate lists would exceed the budget of entries,
+      * the partition has a single interval.
+      */
+    private def partition(protocol: Int,
+                          budget: Int = MaxPortEntries): PortPartition = {
+        val candidates = new mutable.ArrayBuilder.ofInt
+        val bounds = new JTreeSet[Integer]
+        bounds.add(Int.MinValue)
+        var index = 0
+        while (index < rules.size) {
+            val ruleProtocol = protocolOf(rules.get(index).getCondition)
+            if (ruleProtocol == NoConstraint || ruleProtocol == protocol) {
+                candidates += index
+                val condition = rules.get(index).getCondition
+                if (hasPortRange(condition)) {
+                    bounds.add(portStart(condition))
+                    if (portEnd(condition) != Int.MaxValue)
+                        bounds.add(portEnd(condition) + 1)
+                }
+            }
+            index += 1
+        }
+        val all = candidates.result()
+        if (bounds.size == 1 || bounds.size.toLong * all.length > budget) {
+            return new PortPartition(Array(Int.MinValue), Array(all))
+        }
+
+        val starts = new Array[Int](bounds.size)
+        val lists = new Array[Array[Int]](bounds.size)
+        val iterator = bounds.iterator()
+        var interval = 0
+        while (iterator.hasNext) {
+            val start = iterator.next().intValue()
+            val list = new mutable.ArrayBuilder.ofInt
+            var candidate = 0
+            while (candidate < all.length) {
+                val condition = rules.get(all(candidate)).getCondition
+                if (!hasPortRange(condition) ||
+                    (portStart(condition) <= start &&
+                     start <= portEnd(condition))) {
+                    list += all(candidate)
+                }
+                candidate += 1
+            }
+            starts(interval) = start
+            lists(interval) = list.result()
+            interval += 1
+        }
+        new PortPartition(starts, lists)
+    }
+
+    /**
+      * Returns the indices of the rules that may match the flow match, in
+      * chain order. The returned array must not be modified.
+      */
+    def candidates(fmatch: FlowMatch): Array[Int] = {
+        if (discriminatesProtocol)
+            byProtocol(fmatch.getNetworkProto & 0xff).lookup(fmatch)
+        else
+            anyProtocol.lookup(fmatch)
+    }
+
+    override def toString: String =
+        s"ChainClassifier [rules=${rules.size} " +
+        s"protocols=${byProtocol.count(_ ne anyProtocol)}]"
+}
@@ -16,19 +16,22 @@
 package org.midonet.midolman.simulation
 
 import java.nio.{BufferOverflowException, ByteBuffer}
+import java.util.UUID
 
 import scala.collection.JavaConversions._
 import scala.collection.JavaConverters._
 import scala.collection.mutable
+import scala.concurrent.Future
 import scala.concurrent.duration._
+import scala.util.Failure
+import scala.util.control.NonFatal
 
-import org.midonet.cluster.data.ZoomConvert
-import org.midonet.cluster.models.Topology
+import org.midonet.midolman.NotYetException
 import org.midonet.midolman.topology.VirtualTopology
 import org.midonet.midolman.topology.devices.Dhcp
-import org.midonet.midolman.topology.devices.Dhcp.{Host, Opt121Route}
+import org.midonet.midolman.topology.devices.Dhcp.Host
 import org.midonet.packets._
-import org.midonet.util.concurrent._
+import org.midonet.util.concurrent.CallingThreadExecutionContext
 import org.midonet.util.logging.Logger
 
 /**
@@ -505,14 +508,13 @@ class DhcpImpl(val vt: VirtualTopology,
                val log: Logger) {
     import DhcpValueParser._
 
-    private final val timeout = 3 seconds
     private var serverAddr: IPv4Addr = _
     private var serverMac: MAC = _
     private var routerAddr: IPv4Addr = _
     private var yiaddr: IPv4Addr = _
     private var yiAddrMaskLen: Int = 0
-    private var opt121Routes: mutable.Buffer[Opt121Route] = _
-    private var dnsServerAddrsBytes: List[Array[Byte]] = Nil
+    private var dnsServerOption: DHCPOption = _
+    private var classlessRoutesOption: DHCPOption = _
     private var interfaceMtu: Int = 0
 
     def handleDHCP(port: Port) : Option[Ethernet] = {
@@ -535,26 +537,55 @@ class DhcpImpl(val vt: VirtualTopology,
 
     private type HostAndDhcpOptPair = (Option[Host], Option[Dhcp])
 
+    /**
+      * Looks up the DHCP subnets of the bridge in the virtual topology, which
+      * indexes the hosts of each subnet by MAC address. The method throws a
+      * [[NotYetException]] if a subnet is not yet available, such that the
+      * packet is postponed rather than blocking the packet worker. A subnet
+      * that cannot be loaded, such as a subnet deleted while the bridge still
+      * references it, is skipped.
+      */
     private def getHostAndAssignedSubnet(port: BridgePort): HostAndDhcpOptPair = {
-        // TODO(pino): use an async API
         val bridge = vt.tryGet(classOf[Bridge], port.deviceId)
-        val dhcps = vt.store.getAll(classOf[Topology.Dhcp], bridge.subnetIds)
-            .recover { case _ => Seq.empty } (CallingThreadExecutionContext)
-            .map { d => d.map(ZoomConvert.fromProto(_, classOf[Dhcp]))} (
-                CallingThreadExecutionContext)
-            .await(timeout)
 
         // Look for the DHCP's source MAC in the list of hosts in each subnet
         var host: Option[Host] = None
-        val assignment = dhcps.find { dhcp =>
-            log.debug(s"Looking up assignment for MAC $sourceMac on subnet " +
-                      s"${dhcp.id}")
-            host = dhcp.hosts.find(_.mac == sourceMac)
-            host.isDefined && (host.get.address != null)
-        }
+        val assignment = bridge.subnetIds.iterator
+            .map(tryGetSubnet)
+            .find { dhcp =>
+                (dhcp ne null) && {
+                    log.debug(s"Looking up assignment for MAC $sourceMac on " +
+                              s"subnet ${dhcp.id}")
+                    host = Option(dhcp.hostByMac(sourceMac))
+                    host.isDefined && (host.get.address != null)
+                }
+            }
         (host, assignment)
     }
 
+    /**
+      * Gets the DHCP subnet from the virtual topology, or `null` if loading
+      * the subnet failed. If the subnet is not yet available, the packet is
+      * postponed until the subnet is loaded or fails to load, in which case
+      * the packet is simulated again rather than dropped.
+      */
+    private def tryGetSubnet(id: UUID): Dhcp = {
+        try vt.tryGet(classOf[Dhcp], id)
+        catch {
+            case NotYetException(waitFor, msg) =>
+                val future: Future[Any] = waitFor
+                future.value match {
+                    case Some(Failure(e)) =>
+                        log.debug(s"Skipping DHCP subnet $id: ${e.getMessage}")
+                        null
+                    case _ =>
+                        throw NotYetException(
+                            future.recover { case NonFatal(_) => null }(
+                                CallingThreadExecutionContext), msg)
+                }
+        }
+    }
+
     private def dhcpFromBridgePort(port: BridgePort): Option[Ethernet] = {
         getHostAndAssignedSubnet(port) match {
             case (_, Some(subnet)) if !subnet.enabled =>
@@ -573,10 +604,8 @@ class DhcpImpl(val vt: VirtualTopology,
                 yiaddr = host.address
                 yiAddrMaskLen = subnet.subnetAddress.getPrefixLen
 
-                dnsServerAddrsBytes =
-                    Option(subnet.dnsServerAddress).map{ _.toList}.getOrElse(Nil)
-                        .map { _.toBytes }
-                opt121Routes = subnet.opt121Routes
+                dnsServerOption = subnet.dnsServersOption
+                classlessRoutesOption = subnet.classlessRoutesOption
 
                 // NOTES on MTU:
                 // - We should never send a DHCP offer MTU option higher than the underlayMtu.
@@ -605,23 +634,6 @@ class DhcpImpl(val vt: VirtualTopology,
         }
     }
 
-    private def opt121ToByteArray(opt121: Opt121Route): mutable.ListBuffer[Byte] = {
-        val bytes = mutable.ListBuffer[Byte]()
-        // First append the destination subnet's maskLength
-        val maskLen = opt121.destinationSubnet.getPrefixLen.toByte
-        bytes.append(maskLen)
-        // Now append the significant octets of the subnet.
-        val dstBytes = opt121.destinationSubnet.getAddress.toBytes
-        if (maskLen > 0) bytes.append(dstBytes(0))
-        if (maskLen > 8) bytes.append(dstBytes(1))
-        if (maskLen > 16) bytes.append(dstBytes(2))
-        if (maskLen > 24) bytes.append(dstBytes(3))
-        // Now append the 4 octets of the gateway.
-        val gwBytes = opt121.gateway.toBytes
-        bytes.appendAll(gwBytes.toList)
-        bytes
-    }
-
     private def makeDhcpReply(port: BridgePort,
                               host: Host): Option[Ethernet] = {
         val chaddr = request.getClientHardwareAddress
@@ -795,42 +807,17 @@ class DhcpImpl(val vt: VirtualTopology,
                 DHCPOption.Code.SERVER_ID.length,
                 serverAddr.toBytes))
 
-        if (dnsServerAddrsBytes.nonEmpty) {
-            val len = 4 * dnsServerAddrsBytes.length
-            val buffer = ByteBuffer.allocate(len)
-            dnsServerAddrsBytes.foreach{ bytes => buffer put bytes}
-            optionMap.put(DHCPOption.Code.DNS.value,
-                new DHCPOption(DHCPOption.Code.DNS.value,
-                    len.toByte, buffer.array))
+        // The DNS and classless static routes options are prebuilt for the
+        // subnet. According to RFC 3442, if classless routes (option 121) are
+        // being provided, then the router option should be ignored: in this
+        // case the option includes the default route in addition to option 3.
+        if (dnsServerOption ne null) {
+            optionMap.put(DHCPOption.Code.DNS.value, dnsServerOption)
         }
-        // If there are classless static routes, add the option.
-        if (null != opt121Routes && opt121Routes.nonEmpty) {
-            val bytes = mutable.ListBuffer[Byte]()
-            if (routerAddr != null) {
-                // According to RFC 3442, if classless routes (option 121) are
-                // being provided, then the router option should be ignored.
-                // In this case we want to provide the default route with
-                // option 121 in addition to option 3.
-                val opt121DefaultRoute = Opt121Route(
-                    destinationSubnet = IPv4Addr.AnyAddress.subnet(0),
-                    gateway = routerAddr)
-
-                log.debug("Found router address: adding default route " +
-                          s"to $opt121DefaultRoute")
-                opt121Routes += opt121DefaultRoute
-            }
-            opt121Routes foreach { rt =>
-                log.debug(s"Found classless route $rt")
-                bytes.appendAll(opt121ToByteArray(rt))
-            }
-            log.debug("Adding Option 121 (classless static routes) with " +
-                      s"${opt121Routes.length} routes")
-            // Finally, construct the classless static routes option
+        if (classlessRoutesOption ne null) {
+            log.debug("Adding Option 121 (classless static routes)")
             optionMap.put(DHCPOption.Code.CLASSLESS_ROUTES.value,
-                new DHCPOption(
-                    DHCPOption.Code.CLASSLESS_ROUTES.value(),
-                    bytes.length.toByte,
-                    bytes.toArray))
+                          classlessRoutesOption)
         }
 
         // Add extra DHCP options. This overwrite the existing DHCP extra option
@@ -304,6 +304,11 @@ trait RecordedContext extends Clearable {
     val traversedRulesMatched = new ArrayList[Boolean]
     val traversedRulesApplied = new ArrayList[Boolean]
 
+    // Whether the rules that a chain classifier skips are recorded as
+    // traversed rules. Only the flow recorder reads them, and therefore the
+    // packet workflow disables it when flow recording is disabled.
+    var recordSkippedRules = true
+
     def recordTraversedRule(rule: UUID, result: RuleResult)
     : Unit = {
         traversedRules.add(rule)
@@ -28,17 +28,9 @@ import org.midonet.util.logging.Logger
 class RouteBalancer(val rTable: RoutingTable) extends AnyVal {
 
     def lookup(fmatch: FlowMatch, logger: Logger): Route = {
-        val routes = rTable.lookup(fmatch, logger)
-        routes.size match {
-            case 0 => null
-            case 1 =>
-                logger.debug("routing to {}", routes.get(0))
-                routes.get(0)
-            case size =>
-                val ret = routes.get(Math.abs(fmatch.connectionHash()) % size)
-                logger.debug("got multiple routes: {}, selected {}",
-                             routes, ret)
-                ret
-        }
+        val route = rTable.lookupRoute(fmatch, logger)
+        if (route ne null)
+            logger.debug("routing to {}", route)
+        route
     }
 }
@@ -70,6 +70,24 @@ object Router {
     trait RoutingTable {
         def lookup(flowMatch: FlowMatch): java.util.List[Route]
         def lookup(flowMatch: FlowMatch, log: Logger): java.util.List[Route]
+
+        /**
+         * Returns the route for the flow match, or null if there is none. If
+         * multiple routes match, it chooses one based on the flow's hash.
+         * Implementations may override this method to avoid allocating the
+         * list of matching routes.
+         */
+        def lookupRoute(flowMatch: FlowMatch, log: Logger): Route = {
+            val routes = lookup(flowMatch, log)
+            routes.size match {
+                case 0 => null
+                case 1 => routes.get(0)
+                case size =>
+                    val ret = routes.get(Math.abs(flowMatch.connectionHash()) % size)
+                    log.debug("got multiple routes: {}, selected {}", routes, ret)
+                    ret
+            }
+        }
     }
 
     private val connTrackTxNoOp = new FlowStateTransaction(
@@ -310,10 +328,7 @@ class Router(override val id: UUID,
     private def peekBridge(port: BridgePort, ipDest: IPv4Addr): MAC = {
         // Fetch the MAC address associated with ipDest in case it
         // belongs to a router port connected to the bridge or was pre-seeded.
-        val bridge = tryGet(classOf[Bridge], port.deviceId)
-        bridge.ipToMac.getOrElse(ipDest, {
-            if (bridge.ip4MacMap ne null) bridge.ip4MacMap.get(ipDest) else null
-        })
+        tryGet(classOf[Bridge], port.deviceId).macForIp(ipDest)
     }
 
     private def getMacForIp(port: RouterPort, nextHopIP: IPv4Addr,
@@ -263,7 +263,7 @@ abstract class RouterBase[IP <: IPAddr]()
     protected def applyServicesInbound()(implicit context: PacketContext)
     : RuleResult = {
         if (cfg.loadBalancer == null)
-            new RuleResult(RuleResult.Action.CONTINUE)
+            Chain.Continue
         else
             tryGet(classOf[LoadBalancer], cfg.loadBalancer).processInbound(context)
     }
@@ -298,9 +298,7 @@ abstract class RouterBase[IP <: IPAddr]()
             }
         }
 
-        def applyRoutingTable(): (Route, SimulationResult) = {
-            val rt: Route = routeBalancer.lookup(fmatch, context.log)
-
+        def applyRoutingTable(rt: Route): SimulationResult = {
             if (rt == null) {
                 // No route to network
                 context.log.debug(s"No route to network for destination " +
@@ -308,10 +306,10 @@ abstract class RouterBase[IP <: IPAddr]()
                 sendAnswer(inPort.id,
                            icmpErrors.unreachableNetIcmp(inPort, context,
                                                          context.preRoutingMatch))
-                return (rt, ShortDrop)
+                return ShortDrop
             }
 
-            val action = rt.nextHop match {
+            rt.nextHop match {
                 case Route.NextHop.LOCAL if isIcmpEchoRequest(fmatch) =>
                     context.log.debug("Received ICMP echo request: replying")
                     sendIcmpEchoReply(context)
@@ -358,11 +356,10 @@ abstract class RouterBase[IP <: IPAddr]()
                                      dstIP, rt.nextHop)
                     ShortDrop
             }
-
-            (rt, action)
         }
 
-        val (rt, action) = applyRoutingTable()
+        val rt: Route = routeBalancer.lookup(fmatch, context.log)
+        val action = applyRoutingTable(rt)
 
         applyTagsForRoute(rt, action)
 
@@ -466,7 +463,7 @@ abstract class RouterBase[IP <: IPAddr]()
     protected def applyServicesOutbound()(implicit context: PacketContext)
     : RuleResult =
         if (cfg.loadBalancer == null) {
-            new RuleResult(RuleResult.Action.CONTINUE)
+            Chain.Continue
         } else {
             tryGet(classOf[LoadBalancer], cfg.loadBalancer)
                 .processOutbound(context)
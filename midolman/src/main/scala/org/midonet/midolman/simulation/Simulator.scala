@@ -86,25 +86,30 @@ trait SimDevice {
 
     def adminStateUp: Boolean
 
-    private def merge(context: PacketContext, a: Result, b: Result) : Result = {
-        val result = (a, b) match {
-            case (Drop | ShortDrop | NoOp, action) => action
-            case (action, Drop | ShortDrop | NoOp) => action
-
-            case (ErrorDrop, _) => ErrorDrop
-            case (_, ErrorDrop) => ErrorDrop
+    private def isDropOrNoOp(result: Result): Boolean =
+        (result eq Drop) || (result eq ShortDrop) || (result eq NoOp)
 
-            case (first, second) =>
-                val clazz1 = first.getClass
-                val clazz2 = second.getClass
+    // Compares the results directly rather than matching on a tuple, which
+    // would allocate for every branch of a forked action.
+    private def merge(context: PacketContext, a: Result, b: Result) : Result = {
+        val result =
+            if (isDropOrNoOp(a)) {
+                b
+            } else if (isDropOrNoOp(b)) {
+                a
+            } else if ((a eq ErrorDrop) || (b eq ErrorDrop)) {
+                ErrorDrop
+            } else {
+                val clazz1 = a.getClass
+                val clazz2 = b.getClass
                 if (clazz1 != clazz2) {
-                    context.log.error(s"Matching actions ($first, $second) of " +
+                    context.log.error(s"Matching actions ($a, $b) of " +
                                       s"different types $clazz1 & $clazz2!")
                     ErrorDrop
                 } else {
-                    first
+                    a
                 }
-        }
+            }
         context.log.debug(s"Forked action merged results $result")
         result
     }
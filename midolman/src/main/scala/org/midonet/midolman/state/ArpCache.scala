@@ -82,13 +82,21 @@ object ArpCache {
 
         private val arpTable = vt.stateTables.routerArpTable(routerId)
         arpTable.start()
+        private val writer = vt.stateTableWriter
+        private val writeBehindTable = writer.table(arpTable)
 
-        /** Gets an entry from the underlying ARP table. The request only
-          * queries local state. */
-        override def get(ipAddr: IPv4Addr): ArpEntry = arpTable.getLocal(ipAddr)
+        /** Gets an entry from the underlying ARP table, including the entries
+          * not yet written. The request only queries local state. */
+        override def get(ipAddr: IPv4Addr): ArpEntry =
+            writeBehindTable.getLocal(ipAddr)
         /** Adds an ARP entry to the underlying ARP table. The operation is
-          * scheduled on the topology IO executor. */
+          * deferred to the state table writer if write-behind is enabled, or
+          * otherwise scheduled on the topology IO executor. */
         override def add(ipAddr: IPv4Addr, entry: ArpEntry): Unit = {
+            if (writer.isWriteBehind) {
+                writeBehindTable.add(ipAddr, entry)
+                return
+            }
             vt.executeIo {
                 try {
                     arpTable.add(ipAddr, entry)
@@ -100,8 +108,13 @@ object ArpCache {
             }
         }
         /** Removes an ARP entry from the underlying ARP table. The operation is
-          * scheduled on the topology IO executor. */
+          * deferred to the state table writer if write-behind is enabled, or
+          * otherwise scheduled on the topology IO executor. */
         override def remove(ipAddr: IPv4Addr): Unit = {
+            if (writer.isWriteBehind) {
+                writeBehindTable.remove(ipAddr)
+                return
+            }
             vt.executeIo {
                 try {
                     arpTable.remove(ipAddr)
@@ -112,8 +125,9 @@ object ArpCache {
                 }
             }
         }
-        /** Observable that emits ARP cache updates. */
-        override val observable: Observable[ArpCacheUpdate] = arpTable
+        /** Observable that emits ARP cache updates, including the entries
+          * not yet written. */
+        override val observable: Observable[ArpCacheUpdate] = writeBehindTable
             .observable
             .filter(makeFunc1 { update =>
                 if ((update.oldValue eq null) && (update.newValue eq null)) false
@@ -129,7 +143,7 @@ object ArpCache {
             })
         /** Closes the ARP cache. */
         override def close(): Unit = {
-            arpTable.stop()
+            writeBehindTable.stop()
         }
     }
 }
\ No newline at end of file
@@ -16,6 +16,7 @@
 
 package org.midonet.midolman.state
 
+import java.nio.ByteBuffer
 import java.util.UUID
 
 import akka.actor.ActorSystem
@@ -26,8 +27,9 @@ import org.midonet.midolman.state.FlowState.FlowStateKey
 import org.midonet.midolman.topology.VirtualTopology
 import org.midonet.odp.FlowMatch
 import org.midonet.packets.ConnTrackState.{ConnTrackKeyAllocator, ConnTrackKeyStore}
-import org.midonet.packets.{ICMP, IPAddr, IPv4, TCP, UDP}
+import org.midonet.packets.{ICMP, IPAddr, IPv4, IPv4Addr, IPv6Addr, TCP, UDP}
 import org.midonet.sdn.state.FlowStateTransaction
+import org.midonet.util.concurrent.OffHeapTimedExpirationMap.Codec
 
 object ConnTrackState {
     type ConnTrackValue = java.lang.Boolean
@@ -78,6 +80,84 @@ object ConnTrackState {
         }
         or.intValue()
     }
+
+    /**
+     * Fixed-width encoding of a connection tracking key for the off-heap flow
+     * state tables. Addresses take 16 bytes, such that both IPv4 and IPv6
+     * keys can be stored, and are tagged with their IP version.
+     */
+    object ConnTrackKeyCodec extends Codec[ConnTrackKey] {
+        private final val DeviceIdOffset = 0
+        private final val TransportSrcOffset = 16
+        private final val TransportDstOffset = 20
+        private final val ProtocolOffset = 24
+        private final val SrcVersionOffset = 25
+        private final val DstVersionOffset = 26
+        private final val NetworkSrcOffset = 32
+        private final val NetworkDstOffset = 48
+
+        override val width = 64
+
+        override def encode(key: ConnTrackKey, buf: ByteBuffer,
+                            offset: Int): Unit = {
+            buf.putLong(offset + DeviceIdOffset,
+                        key.deviceId.getMostSignificantBits)
+            buf.putLong(offset + DeviceIdOffset + 8,
+                        key.deviceId.getLeastSignificantBits)
+            buf.putInt(offset + TransportSrcOffset, key.icmpIdOrTransportSrc)
+            buf.putInt(offset + TransportDstOffset, key.icmpIdOrTransportDst)
+            buf.put(offset + ProtocolOffset, key.networkProtocol)
+            encodeAddress(key.networkSrc, buf, offset + SrcVersionOffset,
+                          offset + NetworkSrcOffset)
+            encodeAddress(key.networkDst, buf, offset + DstVersionOffset,
+                          offset + NetworkDstOffset)
+        }
+
+        override def decode(buf: ByteBuffer, offset: Int): ConnTrackKey =
+            ConnTrackKey(
+                decodeAddress(buf, offset + SrcVersionOffset,
+                              offset + NetworkSrcOffset),
+                buf.getInt(offset + TransportSrcOffset),
+                decodeAddress(buf, offset + DstVersionOffset,
+                              offset + NetworkDstOffset),
+                buf.getInt(offset + TransportDstOffset),
+                buf.get(offset + ProtocolOffset),
+                new UUID(buf.getLong(offset + DeviceIdOffset),
+                         buf.getLong(offset + DeviceIdOffset + 8)))
+
+        private def encodeAddress(address: IPAddr, buf: ByteBuffer,
+                                  versionOffset: Int, offset: Int): Unit =
+            address match {
+                case ip: IPv4Addr =>
+                    buf.put(versionOffset, 4.toByte)
+                    buf.putInt(offset, ip.toInt)
+                case ip: IPv6Addr =>
+                    buf.put(versionOffset, 6.toByte)
+                    buf.putLong(offset, ip.upperWord)
+                    buf.putLong(offset + 8, ip.lowerWord)
+                case _ =>
+            }
+
+        private def decodeAddress(buf: ByteBuffer, versionOffset: Int,
+                                  offset: Int): IPAddr =
+            buf.get(versionOffset).toInt match {
+                case 4 => new IPv4Addr(buf.getInt(offset))
+                case 6 => new IPv6Addr(buf.getLong(offset),
+                                       buf.getLong(offset + 8))
+                case _ => null
+            }
+    }
+
+    object ConnTrackValueCodec extends Codec[ConnTrackValue] {
+        override val width = 1
+
+        override def encode(value: ConnTrackValue, buf: ByteBuffer,
+                            offset: Int): Unit =
+            buf.put(offset, if (value.booleanValue()) 1.toByte else 0.toByte)
+
+        override def decode(buf: ByteBuffer, offset: Int): ConnTrackValue =
+            java.lang.Boolean.valueOf(buf.get(offset) != 0)
+    }
 }
 
 /**
@@ -82,13 +82,16 @@ import org.midonet.util.functors.Callback0
  *     expirations, making use of the internal state that keeps track of which
  *     hosts received what.
  *
- *   3 Received state will always be processed by the same packet processing
- *     thread, because state packets have all the same flow match. It will be
- *     written to its local shard.
+ *   3 Received state for a connection will always be processed by the same
+ *     packet processing thread, because state packets are delivered to the
+ *     worker selected by the hash of the connection they describe. It will
+ *     be written to its local shard, and the flows tagged with the received
+ *     keys are invalidated on every thread through peerFlowInvalidation.
  *
  *   4 Received deletion notifications will also be processed by the same
- *     packet processing thread, because of the flow match. This guarantees
- *     that the deletion operation will not cross over to other shards.
+ *     packet processing thread, because of the connection hash. This
+ *     guarantees that the deletion operation will not cross over to other
+ *     shards.
  *
  *   5 Other threads' read operations will spill over to this shard for the
  *     received keys.
@@ -292,6 +295,16 @@ class FlowStateReplicator(
         flowStateSocket.send(flowStatePacket)
     }
 
+    /**
+     * Invalidates the flows tagged with a key received from a peer. Since a
+     * state message is only processed by one packet processing thread, the
+     * owner of the replicator may override this method to invalidate the
+     * flows of the other threads as well.
+     */
+    protected def peerFlowInvalidation(key: FlowTag): Unit = {
+        flowInvalidation.invalidateFlowsFor(key)
+    }
+
     private def acceptNewState(encoder: SbeEncoder) {
         val msg = encoder.flowStateMessage
         val sender = uuidFromSbe(msg.sender)
@@ -302,7 +315,7 @@ class FlowStateReplicator(
             val k = connTrackKeyFromSbe(conntrackIter.next(), ConnTrackKey)
             log.debug("got new conntrack key: {}", k)
             conntrackTable.touch(k, ConnTrackState.RETURN_FLOW)
-            flowInvalidation.invalidateFlowsFor(k)
+            peerFlowInvalidation(k)
         }
 
         val natIter = msg.nat
@@ -312,7 +325,7 @@ class FlowStateReplicator(
             val v = natBindingFromSbe(nat)
             log.debug("Got new nat mapping: {} -> {}", k, v)
             natTable.touch(k, v)
-            flowInvalidation.invalidateFlowsFor(k)
+            peerFlowInvalidation(k)
         }
 
         val traceIter = msg.trace
@@ -30,6 +30,7 @@ import org.midonet.packets.NatState._
 import org.midonet.packets._
 import org.midonet.sdn.state.FlowStateTransaction
 import org.midonet.util.collection.Reducer
+import org.midonet.util.concurrent.OffHeapTimedExpirationMap.Codec
 
 
 object NatState {
@@ -152,6 +153,69 @@ object NatState {
                                          key.transportDst, binding)
         }
 
+    /**
+     * Fixed-width encoding of a NAT key for the off-heap flow state tables.
+     */
+    object NatKeyCodec extends Codec[NatKey] {
+        private final val DeviceIdOffset = 0
+        private final val NetworkSrcOffset = 16
+        private final val NetworkDstOffset = 20
+        private final val TransportSrcOffset = 24
+        private final val TransportDstOffset = 28
+        private final val ProtocolOffset = 32
+        private final val KeyTypeOffset = 33
+
+        private val keyTypes = Array[KeyType](FWD_SNAT, FWD_DNAT,
+                                              FWD_STICKY_DNAT, REV_SNAT,
+                                              REV_DNAT, REV_STICKY_DNAT)
+
+        private def indexOf(keyType: KeyType): Byte = keyType match {
+            case FWD_SNAT => 0
+            case FWD_DNAT => 1
+            case FWD_STICKY_DNAT => 2
+            case REV_SNAT => 3
+            case REV_DNAT => 4
+            case REV_STICKY_DNAT => 5
+        }
+
+        override val width = 34
+
+        override def encode(key: NatKey, buf: ByteBuffer, offset: Int): Unit = {
+            buf.putLong(offset + DeviceIdOffset,
+                        key.deviceId.getMostSignificantBits)
+            buf.putLong(offset + DeviceIdOffset + 8,
+                        key.deviceId.getLeastSignificantBits)
+            buf.putInt(offset + NetworkSrcOffset, key.networkSrc.toInt)
+            buf.putInt(offset + NetworkDstOffset, key.networkDst.toInt)
+            buf.putInt(offset + TransportSrcOffset, key.transportSrc)
+            buf.putInt(offset + TransportDstOffset, key.transportDst)
+            buf.put(offset + ProtocolOffset, key.networkProtocol)
+            buf.put(offset + KeyTypeOffset, indexOf(key.keyType))
+        }
+
+        override def decode(buf: ByteBuffer, offset: Int): NatKey =
+            NatKey(keyTypes(buf.get(offset + KeyTypeOffset)),
+                   new IPv4Addr(buf.getInt(offset + NetworkSrcOffset)),
+                   buf.getInt(offset + TransportSrcOffset),
+                   new IPv4Addr(buf.getInt(offset + NetworkDstOffset)),
+                   buf.getInt(offset + TransportDstOffset),
+                   buf.get(offset + ProtocolOffset),
+                   new UUID(buf.getLong(offset + DeviceIdOffset),
+                            buf.getLong(offset + DeviceIdOffset + 8)))
+    }
+
+    object NatBindingCodec extends Codec[NatBinding] {
+        override val width = 8
+
+        override def encode(binding: NatBinding, buf: ByteBuffer,
+                            offset: Int): Unit = {
+            buf.putInt(offset, binding.networkAddress.toInt)
+            buf.putInt(offset + 4, binding.transportPort)
+        }
+
+        override def decode(buf: ByteBuffer, offset: Int): NatBinding =
+            NatBinding(new IPv4Addr(buf.getInt(offset)), buf.getInt(offset + 4))
+    }
 }
 
 trait NatState extends FlowState { this: PacketContext =>
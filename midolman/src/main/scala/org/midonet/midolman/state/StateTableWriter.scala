@@ -0,0 +1,327 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.midolman.state
+
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.{ConcurrentHashMap, ConcurrentLinkedQueue, Executors, ScheduledExecutorService, TimeUnit}
+
+import scala.util.control.NonFatal
+
+import com.codahale.metrics.MetricRegistry
+
+import rx.Observable
+import rx.subjects.PublishSubject
+
+import org.midonet.cluster.data.storage.StateTable
+import org.midonet.cluster.data.storage.StateTable.Update
+import org.midonet.midolman.logging.MidolmanLogging
+import org.midonet.midolman.monitoring.metrics.StateTableWriterMetrics
+import org.midonet.midolman.state.StateTableWriter.Write
+import org.midonet.util.concurrent.NamedThreadFactory
+import org.midonet.util.functors.{makeFunc1, makeRunnable}
+
+object StateTableWriter {
+
+    /** A pending write for a state table key: an addition of the value, a
+      * removal of the value, or a removal of any value if the value is
+      * `null`. */
+    private[state] final class Write[V](val value: V, val add: Boolean)
+
+}
+
+/**
+  * A write-behind table in front of a [[StateTable]] written by the agent,
+  * such as the ARP table of a router or the MAC learning table of a bridge.
+  * The writes are stored in a local map of pending writes, where the last
+  * write to a key replaces any previous pending write, and the
+  * [[StateTableWriter]] flushes them to the state table periodically. The
+  * reads return the pending value immediately, and otherwise the local value
+  * of the state table. Likewise, the table observable emits the updates of
+  * the pending writes immediately, and drops the matching updates of the
+  * state table once the writes are flushed.
+  *
+  * When the writer is not in write-behind mode, the writes are applied to
+  * the state table immediately on the calling thread.
+  */
+final class WriteBehindTable[K, V] private[state](val table: StateTable[K, V],
+                                                  writer: StateTableWriter) {
+
+    private val pending = new ConcurrentHashMap[K, Write[V]]()
+    private val dirty = new AtomicBoolean()
+    @volatile private var closed = false
+
+    // The updates emitted for the pending writes, and the last such write
+    // for every key, whose update from the state table is not emitted again.
+    private val localUpdates = PublishSubject.create[Update[K, V]]().toSerialized
+    private val echoes = new ConcurrentHashMap[K, Write[V]]()
+
+    /** An observable that emits the updates of the table, including the
+      * pending writes of this node. */
+    lazy val observable: Observable[Update[K, V]] =
+        if (writer.isWriteBehind) {
+            Observable.merge(localUpdates, table.observable.filter(
+                makeFunc1((update: Update[K, V]) => !isEcho(update))))
+        } else {
+            table.observable
+        }
+
+    /** Gets the value for the specified key, including the pending writes. */
+    def getLocal(key: K): V = {
+        val write = pending.get(key)
+        if (write eq null) {
+            table.getLocal(key)
+        } else if (write.add) {
+            write.value
+        } else if (write.value == null) {
+            null.asInstanceOf[V]
+        } else {
+            val value = table.getLocal(key)
+            if (value == write.value) null.asInstanceOf[V] else value
+        }
+    }
+
+    /** Adds or replaces the value for the specified key. */
+    def add(key: K, value: V): Unit = {
+        write(key, new Write(value, add = true))
+    }
+
+    /** Removes any value for the specified key. */
+    def remove(key: K): Unit = {
+        write(key, new Write(null.asInstanceOf[V], add = false))
+    }
+
+    /** Removes the specified key-value pair. If there is a pending addition
+      * of a different value for the same key, the removal is discarded,
+      * because the new value replaces the previous one. Returns `false` if
+      * the removal is discarded or, when writing through, if the state table
+      * has no such entry owned by this node. */
+    def remove(key: K, value: V): Boolean = {
+        val write = new Write(value, add = false)
+        if (!writer.isWriteBehind) {
+            return writer.apply(table, key, write)
+        }
+        val oldValue = getLocal(key)
+        var done = false
+        do {
+            val current = pending.get(key)
+            if ((current ne null) && current.add && current.value != value) {
+                writer.metrics.writeRequested(coalesced = true)
+                return false
+            }
+            done =
+                if (current eq null) pending.putIfAbsent(key, write) eq null
+                else pending.replace(key, current, write)
+            if (done) {
+                writer.metrics.writeRequested(coalesced = current ne null)
+            }
+        } while (!done)
+        if (oldValue == value) {
+            publish(key, oldValue, write)
+        }
+        schedule()
+        true
+    }
+
+    /** Flushes the pending writes and stops the underlying state table. The
+      * table is removed from the writer, which ignores it afterwards. */
+    def stop(): Unit = synchronized {
+        closed = true
+        writer.unschedule(this)
+        writePending(Int.MaxValue)
+        table.stop()
+    }
+
+    /** Writes up to the specified number of pending writes to the state table
+      * and returns the number of writes. A pending write remains in the local
+      * map until written, unless replaced by a newer write. A stopped table
+      * is not written. */
+    private[state] def flush(maxWrites: Int): Int = synchronized {
+        if (closed) {
+            return 0
+        }
+        dirty set false
+        val count = writePending(maxWrites)
+        if (!pending.isEmpty) {
+            schedule()
+        }
+        count
+    }
+
+    private def writePending(maxWrites: Int): Int = {
+        var count = 0
+        val iterator = pending.entrySet().iterator()
+        while (count < maxWrites && iterator.hasNext) {
+            val entry = iterator.next()
+            if (!writer.apply(table, entry.getKey, entry.getValue)) {
+                // The state table will not emit an update for this write.
+                echoes.remove(entry.getKey, entry.getValue)
+            }
+            pending.remove(entry.getKey, entry.getValue)
+            count += 1
+        }
+        count
+    }
+
+    private def write(key: K, write: Write[V]): Unit = {
+        if (!writer.isWriteBehind) {
+            writer.apply(table, key, write)
+            return
+        }
+        val oldValue = getLocal(key)
+        val previous = pending.put(key, write)
+        writer.metrics.writeRequested(coalesced = previous ne null)
+        publish(key, oldValue, write)
+        schedule()
+    }
+
+    /** Emits the update for a pending write, if it changes the value of the
+      * key. */
+    private def publish(key: K, oldValue: V, write: Write[V]): Unit = {
+        val newValue = if (write.add) write.value else null.asInstanceOf[V]
+        if (oldValue != newValue) {
+            echoes.put(key, write)
+            localUpdates.onNext(Update(key, oldValue, newValue))
+        }
+    }
+
+    /** Indicates whether an update of the state table is the result of a
+      * pending write whose update was already emitted. */
+    private def isEcho(update: Update[K, V]): Boolean = {
+        val echo = echoes.get(update.key)
+        (echo ne null) &&
+        (if (echo.add) echo.value == update.newValue
+         else update.newValue == null) &&
+        echoes.remove(update.key, echo)
+    }
+
+    private def schedule(): Unit = {
+        if (!closed && dirty.compareAndSet(false, true)) {
+            writer.schedule(this)
+        }
+    }
+
+}
+
+/**
+  * Coalesces and rate-limits the writes of the agent to the learning state
+  * tables, such as the ARP and MAC learning tables, which otherwise issue one
+  * storage write for every learned entry. Every `interval` milliseconds, the
+  * writer flushes the pending writes of the tables with changes, up to
+  * `maxWrites` writes per interval, in the order in which the tables changed.
+  *
+  * If the interval is zero, the write-behind is disabled and the tables
+  * write through to storage.
+  */
+class StateTableWriter(interval: Long, maxWrites: Int,
+                       registry: MetricRegistry) extends MidolmanLogging {
+
+    override def logSource = "org.midonet.state.table-writer"
+
+    private[state] val metrics = new StateTableWriterMetrics(registry)
+
+    /** Indicates whether the tables defer their writes. */
+    val isWriteBehind = interval > 0
+
+    private val queue = new ConcurrentLinkedQueue[WriteBehindTable[_, _]]()
+    private val executor: ScheduledExecutorService =
+        if (isWriteBehind) {
+            val executor = Executors.newSingleThreadScheduledExecutor(
+                new NamedThreadFactory("state-table-writer", isDaemon = true))
+            executor.scheduleWithFixedDelay(makeRunnable { flush() },
+                                            interval, interval,
+                                            TimeUnit.MILLISECONDS)
+            executor
+        } else null
+
+    /** Creates a write-behind table for the specified state table. */
+    def table[K, V](table: StateTable[K, V]): WriteBehindTable[K, V] = {
+        new WriteBehindTable(table, this)
+    }
+
+    /** Flushes the pending writes of the tables with changes, within the
+      * maximum number of writes per interval. The tables that still have
+      * pending writes are flushed again at the next interval. */
+    def flush(): Unit = {
+        var budget = if (maxWrites > 0) maxWrites else Int.MaxValue
+        var count = 0
+        var tables = queue.size()
+        while (tables > 0 && budget > 0) {
+            val table = queue.poll()
+            if (table eq null) {
+                tables = 0
+            } else {
+                val written = table.flush(budget)
+                budget -= written
+                count += written
+                tables -= 1
+            }
+        }
+        if (count > 0) {
+            metrics.flushed(count)
+        }
+    }
+
+    /** Stops the writer, flushing all pending writes. */
+    def stop(): Unit = {
+        if (executor ne null) {
+            executor.shutdown()
+            executor.awaitTermination(5, TimeUnit.SECONDS)
+        }
+        var table = queue.poll()
+        while (table ne null) {
+            table.flush(Int.MaxValue)
+            table = queue.poll()
+        }
+    }
+
+    private[state] def schedule(table: WriteBehindTable[_, _]): Unit = {
+        queue offer table
+    }
+
+    private[state] def unschedule(table: WriteBehindTable[_, _]): Unit = {
+        while (queue remove table) { }
+    }
+
+    /** Applies a write to the state table, and returns `false` if the write
+      * failed or if the state table has no entry owned by this node for a
+      * removed key-value pair. */
+    private[state] def apply[K, V](table: StateTable[K, V], key: K,
+                                   write: Write[V]): Boolean = {
+        try {
+            if (write.add) {
+                table.add(key, write.value)
+                true
+            } else if (write.value == null) {
+                table.remove(key)
+                true
+            } else if (table.remove(key, write.value)) {
+                true
+            } else {
+                log.debug(s"No entry for key $key value ${write.value} " +
+                          s"owned by this node in state table")
+                false
+            }
+        } catch {
+            case NonFatal(e) =>
+                metrics.failedWrites.inc()
+                log.warn(s"Failed to write key $key value ${write.value} " +
+                         s"to state table", e)
+                false
+        }
+    }
+
+}
@@ -99,7 +99,9 @@ object BridgeMapper {
      * the given bridge and VLAN, and exposes an [[rx.Observable]] with
      * notifications for MAC-port updates. A complete() methods stops watching
      * the underlying [[ReplicatedMap]] and completes the exposed observable
-     * when the VLAN is no longer present on the bridge.
+     * when the VLAN is no longer present on the bridge. The writes go through
+     * the state table writer of the virtual topology, which may defer and
+     * coalesce them.
      */
     private class BridgeMacLearningTable(vt: VirtualTopology, bridgeId: UUID,
                                          vlanId: Short, log: Logger)
@@ -108,8 +110,9 @@ object BridgeMapper {
         private val mark = PublishSubject.create[MacTableUpdate]
         private val table = vt.stateTables.bridgeMacTable(bridgeId, vlanId)
         table.start()
+        private val writeBehindTable = vt.stateTableWriter.table(table)
 
-        val observable = table.observable
+        val observable = writeBehindTable.observable
             .map[MacTableUpdate](makeFunc1(update => {
                 MacTableUpdate(vlanId, update.key, update.oldValue,
                                update.newValue)
@@ -117,13 +120,13 @@ object BridgeMapper {
             .takeUntil(mark)
 
         /** Gets the port for the specified MAC. */
-        override def get(mac: MAC): UUID = table.getLocal(mac)
+        override def get(mac: MAC): UUID = writeBehindTable.getLocal(mac)
         /** Adds a new MAC-port mapping to the MAC learning table. */
         override def add(mac: MAC, portId: UUID): Unit = {
             try {
                 log.debug("Mapping MAC {}, VLAN {} to port {}",
                           mac, Short.box(vlanId), portId)
-                table.add(mac, portId)
+                writeBehindTable.add(mac, portId)
             } catch {
                 case NonFatal(e) =>
                     log.warn("Failed to map MAC {}, VLAN {} to port {}",
@@ -136,7 +139,7 @@ object BridgeMapper {
             log.debug("Removing mapping from MAC {}, VLAN {} to port {}",
                       mac, vlanIdObj, portId)
             try {
-                if (!table.remove(mac, portId))
+                if (!writeBehindTable.remove(mac, portId))
                     log.debug("No mapping from MAC {}, VLAN {} to port {} " +
                               "owned by this node.", mac, vlanIdObj, portId)
             } catch {
@@ -147,7 +150,7 @@ object BridgeMapper {
         }
         /** Stops the underlying replicated map and completes the observable. */
         def complete(): Unit = {
-            table.stop()
+            writeBehindTable.stop()
             mark.onCompleted()
         }
 
@@ -282,8 +285,10 @@ final class BridgeMapper(bridgeId: UUID, override val vt: VirtualTopology,
     override def logSource = "org.midonet.devices.bridge"
     override def logMark = s"bridge:$bridgeId"
 
-    private val mirrorsTracker = new ObjectReferenceTracker(vt, classOf[Mirror], log)
-    private val chainsTracker = new ObjectReferenceTracker(vt, classOf[Chain], log)
+    private val mirrorsTracker =
+        new ObjectReferenceTracker(vt, classOf[Mirror], log, shard)
+    private val chainsTracker =
+        new ObjectReferenceTracker(vt, classOf[Chain], log, shard)
     private var bridge: TopologyBridge = null
     private val localPorts = new mutable.HashMap[UUID, LocalPortState]
     private val peerPorts = new mutable.HashMap[UUID, PeerPortState]
@@ -330,7 +335,7 @@ final class BridgeMapper(bridgeId: UUID, override val vt: VirtualTopology,
             vt.config.bridge.macPortMappingExpiry, // Initial delay
             2000L, // Update interval
             MILLISECONDS, // Time unit
-            vt.vtScheduler)
+            vtScheduler)
         .subscribe(makeAction1(onMacExpirationTimer), makeAction1(onThrow))
 
     // A subject that emits updates when the bridge state table have loaded.
@@ -358,15 +363,15 @@ final class BridgeMapper(bridgeId: UUID, override val vt: VirtualTopology,
     //                           +-----------------------+
     private lazy val stateTableObservable = Observable
         .merge(stateTableSubject)
-        .observeOn(vt.vtScheduler)
+        .observeOn(vtScheduler)
         .map[TopologyBridge](makeFunc1(stateTableReady))
     private lazy val portsObservable = Observable
         .merge(portsSubject)
         .filter(makeFunc1(isPortKnown))
         .map[TopologyBridge](makeFunc1(portUpdated))
-    private lazy val bridgeObservable = vt.store
-        .observable(classOf[TopologyBridge], bridgeId)
-        .observeOn(vt.vtScheduler)
+    private lazy val bridgeObservable = vt
+        .objectObservable(classOf[TopologyBridge], bridgeId)
+        .observeOn(vtScheduler)
         .doOnCompleted(makeAction0(bridgeDeleted()))
         .doOnNext(makeAction1(bridgeUpdated))
     private lazy val deviceObservable = Observable
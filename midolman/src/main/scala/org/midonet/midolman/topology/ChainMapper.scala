@@ -45,8 +45,10 @@ object ChainMapper {
      *
      * @param ruleId The id of the rule we want to start observing.
      * @param vt The virtual topology object.
+     * @param shard The virtual topology shard of the chain.
      */
-    private final class RuleState(val ruleId: UUID, vt: VirtualTopology)
+    private final class RuleState(val ruleId: UUID, vt: VirtualTopology,
+                                  shard: VirtualTopologyShard)
             extends MidolmanLogging {
         override def logSource = "org.midonet.devices.rule"
         override def logMark = s"rule:$ruleId"
@@ -68,8 +70,8 @@ object ChainMapper {
             })
 
         /** The observable emitting Rule updates. */
-        val observable = vt.store.observable(classOf[TopologyRule],ruleId)
-            .observeOn(vt.vtScheduler)
+        val observable = vt.objectObservable(classOf[TopologyRule],ruleId)
+            .observeOn(shard.scheduler)
             .onErrorResumeNext(notFoundHandler)
             .takeUntil(mark)
             .map[RuleState](makeFunc1(ruleUpdated))
@@ -141,7 +143,8 @@ final class ChainMapper(chainId: UUID, vt: VirtualTopology,
     override def logMark = s"chain:$chainId"
 
     private var chainProto: TopologyChain = TopologyChain.newBuilder.build()
-    private val refTracker = new ObjectReferenceTracker(vt, classOf[SimChain], log)
+    private val refTracker =
+        new ObjectReferenceTracker(vt, classOf[SimChain], log, shard)
 
     // The stream of rules that belong to this chain
     private val ruleStream = PublishSubject.create[Observable[RuleState]]()
@@ -159,7 +162,7 @@ final class ChainMapper(chainId: UUID, vt: VirtualTopology,
     private val ipAddrGroups = new mutable.HashMap[UUID, IpAddressGroupState]()
 
     private val ruleLoggerTracker =
-        new ObjectReferenceTracker(vt, classOf[RuleLogger], log)
+        new ObjectReferenceTracker(vt, classOf[RuleLogger], log, shard)
 
     private def subscribeToJumpChain(jumpChainId: UUID): Unit = {
         jumpChains get jumpChainId match {
@@ -227,7 +230,7 @@ final class ChainMapper(chainId: UUID, vt: VirtualTopology,
         val addedRules = new mutable.MutableList[RuleState]
         for (ruleId <- ruleIds if !rules.contains(ruleId)) {
             log.debug("Subscribing to rule: {}", ruleId)
-            val ruleState = new RuleState(ruleId, vt)
+            val ruleState = new RuleState(ruleId, vt, shard)
             rules += ruleId -> ruleState
             addedRules += ruleState
         }
@@ -395,8 +398,8 @@ final class ChainMapper(chainId: UUID, vt: VirtualTopology,
     }
 
     private lazy val chainObservable =
-        vt.store.observable(classOf[TopologyChain], chainId)
-            .observeOn(vt.vtScheduler)
+        vt.objectObservable(classOf[TopologyChain], chainId)
+            .observeOn(vtScheduler)
             .map[TopologyChain](makeFunc1(chainUpdated))
             .doOnCompleted(makeAction0(chainDeleted()))
 
@@ -441,7 +444,14 @@ final class ChainMapper(chainId: UUID, vt: VirtualTopology,
                                    (t: Throwable) => {
                                        traceChainMap.get(chainId) match {
                                            case Some(subject) =>
-                                               subject.doOnTerminate(
+                                               // The trace chain is published
+                                               // by the mapper of its device,
+                                               // which may run on another shard.
+                                               val traceChain =
+                                                   if (vt.isSharded)
+                                                       subject.observeOn(vtScheduler)
+                                                   else subject
+                                               traceChain.doOnTerminate(
                                                    makeAction0(chainDeleted()))
                                            case None => throw t
                                        }
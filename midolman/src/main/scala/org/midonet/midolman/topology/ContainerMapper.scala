@@ -95,7 +95,7 @@ object ContainerMapper {
         private val mark = PublishSubject.create[ServiceContainer]()
 
         val observable =
-            vt.store.observable(classOf[ServiceContainer], containerId)
+            vt.objectObservable(classOf[ServiceContainer], containerId)
                 .map[(String, UUID, UUID)](makeFunc1 { c =>
                     val serviceType = if (c.hasServiceType) c.getServiceType
                                       else null
@@ -160,7 +160,7 @@ object ContainerMapper {
         private val mark = PublishSubject.create[Notification]
 
         val observable =
-            vt.store.observable(classOf[Port], portId)
+            vt.objectObservable(classOf[Port], portId)
                 .map[PortBinding](makeFunc1(fromProto(_, classOf[PortBinding])))
                 .distinctUntilChanged()
                 .observeOn(vt.vtScheduler)
@@ -387,7 +387,7 @@ final class ContainerMapper(hostId: UUID, vt: VirtualTopology)
     }
 
     private lazy val hostObservable =
-        vt.store.observable(classOf[Host], hostId)
+        vt.objectObservable(classOf[Host], hostId)
             .map[Set[UUID]](makeFunc1(_.getPortIdsList.asScala.map(_.asJava).toSet))
             .distinctUntilChanged()
             .observeOn(vt.vtScheduler)
@@ -20,6 +20,7 @@ import java.util.UUID
 import javax.annotation.Nullable
 
 import scala.collection.mutable
+import scala.util.control.NonFatal
 
 import com.google.protobuf.Message
 
@@ -94,7 +95,7 @@ object DeviceMapper {
         protected var currentDevice: T = null
         protected val mark = PublishSubject.create[T]
 
-        /** The device observable, notifications on the VT thread. */
+        /** The device observable, notifications on the shard thread. */
         def observable: Observable[T] = source
             .doOnNext(makeAction1(currentDevice = _))
             .doOnCompleted(makeAction0(() => currentDevice = null))
@@ -130,6 +131,10 @@ object DeviceMapper {
  *  - all subscribers correspond to a single subscription to storage
  *  - the [[DeviceMapper]] observer can execute the custom actions before
  *    subscribers are notified.
+ *
+ * Each mapper runs on the [[VirtualTopologyShard]] of its device identifier.
+ * The notifications from storage and from other devices must be observed on
+ * the mapper `vtScheduler`, which corresponds to the shard thread.
  */
 abstract class DeviceMapper[D <: Device](val clazz: Class[D], val id: UUID,
                                          val vt: VirtualTopology)
@@ -147,6 +152,12 @@ abstract class DeviceMapper[D <: Device](val clazz: Class[D], val id: UUID,
     private val timestamp = System.nanoTime()
     private var initialized = false
 
+    /** The virtual topology shard that builds this device. */
+    protected[topology] final val shard = vt.shardOf(id)
+
+    /** The scheduler of the virtual topology shard of this device. */
+    protected[topology] final def vtScheduler = shard.scheduler
+
     /**
      * An implementing class must override this method, which is called
      * whenever the device observable receives a new subscriber.
@@ -158,7 +169,7 @@ abstract class DeviceMapper[D <: Device](val clazz: Class[D], val id: UUID,
     protected def observable: Observable[D]
 
     override final def call(child: Subscriber[_ >: D]): Unit =
-        vt.vtExecutor.submit(makeRunnable {
+        executeVt {
             if (!handleSubscriptionIfTerminal(child)) {
                 if (state == MapperState.Unsubscribed) {
                     state = MapperState.Subscribed
@@ -166,7 +177,7 @@ abstract class DeviceMapper[D <: Device](val clazz: Class[D], val id: UUID,
                 }
                 cache subscribe child
             }
-        })
+        }
 
     override final def onCompleted() = {
         assertThread()
@@ -211,6 +222,8 @@ abstract class DeviceMapper[D <: Device](val clazz: Class[D], val id: UUID,
         log.debug(s"Device ${clazz.getSimpleName}:$id updated: $device")
         vt.devices.put(id, device)
         vt.metrics.deviceUpdate(clazz)
+        vt.metrics.deviceBuild(clazz,
+                               System.nanoTime() - shard.currentTaskStartTime)
         if (!initialized) {
             initialized = true
             vt.metrics.deviceLatency(clazz, System.nanoTime() - timestamp)
@@ -221,11 +234,23 @@ abstract class DeviceMapper[D <: Device](val clazz: Class[D], val id: UUID,
     protected def onDeviceChanged(device: D): Unit = {}
 
     /**
-     * Checks that this method is executed on the same thread as the one used
-     * during the initialization of the mapper.
+     * Checks that this method is executed on the thread of the virtual
+     * topology shard of this device.
      */
     @throws[DeviceMapperException]
-    @inline protected def assertThread(): Unit = vt.assertThread()
+    @inline protected def assertThread(): Unit = shard.assertThread()
+
+    /** Safely executes a task on the thread of the shard of this device. */
+    protected def executeVt(task: => Unit): Unit = {
+        shard.execute(makeRunnable {
+            try {
+                task
+            } catch {
+                case NonFatal(e) =>
+                    log.error("Uncaught exception on topology thread.", e)
+            }
+        })
+    }
 
     /**
      * Synchronize devices with the new list of deviceIds. Complete and remove
@@ -293,10 +318,10 @@ abstract class DeviceMapper[D <: Device](val clazz: Class[D], val id: UUID,
             deviceIds: Set[UUID], devices: mutable.Map[UUID, DeviceState[T]],
             devicesObserver: Observer[Observable[T]], vt: VirtualTopology): Unit = {
         updateDeviceState(deviceIds, devices, devicesObserver) { id =>
-            new DeviceState[T](id, vt.store
-                .observable(uClass, id)
+            new DeviceState[T](id, vt
+                .objectObservable(uClass, id)
                 .distinctUntilChanged()
-                .observeOn(vt.vtScheduler)
+                .observeOn(vtScheduler)
                 .map[T](makeFunc1(fromProto[T, U](_, tClass))))
         }
     }
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.midolman.topology
+
+import java.util.UUID
+
+import org.midonet.cluster.data.ZoomConvert
+import org.midonet.cluster.models.Topology.{Dhcp => TopologyDhcp}
+import org.midonet.midolman.topology.devices.Dhcp
+import org.midonet.util.functors.makeFunc1
+
+/**
+ * A device mapper that exposes an [[rx.Observable]] with notifications for a
+ * DHCP subnet. The subnet device indexes its hosts by MAC address and holds
+ * the prebuilt subnet options of the DHCP replies, such that the DHCP requests
+ * are answered from the virtual topology cache without reading the subnet
+ * from storage. DHCP replies do not install flows, and therefore the subnet
+ * updates do not invalidate any flows.
+ */
+class DhcpMapper(id: UUID, vt: VirtualTopology)
+    extends DeviceMapper(classOf[Dhcp], id, vt) {
+
+    override def logSource = "org.midonet.devices.dhcp"
+    override def logMark = s"dhcp:$id"
+
+    protected override def observable =
+        vt.objectObservable(classOf[TopologyDhcp], id)
+            .distinctUntilChanged
+            .map[Dhcp](makeFunc1(ZoomConvert.fromProto(_, classOf[Dhcp])))
+            .observeOn(vtScheduler)
+}
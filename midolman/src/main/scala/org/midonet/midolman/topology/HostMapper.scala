@@ -202,14 +202,14 @@ final class HostMapper(hostId: UUID, vt: VirtualTopology)
     // Ownership changes modify the version of the host and will thus
     // trigger a host update, hence the 'distinctUntilChanged'.
     private lazy val hostObservable =
-        vt.store.observable(classOf[TopologyHost], hostId)
-            .observeOn(vt.vtScheduler)
+        vt.objectObservable(classOf[TopologyHost], hostId)
+            .observeOn(vtScheduler)
             .distinctUntilChanged
             .doOnCompleted(makeAction0(hostDeleted()))
 
     private lazy val aliveObservable =
         vt.stateStore.keyObservable(classOf[TopologyHost], hostId, AliveKey)
-            .observeOn(vt.vtScheduler)
+            .observeOn(vtScheduler)
             .map[Boolean](makeFunc1(aliveUpdated))
             .distinctUntilChanged
             .onErrorResumeNext(Observable.empty)
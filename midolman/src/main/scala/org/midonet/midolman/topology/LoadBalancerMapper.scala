@@ -50,9 +50,9 @@ final class LoadBalancerMapper(loadBalancerId: UUID, vt: VirtualTopology)
             loadBalancer
         })
 
-    private lazy val loadBalancerObservable = vt.store
-        .observable[TopologyLb](classOf[TopologyLb], loadBalancerId)
-        .observeOn(vt.vtScheduler)
+    private lazy val loadBalancerObservable = vt
+        .objectObservable(classOf[TopologyLb], loadBalancerId)
+        .observeOn(vtScheduler)
         .doOnCompleted(makeAction0(loadBalancerDeleted()))
         .doOnNext(makeAction1(loadBalancerUpdated))
 
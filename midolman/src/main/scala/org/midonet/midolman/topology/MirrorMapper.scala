@@ -39,7 +39,7 @@ final class MirrorMapper(id: UUID, vt: VirtualTopology)
     private var mirrorProto: TopologyMirror = TopologyMirror.newBuilder.build()
 
     private val addressGroupsTracker =
-        new ObjectReferenceTracker(vt, classOf[SimIPAddrGroup], log)
+        new ObjectReferenceTracker(vt, classOf[SimIPAddrGroup], log, shard)
 
     private def mirrorUpdated(mirror: TopologyMirror): TopologyMirror = {
         assertThread()
@@ -94,8 +94,8 @@ final class MirrorMapper(id: UUID, vt: VirtualTopology)
     }
 
     private lazy val mirrorObservable =
-        vt.store.observable(classOf[TopologyMirror], id)
-            .observeOn(vt.vtScheduler)
+        vt.objectObservable(classOf[TopologyMirror], id)
+            .observeOn(vtScheduler)
             .map[TopologyMirror](makeFunc1(mirrorUpdated))
             .doOnCompleted(makeAction0(mirrorDeleted()))
 
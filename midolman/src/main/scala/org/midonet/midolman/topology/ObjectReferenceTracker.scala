@@ -55,10 +55,12 @@ abstract class ObjectReferenceTrackerBase[D >: Null, StateType <: ObjectStateBas
                                          (clazz: Class[D], log: Logger) {
 
     val vt: VirtualTopology
+    /** The virtual topology shard where the references are processed. */
+    val shard: VirtualTopologyShard
     protected def newState(id: UUID): StateType
 
     @throws[DeviceMapperException]
-    @inline private def assertThread(): Unit = vt.assertThread()
+    @inline private def assertThread(): Unit = shard.assertThread()
 
     private val refsSubject = PublishSubject.create[Observable[D]]
     private val refs = new mutable.HashMap[UUID, StateType]
@@ -149,39 +151,49 @@ class TopologyObjectState[D >: Null <: Device](val clazz: Class[D], val id: UUID
 
 
 class ObjectReferenceTracker[D >: Null <: Device](override val vt: VirtualTopology,
-                                                  clazz: Class[D], log: Logger)
+                                                  clazz: Class[D], log: Logger,
+                                                  override val shard: VirtualTopologyShard)
         extends ObjectReferenceTrackerBase[D, TopologyObjectState[D]](clazz, log) {
 
+    def this(vt: VirtualTopology, clazz: Class[D], log: Logger) =
+        this(vt, clazz, log, vt.defaultShard)
+
     override def newState(id: UUID) = new TopologyObjectState(clazz, id)
 }
 
 class StoreObjectState[D >: Null](val clazz: Class[D],
                                   val id: UUID,
-                                  val vt: VirtualTopology)
+                                  val vt: VirtualTopology,
+                                  val shard: VirtualTopologyShard)
         extends ObjectStateBase[D] {
-    override val observable = vt.store.observable(clazz, id)
-        .observeOn(vt.vtScheduler)
+    override val observable = vt.objectObservable(clazz, id)
+        .observeOn(shard.scheduler)
         .doOnNext(makeAction1(currentObj = _))
         .takeUntil(mark)
 }
 
 class StoreObjectReferenceTracker[D >: Null](val vt: VirtualTopology,
-                                             clazz: Class[D], log: Logger)
+                                             clazz: Class[D], log: Logger,
+                                             val shard: VirtualTopologyShard)
         extends ObjectReferenceTrackerBase[D, StoreObjectState[D]](clazz, log) {
 
+    def this(vt: VirtualTopology, clazz: Class[D], log: Logger) =
+        this(vt, clazz, log, vt.defaultShard)
+
     override def newState(id: UUID) =
-        new StoreObjectState[D](clazz, id, vt)
+        new StoreObjectState[D](clazz, id, vt, shard)
 }
 
 class StateKeyState[D](val namespaces: Observable[String],
                        val clazz: Class[D],
                        val id: UUID,
                        val key: String,
-                       val vt: VirtualTopology)
+                       val vt: VirtualTopology,
+                       val shard: VirtualTopologyShard)
         extends ObjectStateBase[StateKey] {
     override val observable: Observable[StateKey] =
         vt.stateStore.keyObservable(namespaces, clazz, id, key)
-            .observeOn(vt.vtScheduler)
+            .observeOn(shard.scheduler)
             .doOnNext(makeAction1(currentObj = _))
             .takeUntil(mark)
 }
@@ -189,10 +201,15 @@ class StateKeyState[D](val namespaces: Observable[String],
 class StateKeyReferenceTracker[D >: Null](val vt: VirtualTopology,
                                           namespaces: Observable[String],
                                           clazz: Class[D], key: String,
-                                          log: Logger)
+                                          log: Logger,
+                                          val shard: VirtualTopologyShard)
         extends ObjectReferenceTrackerBase[StateKey, StateKeyState[D]](
             classOf[StateKey], log) {
 
+    def this(vt: VirtualTopology, namespaces: Observable[String],
+             clazz: Class[D], key: String, log: Logger) =
+        this(vt, namespaces, clazz, key, log, vt.defaultShard)
+
     override protected def newState(id: UUID): StateKeyState[D] =
-        new StateKeyState[D](namespaces, clazz, id, key, vt)
+        new StateKeyState[D](namespaces, clazz, id, key, vt, shard)
 }
@@ -90,9 +90,9 @@ class PoolHealthMonitorMapper(vt: VirtualTopology)
         /** The health monitor observable */
         val observable: Observable[HealthMonitor] =
             if (healthMonitorId == null) Observable.empty()
-            else vt.store
-                .observable(classOf[Proto.HealthMonitor], healthMonitorId)
-                .observeOn(vt.vtScheduler)
+            else vt
+                .objectObservable(classOf[Proto.HealthMonitor], healthMonitorId)
+                .observeOn(vtScheduler)
                 .map[HealthMonitor](updateHealthMonitor)
                 .takeUntil(mark)
                 .doOnCompleted(completeHealthMonitor)
@@ -123,7 +123,7 @@ class PoolHealthMonitorMapper(vt: VirtualTopology)
             if (loadBalancerId == null) Observable.empty()
             else VirtualTopology.observable(classOf[LoadBalancer], loadBalancerId)
                 .onErrorResumeNext(Observable.empty)
-                .observeOn(vt.vtScheduler)
+                .observeOn(vtScheduler)
                 .doOnNext(updateLoadBalancer)
                 .takeUntil(mark)
                 .doOnCompleted(completeLoadBalancer)
@@ -264,7 +264,7 @@ class PoolHealthMonitorMapper(vt: VirtualTopology)
         Observable.merge[Any](
             Observable.merge[PoolHealthMonitorEntry](updateSubject),
             poolIdObservable)
-        .observeOn(vt.vtScheduler)
+        .observeOn(vtScheduler)
         .map[PoolHealthMonitorMap](processUpdate)
         .startWith(PoolHealthMonitorMap(Map.empty))
         .distinctUntilChanged()
@@ -59,11 +59,13 @@ final class PoolMapper(poolId: UUID, vt: VirtualTopology)
         new mutable.HashMap[UUID, DeviceState[SimulationVip]]
 
     private val lbTracker =
-        new StoreObjectReferenceTracker(vt, classOf[TopologyLoadBalancer], log)
+        new StoreObjectReferenceTracker(vt, classOf[TopologyLoadBalancer],
+                                        log, shard)
     private val serviceContainerTracker =
-        new StoreObjectReferenceTracker(vt, classOf[TopologyServiceContainer], log)
+        new StoreObjectReferenceTracker(vt, classOf[TopologyServiceContainer],
+                                        log, shard)
     private val containerPortTracker =
-        new StoreObjectReferenceTracker(vt, classOf[TopologyPort], log)
+        new StoreObjectReferenceTracker(vt, classOf[TopologyPort], log, shard)
 
     private val haproxySubject = PublishSubject.create[String]
     private var currentHaproxyHost: UUID = null
@@ -83,7 +85,8 @@ final class PoolMapper(poolId: UUID, vt: VirtualTopology)
     // Tracks pool member status via the VT's StateStorage.
     private val memberStatusTracker =
         new StateKeyReferenceTracker[TopologyPoolMember](
-            vt, haproxySubject, classOf[TopologyPoolMember], StatusKey, log)
+            vt, haproxySubject, classOf[TopologyPoolMember], StatusKey, log,
+            shard)
     private val memberStatusObservable = memberStatusTracker.refsObservable
         .map[TopologyPool](makeFunc1 { sk =>
             assertThread()
@@ -102,9 +105,9 @@ final class PoolMapper(poolId: UUID, vt: VirtualTopology)
         })
 
 
-    private lazy val poolObservable = vt.store
-        .observable(classOf[TopologyPool], poolId)
-        .observeOn(vt.vtScheduler)
+    private lazy val poolObservable = vt
+        .objectObservable(classOf[TopologyPool], poolId)
+        .observeOn(vtScheduler)
         .doOnCompleted(makeAction0(poolDeleted()))
         .doOnNext(makeAction1(poolUpdated))
 
@@ -34,12 +34,12 @@ class PortGroupMapper(id: UUID, vt: VirtualTopology)
     override def logMark = s"port-group:$id"
 
     protected override def observable =
-        vt.store.observable(classOf[TopologyPortGroup], id)
+        vt.objectObservable(classOf[TopologyPortGroup], id)
             .distinctUntilChanged
             .map[SimulationPortGroup](makeFunc1(toSimPortGroup))
             .doOnNext(makeAction1(
                           (pg: SimulationPortGroup) => vt.invalidate(pg.flowStateTag)))
-            .observeOn(vt.vtScheduler)
+            .observeOn(vtScheduler)
 
     private def toSimPortGroup(pg: TopologyPortGroup): SimulationPortGroup =
         new SimulationPortGroup(pg.getId, pg.getName, pg.getStateful, pg.getPortIdsList)
@@ -74,17 +74,17 @@ final class PortMapper(id: UUID, vt: VirtualTopology,
     private var prevActive: Boolean = false
 
     private val chainsTracker =
-        new ObjectReferenceTracker(vt, classOf[Chain], log)
+        new ObjectReferenceTracker(vt, classOf[Chain], log, shard)
     private val mirrorsTracker =
-        new ObjectReferenceTracker(vt, classOf[Mirror], log)
+        new ObjectReferenceTracker(vt, classOf[Mirror], log, shard)
     private val qosPolicyTracker =
-        new ObjectReferenceTracker(vt, classOf[QosPolicy], log)
+        new ObjectReferenceTracker(vt, classOf[QosPolicy], log, shard)
     private val bridgeTracker =
-        new StoreObjectReferenceTracker(vt, classOf[Network], log)
+        new StoreObjectReferenceTracker(vt, classOf[Network], log, shard)
     private val l2insertionsTracker =
-        new StoreObjectReferenceTracker(vt, classOf[L2Insertion], log)
+        new StoreObjectReferenceTracker(vt, classOf[L2Insertion], log, shard)
     private val natRuleTracker =
-        new StoreObjectReferenceTracker(vt, classOf[TopologyRule], log)
+        new StoreObjectReferenceTracker(vt, classOf[TopologyRule], log, shard)
     private var peeringTable: StateTable[MAC, IPv4Addr] = StateTable.empty
 
     private def buildPort(ignored: AnyRef): SimulationPort = {
@@ -114,15 +114,15 @@ final class PortMapper(id: UUID, vt: VirtualTopology,
     }
 
     private lazy val portObservable =
-        vt.store.observable(classOf[TopologyPort], id)
-            .observeOn(vt.vtScheduler)
+        vt.objectObservable(classOf[TopologyPort], id)
+            .observeOn(vtScheduler)
             .doOnNext(makeAction1(topologyPortUpdated))
             .doOnCompleted(makeAction0(portDeleted()))
             .distinctUntilChanged()
 
     private lazy val portStateObservable =
         vt.stateStore.portStateObservable(id, portStateSubject)
-            .observeOn(vt.vtScheduler)
+            .observeOn(vtScheduler)
             .doOnNext(makeAction1(portState = _))
             .onErrorResumeNext(Observable.empty())
 
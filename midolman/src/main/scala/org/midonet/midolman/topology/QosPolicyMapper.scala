@@ -43,14 +43,15 @@ class QosPolicyMapper(id: UUID, vt: VirtualTopology)
     override def logMark: String = s"qos-policy:$id"
 
     private val bandwidthRuleTracker =
-        new StoreObjectReferenceTracker(vt, classOf[QosRuleBandwidthLimit], log)
+        new StoreObjectReferenceTracker(vt, classOf[QosRuleBandwidthLimit],
+                                        log, shard)
     private val dscpRuleTracker =
-        new StoreObjectReferenceTracker(vt, classOf[QosRuleDscp], log)
+        new StoreObjectReferenceTracker(vt, classOf[QosRuleDscp], log, shard)
 
     private var qosPolicy: QosPolicy = _
     private val qosPolicyObservable =
-        vt.store.observable(classOf[QosPolicy], id)
-            .observeOn(vt.vtScheduler)
+        vt.objectObservable(classOf[QosPolicy], id)
+            .observeOn(vtScheduler)
             .doOnCompleted(makeAction0(qosPolicyDeleted()))
             .doOnNext(makeAction1(qosPolicyUpdated))
 
@@ -58,7 +59,7 @@ class QosPolicyMapper(id: UUID, vt: VirtualTopology)
         Observable.merge[AnyRef](bandwidthRuleTracker.refsObservable,
                                  dscpRuleTracker.refsObservable,
                                  qosPolicyObservable)
-            .observeOn(vt.vtScheduler)
+            .observeOn(vtScheduler)
             .filter(makeFunc1(isReady))
             .map[SimQosPolicy](makeFunc1(buildQosPolicy))
             .distinctUntilChanged()
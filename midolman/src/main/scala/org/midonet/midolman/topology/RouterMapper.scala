@@ -32,7 +32,7 @@ import org.midonet.cluster.models.Commons.IPVersion
 import org.midonet.cluster.models.Topology.{Route => TopologyRoute, Router => TopologyRouter}
 import org.midonet.cluster.state.RoutingTableStorage._
 import org.midonet.cluster.util.UUIDUtil._
-import org.midonet.midolman.layer3.{IPv4RoutingTable, Route}
+import org.midonet.midolman.layer3.{CompiledRoutingTable, Route}
 import org.midonet.midolman.simulation.Router.{Config, RoutingTable, TagManager}
 import org.midonet.midolman.simulation.{Chain, LoadBalancer, Mirror, RouterPort, Router => SimulationRouter}
 import org.midonet.midolman.SimulationBackChannel.{BackChannelMessage, Broadcast}
@@ -72,6 +72,7 @@ object RouterMapper {
     private class PortState(portId: UUID,
                             vniMap: mutable.HashMap[Int, UUID],
                             vt: VirtualTopology,
+                            shard: VirtualTopologyShard,
                             log: Logger) {
 
         @Nullable private var currentPort: RouterPort = null
@@ -98,7 +99,7 @@ object RouterMapper {
             .map[RouteUpdates](makeFunc1(routeUpdated))
         private val learnedRoutesObservable = vt.stateStore
             .portRoutesObservable(portId, portStateSubject)
-            .observeOn(vt.vtScheduler)
+            .observeOn(shard.scheduler)
             .map[RouteUpdates](makeFunc1(learnedRoutesUpdated))
 
         // The output observable for this port state. It merges the
@@ -153,7 +154,7 @@ object RouterMapper {
          * - If the port was and remains inactive, then do not emit any updates.
          */
         private def portUpdated(port: RouterPort): RouteUpdates = {
-            vt.assertThread()
+            shard.assertThread()
 
             log.debug("Router port updated: {}", port)
 
@@ -192,7 +193,7 @@ object RouterMapper {
             // observable on the routes observable.
             val addedRoutes = new mutable.MutableList[RouteState]
             for (routeId <- port.routeIds if !routes.contains(routeId)) {
-                val routeState = new RouteState(routeId, vt, log)
+                val routeState = new RouteState(routeId, vt, shard, log)
                 routes += routeId -> routeState
                 addedRoutes += routeState
             }
@@ -222,7 +223,7 @@ object RouterMapper {
         /** A method called when a route is updated. It publishes routes if the
           * port is interior, or exterior and active. */
         private def routeUpdated(updates: RouteUpdates): RouteUpdates = {
-            vt.assertThread()
+            shard.assertThread()
             log.debug("Port route updated: {}", updates)
 
             if (updates eq EmptyRouteUpdates) {
@@ -241,7 +242,7 @@ object RouterMapper {
           * and this one, and returns a [[RouteUpdates]] instance with the
           * difference. */
         private def learnedRoutesUpdated(routes: Set[Route]): RouteUpdates = {
-            vt.assertThread()
+            shard.assertThread()
             log.debug("Learned port routes updated: {} routes",
                       Int.box(routes.size))
             portStateReady = true
@@ -285,13 +286,13 @@ object RouterMapper {
      * used to signal that the route is no longer used by the router or port.
      */
     private class RouteState(val routeId: UUID, vt: VirtualTopology,
-                             log: Logger) {
+                             shard: VirtualTopologyShard, log: Logger) {
 
         @Nullable private var currentRoute: Route = null
         private val mark = PublishSubject.create[RouteUpdates]
 
-        val observable = vt.store.observable(classOf[TopologyRoute], routeId)
-            .observeOn(vt.vtScheduler)
+        val observable = vt.objectObservable(classOf[TopologyRoute], routeId)
+            .observeOn(shard.scheduler)
             .flatMap[RouteUpdates](makeFunc1(routeUpdated))
             .onErrorResumeNext(makeFunc1(routeError))
             .takeUntil(mark)
@@ -305,6 +306,8 @@ object RouterMapper {
 
         /** Generates a route update when the route changes. */
         private def routeUpdated(tr: TopologyRoute): Observable[RouteUpdates] = {
+            // The simulation only forwards IPv4 packets: IPv6 routes are
+            // not added to the router's routes.
             if (!isIp4(tr)) {
                 log.debug(s"Route $routeId is IPv6: ignoring")
                 currentRoute = Route6
@@ -380,16 +383,13 @@ object RouterMapper {
 
     /**
      * Provides an implementation for a router's [[RoutingTable]], wrapping an
-     * underlying IPv4 routing table.
+     * underlying IPv4 routing table. The table is compiled from the current
+     * set of routes, such that route lookups do not allocate.
      */
     private class RouterRoutingTable(routes: mutable.Set[Route])
         extends RoutingTable {
 
-        private val ipv4RoutingTable = new IPv4RoutingTable()
-
-        for (route <- routes) {
-            ipv4RoutingTable.addRoute(route)
-        }
+        private val ipv4RoutingTable = new CompiledRoutingTable(routes.asJava)
 
         override def lookup(flowMatch: FlowMatch): java.util.List[Route] = {
             ipv4RoutingTable.lookup(
@@ -403,6 +403,13 @@ object RouterMapper {
                 flowMatch.getNetworkDstIP.asInstanceOf[IPv4Addr],
                 log.underlying)
         }
+
+        override def lookupRoute(flowMatch: FlowMatch, log: Logger): Route = {
+            ipv4RoutingTable.lookup(
+                flowMatch.getNetworkSrcIP.asInstanceOf[IPv4Addr].toInt,
+                flowMatch.getNetworkDstIP.asInstanceOf[IPv4Addr].toInt,
+                flowMatch)
+        }
     }
 
     /** Converts a nullable route to a [[Set]]. */
@@ -455,8 +462,10 @@ final class RouterMapper(routerId: UUID, vt: VirtualTopology,
         }
     }
 
-    private val chainsTracker = new ObjectReferenceTracker(vt, classOf[Chain], log)
-    private val mirrorsTracker = new ObjectReferenceTracker(vt, classOf[Mirror], log)
+    private val chainsTracker =
+        new ObjectReferenceTracker(vt, classOf[Chain], log, shard)
+    private val mirrorsTracker =
+        new ObjectReferenceTracker(vt, classOf[Mirror], log, shard)
 
     private lazy val mark =
         PublishSubject.create[Config]
@@ -468,8 +477,8 @@ final class RouterMapper(routerId: UUID, vt: VirtualTopology,
         PublishSubject.create[Observable[LoadBalancer]]
 
     private lazy val routerObservable =
-        vt.store.observable(classOf[TopologyRouter], routerId)
-            .observeOn(vt.vtScheduler)
+        vt.objectObservable(classOf[TopologyRouter], routerId)
+            .observeOn(vtScheduler)
             .doOnCompleted(makeAction0(routerDeleted()))
             .map[Config](makeFunc1(routerUpdated))
     private lazy val portRoutesObservable = Observable
@@ -623,7 +632,7 @@ final class RouterMapper(routerId: UUID, vt: VirtualTopology,
         // on the ports observable.
         val addedPorts = new mutable.MutableList[PortState]
         for (portId <- portIds if !ports.contains(portId)) {
-            val portState = new PortState(portId, vniToPort, vt, log)
+            val portState = new PortState(portId, vniToPort, vt, shard, log)
             ports += portId -> portState
             addedPorts += portState
         }
@@ -671,7 +680,7 @@ final class RouterMapper(routerId: UUID, vt: VirtualTopology,
         // the local routes map.
         val addedRoutes = new mutable.MutableList[RouteState]
         for (routeId <- routeIds if !localRoutes.contains(routeId)) {
-            val routeState = new RouteState(routeId, vt, log)
+            val routeState = new RouteState(routeId, vt, shard, log)
             localRoutes += routeId -> routeState
             addedRoutes += routeState
         }
@@ -67,8 +67,8 @@ trait TraceRequestChainMapper[D <: VirtualDevice] {
 
     class TraceRequestState(id: UUID) {
         private val mark = PublishSubject.create[TraceRequest]()
-        val observable = vt.store.observable(classOf[TraceRequest], id)
-            .observeOn(vt.vtScheduler)
+        val observable = vt.objectObservable(classOf[TraceRequest], id)
+            .observeOn(vtScheduler)
             .takeUntil(mark)
             .map[TraceRequest](makeFunc1(makeRule))
 
@@ -172,7 +172,7 @@ trait TraceRequestChainMapper[D <: VirtualDevice] {
     protected lazy val traceChainObservable =
         Observable.merge[Any](Observable.merge(retriggerObs),
                               Observable.merge(traceRulesObs))
-            .observeOn(vt.vtScheduler)
+            .observeOn(vtScheduler)
             .filter(makeFunc1(isReadyToBuild))
             .map[TraceChain](makeFunc1(makeTraceChain))
             .map[Option[UUID]](makeFunc1(publishAndReturnId))
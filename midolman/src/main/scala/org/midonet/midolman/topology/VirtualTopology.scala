@@ -15,11 +15,12 @@
  */
 package org.midonet.midolman.topology
 
+import java.nio.file.Paths
 import java.util.UUID
 import java.util.concurrent.atomic.AtomicLong
-import java.util.concurrent.{ConcurrentHashMap, ExecutorService}
+import java.util.concurrent.{ConcurrentHashMap, ExecutorService, Executors, ScheduledExecutorService, TimeUnit}
 
-import scala.collection.mutable
+import scala.collection.concurrent.TrieMap
 import scala.concurrent.Future
 import scala.util.control.NonFatal
 
@@ -28,19 +29,22 @@ import com.google.common.annotations.VisibleForTesting
 
 import rx.Observable
 import rx.Observable.OnSubscribe
-import rx.schedulers.Schedulers
 import rx.subjects.Subject
 
+import org.midonet.cluster.data.ObjId
+import org.midonet.cluster.data.storage.{StorageSnapshot, ZookeeperObjectMapper}
 import org.midonet.cluster.services.MidonetBackend
 import org.midonet.midolman.config.MidolmanConfig
 import org.midonet.midolman.logging.MidolmanLogging
 import org.midonet.midolman.simulation._
+import org.midonet.midolman.state.StateTableWriter
 import org.midonet.midolman.SimulationBackChannel.BackChannelMessage
 import org.midonet.midolman.logging.rule.RuleLogEventChannel
 import org.midonet.midolman.monitoring.metrics.VirtualTopologyMetrics
 import org.midonet.midolman.topology.devices._
 import org.midonet.midolman.{NotYetException, SimulationBackChannel}
 import org.midonet.sdn.flows.FlowTagger.FlowTag
+import org.midonet.util.concurrent.NamedThreadFactory
 import org.midonet.util.functors.{makeFunc1, makeRunnable}
 import org.midonet.util.reactivex._
 
@@ -57,7 +61,13 @@ object VirtualTopology {
         def deviceTag: FlowTag
     }
 
-    case class DeviceFactory(clazz: Class[_], builder: UUID => OnSubscribe[_])
+    /**
+      * Creates the [[OnSubscribe]] handler for a device class. The devices of
+      * a sharded factory are built on the shard of their identifier, whereas
+      * the other devices are built on the default shard.
+      */
+    case class DeviceFactory(clazz: Class[_], builder: UUID => OnSubscribe[_],
+                             sharded: Boolean = true)
 
     case class Key(clazz: Class[_], id: UUID)
 
@@ -81,10 +91,11 @@ object VirtualTopology {
      * Returns an observable for the virtual device with the specified
      * identifier. Upon subscription to this observable, which may complete
      * asynchronously, the subscriber will receive updates with the current
-     * state of the device.
+     * state of the device. When called on a virtual topology thread, the
+     * notifications are delivered on the same thread.
      */
     def observable[D <: Device](clazz: Class[D], id: UUID): Observable[D] = {
-        self.observableOf(clazz, id)
+        self.observableOnShard(clazz, id)
     }
 
     /**
@@ -155,6 +166,14 @@ object VirtualTopology {
  * +------------------------------------------------+
  * | Port/Network/RouterMapper extends DeviceMapper | (1 per device)
  * +------------------------------------------------+
+ *
+ * The device mappers are partitioned across one or more [[VirtualTopologyShard]]s
+ * by device identifier, where each shard builds its devices on a single
+ * thread. The first shard uses the `vtExecutor`, and it also runs the
+ * services that use the virtual topology thread, such as the BGP and
+ * container mappers. A mapper that subscribes to a device of a different
+ * shard receives the notifications on its own shard thread, such that the
+ * mapper state is only accessed from one thread.
  */
 class VirtualTopology(val backend: MidonetBackend,
                       val config: MidolmanConfig,
@@ -163,14 +182,28 @@ class VirtualTopology(val backend: MidonetBackend,
                       val metricRegistry: MetricRegistry,
                       val vtExecutor: ExecutorService,
                       val ioExecutor: ExecutorService,
-                      vtExecutorCheck: () => Boolean)
+                      vtExecutorCheck: () => Boolean,
+                      shardExecutors: Seq[(ExecutorService, () => Boolean)] =
+                          Seq.empty)
     extends MidolmanLogging {
 
     import VirtualTopology._
 
     override def logSource = "org.midonet.devices.devices-service"
 
-    private[midolman] val vtScheduler = Schedulers.from(vtExecutor)
+    private[midolman] val defaultShard =
+        new VirtualTopologyShard(0, vtExecutor, vtExecutorCheck)
+    private[midolman] val shards: IndexedSeq[VirtualTopologyShard] =
+        defaultShard +: shardExecutors.toIndexedSeq.zipWithIndex.map {
+            case ((executor, check), index) =>
+                new VirtualTopologyShard(index + 1, executor, check)
+        }
+    private val sharded = shards.length > 1
+
+    /** Indicates whether the devices are built on more than one thread. */
+    private[topology] def isSharded: Boolean = sharded
+
+    private[midolman] val vtScheduler = defaultShard.scheduler
 
     private[topology] val devices =
         new ConcurrentHashMap[UUID, Device]()
@@ -183,20 +216,25 @@ class VirtualTopology(val backend: MidonetBackend,
     private[topology] val metrics = new VirtualTopologyMetrics(
         metricRegistry, { devices.size() }, { observables.size() },
         { cacheHits.get() }, {  cacheMisses.get() })
+    for (shard <- shards) {
+        metrics.registerShard(shard.index, shard.queueDepth)
+    }
 
-    private val traceChains = mutable.Map[UUID, Subject[Chain, Chain]]()
+    private val traceChains = TrieMap[UUID, Subject[Chain, Chain]]()
 
     private val factories = Map[Class[_], DeviceFactory](
         classOf[BgpPort] -> DeviceFactory(
-            classOf[BgpPort], new BgpPortMapper(_, this)),
+            classOf[BgpPort], new BgpPortMapper(_, this), sharded = false),
         classOf[BgpRouter] -> DeviceFactory(
-            classOf[BgpRouter], new BgpRouterMapper(_, this)),
+            classOf[BgpRouter], new BgpRouterMapper(_, this), sharded = false),
         classOf[Bridge] -> DeviceFactory(
             classOf[Bridge], new BridgeMapper(_, this, traceChains)),
         classOf[BridgePort] -> DeviceFactory(
             classOf[Port], new PortMapper(_, this, traceChains)),
         classOf[Chain] -> DeviceFactory(
             classOf[Chain], new ChainMapper(_, this, traceChains)),
+        classOf[Dhcp] -> DeviceFactory(
+            classOf[Dhcp], new DhcpMapper(_, this)),
         classOf[Host] -> DeviceFactory(
             classOf[Host], new HostMapper(_, this)),
         classOf[IPAddrGroup] -> DeviceFactory(
@@ -235,11 +273,131 @@ class VirtualTopology(val backend: MidonetBackend,
 
     def stateTables = backend.stateTableStore
 
+    /** Writes behind the ARP and MAC entries learned by the agent. */
+    private[midolman] val stateTableWriter = new StateTableWriter(
+        config.stateTableWriteInterval, config.stateTableMaxWrites,
+        metricRegistry)
+
+    private var snapshotExecutor: ScheduledExecutorService = _
+    private var snapshotStore: ZookeeperObjectMapper = _
+    private val snapshot = startSnapshot()
+
+    /**
+      * Returns an observable for the specified topology object. If the
+      * topology snapshot is enabled, the observable emits the snapshot data
+      * of the object first. The snapshot is only used by the observables
+      * returned by this method, and not by the other users of the storage.
+      */
+    def objectObservable[T](clazz: Class[T], id: ObjId): Observable[T] = {
+        if (snapshot eq null) store.observable(clazz, id)
+        else snapshotStore.observable(clazz, id, snapshot)
+    }
+
+    /**
+      * Loads the topology snapshot if configured, such that the devices can
+      * be built from the objects watched before a restart without waiting for
+      * the NSDB. The snapshot is written periodically on a separate thread.
+      */
+    private def startSnapshot(): StorageSnapshot = {
+        if (!config.topologySnapshot) {
+            return null
+        }
+        backend.store match {
+            case zoom: ZookeeperObjectMapper =>
+                val snapshot = zoom.loadSnapshot(
+                    Paths.get(config.topologySnapshotFile))
+                snapshotStore = zoom
+                log.info(s"Topology snapshot enabled with ${snapshot.size} " +
+                         "objects")
+                val interval = config.topologySnapshotInterval
+                snapshotExecutor = Executors.newSingleThreadScheduledExecutor(
+                    new NamedThreadFactory("topology-snapshot", isDaemon = true))
+                snapshotExecutor.scheduleWithFixedDelay(makeRunnable {
+                    writeSnapshot(snapshot)
+                }, interval, interval, TimeUnit.MILLISECONDS)
+                snapshot
+            case _ =>
+                log.warn("Topology snapshot is not supported by the storage " +
+                         "backend")
+                null
+        }
+    }
+
+    private def writeSnapshot(snapshot: StorageSnapshot): Unit = {
+        try snapshot.write()
+        catch {
+            case NonFatal(e) =>
+                log.warn("Failed to write the topology snapshot", e)
+        }
+    }
+
+    /** Stops the topology snapshot, writing it to file a last time. */
+    private[midolman] def stopSnapshot(): Unit = {
+        if (snapshot ne null) {
+            snapshotExecutor.shutdown()
+            snapshotExecutor.awaitTermination(5, TimeUnit.SECONDS)
+            writeSnapshot(snapshot)
+        }
+    }
+
+    /** Stops the state table writer, flushing the pending writes. */
+    private[midolman] def stopStateTableWriter(): Unit = {
+        stateTableWriter.stop()
+    }
+
+    /** The executors of the additional shards. */
+    private[midolman] def shardExecutorServices: Array[ExecutorService] =
+        shards.tail.map(_.executor).toArray
+
+    /**
+      * Returns the shard that builds the device with the specified
+      * identifier.
+      */
+    private[topology] def shardOf(id: UUID): VirtualTopologyShard = {
+        if (sharded) shards((id.hashCode & Int.MaxValue) % shards.length)
+        else defaultShard
+    }
+
+    /**
+      * Returns the shard of the calling thread, or null if the caller is not
+      * executing on a virtual topology thread.
+      */
+    private def currentShard: VirtualTopologyShard = {
+        var index = 0
+        while (index < shards.length) {
+            if (shards(index).isCurrentThread)
+                return shards(index)
+            index += 1
+        }
+        null
+    }
+
+    private def factoryOf(clazz: Class[_]): DeviceFactory = {
+        factories.getOrElse(
+            clazz, throw new RuntimeException(s"Unknown factory for $clazz"))
+    }
+
     private def observableOf[D <: Device](clazz: Class[D], id: UUID)
     : Observable[D] = {
-        val factory = factories.getOrElse(
-            clazz, throw new RuntimeException(s"Unknown factory for $clazz"))
-        observableOf(factory, id)
+        observableOf(factoryOf(clazz), id)
+    }
+
+    /**
+      * Returns the device observable, such that a subscriber on a virtual
+      * topology thread receives the notifications on the same thread when the
+      * device is built by a different shard.
+      */
+    private def observableOnShard[D <: Device](clazz: Class[D], id: UUID)
+    : Observable[D] = {
+        val factory = factoryOf(clazz)
+        val observable = observableOf[D](factory, id)
+        if (!sharded) {
+            return observable
+        }
+        val consumer = currentShard
+        val producer = if (factory.sharded) shardOf(id) else defaultShard
+        if ((consumer eq null) || (consumer eq producer)) observable
+        else observable.observeOn(consumer.scheduler)
     }
 
     private def observableOf[D <: Device](factory: DeviceFactory, id: UUID)
@@ -269,7 +427,7 @@ class VirtualTopology(val backend: MidonetBackend,
 
     /** Safely executes a task on the virtual topology thread. */
     private[topology] def executeVt(task: => Unit) = {
-        vtExecutor.execute(makeRunnable {
+        defaultShard.execute(makeRunnable {
             try {
                 task
             } catch {
@@ -304,14 +462,7 @@ class VirtualTopology(val backend: MidonetBackend,
      */
     @throws[DeviceMapperException]
     @inline
-    private[midolman] def assertThread(): Unit = {
-        if (!vtExecutorCheck()) {
-            val curThread = Thread.currentThread()
-            throw new DeviceMapperException(
-                s"Call expected on VT executor thread but received on " +
-                s"${curThread.getId} - ${curThread.getName}")
-        }
-    }
+    private[midolman] def assertThread(): Unit = defaultShard.assertThread()
 
     def get[D <: Device](clazz: Class[D], id: UUID): Future[D] = {
         val device = devices.get(id).asInstanceOf[D]
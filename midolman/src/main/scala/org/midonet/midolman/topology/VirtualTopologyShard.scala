@@ -0,0 +1,90 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.midolman.topology
+
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.{Executor, ExecutorService}
+
+import rx.Scheduler
+import rx.schedulers.Schedulers
+
+/**
+  * A partition of the virtual topology, which builds the devices assigned to
+  * it on a single thread. Every [[DeviceMapper]] is assigned to one shard
+  * according to its device identifier, and all the notifications processed
+  * by the mapper, including those from storage, must be delivered on the
+  * shard thread.
+  *
+  * The shard wraps the tasks submitted to its executor such that it tracks the
+  * number of tasks waiting to be executed and the start time of the current
+  * task, which are used for the queue depth and build latency metrics.
+  *
+  * @param index The index of this shard in the virtual topology.
+  * @param executor The single-thread executor of this shard.
+  * @param executorCheck A function returning true when called on the executor
+  *                      thread. The function must not have side effects,
+  *                      since it may be called from any thread.
+  */
+final class VirtualTopologyShard(val index: Int,
+                                 val executor: ExecutorService,
+                                 executorCheck: () => Boolean)
+    extends Executor {
+
+    private val pending = new AtomicInteger()
+
+    // Only written and read on the shard thread.
+    private var taskStartTime = System.nanoTime()
+
+    /** The scheduler for the notifications processed by this shard. */
+    val scheduler: Scheduler = Schedulers.from(this)
+
+    override def execute(task: Runnable): Unit = {
+        pending.incrementAndGet()
+        executor.execute(new Runnable {
+            override def run(): Unit = {
+                pending.decrementAndGet()
+                taskStartTime = System.nanoTime()
+                task.run()
+            }
+        })
+    }
+
+    /** The number of tasks waiting to be executed on this shard. */
+    def queueDepth: Int = pending.get()
+
+    /** The time, in nanoseconds, when the current task started. */
+    def currentTaskStartTime: Long = taskStartTime
+
+    /** Indicates whether the caller is executing on the shard thread. */
+    def isCurrentThread: Boolean = executorCheck()
+
+    /**
+      * Checks that this method is executed on the shard thread.
+      */
+    @throws[DeviceMapperException]
+    def assertThread(): Unit = {
+        if (!executorCheck()) {
+            val curThread = Thread.currentThread()
+            throw new DeviceMapperException(
+                s"Call expected on VT executor thread $index but received " +
+                s"on ${curThread.getId} - ${curThread.getName}")
+        }
+    }
+
+    override def toString = s"VirtualTopologyShard[$index]"
+
+}
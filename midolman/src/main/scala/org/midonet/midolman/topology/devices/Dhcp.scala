@@ -16,13 +16,18 @@
 
 package org.midonet.midolman.topology.devices
 
+import java.nio.ByteBuffer
 import java.util.{UUID, List => JList}
 
+import scala.collection.JavaConverters._
+import scala.collection.mutable
+
 import org.midonet.cluster.data.{Zoom, ZoomClass, ZoomField, ZoomObject}
 import org.midonet.cluster.models.Topology
 import org.midonet.cluster.util.{IPAddressUtil, IPSubnetUtil, MACUtil}
+import org.midonet.midolman.topology.VirtualTopology.Device
 import org.midonet.midolman.topology.devices.Dhcp.Opt121Route
-import org.midonet.packets.{IPv4Addr, IPv4Subnet, MAC}
+import org.midonet.packets.{DHCPOption, IPv4Addr, IPv4Subnet, MAC}
 
 object Dhcp {
 
@@ -70,6 +75,48 @@ object Dhcp {
         }
     }
 
+    /** Builds the DNS servers option for the given server addresses. */
+    private def dnsOption(addresses: JList[IPv4Addr]): DHCPOption = {
+        if ((addresses eq null) || addresses.isEmpty) {
+            return null
+        }
+        val buffer = ByteBuffer.allocate(4 * addresses.size)
+        for (address <- addresses.asScala) {
+            buffer.put(address.toBytes)
+        }
+        new DHCPOption(DHCPOption.Code.DNS.value, buffer.capacity.toByte,
+                       buffer.array)
+    }
+
+    /**
+      * Builds the classless static routes option (RFC 3442) for the given
+      * routes. If there is a default gateway, the option also includes a
+      * default route, since the clients ignore the router option when the
+      * classless routes option is present.
+      */
+    private def classlessRoutesOption(routes: JList[Opt121Route],
+                                      gateway: IPv4Addr): DHCPOption = {
+        if ((routes eq null) || routes.isEmpty) {
+            return null
+        }
+        val allRoutes = if (gateway ne null) {
+            routes.asScala :+ Opt121Route(IPv4Addr.AnyAddress.subnet(0), gateway)
+        } else routes.asScala
+        val bytes = mutable.ArrayBuilder.make[Byte]()
+        for (route <- allRoutes) {
+            // First append the destination subnet's mask length and the
+            // significant octets of the subnet, then the gateway.
+            val maskLen = route.destinationSubnet.getPrefixLen
+            val dstBytes = route.destinationSubnet.getAddress.toBytes
+            bytes += maskLen.toByte
+            bytes ++= dstBytes.take((maskLen + 7) / 8)
+            bytes ++= route.gateway.toBytes
+        }
+        val data = bytes.result()
+        new DHCPOption(DHCPOption.Code.CLASSLESS_ROUTES.value,
+                       data.length.toByte, data)
+    }
+
 }
 
 @ZoomClass(clazz = classOf[Topology.Dhcp])
@@ -96,7 +143,25 @@ case class Dhcp @Zoom()(@ZoomField(name = "id")
                         @ZoomField(name = "hosts")
                         hosts: JList[Dhcp.Host],
                         @ZoomField(name = "enabled")
-                        enabled: Boolean) extends ZoomObject {
+                        enabled: Boolean) extends ZoomObject with Device {
+
+    /* Index of the subnet hosts by MAC address, where the first host for a
+     * MAC takes precedence. */
+    private val hostsByMac: Map[MAC, Dhcp.Host] =
+        if (hosts eq null) Map.empty
+        else hosts.asScala.reverse.filter(_.mac ne null)
+                  .map(host => host.mac -> host).toMap
+
+    /** The DNS servers option of the replies for this subnet, or null. */
+    val dnsServersOption: DHCPOption = Dhcp.dnsOption(dnsServerAddress)
+
+    /** The classless static routes option of the replies for this subnet,
+      * or null. */
+    val classlessRoutesOption: DHCPOption =
+        Dhcp.classlessRoutesOption(opt121Routes, defautGateway)
+
+    /** Returns the host with the given MAC address, or null if none. */
+    def hostByMac(mac: MAC): Dhcp.Host = hostsByMac.getOrElse(mac, null)
 
     override def toString = {
         s"Dhcp [id=$id networkId=$networkId subnetAddress=$subnetAddress " +
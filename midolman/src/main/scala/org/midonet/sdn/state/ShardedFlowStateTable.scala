@@ -23,7 +23,8 @@ import org.slf4j.LoggerFactory
 
 import org.midonet.packets.FlowStateStore.IdleExpiration
 import org.midonet.util.collection.Reducer
-import org.midonet.util.concurrent.{NanoClock, TimedExpirationMap, OnHeapTimedExpirationMap}
+import org.midonet.util.concurrent.OffHeapTimedExpirationMap.Codec
+import org.midonet.util.concurrent.{NanoClock, OffHeapTimedExpirationMap, OnHeapTimedExpirationMap, TimedExpirationMap}
 import org.midonet.util.logging.Logger
 
 /**
@@ -216,3 +217,23 @@ class OnHeapShardedFlowStateTable[K <: IdleExpiration, V >: Null]
         }
     }
 }
+
+/**
+ * A sharded flow state table whose shards store their entries outside of the
+ * Java heap, for keys and values that can be encoded with a fixed width. The
+ * initial capacity is the number of entries that each shard can hold before
+ * its table is grown.
+ */
+class OffHeapShardedFlowStateTable[K <: IdleExpiration, V >: Null]
+    (keyCodec: Codec[K], valueCodec: Codec[V], initialCapacity: Int,
+     clock: NanoClock = NanoClock.DEFAULT)
+        extends BaseShardedFlowStateTable[K, V](clock) {
+
+    override protected def newShard(workerId: Int,
+                                    log: Logger): FlowStateShard = {
+        new FlowStateShard(workerId, log) {
+            override val map = new OffHeapTimedExpirationMap[K, V](
+                log, _.expiresAfter, keyCodec, valueCodec, initialCapacity)
+        }
+    }
+}
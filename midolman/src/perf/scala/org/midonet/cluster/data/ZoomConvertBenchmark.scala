@@ -0,0 +1,119 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.cluster.data
+
+import java.util.UUID
+import java.util.concurrent.TimeUnit
+
+import org.openjdk.jmh.annotations.{Setup => JmhSetup, _}
+
+import org.midonet.cluster.models.Commons.Condition
+import org.midonet.cluster.models.Topology.{Chain, Port, Router, Rule}
+import org.midonet.cluster.rest_api.models.{Chain => ApiChain, Port => ApiPort, Router => ApiRouter}
+import org.midonet.cluster.topology.TopologyBuilder
+import org.midonet.cluster.util.IPSubnetUtil
+import org.midonet.midolman.rules.{Rule => SimRule}
+
+/**
+  * Measures the cost of converting representative topology messages to and
+  * from their Java objects with [[ZoomConvert]]: the ports, routers and
+  * chains of the REST API, and the rules of the agent simulation.
+  */
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+class ZoomConvertBenchmark extends TopologyBuilder {
+
+    var port: Port = _
+    var router: Router = _
+    var rule: Rule = _
+    var chain: Chain = _
+
+    var apiRouter: ApiRouter = _
+    var apiChain: ApiChain = _
+
+    @JmhSetup
+    def setup(): Unit = {
+        port = createRouterPort(
+            routerId = Some(UUID.randomUUID()),
+            inboundFilterId = Some(UUID.randomUUID()),
+            outboundFilterId = Some(UUID.randomUUID()),
+            tunnelKey = 1000L,
+            peerId = Some(UUID.randomUUID()),
+            hostId = Some(UUID.randomUUID()),
+            interfaceName = Some("tap0123456789"),
+            adminStateUp = true,
+            portGroupIds = Set(UUID.randomUUID(), UUID.randomUUID()))
+        router = createRouter(
+            name = Some("router"),
+            adminStateUp = true,
+            inboundFilterId = Some(UUID.randomUUID()),
+            outboundFilterId = Some(UUID.randomUUID()),
+            routeIds = Seq(UUID.randomUUID(), UUID.randomUUID()),
+            portIds = Set(UUID.randomUUID(), UUID.randomUUID(),
+                          UUID.randomUUID()))
+        rule = createLiteralRuleBuilder(
+                id = UUID.randomUUID(),
+                chainId = Some(UUID.randomUUID()),
+                action = Some(Rule.Action.ACCEPT))
+            .setCondition(Condition.newBuilder
+                              .setNwProto(6)
+                              .setNwSrcIp(IPSubnetUtil.toProto("10.0.0.0/24"))
+                              .setNwDstIp(IPSubnetUtil.toProto("10.0.1.0/24")))
+            .build()
+        chain = createChain(
+            name = Some("chain"),
+            ruleIds = Set(UUID.randomUUID(), UUID.randomUUID(),
+                          UUID.randomUUID(), UUID.randomUUID()))
+
+        apiRouter = ZoomConvert.fromProto(router, classOf[ApiRouter])
+        apiChain = ZoomConvert.fromProto(chain, classOf[ApiChain])
+    }
+
+    @Benchmark
+    def portFromProto(): ApiPort = {
+        ZoomConvert.fromProto(port, classOf[ApiPort])
+    }
+
+    @Benchmark
+    def routerFromProto(): ApiRouter = {
+        ZoomConvert.fromProto(router, classOf[ApiRouter])
+    }
+
+    @Benchmark
+    def routerToProto(): Router = {
+        ZoomConvert.toProto(apiRouter, classOf[Router])
+    }
+
+    @Benchmark
+    def ruleFromProto(): SimRule = {
+        ZoomConvert.fromProto(rule, classOf[SimRule])
+    }
+
+    @Benchmark
+    def chainFromProto(): ApiChain = {
+        ZoomConvert.fromProto(chain, classOf[ApiChain])
+    }
+
+    @Benchmark
+    def chainToProto(): Chain = {
+        ZoomConvert.toProto(apiChain, classOf[Chain])
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.cluster.data.storage
+
+import java.util.UUID
+import java.util.concurrent.TimeUnit
+
+import org.openjdk.jmh.annotations.{Setup => JmhSetup, _}
+
+import org.midonet.cluster.models.Topology.Port
+import org.midonet.cluster.topology.TopologyBuilder
+
+/**
+  * Measures the cost of serializing and deserializing a router port, as a
+  * typical topology object, in the Protocol Buffers text and binary formats
+  * used by the NSDB. ZoomSerializerTest checks that the binary format is
+  * the more compact of the two.
+  */
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+class ZoomSerializerBenchmark extends TopologyBuilder {
+
+    var port: Port = _
+    var textData: Array[Byte] = _
+    var binaryData: Array[Byte] = _
+
+    @JmhSetup
+    def setup(): Unit = {
+        port = createRouterPort(
+            routerId = Some(UUID.randomUUID()),
+            inboundFilterId = Some(UUID.randomUUID()),
+            outboundFilterId = Some(UUID.randomUUID()),
+            tunnelKey = 1000L,
+            peerId = Some(UUID.randomUUID()),
+            hostId = Some(UUID.randomUUID()),
+            interfaceName = Some("tap0123456789"),
+            adminStateUp = true,
+            portGroupIds = Set(UUID.randomUUID(), UUID.randomUUID()),
+            routeIds = Set(UUID.randomUUID(), UUID.randomUUID(),
+                           UUID.randomUUID()))
+        textData = ZoomSerializer.serialize(port)
+        binaryData = ZoomSerializer.serialize(port, binary = true)
+    }
+
+    @Benchmark
+    def serializeText(): Array[Byte] = {
+        ZoomSerializer.serialize(port)
+    }
+
+    @Benchmark
+    def serializeBinary(): Array[Byte] = {
+        ZoomSerializer.serialize(port, binary = true)
+    }
+
+    @Benchmark
+    def deserializeText(): Port = {
+        ZoomSerializer.deserialize(textData, classOf[Port])
+    }
+
+    @Benchmark
+    def deserializeBinary(): Port = {
+        ZoomSerializer.deserialize(binaryData, classOf[Port])
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.midolman
+
+import java.util.{ArrayList, HashMap, UUID}
+import java.util.concurrent.TimeUnit
+
+import org.openjdk.jmh.annotations.{Setup => JmhSetup, _}
+
+import org.midonet.midolman.rules.{Condition, LiteralRule, Rule, RuleResult}
+import org.midonet.midolman.rules.RuleResult.Action
+import org.midonet.midolman.simulation.{Chain, PacketContext}
+import org.midonet.odp.FlowMatch
+import org.midonet.packets.{IPv4Addr, MAC, TCP, UDP}
+import org.midonet.util.Range
+
+/**
+  * Measures the cost of applying a chain of security group like rules to a
+  * new flow, as a function of the chain length, when evaluating every rule
+  * in order and when using the chain's compiled classifier. The packet only
+  * matches the last rule of the chain.
+  */
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+class ChainBenchmark {
+
+    @Param(Array("10", "100", "1000", "5000"))
+    var rulesCount: Int = _
+
+    var chain: Chain = _
+    var context: PacketContext = _
+
+    @JmhSetup
+    def setup(): Unit = {
+        val chainId = UUID.randomUUID()
+        val rules = new ArrayList[Rule](rulesCount)
+        for (index <- 0 until rulesCount) {
+            val condition = new Condition()
+            condition.nwProto = Byte.box(
+                if (index % 2 == 0) TCP.PROTOCOL_NUMBER else UDP.PROTOCOL_NUMBER)
+            condition.tpDst = new Range(Int.box(1000 + index))
+            val rule = new LiteralRule(condition, Action.ACCEPT, chainId)
+            rule.id = UUID.randomUUID()
+            rules.add(rule)
+        }
+        chain = new Chain(chainId, rules, new HashMap[UUID, Chain](),
+                          "benchmark")
+
+        val fmatch = new FlowMatch()
+            .setEthSrc(MAC.random())
+            .setEthDst(MAC.random())
+            .setNetworkSrc(IPv4Addr.random)
+            .setNetworkDst(IPv4Addr.random)
+            .setNetworkProto(
+                if ((rulesCount - 1) % 2 == 0) TCP.PROTOCOL_NUMBER
+                else UDP.PROTOCOL_NUMBER)
+            .setSrcPort(40000)
+            .setDstPort(1000 + rulesCount - 1)
+        context = PacketContext.generated(1, null, fmatch)
+    }
+
+    private def reset(): Unit = {
+        context.resetFlowContext()
+        context.resetRecordedContext()
+    }
+
+    @Benchmark
+    def linearChain(): RuleResult = {
+        reset()
+        var index = 0
+        var result = Chain.Continue
+        while (index < chain.rules.size && (result.action eq Action.CONTINUE)) {
+            result = chain.rules.get(index).process(context)
+            index += 1
+        }
+        result
+    }
+
+    @Benchmark
+    def classifiedChain(): RuleResult = {
+        reset()
+        chain.process(context)
+    }
+}
@@ -30,6 +30,7 @@ import org.midonet.midolman.config.MidolmanConfig
 import org.midonet.midolman.rules.{Condition, RuleResult}
 import org.midonet.midolman.simulation.{Bridge, PacketContext}
 import org.midonet.midolman.state.ConnTrackState._
+import org.midonet.midolman.state.NatState
 import org.midonet.midolman.state.NatState.NatKey
 import org.midonet.midolman.state.TraceState.{TraceContext, TraceKey}
 import org.midonet.midolman.state.{FlowStateReplicator, MockStateStorage}
@@ -38,7 +39,7 @@ import org.midonet.odp.ports.VxLanTunnelPort
 import org.midonet.packets.NatState.NatBinding
 import org.midonet.packets.util.PacketBuilder._
 import org.midonet.packets.{IPv4Addr, MAC}
-import org.midonet.sdn.state.{FlowStateTransaction, OnHeapShardedFlowStateTable}
+import org.midonet.sdn.state.{FlowStateTransaction, OffHeapShardedFlowStateTable, OnHeapShardedFlowStateTable}
 
 @BenchmarkMode(Array(Mode.AverageTime))
 @OutputTimeUnit(TimeUnit.MICROSECONDS)
@@ -62,11 +63,24 @@ class ConnTrackBenchmark extends MidolmanBenchmark {
         override def tunnelRecircOutputAction: FlowActionOutput = null
         override def hostRecircOutputAction: FlowActionOutput = null
     }
-    val conntrackTable = new OnHeapShardedFlowStateTable[ConnTrackKey, ConnTrackValue].addShard()
-    val natTable = new OnHeapShardedFlowStateTable[NatKey, NatBinding].addShard()
+
+    @Param(Array("on-heap", "off-heap"))
+    var tableType: String = _
+
+    @Param(Array("1000000"))
+    var entries: Int = _
+
+    lazy val conntrackTable = newConntrackTable()
+    lazy val natTable = (tableType match {
+        case "off-heap" =>
+            new OffHeapShardedFlowStateTable[NatKey, NatBinding](
+                NatState.NatKeyCodec, NatState.NatBindingCodec, entries)
+        case _ =>
+            new OnHeapShardedFlowStateTable[NatKey, NatBinding]
+    }).addShard()
     val traceTable = new OnHeapShardedFlowStateTable[TraceKey, TraceContext].addShard()
-    implicit val conntrackTx = new FlowStateTransaction(conntrackTable)
-    implicit val natTx = new FlowStateTransaction(natTable)
+    implicit lazy val conntrackTx = new FlowStateTransaction(conntrackTable)
+    implicit lazy val natTx = new FlowStateTransaction(natTable)
     implicit val traceTx = new FlowStateTransaction(traceTable)
 
     val packet = { { eth addr leftMac -> rightMac } <<
@@ -76,6 +90,9 @@ class ConnTrackBenchmark extends MidolmanBenchmark {
     var replicator: FlowStateReplicator = _
     var packetContext: PacketContext = _
 
+    var keys: Array[ConnTrackKey] = _
+    var keyIndex = 0
+
     @JmhSetup
     def setup(): Unit = {
         newHost("myself", hostId)
@@ -104,6 +121,53 @@ class ConnTrackBenchmark extends MidolmanBenchmark {
                                              mockFlowInvalidation,
                                              MidolmanConfig.forTests)
         packetContext = packetContextFor(packet, leftPortId)
+
+        populate()
+    }
+
+    private def newConntrackTable() = (tableType match {
+        case "off-heap" =>
+            new OffHeapShardedFlowStateTable[ConnTrackKey, ConnTrackValue](
+                ConnTrackKeyCodec, ConnTrackValueCodec, entries)
+        case _ =>
+            new OnHeapShardedFlowStateTable[ConnTrackKey, ConnTrackValue]
+    }).addShard()
+
+    /**
+     * Generates the connection tracking keys and fills the shared table with
+     * them, for the lookup benchmark.
+     */
+    private def populate(): Unit = {
+        val deviceId = UUID.randomUUID()
+        keys = new Array[ConnTrackKey](entries)
+        var i = 0
+        while (i < entries) {
+            keys(i) = ConnTrackKey(IPv4Addr.random, i & 0xffff,
+                                   IPv4Addr.random, 80, 6.toByte, deviceId)
+            conntrackTable.putAndRef(keys(i), RETURN_FLOW)
+            i += 1
+        }
+    }
+
+    /**
+     * Fills a new connection tracking table with the generated keys. Run with
+     * the GC profiler, gc.alloc.rate.norm reports the heap allocated by the
+     * table for all its entries, such that the on-heap and off-heap tables
+     * can be compared:
+     *
+     * ./gradlew :midolman:benchmarks '-Pjmh=.*ConnTrackBenchmark.benchmarkPopulate.* -prof gc'
+     */
+    @Benchmark
+    @BenchmarkMode(Array(Mode.SingleShotTime))
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    def benchmarkPopulate(bh: Blackhole): Unit = {
+        val table = newConntrackTable()
+        var i = 0
+        while (i < keys.length) {
+            table.putAndRef(keys(i), RETURN_FLOW)
+            i += 1
+        }
+        bh.consume(table)
     }
 
     @Benchmark
@@ -113,4 +177,12 @@ class ConnTrackBenchmark extends MidolmanBenchmark {
         conntrackTx.flush()
         res
     }
+
+    @Benchmark
+    def benchmarkConntrackLookup(bh: Blackhole): Unit = {
+        bh.consume(conntrackTable.get(keys(keyIndex)))
+        keyIndex += 1
+        if (keyIndex == keys.length)
+            keyIndex = 0
+    }
 }
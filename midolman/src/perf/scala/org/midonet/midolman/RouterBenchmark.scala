@@ -0,0 +1,106 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.midolman
+
+import java.util.concurrent.TimeUnit
+
+import org.openjdk.jmh.annotations.{Setup => JmhSetup, _}
+
+import org.midonet.midolman.PacketWorkflow.SimulationResult
+import org.midonet.midolman.layer3.Route
+import org.midonet.midolman.simulation.{Bridge, PacketContext, Simulator}
+import org.midonet.packets.{IPv4Addr, IPv4Subnet, MAC}
+import org.midonet.packets.util.PacketBuilder._
+
+/**
+  * Measures the simulation of a TCP packet through a bridge, a router and a
+  * second bridge. The bytes allocated for every packet, such as the flow
+  * removal callbacks registered by the bridge and router for the new flow,
+  * are reported as gc.alloc.rate.norm by the GC profiler:
+  *
+  * ./gradlew :midolman:benchmarks '-Pjmh=.*RouterBenchmark.* -prof gc'
+  */
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(value = 5)
+@State(Scope.Thread)
+class RouterBenchmark extends MidolmanBenchmark {
+
+    val leftMac = MAC.random
+    val rightMac = MAC.random
+    val leftRouterMac = MAC.random
+    val rightRouterMac = MAC.random
+    val leftIp = IPv4Addr("10.0.0.10")
+    val rightIp = IPv4Addr("10.0.1.10")
+    val packet = { eth addr leftMac -> leftRouterMac } <<
+                 { ip4 addr leftIp --> rightIp } <<
+                 { tcp ports 10000 ---> 80 }
+
+    var packetContext: PacketContext = _
+
+    @JmhSetup
+    def setup(): Unit = {
+        newHost("myself", hostId)
+        val leftBridgeId = newBridge("left-bridge")
+        val rightBridgeId = newBridge("right-bridge")
+        val routerId = newRouter("router")
+
+        val leftPortId = newBridgePort(leftBridgeId)
+        val rightPortId = newBridgePort(rightBridgeId)
+        materializePort(rightPortId, hostId, "port0")
+
+        val leftRouterPortId = newRouterPort(
+            routerId, leftRouterMac, new IPv4Subnet("10.0.0.1", 24))
+        val rightRouterPortId = newRouterPort(
+            routerId, rightRouterMac, new IPv4Subnet("10.0.1.1", 24))
+        val leftUplinkId = newBridgePort(leftBridgeId)
+        val rightUplinkId = newBridgePort(rightBridgeId)
+        linkPorts(leftRouterPortId, leftUplinkId)
+        linkPorts(rightRouterPortId, rightUplinkId)
+
+        newRoute(routerId, "0.0.0.0", 0, "10.0.0.0", 24, Route.NextHop.PORT,
+                 leftRouterPortId, new IPv4Addr(Route.NO_GATEWAY).toString, 10)
+        newRoute(routerId, "0.0.0.0", 0, "10.0.1.0", 24, Route.NextHop.PORT,
+                 rightRouterPortId, new IPv4Addr(Route.NO_GATEWAY).toString, 10)
+        feedBridgeIp4Mac(rightBridgeId, rightIp, rightMac)
+
+        fetchPorts(leftPortId, rightPortId, leftRouterPortId,
+                   rightRouterPortId, leftUplinkId, rightUplinkId)
+        fetchRouters(routerId)
+        fetchBridges(leftBridgeId, rightBridgeId)
+
+        val leftBridge = fetchDevice[Bridge](leftBridgeId)
+        val rightBridge = fetchDevice[Bridge](rightBridgeId)
+        feedMacTable(leftBridge, leftMac, leftPortId)
+        feedMacTable(rightBridge, rightMac, rightPortId)
+
+        packetContext = packetContextFor(packet, leftPortId)
+    }
+
+    /**
+      * Simulates the packet without the testing helpers, which allocate a
+      * tuple for every result.
+      */
+    @Benchmark
+    def benchmarkBridgeRouterBridge(): SimulationResult = {
+        packetContext.clear()
+        packetContext.wcmatch.reset(packetContext.origMatch)
+        Simulator.simulate(packetContext)
+    }
+}
@@ -46,8 +46,11 @@ import org.midonet.cluster.state.RoutingTableStorage._
 import org.midonet.cluster.storage.{CuratorZkConnection, MidonetBackendConfig}
 import org.midonet.cluster.topology.TopologyBuilder
 import org.midonet.cluster.util.UUIDUtil._
-import org.midonet.midolman.layer3.Route
+import org.midonet.conf.ResourceConf
+import org.midonet.midolman.layer3.{CompiledRoutingTable, IPv4RoutingTable, Route}
 import org.midonet.midolman.layer3.Route.NextHop
+import org.midonet.odp.FlowMatch
+import org.midonet.packets.IPv4Addr
 import org.midonet.util.concurrent._
 import org.midonet.util.eventloop.CallingThreadReactor
 import org.midonet.util.reactivex._
@@ -68,7 +71,8 @@ class RoutingTableStorageBenchmark extends TopologyBuilder {
     private final val config = new MidonetBackendConfig(ConfigFactory.parseString(
         s"""
            |zookeeper.zookeeper.root_key=$zkRoot
-        """.stripMargin))
+        """.stripMargin).withFallback(
+            new ResourceConf("org/midonet/conf/schemas/nsdb.conf").get))
 
     private val reactor = new CallingThreadReactor
     private var curator: CuratorFramework = _
@@ -81,6 +85,8 @@ class RoutingTableStorageBenchmark extends TopologyBuilder {
     private final val timeout = 5 seconds
     private final val benchmarkTimeout = 1800 seconds
     private final val count = 10000
+    private final val lookupRoutes = 500000
+    private final val lookups = 1000000
 
     private val executor = Executors.newSingleThreadExecutor()
     private implicit val executionContext =
@@ -106,8 +112,15 @@ class RoutingTableStorageBenchmark extends TopologyBuilder {
         }
     }
 
+    private val legacyTable = new IPv4RoutingTable
+    private var compiledTable: CompiledRoutingTable = _
+    private val flowMatch = new FlowMatch
+    private val lookupAddresses = new Array[IPv4Addr](lookups)
+
     @Setup
     def setup(): Unit = {
+        setupLookups()
+
         System.setProperty("jute.maxbuffer", Integer.toString(40 * 1024 * 1024))
         curator = CuratorFrameworkFactory.newClient(zkServer,
                                                     sessionTimeoutMs,
@@ -127,6 +140,25 @@ class RoutingTableStorageBenchmark extends TopologyBuilder {
         root.setLevel(ch.qos.logback.classic.Level.OFF)
     }
 
+    /**
+     * Builds the routing tables used by the lookup benchmarks, with prefixes
+     * of lengths between 8 and 32, similar to a full BGP table.
+     */
+    private def setupLookups(): Unit = {
+        val routes = new java.util.ArrayList[Route](lookupRoutes)
+        for (index <- 0 until lookupRoutes) {
+            val route = new Route(0, 0, random.nextInt(), 8 + random.nextInt(25),
+                                  NextHop.PORT, UUID.randomUUID, 0,
+                                  random.nextInt(4), "", UUID.randomUUID, true)
+            routes.add(route)
+            legacyTable.addRoute(route)
+        }
+        compiledTable = new CompiledRoutingTable(routes)
+        for (index <- 0 until lookups) {
+            lookupAddresses(index) = IPv4Addr.random
+        }
+    }
+
     @TearDown
     def tearDown(): Unit = {
         curator.close()
@@ -236,6 +268,27 @@ class RoutingTableStorageBenchmark extends TopologyBuilder {
         storage.delete(classOf[Port], port.getId)
     }
 
+    @Benchmark
+    def lookupLegacyRoutingTable(blackhole: Blackhole): Unit = {
+        val src = IPv4Addr.random
+        var index = 0
+        while (index < lookups) {
+            blackhole.consume(legacyTable.lookup(src, lookupAddresses(index)))
+            index += 1
+        }
+    }
+
+    @Benchmark
+    def lookupCompiledRoutingTable(blackhole: Blackhole): Unit = {
+        val src = IPv4Addr.random.toInt
+        var index = 0
+        while (index < lookups) {
+            blackhole.consume(compiledTable.lookup(
+                src, lookupAddresses(index).toInt, flowMatch))
+            index += 1
+        }
+    }
+
     private def createPortRoute(portId: UUID = UUID.randomUUID) = {
         new Route(random.nextInt(), 24, random.nextInt(), 24, NextHop.PORT,
                   portId, random.nextInt(), random.nextInt(), "",
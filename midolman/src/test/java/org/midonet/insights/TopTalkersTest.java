@@ -0,0 +1,177 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.insights;
+
+import java.util.Collections;
+import java.util.UUID;
+
+import com.codahale.metrics.MetricRegistry;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.reflections.Reflections;
+
+import org.midonet.management.TopTalker;
+import org.midonet.midolman.PacketWorkflow;
+import org.midonet.odp.FlowMatch;
+import org.midonet.odp.FlowMetadata;
+import org.midonet.odp.Packet;
+import org.midonet.odp.flows.FlowStats;
+import org.midonet.packets.IPv4Addr;
+
+public class TopTalkersTest {
+
+    private static FlowMatch flowMatch(String src, String dst, int dstPort) {
+        FlowMatch flowMatch = new FlowMatch()
+            .setNetworkSrc(IPv4Addr.fromString(src))
+            .setNetworkDst(IPv4Addr.fromString(dst))
+            .setNetworkProto((byte) 6)
+            .setDstPort(dstPort);
+        flowMatch.clearSeenFields();
+        return flowMatch;
+    }
+
+    @Test
+    public void testFlowTopTalkers() {
+        // Given a top talkers listener.
+        TopTalkers topTalkers = new TopTalkers(2, 64, 4, 1000L);
+
+        // When adding flows from three sources.
+        for (int i = 0; i < 10; i++) {
+            topTalkers.flowAdded(flowMatch("10.0.0.1", "10.0.1.1", 80),
+                                 Collections.emptyList(), 0L);
+        }
+        for (int i = 0; i < 5; i++) {
+            topTalkers.flowAdded(flowMatch("10.0.0.2", "10.0.1.1", 443),
+                                 Collections.emptyList(), 0L);
+        }
+        topTalkers.flowAdded(flowMatch("10.0.0.3", "10.0.1.2", 22),
+                             Collections.emptyList(), 0L);
+
+        // Then the tables are empty before the interval ends.
+        Assert.assertEquals(0, topTalkers.getFlowSources().length);
+
+        // When the interval ends.
+        topTalkers.tick();
+
+        // Then the tables contain the top talkers in order.
+        TopTalker[] sources = topTalkers.getFlowSources();
+        Assert.assertEquals(2, sources.length);
+        Assert.assertEquals("10.0.0.1", sources[0].getKey());
+        Assert.assertEquals(10L, sources[0].getCount());
+        Assert.assertEquals("10.0.0.2", sources[1].getKey());
+        Assert.assertEquals(5L, sources[1].getCount());
+
+        TopTalker[] destinations = topTalkers.getFlowDestinations();
+        Assert.assertEquals("10.0.1.1", destinations[0].getKey());
+        Assert.assertEquals(15L, destinations[0].getCount());
+
+        TopTalker[] ports = topTalkers.getFlowPorts();
+        Assert.assertEquals("tcp/80", ports[0].getKey());
+        Assert.assertEquals("tcp/443", ports[1].getKey());
+
+        // When the next interval ends without flows.
+        topTalkers.tick();
+
+        // Then the tables are empty.
+        Assert.assertEquals(0, topTalkers.getFlowSources().length);
+    }
+
+    @Test
+    public void testBuffersReusedAfterMerge() {
+        // Given a top talkers listener with flows in the first interval.
+        TopTalkers topTalkers = new TopTalkers(2, 64, 4, 1000L);
+        for (int i = 0; i < 10; i++) {
+            topTalkers.flowAdded(flowMatch("10.0.0.1", "10.0.1.1", 80),
+                                 Collections.emptyList(), 0L);
+        }
+        topTalkers.tick();
+        topTalkers.tick();
+
+        // When adding a flow in the interval that reuses the buffers.
+        topTalkers.flowAdded(flowMatch("10.0.0.1", "10.0.1.1", 80),
+                             Collections.emptyList(), 0L);
+        topTalkers.tick();
+
+        // Then the tables only contain the flows of the last interval.
+        TopTalker[] sources = topTalkers.getFlowSources();
+        Assert.assertEquals(1, sources.length);
+        Assert.assertEquals(1L, sources[0].getCount());
+    }
+
+    @Test
+    public void testDevicesAndBytes() {
+        // Given a top talkers listener.
+        TopTalkers topTalkers = new TopTalkers(4, 64, 4, 1000L);
+        UUID port = UUID.randomUUID();
+
+        // When recording simulations, with and without an input port, and
+        // deleted flows.
+        for (int i = 0; i < 3; i++) {
+            topTalkers.flowSimulation(0L, Mockito.mock(Packet.class), port,
+                                      new FlowMatch(),
+                                      Collections.emptyList(),
+                                      PacketWorkflow.NoOp$.MODULE$);
+        }
+        topTalkers.flowSimulation(0L, Mockito.mock(Packet.class), null,
+                                  new FlowMatch(), Collections.emptyList(),
+                                  PacketWorkflow.NoOp$.MODULE$);
+        topTalkers.flowDeleted(flowMatch("10.0.0.1", "10.0.1.1", 80),
+                               new FlowMetadata(new FlowStats(10L, 1500L)));
+        topTalkers.tick();
+
+        // Then the tables contain the device and the bytes.
+        Assert.assertEquals(1, topTalkers.getSimulationDevices().length);
+        Assert.assertEquals(port.toString(),
+                            topTalkers.getSimulationDevices()[0].getKey());
+        Assert.assertEquals(3L, topTalkers.getSimulationDevices()[0].getCount());
+        Assert.assertEquals(1500L, topTalkers.getByteSources()[0].getCount());
+        Assert.assertEquals(1500L,
+                            topTalkers.getByteDestinations()[0].getCount());
+    }
+
+    @Test
+    public void testSeenFieldsUnchanged() {
+        // Given a top talkers listener and a flow match.
+        TopTalkers topTalkers = new TopTalkers(4, 64, 4, 1000L);
+        FlowMatch flowMatch = flowMatch("10.0.0.1", "10.0.1.1", 80);
+        flowMatch.getNetworkSrcIP();
+
+        // When adding the flow.
+        topTalkers.flowAdded(flowMatch, Collections.emptyList(), 0L);
+
+        // Then only the fields seen before are seen.
+        Assert.assertTrue(flowMatch.isSeen(FlowMatch.Field.NetworkSrc));
+        Assert.assertFalse(flowMatch.isSeen(FlowMatch.Field.NetworkDst));
+        Assert.assertFalse(flowMatch.isSeen(FlowMatch.Field.NetworkProto));
+        Assert.assertFalse(flowMatch.isSeen(FlowMatch.Field.DstPort));
+    }
+
+    @Test
+    public void testBuiltInListener() {
+        // Given a top talkers listener.
+        TopTalkers topTalkers = new TopTalkers(4, 64, 4, 1000L);
+
+        // When creating an insights instance without installed listeners.
+        Insights insights = new Insights(new Reflections(Void.class),
+                                         new MetricRegistry(), topTalkers);
+
+        // Then the current listener is the top talkers listener.
+        Assert.assertSame(topTalkers, insights.currentListener());
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.midolman.layer3;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.helpers.NOPLogger;
+
+import org.midonet.midolman.layer3.Route.NextHop;
+import org.midonet.odp.FlowMatch;
+
+public class TestCompiledRoutingTable {
+
+    private static Route route(int src, int srcLength, int dst, int dstLength,
+                               int weight) {
+        return new Route(src, srcLength, dst, dstLength, NextHop.PORT,
+                         UUID.randomUUID(), 0, weight, null, null);
+    }
+
+    @Test
+    public void testEmptyRoutingTable() {
+        CompiledRoutingTable table =
+            new CompiledRoutingTable(new ArrayList<Route>());
+        Assert.assertTrue(
+            table.lookup(0x0a010108, 0x0a010106, NOPLogger.NOP_LOGGER).isEmpty());
+        Assert.assertNull(table.lookup(0x0a010108, 0x0a010106, new FlowMatch()));
+    }
+
+    @Test
+    public void testLongestPrefixAndSourceFallback() {
+        Route rt1 = route(0, 0, 0x0a140085, 7, 100);
+        Route rt2 = route(0, 0, 0x0a14008d, 18, 200);
+        Route rt3 = route(0x80c00304, 10, 0x0a14009f, 28, 300);
+        Route rt4 = route(0, 0, 0, 0, 100);
+        List<Route> routes = new ArrayList<>();
+        routes.add(rt1);
+        routes.add(rt2);
+        routes.add(rt3);
+        routes.add(rt4);
+        CompiledRoutingTable table = new CompiledRoutingTable(routes);
+
+        // The /28 route matches the source.
+        Assert.assertEquals(rt3, table.lookup(0x80c01234, 0x0a140090,
+                                              new FlowMatch()));
+        // The /28 route doesn't match the source: fall back to the /18.
+        Assert.assertEquals(rt2, table.lookup(0x12345678, 0x0a140090,
+                                              new FlowMatch()));
+        // Only the /7 prefix matches.
+        Assert.assertEquals(rt1, table.lookup(0x12345678, 0x0b000000,
+                                              new FlowMatch()));
+        // Only the default route matches.
+        Assert.assertEquals(rt4, table.lookup(0x12345678, 0xc0a80001,
+                                              new FlowMatch()));
+    }
+
+    @Test
+    public void testEqualWeightRoutes() {
+        Route rt1 = route(0, 0, 0x0a140000, 16, 100);
+        Route rt2 = route(0, 0, 0x0a140000, 16, 100);
+        Route rt3 = route(0, 0, 0x0a140000, 16, 200);
+        List<Route> routes = new ArrayList<>();
+        routes.add(rt1);
+        routes.add(rt2);
+        routes.add(rt3);
+        CompiledRoutingTable table = new CompiledRoutingTable(routes);
+
+        List<Route> matches =
+            table.lookup(0x12345678, 0x0a140001, NOPLogger.NOP_LOGGER);
+        Assert.assertEquals(2, matches.size());
+        Assert.assertTrue(matches.contains(rt1));
+        Assert.assertTrue(matches.contains(rt2));
+
+        Route selected = table.lookup(0x12345678, 0x0a140001, new FlowMatch());
+        Assert.assertTrue(selected == rt1 || selected == rt2);
+    }
+
+    @Test
+    public void testSameResultsAsRoutingTable() {
+        Random random = new Random(42);
+        List<Route> routes = new ArrayList<>();
+        RoutingTable legacy = new RoutingTable();
+        for (int i = 0; i < 5000; i++) {
+            int srcLength = random.nextInt(4) == 0 ? random.nextInt(9) : 0;
+            Route rt = route(random.nextInt(), srcLength,
+                             random.nextInt() & 0x0fffffff,
+                             random.nextInt(33), random.nextInt(4));
+            routes.add(rt);
+            legacy.addRoute(rt);
+        }
+        CompiledRoutingTable table = new CompiledRoutingTable(routes);
+
+        for (int i = 0; i < 20000; i++) {
+            int src = random.nextInt();
+            int dst = random.nextInt() & 0x0fffffff;
+            Assert.assertEquals(
+                new HashSet<>(legacy.lookup(src, dst)),
+                new HashSet<>(table.lookup(src, dst, NOPLogger.NOP_LOGGER)));
+        }
+    }
+}
@@ -37,7 +37,7 @@ public class FlowStateTableTest {
     static final Duration IDLE_EXPIRATION = new FiniteDuration(60, TimeUnit.SECONDS);
 
     static class TestKey implements FlowStateStore.IdleExpiration  {
-        private final String key;
+        final String key;
 
         public TestKey(String key) {
             this.key = key;
@@ -73,7 +73,7 @@ public class FlowStateTableTest {
         return new TestKey(k);
     }
 
-    private OnHeapShardedFlowStateTable<TestKey, Integer> global;
+    private BaseShardedFlowStateTable<TestKey, Integer> global;
     private List<FlowStateTable<TestKey, Integer>> shards = new ArrayList<>();
 
     private final int SHARDS = 4;
@@ -83,11 +83,15 @@ public class FlowStateTableTest {
     private final Integer[] vals = {100, 200, 300, 400, 500, 600};
     private final MockClock clock = new MockClock();
 
+    protected BaseShardedFlowStateTable<TestKey, Integer> newTable(
+            MockClock clock) {
+        return new OnHeapShardedFlowStateTable<>(clock);
+    }
 
     @Before
     @SuppressWarnings("unchecked")
     public void before() {
-        global = new OnHeapShardedFlowStateTable<>(clock);
+        global = newTable(clock);
         for (int i = 0; i < SHARDS; i++) {
             shards.add((FlowStateTable)
                     global.addShard(Logger$.MODULE$.apply(NOPLogger.NOP_LOGGER)));
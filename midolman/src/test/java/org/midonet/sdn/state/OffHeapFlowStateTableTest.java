@@ -0,0 +1,80 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.midonet.sdn.state;
+
+import java.nio.ByteBuffer;
+
+import org.midonet.util.concurrent.MockClock;
+import org.midonet.util.concurrent.OffHeapTimedExpirationMap;
+
+/**
+ * Runs the flow state table tests on the off-heap shards, where the keys and
+ * values are encoded into the shard tables.
+ */
+public class OffHeapFlowStateTableTest extends FlowStateTableTest {
+
+    private static final int KEY_LENGTH = 15;
+
+    private static final OffHeapTimedExpirationMap.Codec<TestKey> KEY_CODEC =
+        new OffHeapTimedExpirationMap.Codec<TestKey>() {
+            @Override
+            public int width() {
+                return KEY_LENGTH + 1;
+            }
+
+            @Override
+            public void encode(TestKey value, ByteBuffer buf, int offset) {
+                buf.put(offset, (byte) value.key.length());
+                for (int i = 0; i < value.key.length(); i++) {
+                    buf.put(offset + i + 1, (byte) value.key.charAt(i));
+                }
+            }
+
+            @Override
+            public TestKey decode(ByteBuffer buf, int offset) {
+                char[] chars = new char[buf.get(offset)];
+                for (int i = 0; i < chars.length; i++) {
+                    chars[i] = (char) buf.get(offset + i + 1);
+                }
+                return new TestKey(new String(chars));
+            }
+        };
+
+    private static final OffHeapTimedExpirationMap.Codec<Integer> VALUE_CODEC =
+        new OffHeapTimedExpirationMap.Codec<Integer>() {
+            @Override
+            public int width() {
+                return 4;
+            }
+
+            @Override
+            public void encode(Integer value, ByteBuffer buf, int offset) {
+                buf.putInt(offset, value);
+            }
+
+            @Override
+            public Integer decode(ByteBuffer buf, int offset) {
+                return buf.getInt(offset);
+            }
+        };
+
+    @Override
+    protected BaseShardedFlowStateTable<TestKey, Integer> newTable(
+            MockClock clock) {
+        return new OffHeapShardedFlowStateTable<>(KEY_CODEC, VALUE_CODEC, 2,
+                                                  clock);
+    }
+}
@@ -16,6 +16,8 @@
 
 package org.midonet.midolman
 
+import java.util.{ArrayList, UUID}
+
 import com.google.common.collect.Lists
 
 import org.junit.runner.RunWith
@@ -23,9 +25,13 @@ import org.scalatest.junit.JUnitRunner
 
 import org.midonet.insights.Insights
 import org.midonet.midolman.flows.{FlowExpirationIndexer, ManagedFlowImpl}
+import org.midonet.midolman.monitoring.MeteredFlowIndex
 import org.midonet.midolman.util.MidolmanSpec
-import org.midonet.odp.FlowMatch
-import org.midonet.sdn.flows.FlowTagger.FlowTag
+import org.midonet.odp.flows.{FlowAction, FlowKeys, FlowStats}
+import org.midonet.odp.{Flow, FlowMatch}
+import org.midonet.packets.{IPFragmentType, IPv4, IPv4Addr, MAC, TCP}
+import org.midonet.sdn.flows.FlowTagger
+import org.midonet.sdn.flows.FlowTagger.{FlowTag, MeterTag}
 import org.midonet.util.functors.Callback0
 
 @RunWith(classOf[JUnitRunner])
@@ -178,6 +184,121 @@ class FlowControllerTest extends MidolmanSpec {
             managedFlow.removed should be (true)
             managedFlow.currentRefCount should be (1)
         }
+
+        scenario("Dumped flow statistics update the meters") {
+            Given("A metered flow in the flow controller")
+            val meter = FlowTagger.tagForBridge(UUID.randomUUID())
+                                  .asInstanceOf[MeterTag]
+            val flow = new TestableFlow(
+                fmatch = new FlowMatch().addKey(FlowKeys.inPort(1)))
+            flow.add(meter)
+            val meters = flowController.asInstanceOf[FlowControllerImpl].meters
+
+            When("The flow statistics are dumped from the datapath")
+            val dumped = new Flow(new FlowMatch().addKey(FlowKeys.inPort(1)),
+                                  new ArrayList[FlowAction](),
+                                  new FlowStats(5, 500))
+            val unknown = new Flow(new FlowMatch().addKey(FlowKeys.inPort(2)),
+                                   new ArrayList[FlowAction](),
+                                   new FlowStats(7, 700))
+            flowController.updateFlowStats(Lists.newArrayList(dumped, unknown))
+
+            Then("The meter should account the statistics of the flow")
+            meters.meters.get(meter.meterName).packets shouldBe 5
+            meters.meters.get(meter.meterName).bytes shouldBe 500
+
+            When("The statistics are dumped again")
+            dumped.getStats.packets = 8
+            dumped.getStats.bytes = 800
+            flowController.updateFlowStats(Lists.newArrayList(dumped))
+
+            Then("The meter should only account the difference")
+            meters.meters.get(meter.meterName).packets shouldBe 8
+            meters.meters.get(meter.meterName).bytes shouldBe 800
+        }
+
+        scenario("Dumped megaflow statistics update the meters") {
+            Given("A flow controller collecting the flow statistics")
+            val index = new MeteredFlowIndex(1)
+            flowController = new FlowControllerImpl(
+                config, clock, flowProcessor,
+                0, 0, metrics,
+                new MockFlowTablePreallocation(config) {
+                    override val meteredFlows = index
+                },
+                Insights.NONE)
+
+            And("A metered flow that only matched the destination address")
+            val meter = FlowTagger.tagForBridge(UUID.randomUUID())
+                                  .asInstanceOf[MeterTag]
+            val src = IPv4Addr.fromString("10.0.0.1")
+            val dst = IPv4Addr.fromString("10.0.0.2")
+            val fmatch = new FlowMatch()
+                .addKey(FlowKeys.inPort(1))
+                .addKey(FlowKeys.ethernet(MAC.random(), MAC.random()))
+                .addKey(FlowKeys.etherType(IPv4.ETHERTYPE))
+                .addKey(FlowKeys.ipv4(src, dst, TCP.PROTOCOL_NUMBER,
+                                      0.toByte, 64.toByte,
+                                      IPFragmentType.None))
+                .addKey(FlowKeys.tcp(10000, 80))
+            fmatch.getNetworkDstIP
+            val flow = new TestableFlow(fmatch = fmatch)
+            flow.add(meter)
+            val meters = flowController.asInstanceOf[FlowControllerImpl].meters
+
+            When("The datapath dumps the masked flow")
+            val masked = new FlowMatch()
+                .addKey(FlowKeys.inPort(1))
+                .addKey(FlowKeys.ethernet(MAC.ALL_ZEROS, MAC.ALL_ZEROS))
+                .addKey(FlowKeys.etherType(IPv4.ETHERTYPE))
+                .addKey(FlowKeys.ipv4(IPv4Addr.fromInt(0), dst, 0.toByte,
+                                      0.toByte, 0.toByte,
+                                      IPFragmentType.None))
+            masked should not be (fmatch)
+            index.ownerOf(masked) shouldBe 0
+            val dumped = new Flow(masked, new ArrayList[FlowAction](),
+                                  new FlowStats(3, 300))
+            flowController.updateFlowStats(Lists.newArrayList(dumped))
+
+            Then("The meter should account the statistics of the flow")
+            meters.meters.get(meter.meterName).packets shouldBe 3
+            meters.meters.get(meter.meterName).bytes shouldBe 300
+        }
+
+        scenario("Megaflow matches are not computed without statistics") {
+            Given("A metered flow that only matched the destination address")
+            val meter = FlowTagger.tagForBridge(UUID.randomUUID())
+                                  .asInstanceOf[MeterTag]
+            val dst = IPv4Addr.fromString("10.0.0.2")
+            val fmatch = new FlowMatch()
+                .addKey(FlowKeys.inPort(1))
+                .addKey(FlowKeys.ethernet(MAC.random(), MAC.random()))
+                .addKey(FlowKeys.etherType(IPv4.ETHERTYPE))
+                .addKey(FlowKeys.ipv4(IPv4Addr.fromString("10.0.0.1"), dst,
+                                      TCP.PROTOCOL_NUMBER, 0.toByte,
+                                      64.toByte, IPFragmentType.None))
+                .addKey(FlowKeys.tcp(10000, 80))
+            fmatch.getNetworkDstIP
+            val flow = new TestableFlow(fmatch = fmatch)
+            flow.add(meter)
+            val meters = flowController.asInstanceOf[FlowControllerImpl].meters
+
+            When("The masked flow statistics are updated")
+            val masked = new FlowMatch()
+                .addKey(FlowKeys.inPort(1))
+                .addKey(FlowKeys.ethernet(MAC.ALL_ZEROS, MAC.ALL_ZEROS))
+                .addKey(FlowKeys.etherType(IPv4.ETHERTYPE))
+                .addKey(FlowKeys.ipv4(IPv4Addr.fromInt(0), dst, 0.toByte,
+                                      0.toByte, 0.toByte,
+                                      IPFragmentType.None))
+            val dumped = new Flow(masked, new ArrayList[FlowAction](),
+                                  new FlowStats(3, 300))
+            flowController.updateFlowStats(Lists.newArrayList(dumped))
+
+            Then("The meter should not account the statistics")
+            meters.meters.get(meter.meterName).packets shouldBe 0
+            meters.meters.get(meter.meterName).bytes shouldBe 0
+        }
     }
 
     final class TestableFlow(val fmatch: FlowMatch = new FlowMatch(),
@@ -190,6 +311,7 @@ class FlowControllerTest extends MidolmanSpec {
                 case null =>
                     flowController.addFlow(
                         fmatch,
+                        new ArrayList[FlowAction](),
                         Lists.newArrayList(tags :_*),
                         Lists.newArrayList(
                             new Callback0 {
@@ -199,6 +321,7 @@ class FlowControllerTest extends MidolmanSpec {
                 case _ =>
                     flowController.addRecircFlow(
                         fmatch, linked,
+                        new ArrayList[FlowAction](),
                         Lists.newArrayList(tags :_*),
                         Lists.newArrayList(
                             new Callback0 {
@@ -96,6 +96,63 @@ class FlowExpirationIndexerTest extends MidolmanSpec {
         }
     }
 
+    feature ("Flows removed before their expiration are cancelled") {
+
+        scenario ("A cancelled flow is not expired") {
+            val flow = createFlow(FlowExpirationIndexer.FLOW_EXPIRATION)
+            val entry = flowExpiration.enqueueFlowExpiration(
+                flow.id, flow.absoluteResetTimeNanos, flow.expiration)
+            flowExpiration.cancelFlowExpiration(flow.id, entry)
+            clock.time = Long.MaxValue
+            flowExpiration.pollForExpired(clock.tick) shouldBe NoFlow
+        }
+
+        scenario ("Cancelling an expired flow has no effect") {
+            val flow1 = createFlow(FlowExpirationIndexer.FLOW_EXPIRATION)
+            val flow2 = createFlow(FlowExpirationIndexer.FLOW_EXPIRATION)
+            val entry1 = flowExpiration.enqueueFlowExpiration(
+                flow1.id, flow1.absoluteResetTimeNanos, flow1.expiration)
+            clock.time = Long.MaxValue
+            flowExpiration.pollForExpired(clock.tick) shouldBe flow1.id
+
+            flowExpiration.enqueueFlowExpiration(
+                flow2.id, flow2.absoluteResetTimeNanos, flow2.expiration)
+            flowExpiration.cancelFlowExpiration(flow1.id, entry1)
+            flowExpiration.pollForExpired(clock.tick) shouldBe flow2.id
+            flowExpiration.pollForExpired(clock.tick) shouldBe NoFlow
+        }
+
+        scenario ("Cancelled flows do not count as excess flows") {
+            val flows = for (i <- 0 until 6)
+                yield createFlow(FlowExpirationIndexer.FLOW_EXPIRATION)
+            val entries = flows map { f =>
+                flowExpiration.enqueueFlowExpiration(
+                    f.id, f.absoluteResetTimeNanos, f.expiration)
+            }
+            flowExpiration.cancelFlowExpiration(flows(2).id, entries(2))
+            flowExpiration.cancelFlowExpiration(flows(3).id, entries(3))
+            flowExpiration.pollForExpired(clock.tick) shouldBe NoFlow
+        }
+    }
+
+    feature ("Excess flows are evicted by expiration time") {
+
+        scenario ("The flow closest to its expiration is evicted") {
+            val flows = List(
+                createFlow(FlowExpirationIndexer.TUNNEL_FLOW_EXPIRATION),
+                createFlow(FlowExpirationIndexer.TUNNEL_FLOW_EXPIRATION),
+                createFlow(FlowExpirationIndexer.FLOW_EXPIRATION),
+                createFlow(FlowExpirationIndexer.FLOW_EXPIRATION),
+                createFlow(FlowExpirationIndexer.STATEFUL_FLOW_EXPIRATION))
+            flows foreach { f =>
+                flowExpiration.enqueueFlowExpiration(
+                    f.id, f.absoluteResetTimeNanos, f.expiration)
+            }
+            flowExpiration.pollForExpired(clock.tick) shouldBe flows(4).id
+            flowExpiration.pollForExpired(clock.tick) shouldBe NoFlow
+        }
+    }
+
     private def createFlow(exp: FlowExpirationIndexer.Expiration) = {
         val flow = new ManagedFlowImpl(null)
         flow.absoluteResetTimeNanos = 0L
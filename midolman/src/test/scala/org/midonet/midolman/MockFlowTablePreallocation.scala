@@ -33,14 +33,8 @@ class MockFlowTablePreallocation(config: MidolmanConfig)
     override def takeManagedFlowPool(): ArrayObjectPool[ManagedFlowImpl] =
         new ArrayObjectPool[ManagedFlowImpl](
             maxFlows, new ManagedFlowImpl(_))
-    override def takeMeterRegistry(): MeterRegistry =
-        new MeterRegistry(maxFlows)
-    override def takeErrorExpirationQueue(): ExpirationQueue =
-        new ExpirationQueue(maxFlows/3)
-    override def takeFlowExpirationQueue(): ExpirationQueue =
+    override def takeMeterRegistry(workerId: Int): MeterRegistry =
+        new MeterRegistry(maxFlows, workerId, meteredFlows)
+    override def takeExpirationQueue(): ExpirationQueue =
         new ExpirationQueue(maxFlows)
-    override def takeStatefulFlowExpirationQueue(): ExpirationQueue =
-        new ExpirationQueue(maxFlows)
-    override def takeTunnelFlowExpirationQueue(): ExpirationQueue =
-        new ExpirationQueue(maxFlows/3)
 }
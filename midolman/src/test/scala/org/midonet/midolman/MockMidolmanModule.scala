@@ -21,6 +21,7 @@ import java.util.concurrent.ConcurrentHashMap
 
 import scala.collection.IndexedSeq
 import scala.concurrent.Future
+import scala.concurrent.duration.Duration
 
 import akka.actor.ActorSystem
 
@@ -41,6 +42,7 @@ import org.midonet.midolman.host.scanner.InterfaceScanner
 import org.midonet.midolman.host.services.{QosService, TcRequestHandler}
 import org.midonet.midolman.io._
 import org.midonet.midolman.logging.FlowTracingAppender
+import org.midonet.midolman.monitoring.metrics.DatapathMetrics
 import org.midonet.midolman.services.{HostIdProvider, MidolmanActorsService, SelectLoopService}
 import org.midonet.midolman.state.ConnTrackState.ConnTrackKey
 import org.midonet.midolman.state.NatState.NatKey
@@ -170,6 +172,15 @@ class MockMidolmanModule(override val hostId: UUID,
             backChannel: SimulationBackChannel) =
         new MockFlowProcessor(flowsTable)
 
+    protected override def flowStatsCollector(
+            dpState: DatapathState,
+            families: OvsNetlinkFamilies,
+            channelFactory: NetlinkChannelFactory,
+            backChannel: SimulationBackChannel) =
+        new FlowStatsCollector(dpState, families, channelFactory, backChannel,
+                               new DatapathMetrics(new MetricRegistry),
+                               NanoClock.DEFAULT, Duration.Zero, null)
+
     protected override def datapathChannel(
             ringBuffer: RingBuffer[PacketContextHolder],
             barrier: SequenceBarrier,
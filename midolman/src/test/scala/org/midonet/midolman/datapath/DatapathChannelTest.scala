@@ -21,7 +21,10 @@ import java.nio.channels.SelectionKey
 import java.util.concurrent.{TimeUnit, LinkedBlockingQueue}
 import java.util.{UUID, ArrayList}
 
+import scala.collection.JavaConverters._
+
 import akka.testkit.TestProbe
+import com.codahale.metrics.MetricRegistry
 import com.lmax.disruptor.{SequenceBarrier, RingBuffer}
 import org.jctools.queues.SpscArrayQueue
 import org.junit.runner.RunWith
@@ -29,7 +32,9 @@ import org.scalatest.junit.JUnitRunner
 import org.scalatest.concurrent.Eventually._
 
 import org.midonet.midolman.datapath.DisruptorDatapathChannel.PacketContextHolder
-import org.midonet.midolman.DatapathStateDriver
+import org.midonet.midolman.{DatapathStateDriver, SimulationBackChannel}
+import org.midonet.midolman.SimulationBackChannel.BackChannelMessage
+import org.midonet.midolman.datapath.FlowProcessor.FlowError
 import org.midonet.midolman.flows.{FlowOperation, ManagedFlowImpl}
 import org.midonet.midolman.monitoring.metrics.DatapathMetrics
 import org.midonet.midolman.monitoring.metrics.PacketExecutorMetrics
@@ -241,6 +246,146 @@ class DatapathChannelTest extends MidolmanSpec {
         }
     }
 
+    feature ("FlowProcessor batches the flow create requests") {
+        scenario ("Flows are written in batches") {
+            Given("A flow processor with a maximum batch size of 4")
+            val metrics = new DatapathMetrics(new MetricRegistry)
+            val processor = batchingProcessor(new RecordingBackChannel, metrics)
+            nlChannel.written.clear()
+            val written = nlChannel.packetsWritten.get()
+
+            When("Creating 3 flows without ending the batch")
+            for (seq <- 0 until 3) {
+                processor.onEvent(flowEvent(seq), seq, endOfBatch = false)
+            }
+
+            Then("No flows are written")
+            nlChannel.packetsWritten.get() shouldBe written
+
+            When("Creating a fourth flow")
+            processor.onEvent(flowEvent(3), 3, endOfBatch = false)
+
+            Then("The full batch is written with a single write")
+            nlChannel.packetsWritten.get() shouldBe written + 1
+            batchedMarks(nlChannel.written.poll()) shouldBe Seq(0, 1, 2, 3)
+            metrics.flowsCreated.getCount shouldBe 4
+
+            When("Creating 2 flows and ending the batch")
+            processor.onEvent(flowEvent(4), 4, endOfBatch = false)
+            processor.onEvent(flowEvent(5), 5, endOfBatch = true)
+
+            Then("The partial batch is written with a single write")
+            nlChannel.packetsWritten.get() shouldBe written + 2
+            batchedMarks(nlChannel.written.poll()) shouldBe Seq(4, 5)
+            metrics.flowsCreated.getCount shouldBe 6
+            metrics.flowCreateBatchSize.getCount shouldBe 2
+            metrics.flowCreateErrors.getCount shouldBe 0
+        }
+
+        scenario ("Flows are written one at a time if the batch write fails") {
+            Given("A flow processor with a maximum batch size of 4")
+            val backChannel = new RecordingBackChannel
+            val metrics = new DatapathMetrics(new MetricRegistry)
+            val processor = batchingProcessor(backChannel, metrics)
+            nlChannel.written.clear()
+
+            When("The batch write fails")
+            nlChannel.failingWrites = 1
+            for (seq <- 0 until 3) {
+                processor.onEvent(flowEvent(seq), seq, endOfBatch = seq == 2)
+            }
+
+            Then("Every flow is written with its own write")
+            nlChannel.written.asScala.map(batchedMarks).toSeq shouldBe
+                Seq(Seq(0), Seq(1), Seq(2))
+            metrics.flowsCreated.getCount shouldBe 3
+            metrics.flowCreateErrors.getCount shouldBe 0
+            backChannel.messages shouldBe empty
+        }
+
+        scenario ("Flow write errors are reported for the failed flow") {
+            Given("A flow processor with a maximum batch size of 4")
+            val backChannel = new RecordingBackChannel
+            val metrics = new DatapathMetrics(new MetricRegistry)
+            val processor = batchingProcessor(backChannel, metrics)
+            nlChannel.written.clear()
+
+            When("The batch write and the write of the first flow fail")
+            nlChannel.failingWrites = 2
+            for (seq <- 0 until 3) {
+                processor.onEvent(flowEvent(seq), seq, endOfBatch = seq == 2)
+            }
+
+            Then("The other flows are written")
+            nlChannel.written.asScala.map(batchedMarks).toSeq shouldBe
+                Seq(Seq(1), Seq(2))
+            metrics.flowsCreated.getCount shouldBe 2
+
+            And("The failed flow is reported as a flow error")
+            metrics.flowCreateErrors.getCount shouldBe 1
+            backChannel.messages.asScala shouldBe Seq(FlowError(0))
+        }
+
+        scenario ("Flow write errors are reported without batching") {
+            Given("A flow processor without batching")
+            val backChannel = new RecordingBackChannel
+            val metrics = new DatapathMetrics(new MetricRegistry)
+            val processor = batchingProcessor(backChannel, metrics,
+                                              maxBatchSize = 1)
+            nlChannel.written.clear()
+
+            When("The write of the second flow fails")
+            processor.onEvent(flowEvent(0), 0, endOfBatch = false)
+            nlChannel.failingWrites = 1
+            processor.onEvent(flowEvent(1), 1, endOfBatch = true)
+
+            Then("The failed flow is reported as a flow error")
+            nlChannel.written.asScala.map(batchedMarks).toSeq shouldBe Seq(Seq(0))
+            metrics.flowsCreated.getCount shouldBe 1
+            metrics.flowCreateErrors.getCount shouldBe 1
+            backChannel.messages.asScala shouldBe Seq(FlowError(1))
+        }
+    }
+
+    private class RecordingBackChannel extends SimulationBackChannel {
+        val messages = new ArrayList[BackChannelMessage]()
+        override def tell(message: BackChannelMessage): Unit =
+            messages.add(message)
+        override def hasMessages: Boolean = false
+        override def poll(): BackChannelMessage = null
+    }
+
+    private def batchingProcessor(backChannel: SimulationBackChannel,
+                                  metrics: DatapathMetrics,
+                                  maxBatchSize: Int = 4): FlowProcessor =
+        new FlowProcessor(
+            new DatapathStateDriver(datapath), ovsFamilies,
+            maxPendingRequests = 1024, maxRequestSize = 2048, factory,
+            factory.selectorProvider, backChannel, metrics, clock,
+            maxBatchSize)
+
+    private def flowEvent(mark: Int): PacketContextHolder = {
+        val context = packetContextFor(ethernet, UUID.randomUUID())
+        context.flowActions.addAll(actions)
+        context.flow = new ManagedFlowImpl(null)
+        context.flow.setMark(mark)
+        val event = DisruptorDatapathChannel.Factory.newInstance()
+        event.flowCreateRef = context
+        event
+    }
+
+    /** Returns the flow indices of the messages in a written buffer. */
+    private def batchedMarks(bb: ByteBuffer): Seq[Int] = {
+        val marks = Seq.newBuilder[Int]
+        var offset = 0
+        while (offset < bb.limit()) {
+            marks += bb.getInt(offset + NetlinkMessage.NLMSG_SEQ_OFFSET)
+            val len = bb.getInt(offset + NetlinkMessage.NLMSG_LEN_OFFSET)
+            offset += (len + 3) & ~3
+        }
+        marks.result()
+    }
+
     private def flowMatchParser(buf: ByteBuffer): FlowMatch = {
         val keys = new ArrayList[FlowKey](16)
         FlowKeys.buildFrom(buf, keys)
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.midolman.io
+
+import scala.collection.mutable
+
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{FeatureSpec, GivenWhenThen, Matchers}
+
+import org.midonet.midolman.PacketWorker
+import org.midonet.midolman.config.MidolmanConfig
+import org.midonet.midolman.util.mock.MockUpcallDatapathConnectionManager
+import org.midonet.odp.{FlowMatches, Packet}
+import org.midonet.packets.{IPv4Addr, MAC}
+import org.midonet.packets.util.PacketBuilder._
+import org.midonet.util.BatchCollector
+
+@RunWith(classOf[JUnitRunner])
+class UpcallHandlerTest extends FeatureSpec with Matchers with GivenWhenThen {
+
+    class RecordingWorker(capacity: Long) extends PacketWorker {
+        val batches = mutable.Buffer[Seq[Packet]]()
+        val claimed = mutable.Buffer[Packet]()
+        // Slots claimed by other producers before the next claim.
+        var skip = 0L
+
+        override def submit(packet: Packet): Boolean =
+            throw new UnsupportedOperationException
+
+        override def claim(packet: Packet): Long = {
+            claimed ++= Seq.fill(skip.toInt)(null)
+            skip = 0L
+            if (claimed.size >= capacity) {
+                -1L
+            } else {
+                claimed += packet
+                claimed.size - 1
+            }
+        }
+
+        override def publish(lo: Long, hi: Long): Unit = {
+            batches += claimed.slice(lo.toInt, hi.toInt + 1)
+        }
+    }
+
+    class TestConnectionManager
+        extends MockUpcallDatapathConnectionManager(MidolmanConfig.forTests) {
+        def handler(workers: IndexedSeq[PacketWorker]): BatchCollector[Packet] =
+            makeUpcallHandler(workers)
+    }
+
+    private def packet(srcPort: Int): Packet = {
+        val frame = ({ eth src MAC.random() dst MAC.random() } <<
+                     { ip4 src IPv4Addr.random dst IPv4Addr.random } <<
+                     { tcp src srcPort.toShort dst 80 }).packet
+        new Packet(frame, FlowMatches.fromEthernetPacket(frame))
+    }
+
+    feature("The upcall handler submits packets in batches") {
+        scenario("Packets are submitted when the batch ends") {
+            Given("An upcall handler with one worker")
+            val worker = new RecordingWorker(Long.MaxValue)
+            val handler = new TestConnectionManager().handler(IndexedSeq(worker))
+
+            When("Submitting three packets")
+            val packets = (1 to 3) map { i => packet(1000 + i) }
+            packets foreach { p => handler.submit(p) shouldBe true }
+
+            Then("The worker does not receive the packets")
+            worker.batches shouldBe empty
+
+            When("Ending the batch")
+            handler.endBatch()
+
+            Then("The worker receives the packets in one batch and in order")
+            worker.batches shouldBe Seq(packets)
+
+            When("Ending an empty batch")
+            handler.endBatch()
+
+            Then("The worker does not receive another batch")
+            worker.batches should have size 1
+        }
+
+        scenario("Packets exceeding the worker capacity are rejected") {
+            Given("An upcall handler with a worker with capacity for two")
+            val worker = new RecordingWorker(2)
+            val handler = new TestConnectionManager().handler(IndexedSeq(worker))
+
+            When("Submitting three packets")
+            val packets = (1 to 3) map { i => packet(1000 + i) }
+            handler.submit(packets(0)) shouldBe true
+            handler.submit(packets(1)) shouldBe true
+
+            Then("The third packet is rejected")
+            handler.submit(packets(2)) shouldBe false
+
+            When("Ending the batch")
+            handler.endBatch()
+
+            Then("The worker receives the accepted packets")
+            worker.batches shouldBe Seq(packets.take(2))
+        }
+
+        scenario("Packets are published around the slots of other producers") {
+            Given("An upcall handler with one worker")
+            val worker = new RecordingWorker(Long.MaxValue)
+            val handler = new TestConnectionManager().handler(IndexedSeq(worker))
+
+            When("Submitting two packets around a slot of another producer")
+            val packets = (1 to 2) map { i => packet(1000 + i) }
+            handler.submit(packets(0)) shouldBe true
+            worker.skip = 1L
+            handler.submit(packets(1)) shouldBe true
+
+            Then("The worker receives the first packet")
+            worker.batches shouldBe Seq(Seq(packets(0)))
+
+            When("Ending the batch")
+            handler.endBatch()
+
+            Then("The worker receives the second packet")
+            worker.batches shouldBe Seq(Seq(packets(0)), Seq(packets(1)))
+        }
+    }
+}
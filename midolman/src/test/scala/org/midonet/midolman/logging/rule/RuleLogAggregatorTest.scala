@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.midolman.logging.rule
+
+import java.util.UUID
+
+import scala.collection.mutable
+
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{FeatureSpec, GivenWhenThen, Matchers}
+
+import org.midonet.logging.rule.Result
+import org.midonet.midolman.logging.rule.DisruptorRuleLogEventChannel.RuleLogEvent
+import org.midonet.midolman.rules.LiteralRule
+import org.midonet.midolman.simulation.Chain
+import org.midonet.packets.{IPAddr, IPv4Addr}
+
+@RunWith(classOf[JUnitRunner])
+class RuleLogAggregatorTest extends FeatureSpec
+                            with Matchers
+                            with GivenWhenThen {
+
+    private val loggerId = UUID.randomUUID()
+    private val chain = new Chain(UUID.randomUUID(), List(),
+                                  Map[UUID, Chain](), "chain",
+                                  Array[Byte](), Seq())
+    private val rule = {
+        val r = new LiteralRule
+        r.id = UUID.randomUUID()
+        r
+    }
+
+    private def event(srcIp: IPAddr, dstIp: IPAddr, srcPort: Int,
+                      dstPort: Int): RuleLogEvent = {
+        new RuleLogEvent(loggerId, 6, chain, rule, srcIp, dstIp, srcPort,
+                         dstPort, Result.ACCEPT)
+    }
+
+    private def drain(aggregator: RuleLogAggregator)
+    : Seq[(IPAddr, IPAddr, Int, Int, Long)] = {
+        val summaries = mutable.Buffer[(IPAddr, IPAddr, Int, Int, Long)]()
+        aggregator.drain { (e, count) =>
+            summaries += ((e.srcIp, e.dstIp, e.srcPort, e.dstPort, count))
+        }
+        summaries
+    }
+
+    feature("The aggregator counts rule log events") {
+        scenario("Events differing by source port are counted together") {
+            Given("An aggregator")
+            val aggregator = new RuleLogAggregator(16)
+            val srcIp = IPv4Addr.random
+            val dstIp = IPv4Addr.random
+
+            When("Adding events from several source ports to the same service")
+            for (port <- 1000 until 1010) {
+                aggregator.add(event(srcIp, dstIp, port, 80)) shouldBe true
+            }
+            aggregator.add(event(srcIp, dstIp, 2000, 443)) shouldBe true
+
+            Then("The aggregator has one counter per destination port")
+            aggregator.size shouldBe 2
+
+            And("The summaries have a zero source port")
+            drain(aggregator) should contain theSameElementsAs Seq(
+                (srcIp, dstIp, 0, 80, 10L),
+                (srcIp, dstIp, 0, 443, 1L))
+        }
+
+        scenario("Draining clears the counters") {
+            Given("An aggregator with one counter")
+            val aggregator = new RuleLogAggregator(16)
+            val srcIp = IPv4Addr.random
+            val dstIp = IPv4Addr.random
+            aggregator.add(event(srcIp, dstIp, 1000, 80))
+
+            When("Draining the aggregator")
+            drain(aggregator) should have size 1
+
+            Then("The aggregator is empty")
+            aggregator.size shouldBe 0
+            drain(aggregator) shouldBe empty
+
+            And("New events start a new counter")
+            aggregator.add(event(srcIp, dstIp, 1001, 80))
+            drain(aggregator) shouldBe Seq((srcIp, dstIp, 0, 80, 1L))
+        }
+
+        scenario("Events with new keys are discarded when the table is full") {
+            Given("An aggregator with two entries")
+            val aggregator = new RuleLogAggregator(2)
+            val srcIp = IPv4Addr.random
+            val dstIp = IPv4Addr.random
+
+            When("Adding events for three destination ports")
+            aggregator.add(event(srcIp, dstIp, 1000, 80)) shouldBe true
+            aggregator.add(event(srcIp, dstIp, 1000, 81)) shouldBe true
+            aggregator.add(event(srcIp, dstIp, 1000, 82)) shouldBe false
+
+            Then("The events for the existing keys are still counted")
+            aggregator.add(event(srcIp, dstIp, 1001, 80)) shouldBe true
+            aggregator.size shouldBe 2
+            aggregator.discardedEvents shouldBe 1
+
+            And("Draining resets the discarded events")
+            drain(aggregator) should contain theSameElementsAs Seq(
+                (srcIp, dstIp, 0, 80, 2L),
+                (srcIp, dstIp, 0, 81, 1L))
+            aggregator.discardedEvents shouldBe 0
+        }
+    }
+}
@@ -53,6 +53,10 @@ class RuleLoggerTestBase extends FeatureSpec
         override def maxFiles: Int = 3
         override def logDirectory: String = logDirPath
         override def rotationFrequency: String = "1kb"
+        override def aggregationInterval: Long = 0L
+        override def aggregationMaxEntries: Int = 1024
+        override def samplingRate: Double = 1.0
+        override def loggerEventBudget: Int = 0
     }
 
     protected var eventChannel: DisruptorRuleLogEventChannel = _
@@ -24,7 +24,7 @@ import org.scalatest.junit.JUnitRunner
 import org.junit.runner.RunWith
 
 import org.midonet.odp.flows.FlowStats
-import org.midonet.odp.FlowMatches
+import org.midonet.odp.{FlowMask, FlowMatches}
 import org.midonet.packets.{IPv4Addr, MAC, Ethernet}
 import org.midonet.packets.util.PacketBuilder._
 import org.midonet.sdn.flows.FlowTagger
@@ -140,5 +140,41 @@ class MeterRegistryTest extends FeatureSpec with Matchers {
 
             }
         }
+
+        scenario("indexes the masked matches of the metered flows") {
+            val index = new MeteredFlowIndex(4)
+            val registry = new MeterRegistry(10, 3, index)
+            val mask = new FlowMask()
+            mask.calculateFor(matchA, MeterRegistry.NoActions)
+            val maskedA = mask.applyTo(matchA)
+
+            registry.trackFlow(matchA, tagsA)
+            index.ownerOf(maskedA) should === (3)
+
+            val stats = new FlowStats()
+            stats.packets = 5
+            stats.bytes = 500
+            registry.updateFlow(maskedA, stats)
+            registry.meters.get(deviceA.meterName).packets should === (5)
+            registry.meters.get(deviceA.meterName).bytes should === (500)
+
+            registry.forgetFlow(matchA)
+            index.ownerOf(maskedA) should === (-1)
+        }
+
+        scenario("does not index the masked matches without an index") {
+            val registry = new MeterRegistry(10)
+            val mask = new FlowMask()
+            mask.calculateFor(matchA, MeterRegistry.NoActions)
+            val maskedA = mask.applyTo(matchA)
+
+            registry.trackFlow(matchA, tagsA)
+
+            val stats = new FlowStats()
+            stats.packets = 5
+            stats.bytes = 500
+            registry.updateFlow(maskedA, stats)
+            registry.meters.get(deviceA.meterName).packets should === (0)
+        }
     }
 }
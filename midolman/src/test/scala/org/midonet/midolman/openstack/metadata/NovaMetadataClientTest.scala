@@ -0,0 +1,214 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.midolman.openstack.metadata
+
+import java.util.UUID
+import java.util.concurrent.ConcurrentLinkedQueue
+import javax.servlet.http.{HttpServletRequest, HttpServletResponse}
+
+import scala.collection.JavaConverters._
+import scala.concurrent.Await
+import scala.concurrent.duration._
+
+import com.codahale.metrics.MetricRegistry
+
+import org.apache.commons.io.IOUtils
+import org.eclipse.jetty.server.handler.AbstractHandler
+import org.eclipse.jetty.server.{Request, Server, ServerConnector}
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{BeforeAndAfter, FeatureSpec, GivenWhenThen, Matchers}
+
+import org.midonet.midolman.config.MidolmanConfig
+import org.midonet.midolman.monitoring.metrics.MetadataProxyMetrics
+import org.midonet.util.MockUnixClock
+
+@RunWith(classOf[JUnitRunner])
+class NovaMetadataClientTest extends FeatureSpec
+                             with Matchers
+                             with BeforeAndAfter
+                             with GivenWhenThen {
+
+    case class StubRequest(method: String, path: String, instanceId: String,
+                           signature: String, remotePort: Int, body: String)
+
+    /* A stub Nova Metadata API recording the requests. */
+    class StubNova extends AbstractHandler {
+        val requests = new ConcurrentLinkedQueue[StubRequest]()
+
+        override def handle(target: String, baseReq: Request,
+                            request: HttpServletRequest,
+                            response: HttpServletResponse): Unit = {
+            baseReq setHandled true
+            requests add StubRequest(request.getMethod,
+                                     request.getPathInfo,
+                                     request.getHeader("X-Instance-ID"),
+                                     request.getHeader("X-Instance-ID-Signature"),
+                                     request.getRemotePort,
+                                     IOUtils.toString(request.getInputStream))
+            if (request.getPathInfo == "/missing") {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND)
+            } else {
+                response.getWriter print s"data:${request.getPathInfo}"
+            }
+        }
+    }
+
+    private val timeout = 5 seconds
+    private val address = "169.254.0.2"
+    private val portId = UUID.randomUUID()
+    private val info = InstanceInfo("10.0.0.1", "fa:16:3e:a8:9f:15", portId,
+                                    "tenant", UUID.randomUUID().toString)
+
+    private var server: Server = _
+    private var nova: StubNova = _
+    private var client: NovaMetadataClient = _
+    private var metrics: MetadataProxyMetrics = _
+    private var clock: MockUnixClock = _
+
+    before {
+        nova = new StubNova
+        server = new Server(0)
+        server.setHandler(nova)
+        server.start()
+        val port = server.getConnectors()(0).asInstanceOf[ServerConnector]
+                         .getLocalPort
+
+        val config = MidolmanConfig.forTests(
+            s"""
+               |agent.openstack.metadata {
+               |    nova_metadata_url : "http://127.0.0.1:$port"
+               |    shared_secret : "secret"
+               |    max_connections : 4
+               |    cache_ttl : 5s
+               |}
+             """.stripMargin)
+        metrics = new MetadataProxyMetrics(new MetricRegistry)
+        clock = new MockUnixClock
+        client = new NovaMetadataClient(config.openstack.metadata, metrics,
+                                        clock)
+        client.start()
+
+        InstanceInfoMap.put(address, portId, info)
+    }
+
+    after {
+        InstanceInfoMap removeByPortId portId
+        client.stop()
+        server.stop()
+    }
+
+    private def get(path: String): String = {
+        Await.result(client.proxyRequest("GET", path, null, address), timeout)
+    }
+
+    feature("The client proxies requests to Nova") {
+        scenario("Requests are signed for the instance") {
+            When("Requesting a metadata document")
+            get("/latest/meta-data/hostname") shouldBe
+                "data:/latest/meta-data/hostname"
+
+            Then("Nova receives the request for the instance")
+            val request = nova.requests.peek()
+            request.method shouldBe "GET"
+            request.instanceId shouldBe info.instanceId
+            request.signature shouldBe
+                NovaMetadataClient.signInstanceId("secret", info.instanceId)
+        }
+
+        scenario("Requests reuse the connections") {
+            When("Requesting several documents")
+            for (i <- 1 to 5) {
+                get(s"/latest/meta-data/$i") shouldBe s"data:/latest/meta-data/$i"
+            }
+
+            Then("Nova receives the requests on the same connection")
+            nova.requests.asScala.map(_.remotePort).toSet should have size 1
+        }
+
+        scenario("Unexpected status codes are returned") {
+            When("Requesting a missing document")
+            val e = intercept[NovaMetadataHttpException] {
+                get("/missing")
+            }
+
+            Then("The request fails with the status")
+            e.status shouldBe HttpServletResponse.SC_NOT_FOUND
+            metrics.errors.getCount shouldBe 1
+        }
+
+        scenario("Requests from unknown addresses are rejected") {
+            When("Requesting a document from an unknown address")
+            val future = client.proxyRequest("GET", "/latest/meta-data", null,
+                                             "169.254.0.3")
+
+            Then("The request fails without reaching Nova")
+            intercept[NovaMetadataClientException] {
+                Await.result(future, timeout)
+            }
+            nova.requests shouldBe empty
+        }
+    }
+
+    feature("The client caches the responses") {
+        scenario("Responses are cached until they expire") {
+            Given("A cached response")
+            get("/latest/meta-data/hostname")
+            metrics.cacheMisses.getCount shouldBe 1
+
+            When("Requesting the same document")
+            get("/latest/meta-data/hostname") shouldBe
+                "data:/latest/meta-data/hostname"
+
+            Then("The response is served from the cache")
+            nova.requests should have size 1
+            metrics.cacheHits.getCount shouldBe 1
+
+            When("The response expires")
+            clock.time += 5000
+            get("/latest/meta-data/hostname")
+
+            Then("The request is sent to Nova")
+            nova.requests should have size 2
+            metrics.cacheMisses.getCount shouldBe 2
+        }
+
+        scenario("Passwords are not cached") {
+            When("Posting and reading the password")
+            Await.result(client.proxyRequest("POST",
+                                             "/openstack/latest/password",
+                                             "pass".getBytes, address),
+                         timeout)
+            get("/openstack/latest/password")
+            get("/openstack/latest/password")
+
+            Then("Every request is sent to Nova")
+            nova.requests should have size 3
+            nova.requests.peek().body shouldBe "pass"
+            metrics.cacheHits.getCount shouldBe 0
+        }
+
+        scenario("Errors are not cached") {
+            When("Requesting a missing document twice")
+            intercept[NovaMetadataHttpException] { get("/missing") }
+            intercept[NovaMetadataHttpException] { get("/missing") }
+
+            Then("Every request is sent to Nova")
+            nova.requests should have size 2
+        }
+    }
+}
@@ -18,7 +18,8 @@ package org.midonet.midolman.simulation
 import org.midonet.midolman.rules._
 import org.midonet.midolman.rules.RuleResult.Action
 import org.midonet.odp.FlowMatch
-import org.midonet.packets.IPAddr
+import org.midonet.packets.{ICMP, IPAddr, TCP, UDP}
+import org.midonet.util.Range
 
 import java.util.UUID
 import org.junit.runner.RunWith
@@ -26,6 +27,7 @@ import org.scalatest.{BeforeAndAfterAll, BeforeAndAfter, Matchers, Suite}
 import org.scalatest.junit.JUnitRunner
 import akka.actor.ActorSystem
 import scala.collection.mutable
+import scala.util.Random
 
 import scala.collection.JavaConverters._
 
@@ -272,6 +274,93 @@ class ChainTest extends Suite
         applyChain(innerAndOuterChain).action should be (Action.REJECT)
     }
 
+    def testClassifierReturnsFirstMatchingRule(): Unit = {
+        val random = new Random(42)
+        val rules = new java.util.ArrayList[Rule]()
+        for (index <- 0 until 500) {
+            val cond = new Condition()
+            random.nextInt(4) match {
+                case 0 =>
+                case 1 => cond.nwProto = Byte.box(TCP.PROTOCOL_NUMBER)
+                case 2 => cond.nwProto = Byte.box(UDP.PROTOCOL_NUMBER)
+                case 3 =>
+                    cond.nwProto = Byte.box(TCP.PROTOCOL_NUMBER)
+                    cond.nwProtoInv = true
+            }
+            if (random.nextInt(4) != 0) {
+                val start = random.nextInt(1024)
+                cond.tpDst = new Range(Int.box(start),
+                                       Int.box(start + random.nextInt(16)))
+                cond.tpDstInv = random.nextInt(8) == 0
+            }
+            cond.conjunctionInv = random.nextInt(16) == 0
+            rules.add(new LiteralRule(cond, Action.ACCEPT))
+        }
+        val classifier = ChainClassifier(rules)
+        val fmatch = pktCtx.wcmatch
+
+        for (index <- 0 until 2000) {
+            fmatch.setNetworkProto(random.nextInt(3) match {
+                case 0 => TCP.PROTOCOL_NUMBER
+                case 1 => UDP.PROTOCOL_NUMBER
+                case 2 => ICMP.PROTOCOL_NUMBER
+            })
+            fmatch.setDstPort(random.nextInt(1100))
+
+            val expected = rules.asScala.indexWhere(_.getCondition.matches(pktCtx))
+            val candidates = classifier.candidates(fmatch)
+            val actual = candidates.find(rules.get(_).getCondition.matches(pktCtx))
+                                   .getOrElse(-1)
+            actual shouldBe expected
+        }
+    }
+
+    def testClassifiedChainRecordsAllTraversedRules(): Unit = {
+        val rules = new java.util.ArrayList[Rule]()
+        for (port <- 0 until 32) {
+            val cond = new Condition()
+            cond.nwProto = Byte.box(UDP.PROTOCOL_NUMBER)
+            cond.tpDst = new Range(Int.box(port), Int.box(port))
+            val rule = new LiteralRule(cond, Action.ACCEPT)
+            rule.id = UUID.randomUUID
+            rules.add(rule)
+        }
+        val c = makeChain(rules.asScala.toList)
+        pktCtx.wcmatch.setNetworkProto(UDP.PROTOCOL_NUMBER)
+
+        // The packet matches the rule at index 20.
+        pktCtx.wcmatch.setDstPort(20)
+        applyChain(c).action should be (Action.ACCEPT)
+        pktCtx.traversedRules.asScala shouldBe rules.asScala.take(21).map(_.id)
+        pktCtx.traversedRuleResults.asScala.map(_.action) shouldBe
+            Seq.fill(20)(Action.CONTINUE) :+ Action.ACCEPT
+        pktCtx.traversedRulesMatched.asScala shouldBe
+            Seq.fill(20)(false) :+ true
+        pktCtx.traversedRulesApplied.asScala shouldBe
+            Seq.fill(20)(false) :+ true
+
+        // The packet does not match any rule.
+        pktCtx.resetRecordedContext()
+        pktCtx.wcmatch.setDstPort(100)
+        applyChain(c).action should be (Action.ACCEPT)
+        pktCtx.traversedRules.asScala shouldBe rules.asScala.map(_.id)
+        pktCtx.traversedRulesMatched.asScala shouldBe Seq.fill(32)(false)
+
+        // The skipped rules are not recorded without a flow recorder.
+        pktCtx.resetRecordedContext()
+        pktCtx.recordSkippedRules = false
+        pktCtx.wcmatch.setDstPort(20)
+        applyChain(c).action should be (Action.ACCEPT)
+        pktCtx.traversedRules.asScala shouldBe Seq(rules.get(20).id)
+        pktCtx.traversedRulesMatched.asScala shouldBe Seq(true)
+    }
+
+    def testShortChainIsNotClassified(): Unit = {
+        val rules = new java.util.ArrayList[Rule]()
+        rules.add(acceptRule)
+        ChainClassifier(rules) shouldBe null
+    }
+
     private def applyChain(c: Chain) = {
         pktCtx.currentDevice = ownerId
         if (c ne null)
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.midolman.state
+
+import java.nio.{ByteBuffer, ByteOrder}
+import java.util.UUID
+
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{FeatureSpec, GivenWhenThen, Matchers}
+
+import org.midonet.midolman.state.ConnTrackState._
+import org.midonet.midolman.state.NatState.{NatBindingCodec, NatKey, NatKeyCodec}
+import org.midonet.packets.NatState._
+import org.midonet.packets.{ICMP, IPAddr, IPv4Addr, IPv6Addr, TCP, UDP}
+import org.midonet.util.concurrent.OffHeapTimedExpirationMap.Codec
+
+@RunWith(classOf[JUnitRunner])
+class FlowStateCodecTest extends FeatureSpec
+                         with GivenWhenThen
+                         with Matchers {
+
+    private val Offset = 13
+    private val Fill = 0x5a.toByte
+
+    private val ports = Seq(0, 1, 1024, 32768, 65535)
+    private val protocols = Seq(ICMP.PROTOCOL_NUMBER, TCP.PROTOCOL_NUMBER,
+                                UDP.PROTOCOL_NUMBER, 0.toByte, 0xff.toByte)
+    private val deviceIds = Seq(new UUID(0L, 0L), new UUID(-1L, -1L),
+                                UUID.randomUUID())
+
+    /** Encodes the value at an offset of a buffer, checks that the encoding
+      * does not write outside the codec width, and returns the decoded
+      * value. */
+    private def roundTrip[T](codec: Codec[T], value: T): T = {
+        val buf = ByteBuffer.allocateDirect(Offset + codec.width + Offset)
+                            .order(ByteOrder.nativeOrder())
+        for (i <- 0 until buf.capacity()) {
+            buf.put(i, Fill)
+        }
+        codec.encode(value, buf, Offset)
+        for (i <- 0 until Offset) {
+            buf.get(i) shouldBe Fill
+            buf.get(Offset + codec.width + i) shouldBe Fill
+        }
+        codec.decode(buf, Offset)
+    }
+
+    private def checkConnTrackKey(src: IPAddr, srcPort: Int, dst: IPAddr,
+                                  dstPort: Int, protocol: Byte,
+                                  deviceId: UUID): Unit = {
+        val key = ConnTrackKey(src, srcPort, dst, dstPort, protocol, deviceId)
+        val decoded = roundTrip(ConnTrackKeyCodec, key)
+        decoded shouldBe key
+        decoded.networkSrc.getClass shouldBe src.getClass
+        decoded.networkDst.getClass shouldBe dst.getClass
+    }
+
+    feature("Connection tracking codecs") {
+        scenario("IPv4 keys") {
+            Given("IPv4 keys with edge ports, protocols and devices")
+            Then("Every key is decoded to an equal key")
+            for (port <- ports; protocol <- protocols; deviceId <- deviceIds) {
+                checkConnTrackKey(IPv4Addr.random, port, IPv4Addr.random,
+                                  65535 - port, protocol, deviceId)
+            }
+            checkConnTrackKey(IPv4Addr.fromString("0.0.0.0"), 0,
+                              IPv4Addr.fromString("255.255.255.255"), 65535,
+                              TCP.PROTOCOL_NUMBER, deviceIds.head)
+        }
+
+        scenario("IPv6 keys") {
+            Given("IPv6 keys with edge ports, protocols and devices")
+            Then("Every key is decoded to an equal key")
+            for (port <- ports; protocol <- protocols; deviceId <- deviceIds) {
+                checkConnTrackKey(IPv6Addr.random, port, IPv6Addr.random,
+                                  65535 - port, protocol, deviceId)
+            }
+            checkConnTrackKey(IPv6Addr.fromString("::"), 0,
+                              IPv6Addr.fromString(
+                                  "ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff"),
+                              65535, UDP.PROTOCOL_NUMBER, deviceIds(1))
+        }
+
+        scenario("Keys with mixed address versions") {
+            Then("Each address keeps its version")
+            checkConnTrackKey(IPv4Addr.random, 80, IPv6Addr.random, 8080,
+                              TCP.PROTOCOL_NUMBER, deviceIds(2))
+            checkConnTrackKey(IPv6Addr.random, 8080, IPv4Addr.random, 80,
+                              TCP.PROTOCOL_NUMBER, deviceIds(2))
+        }
+
+        scenario("ICMP keys") {
+            Given("A key with the ICMP identifier in place of the ports")
+            Then("The key is decoded to an equal key")
+            checkConnTrackKey(IPv4Addr.random, 0xffff, IPv4Addr.random, 0xffff,
+                              ICMP.PROTOCOL_NUMBER, deviceIds(2))
+        }
+
+        scenario("Values") {
+            Then("The forward and return flow values are decoded")
+            roundTrip(ConnTrackValueCodec, java.lang.Boolean.TRUE) shouldBe
+                java.lang.Boolean.TRUE
+            roundTrip(ConnTrackValueCodec, RETURN_FLOW) shouldBe RETURN_FLOW
+        }
+    }
+
+    feature("NAT codecs") {
+        val keyTypes = Seq(FWD_SNAT, FWD_DNAT, FWD_STICKY_DNAT,
+                           REV_SNAT, REV_DNAT, REV_STICKY_DNAT)
+
+        scenario("Keys") {
+            Given("Keys of every type with edge ports, protocols and devices")
+            Then("Every key is decoded to an equal key")
+            for (keyType <- keyTypes; port <- ports; protocol <- protocols;
+                 deviceId <- deviceIds) {
+                val key = NatKey(keyType, IPv4Addr.random, port,
+                                 IPv4Addr.random, 65535 - port, protocol,
+                                 deviceId)
+                val decoded = roundTrip(NatKeyCodec, key)
+                decoded shouldBe key
+                decoded.keyType shouldBe keyType
+            }
+        }
+
+        scenario("Keys with edge addresses") {
+            Then("The keys are decoded to equal keys")
+            val min = IPv4Addr.fromString("0.0.0.0")
+            val max = IPv4Addr.fromString("255.255.255.255")
+            for (keyType <- keyTypes) {
+                val key = NatKey(keyType, min, 0, max, 65535,
+                                 TCP.PROTOCOL_NUMBER, deviceIds.head)
+                roundTrip(NatKeyCodec, key) shouldBe key
+                val inverse = NatKey(keyType, max, 65535, min, 0,
+                                     UDP.PROTOCOL_NUMBER, deviceIds(1))
+                roundTrip(NatKeyCodec, inverse) shouldBe inverse
+            }
+        }
+
+        scenario("Bindings") {
+            Then("The bindings are decoded to equal bindings")
+            for (port <- ports) {
+                val binding = NatBinding(IPv4Addr.random, port)
+                roundTrip(NatBindingCodec, binding) shouldBe binding
+            }
+            val max = NatBinding(IPv4Addr.fromString("255.255.255.255"), 65535)
+            roundTrip(NatBindingCodec, max) shouldBe max
+        }
+    }
+}
@@ -308,6 +308,50 @@ class FlowStateReplicatorTest extends MidolmanSpec with TopologyBuilder {
         }
     }
 
+    feature("State packets connection hash") {
+        def connectionHash(packet: Packet): Int = {
+            val data = FlowStateAgentPackets.parseDatagram(packet.getEthernet)
+            FlowStateAgentPackets.connectionHash(
+                new SbeEncoder().decodeFrom(data.getData))
+        }
+
+        scenario("Messages for the same connection have the same hash") {
+            Given("A state packet for a conntrack key")
+            connTrackTx.putAndRef(connTrackKeys.head, ConnTrackState.RETURN_FLOW)
+            val hash1 = connectionHash(
+                sendState(ingressPort.getId, egressPort1.getId)._1)
+
+            When("Sending a state packet for the same key")
+            connTrackTx.flush()
+            connTrackTx.putAndRef(connTrackKeys.head, ConnTrackState.RETURN_FLOW)
+            val hash2 = connectionHash(
+                sendState(ingressPort.getId, egressPort1.getId)._1)
+
+            And("A state packet for a different key")
+            connTrackTx.flush()
+            connTrackTx.putAndRef(connTrackKeys(1), ConnTrackState.RETURN_FLOW)
+            val hash3 = connectionHash(
+                sendState(ingressPort.getId, egressPort1.getId)._1)
+
+            Then("The packets for the same key have the same hash")
+            hash1 should not be 0
+            hash2 shouldBe hash1
+
+            And("The packet for a different key has a different hash")
+            hash3 should not be hash1
+        }
+
+        scenario("Messages with only NAT keys are hashed by the NAT key") {
+            Given("A state packet for a NAT key")
+            val (k, v) = natMappings.head
+            natTx.putAndRef(k, v)
+            val packet = sendState(ingressPort.getId, egressPort1.getId)._1
+
+            Then("The packet has a connection hash")
+            connectionHash(packet) should not be 0
+        }
+    }
+
     feature("L4 flow state replication") {
         scenario("Replicates conntrack keys") {
             Given("A conntrack key in a transaction")
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.midolman.state
+
+import scala.collection.mutable
+
+import com.codahale.metrics.MetricRegistry
+
+import org.junit.runner.RunWith
+import org.mockito.Mockito.{mock, never, times, verify, when}
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{FeatureSpec, GivenWhenThen, Matchers}
+
+import rx.subjects.PublishSubject
+
+import org.midonet.cluster.data.storage.StateTable
+import org.midonet.cluster.data.storage.StateTable.Update
+import org.midonet.util.functors.makeAction1
+
+@RunWith(classOf[JUnitRunner])
+class StateTableWriterTest extends FeatureSpec with Matchers
+                           with GivenWhenThen {
+
+    // A long interval, such that the tests flush the writer explicitly.
+    private val interval = 3600000L
+
+    private def newTable(): StateTable[String, String] =
+        mock(classOf[StateTable[String, String]])
+
+    feature("Write-behind table") {
+        scenario("Writes to the same key are coalesced") {
+            Given("A write-behind table")
+            val writer = new StateTableWriter(interval, 0, new MetricRegistry)
+            val table = newTable()
+            val writeBehind = writer.table(table)
+
+            When("Adding two values for the same key")
+            writeBehind.add("key", "value1")
+            writeBehind.add("key", "value2")
+
+            Then("The last value is read without writing the table")
+            writeBehind.getLocal("key") shouldBe "value2"
+            verify(table, never()).add("key", "value1")
+            verify(table, never()).add("key", "value2")
+
+            When("Flushing the writer")
+            writer.flush()
+
+            Then("Only the last value is written")
+            verify(table, never()).add("key", "value1")
+            verify(table, times(1)).add("key", "value2")
+
+            And("The metrics record the saved write")
+            writer.metrics.requestedWrites.getCount shouldBe 2
+            writer.metrics.coalescedWrites.getCount shouldBe 1
+            writer.metrics.flushedWrites.getCount shouldBe 1
+            writer.metrics.flushBatchSize.getCount shouldBe 1
+
+            writer.stop()
+        }
+
+        scenario("Pending removals hide the table values") {
+            Given("A write-behind table with a value")
+            val writer = new StateTableWriter(interval, 0, new MetricRegistry)
+            val table = newTable()
+            when(table.getLocal("key")).thenReturn("value")
+            val writeBehind = writer.table(table)
+            writeBehind.getLocal("key") shouldBe "value"
+
+            When("Removing the value")
+            writeBehind.remove("key", "value") shouldBe true
+
+            Then("The value is no longer read")
+            writeBehind.getLocal("key") shouldBe null
+
+            When("Flushing the writer")
+            writer.flush()
+
+            Then("The value is removed from the table")
+            verify(table).remove("key", "value")
+
+            writer.stop()
+        }
+
+        scenario("A pending addition discards the removal of another value") {
+            Given("A write-behind table")
+            val writer = new StateTableWriter(interval, 0, new MetricRegistry)
+            val table = newTable()
+            val writeBehind = writer.table(table)
+
+            When("Adding a value and removing a previous value")
+            writeBehind.add("key", "value2")
+            writeBehind.remove("key", "value1") shouldBe false
+
+            And("Flushing the writer")
+            writer.flush()
+
+            Then("Only the addition is written")
+            verify(table).add("key", "value2")
+            verify(table, never()).remove("key", "value1")
+
+            writer.stop()
+        }
+
+        scenario("The writer limits the writes per flush") {
+            Given("A writer with at most two writes per flush")
+            val writer = new StateTableWriter(interval, 2, new MetricRegistry)
+            val table = newTable()
+            val writeBehind = writer.table(table)
+
+            When("Adding three keys")
+            writeBehind.add("key1", "value")
+            writeBehind.add("key2", "value")
+            writeBehind.add("key3", "value")
+
+            And("Flushing the writer")
+            writer.flush()
+
+            Then("The writer writes two keys")
+            writer.metrics.flushedWrites.getCount shouldBe 2
+
+            When("Flushing the writer again")
+            writer.flush()
+
+            Then("The writer writes the remaining key")
+            writer.metrics.flushedWrites.getCount shouldBe 3
+            verify(table).add("key1", "value")
+            verify(table).add("key2", "value")
+            verify(table).add("key3", "value")
+
+            writer.stop()
+        }
+
+        scenario("Stopping the table flushes the pending writes") {
+            Given("A write-behind table")
+            val writer = new StateTableWriter(interval, 0, new MetricRegistry)
+            val table = newTable()
+            val writeBehind = writer.table(table)
+
+            When("Adding a value and stopping the table")
+            writeBehind.add("key", "value")
+            writeBehind.stop()
+
+            Then("The value is written and the table stopped")
+            verify(table).add("key", "value")
+            verify(table).stop()
+
+            writer.stop()
+        }
+
+        scenario("Stopped tables are not flushed by the writer") {
+            Given("A write-behind table")
+            val writer = new StateTableWriter(interval, 0, new MetricRegistry)
+            val table = newTable()
+            val writeBehind = writer.table(table)
+
+            When("Adding a value and stopping the table")
+            writeBehind.add("key", "value")
+            writeBehind.stop()
+
+            And("Flushing the writer")
+            writer.flush()
+
+            Then("The value is written only once")
+            verify(table, times(1)).add("key", "value")
+            writer.metrics.flushedWrites.getCount shouldBe 0
+
+            writer.stop()
+        }
+
+        scenario("Pending writes are emitted immediately") {
+            Given("A write-behind table with an observer")
+            val writer = new StateTableWriter(interval, 0, new MetricRegistry)
+            val table = newTable()
+            val tableUpdates = PublishSubject.create[Update[String, String]]()
+            when(table.observable).thenReturn(tableUpdates)
+            val writeBehind = writer.table(table)
+            val updates = mutable.ArrayBuffer[Update[String, String]]()
+            writeBehind.observable.subscribe(
+                makeAction1[Update[String, String]] { updates += _ })
+
+            When("Adding a value")
+            writeBehind.add("key", "value1")
+
+            Then("The observer receives the update before the flush")
+            updates shouldBe Seq(Update("key", null, "value1"))
+            verify(table, never()).add("key", "value1")
+
+            When("Flushing the writer and the table emits the update")
+            writer.flush()
+            tableUpdates onNext Update("key", null, "value1")
+
+            Then("The observer does not receive the update again")
+            updates should have size 1
+
+            When("The table emits an update from another node")
+            tableUpdates onNext Update("key", "value1", "value2")
+
+            Then("The observer receives the update")
+            updates shouldBe Seq(Update("key", null, "value1"),
+                                 Update("key", "value1", "value2"))
+
+            When("Removing the value")
+            when(table.getLocal("key")).thenReturn("value2")
+            writeBehind.remove("key", "value2") shouldBe true
+
+            Then("The observer receives the removal")
+            updates should have size 3
+            updates(2) shouldBe Update("key", "value2", null)
+
+            writer.stop()
+        }
+
+        scenario("Write-behind disabled") {
+            Given("A writer without a write interval")
+            val writer = new StateTableWriter(0, 0, new MetricRegistry)
+            val table = newTable()
+            val writeBehind = writer.table(table)
+
+            When("Adding a value")
+            writeBehind.add("key", "value")
+
+            Then("The value is written immediately")
+            verify(table).add("key", "value")
+
+            writer.stop()
+        }
+    }
+
+}
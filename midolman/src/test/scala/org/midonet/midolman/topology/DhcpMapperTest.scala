@@ -0,0 +1,178 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.midolman.topology
+
+import java.util.UUID
+
+import scala.concurrent.duration._
+
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+import rx.Observable
+
+import org.midonet.cluster.data.storage.{NotFoundException, Storage}
+import org.midonet.cluster.models.Topology.{Dhcp => TopologyDhcp}
+import org.midonet.cluster.services.MidonetBackend
+import org.midonet.cluster.topology.TopologyBuilder
+import org.midonet.cluster.util.UUIDUtil._
+import org.midonet.midolman.topology.TopologyTest.DeviceObserver
+import org.midonet.midolman.topology.devices.Dhcp
+import org.midonet.midolman.util.MidolmanSpec
+import org.midonet.packets.{DHCPOption, IPv4Addr, MAC}
+
+@RunWith(classOf[JUnitRunner])
+class DhcpMapperTest extends MidolmanSpec with TopologyBuilder {
+
+    private var vt: VirtualTopology = _
+    private var store: Storage = _
+    private final val timeout = 5 seconds
+
+    protected override def beforeTest(): Unit = {
+        vt = injector.getInstance(classOf[VirtualTopology])
+        store = injector.getInstance(classOf[MidonetBackend]).store
+    }
+
+    private def createSubnet(hosts: List[TopologyDhcp.Host] = List())
+    : TopologyDhcp = {
+        val bridge = createBridge()
+        store.create(bridge)
+        val dhcp = createDhcp(
+            networkId = bridge.getId.asJava,
+            dns = List(IPv4Addr("10.0.0.1"), IPv4Addr("10.0.0.2")),
+            opt121routes = List(createOpt121Route(
+                destinationSubnet = IPv4Addr("192.168.0.0").subnet(16),
+                gateway = IPv4Addr("10.0.0.254"))),
+            hosts = hosts)
+        store.create(dhcp)
+        dhcp
+    }
+
+    feature("The DHCP mapper emits DHCP subnet devices") {
+        scenario("The mapper emits error for non-existing subnets") {
+            Given("A subnet identifier")
+            val id = UUID.randomUUID
+
+            And("A DHCP mapper")
+            val mapper = new DhcpMapper(id, vt)
+
+            And("An observer to the DHCP mapper")
+            val obs = new DeviceObserver[Dhcp](vt)
+
+            When("The observer subscribes to an observable on the mapper")
+            Observable.create(mapper).subscribe(obs)
+
+            Then("The observer should see a NotFoundException")
+            obs.awaitCompletion(timeout)
+            val e = obs.getOnErrorEvents.get(0).asInstanceOf[NotFoundException]
+            e.clazz shouldBe classOf[TopologyDhcp]
+            e.id shouldBe id
+        }
+
+        scenario("The mapper emits existing subnets with a host index") {
+            Given("A subnet with two hosts")
+            val mac1 = MAC.random()
+            val mac2 = MAC.random()
+            val dhcp = createSubnet(List(createDhcpHost(mac = mac1),
+                                         createDhcpHost(mac = mac2)))
+
+            And("A DHCP mapper")
+            val mapper = new DhcpMapper(dhcp.getId.asJava, vt)
+
+            And("An observer to the DHCP mapper")
+            val obs = new DeviceObserver[Dhcp](vt)
+
+            When("The observer subscribes to an observable on the mapper")
+            Observable.create(mapper).subscribe(obs)
+
+            Then("The observer should receive the subnet")
+            obs.awaitOnNext(1, timeout) shouldBe true
+            val device = obs.getOnNextEvents.get(0)
+            device.id shouldBe dhcp.getId.asJava
+
+            And("The subnet should index the hosts by MAC")
+            device.hostByMac(mac1).name shouldBe dhcp.getHosts(0).getName
+            device.hostByMac(mac2).name shouldBe dhcp.getHosts(1).getName
+            device.hostByMac(MAC.random()) shouldBe null
+
+            And("The subnet should have the prebuilt options")
+            device.dnsServersOption.getCode shouldBe DHCPOption.Code.DNS.value
+            device.dnsServersOption.getData shouldBe
+                IPv4Addr("10.0.0.1").toBytes ++ IPv4Addr("10.0.0.2").toBytes
+            device.classlessRoutesOption.getCode shouldBe
+                DHCPOption.Code.CLASSLESS_ROUTES.value
+            device.classlessRoutesOption.getData shouldBe
+                (Array[Byte](16, 192.toByte, 168.toByte) ++
+                 IPv4Addr("10.0.0.254").toBytes ++
+                 Array[Byte](0) ++ device.defautGateway.toBytes)
+        }
+
+        scenario("The mapper emits new device on subnet update") {
+            Given("A subnet without hosts")
+            val dhcp1 = createSubnet()
+
+            And("A DHCP mapper")
+            val mapper = new DhcpMapper(dhcp1.getId.asJava, vt)
+
+            And("An observer to the DHCP mapper")
+            val obs = new DeviceObserver[Dhcp](vt)
+
+            When("The observer subscribes to an observable on the mapper")
+            Observable.create(mapper).subscribe(obs)
+
+            Then("The observer should receive the subnet")
+            obs.awaitOnNext(1, timeout) shouldBe true
+            val mac = MAC.random()
+            obs.getOnNextEvents.get(0).hostByMac(mac) shouldBe null
+
+            When("A host is added to the subnet")
+            val dhcp2 = dhcp1.toBuilder
+                .addHosts(createDhcpHost(mac = mac))
+                .build()
+            store.update(dhcp2)
+
+            Then("The observer should receive the update")
+            obs.awaitOnNext(2, timeout) shouldBe true
+            obs.getOnNextEvents.get(1).hostByMac(mac).name shouldBe
+                dhcp2.getHosts(0).getName
+        }
+
+        scenario("The mapper completes on subnet delete") {
+            Given("A subnet")
+            val dhcp = createSubnet()
+
+            And("A DHCP mapper")
+            val mapper = new DhcpMapper(dhcp.getId.asJava, vt)
+
+            And("An observer to the DHCP mapper")
+            val obs = new DeviceObserver[Dhcp](vt)
+
+            When("The observer subscribes to an observable on the mapper")
+            Observable.create(mapper).subscribe(obs)
+
+            Then("The observer should receive the subnet")
+            obs.awaitOnNext(1, timeout) shouldBe true
+
+            When("The subnet is deleted")
+            store.delete(classOf[TopologyDhcp], dhcp.getId)
+
+            Then("The observer should receive a completed notification")
+            obs.awaitCompletion(timeout)
+            obs.getOnCompletedEvents should not be empty
+        }
+    }
+}
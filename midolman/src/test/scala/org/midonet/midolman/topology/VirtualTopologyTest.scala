@@ -16,10 +16,12 @@
 package org.midonet.midolman.topology
 
 import java.util.UUID
+import java.util.concurrent.{Callable, Executors}
 
 import scala.concurrent.Await.{ready, result}
 import scala.concurrent.Future
 import scala.concurrent.duration._
+import com.codahale.metrics.MetricRegistry
 import org.junit.runner.RunWith
 import org.scalatest.junit.JUnitRunner
 import rx.{Notification, Observable}
@@ -28,12 +30,14 @@ import org.midonet.cluster.models.Topology.{Router, Port => TopologyPort}
 import org.midonet.cluster.services.MidonetBackend
 import org.midonet.cluster.topology.TopologyBuilder
 import org.midonet.cluster.util.UUIDUtil._
-import org.midonet.midolman.NotYetException
+import org.midonet.midolman.{NotYetException, SimulationBackChannel}
 import org.midonet.midolman.topology.TopologyTest.DeviceObserver
+import org.midonet.midolman.monitoring.metrics.VirtualTopologyGauge
 import org.midonet.midolman.topology.VirtualTopology.Key
-import org.midonet.midolman.simulation.{Port => SimulationPort}
+import org.midonet.midolman.simulation.{Bridge, Port => SimulationPort}
 import org.midonet.midolman.topology.devices.{BgpPort, BgpRouter}
 import org.midonet.midolman.util.MidolmanSpec
+import org.midonet.util.concurrent.SameThreadButAfterExecutorService
 
 @RunWith(classOf[JUnitRunner])
 class VirtualTopologyTest extends MidolmanSpec with TopologyBuilder {
@@ -444,6 +448,7 @@ class VirtualTopologyTest extends MidolmanSpec with TopologyBuilder {
             vt.metrics.deviceUpdateCounter.getCount shouldBe 1
             vt.metrics.deviceUpdateMeter.getCount shouldBe 1
             vt.metrics.deviceLatencyHistogram.getCount shouldBe 1
+            vt.metrics.deviceBuildHistogram.getCount shouldBe 1
 
             When("Creating an observer to the VT observable")
             val observer = new DeviceObserver[SimulationPort](vt)
@@ -464,6 +469,7 @@ class VirtualTopologyTest extends MidolmanSpec with TopologyBuilder {
             vt.metrics.deviceUpdateCounter.getCount shouldBe 2
             vt.metrics.deviceUpdateMeter.getCount shouldBe 2
             vt.metrics.deviceLatencyHistogram.getCount shouldBe 1
+            vt.metrics.deviceBuildHistogram.getCount shouldBe 2
 
             When("Requesting the port")
             VirtualTopology.tryGet(classOf[SimulationPort], id)
@@ -590,4 +596,63 @@ class VirtualTopologyTest extends MidolmanSpec with TopologyBuilder {
             vt.observables.containsKey(Key(classOf[BgpPort], port.getId)) shouldBe false
         }
     }
+
+    feature("The topology builds devices on several shards") {
+        scenario("A device depends on devices of other shards") {
+            Given("A virtual topology with three shards")
+            val executors = for (index <- 0 until 3)
+                yield Executors.newSingleThreadExecutor()
+            val threads = executors.map(_.submit(new Callable[Thread] {
+                override def call(): Thread = Thread.currentThread()
+            }).get())
+            val checks = threads.map(thread =>
+                () => Thread.currentThread() eq thread)
+            val registry = new MetricRegistry
+            val shardedVt = new VirtualTopology(
+                injector.getInstance(classOf[MidonetBackend]),
+                config,
+                injector.getInstance(classOf[SimulationBackChannel]),
+                null,
+                registry,
+                executors.head,
+                new SameThreadButAfterExecutorService,
+                checks.head,
+                executors.tail.zip(checks.tail))
+
+            try {
+                shardedVt.isSharded shouldBe true
+                shardedVt.shards should have size 3
+
+                And("A bridge with ports on different shards")
+                val bridgeShard = shardedVt.shardOf(bridgeId)
+                val portIds = Iterator.continually(UUID.randomUUID)
+                    .filter(shardedVt.shardOf(_) ne bridgeShard)
+                    .take(2).toList
+                for (portId <- portIds) {
+                    store.create(createBridgePort(id = portId,
+                                                  bridgeId = Some(bridgeId)))
+                }
+
+                When("Requesting the bridge")
+                val bridge = result(shardedVt.get(classOf[Bridge], bridgeId),
+                                    timeout)
+
+                Then("The topology returns the bridge")
+                bridge.id shouldBe bridgeId
+
+                And("The devices are built without errors")
+                shardedVt.metrics.deviceErrorCounter.getCount shouldBe 0
+                shardedVt.metrics.deviceBuildHistogram.getCount should be > 0L
+
+                And("The topology reports the queue depth of every shard")
+                for (index <- 0 until 3) {
+                    registry.getGauges.keySet should contain (
+                        s"${classOf[VirtualTopologyGauge].getName}" +
+                        s".queueDepth.$index")
+                }
+            } finally {
+                executors.foreach(_.shutdownNow())
+            }
+        }
+    }
 }
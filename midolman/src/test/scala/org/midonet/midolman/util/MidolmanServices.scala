@@ -40,7 +40,8 @@ import org.midonet.midolman.simulation.PacketContext
 import org.midonet.midolman.topology.VirtualTopology
 import org.midonet.midolman.util.mock.{MockDatapathChannel, MockFlowProcessor, MockUpcallDatapathConnectionManager}
 import org.midonet.netlink.{MockNetlinkChannel, NetlinkChannelFactory}
-import org.midonet.odp.FlowMatch
+import org.midonet.odp.flows.FlowAction
+import org.midonet.odp.{Flow, FlowMatch}
 import org.midonet.odp.protos.{MockOvsDatapathConnection, OvsDatapathConnection}
 import org.midonet.sdn.flows.FlowTagger.FlowTag
 import org.midonet.util.concurrent.MockClock
@@ -112,11 +113,14 @@ trait MidolmanServices {
             ret
         }
 
-        override def addFlow(fmatch: FlowMatch, flowTags: ArrayList[FlowTag],
+        override def addFlow(fmatch: FlowMatch,
+                             flowActions: ArrayList[FlowAction],
+                             flowTags: ArrayList[FlowTag],
                              removeCallbacks: ArrayList[Callback0],
                              expiration: Expiration): ManagedFlow = null
         override def addRecircFlow(fmatch: FlowMatch,
                                    recircMatch: FlowMatch,
+                                   recircActions: ArrayList[FlowAction],
                                    flowTags: ArrayList[FlowTag],
                                    removeCallbacks: ArrayList[Callback0],
                                    expiration: Expiration): ManagedFlow = null
@@ -125,6 +129,7 @@ trait MidolmanServices {
         override def shouldProcess = false
         override def process(): Unit = {}
         override def invalidateFlowsFor(tag: FlowTag) = tags = tags :+ tag
+        override def updateFlowStats(flows: ArrayList[Flow]): Unit = {}
         override def recordPacket(packetLen: Int,
                                   tags: ArrayList[FlowTag]): Unit = {}
 
@@ -115,6 +115,8 @@ class C3POConfig(val conf: Config) extends ScheduledMinionConfig[C3POMinion] {
     def jdbcDriver = conf.getString(s"$prefix.jdbc_driver_class")
     def user = conf.getString(s"$prefix.user")
     def password = conf.getString(s"$prefix.password")
+    def parserThreads = conf.getInt(s"$prefix.parser_threads")
+    def maxBatchSize = conf.getInt(s"$prefix.max_batch_size")
 }
 
 class HeartbeatConfig(val conf: Config) extends ScheduledMinionConfig[Heartbeat] {
@@ -169,6 +171,7 @@ class RestApiConfig(val conf: Config) extends MinionConfig[RestApi] {
         conf.getDuration(s"$prefix.http_idle_timeout", TimeUnit.MILLISECONDS)
     def httpsIdleTimeoutMs =
         conf.getDuration(s"$prefix.https_idle_timeout", TimeUnit.MILLISECONDS)
+    def listCacheEnabled = conf.getBoolean(s"$prefix.list_cache_enabled")
 }
 
 class ContainersConfig(val conf: Config) extends MinionConfig[ContainerService] {
@@ -189,6 +192,7 @@ class StateProxyConfig(val conf: Config) extends MinionConfig[StateProxy] {
         conf.getInt(s"$prefix.initial_subscriber_queue_size")
     def notifyBatchSize =
         conf.getInt(s"$prefix.notify_batch_size")
+    def deltaLogSize = conf.getInt(s"$prefix.delta_log_size")
     def cacheThreads = conf.getInt(s"$prefix.cache_threads")
     def serverAddress = conf.getString(s"$prefix.server.address")
     def serverPort = conf.getInt(s"$prefix.server.port")
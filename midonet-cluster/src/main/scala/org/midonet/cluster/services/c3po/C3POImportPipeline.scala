@@ -0,0 +1,152 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.cluster.services.c3po
+
+import java.util.concurrent.{Executors, TimeUnit}
+
+import scala.collection.mutable.ArrayBuffer
+import scala.concurrent.duration.Duration
+import scala.concurrent.{Await, ExecutionContext, Future}
+
+import com.google.protobuf.Message
+
+import org.slf4j.LoggerFactory
+
+import org.midonet.cluster.C3poLog
+import org.midonet.cluster.data.neutron.importer
+import org.midonet.cluster.services.c3po.C3POStorageManager._
+import org.midonet.cluster.services.c3po.NeutronDeserializer.toMessage
+import org.midonet.cluster.services.c3po.NeutronTranslatorManager._
+import org.midonet.cluster.util.UUIDUtil
+import org.midonet.util.concurrent.NamedThreadFactory
+
+object C3POImportPipeline {
+
+    /** Converts a transaction read from the Neutron DB into a C3PO
+      * transaction, parsing the JSON data of its tasks. */
+    def translateTxn(txn: importer.Transaction): Transaction =
+        Transaction(txn.id, txn.tasks.map(translateTask))
+
+    private def translateTask(task: importer.Task): Task[_ <: Message] = {
+        val c3poOp: Operation[_ <: Message] = task match {
+            case importer.Create(_, rsrcType, json) =>
+                Create(toMessage(json, rsrcType.clazz))
+            case importer.Update(_, rsrcType, json) =>
+                Update(toMessage(json, rsrcType.clazz))
+            case importer.Delete(_, rsrcType, objId) =>
+                Delete(rsrcType.clazz, UUIDUtil.toProto(objId))
+            case importer.Flush(_) =>
+                // TODO: Trigger a rebuild, because this shouldn't happen.
+                throw new IllegalArgumentException(
+                    "Flush operation not in its own transaction: " + task)
+        }
+        Task(task.taskId, c3poOp)
+    }
+
+}
+
+/**
+  * Imports the transactions read from the Neutron DB as a pipeline. The JSON
+  * data of the tasks is parsed in parallel on a pool of parser threads, while
+  * the calling thread translates and commits the parsed transactions through
+  * the [[C3POStorageManager]], such that parsing the next transactions
+  * overlaps with the storage of the previous ones.
+  *
+  * Consecutive transactions are coalesced into a single storage transaction
+  * of up to `maxBatchSize` tasks, unless a single transaction is larger. The
+  * transactions are always translated and committed in task order, which
+  * preserves the order of the operations on every Neutron resource.
+  */
+class C3POImportPipeline(storageManager: C3POStorageManager,
+                         parserThreads: Int,
+                         maxBatchSize: Int,
+                         metrics: C3POMetrics) {
+
+    import C3POImportPipeline._
+
+    private val log = LoggerFactory.getLogger(C3poLog)
+
+    private val executor = Executors.newFixedThreadPool(
+        Math.max(parserThreads, 1),
+        new NamedThreadFactory("c3po-parser", isDaemon = true))
+    private implicit val ec = ExecutionContext.fromExecutor(executor)
+
+    /** Imports the given transactions, none of which may be a flush
+      * transaction. The method returns when all transactions have been
+      * committed, or throws the first failure, after committing the
+      * transactions before the one that failed. */
+    @throws[ProcessingException]
+    def process(txns: Seq[importer.Transaction]): Unit = {
+        if (txns.isEmpty) {
+            return
+        }
+
+        val readTime = System.nanoTime()
+        metrics.tasksRead(txns.map(_.tasks.size).sum)
+
+        val parsed = txns.map(txn => Future(translateTxn(txn)))
+        val batch = new ArrayBuffer[Transaction]
+        var batchTasks = 0
+
+        try {
+            for (future <- parsed) {
+                val txn = try Await.result(future, Duration.Inf) catch {
+                    case e: Throwable =>
+                        // Commit the transactions before the one that failed
+                        // to parse, as the sequential import would do.
+                        commit(batch, batchTasks, readTime)
+                        throw e
+                }
+                if (batch.nonEmpty &&
+                    batchTasks + txn.tasks.size > maxBatchSize) {
+                    commit(batch, batchTasks, readTime)
+                    batch.clear()
+                    batchTasks = 0
+                }
+                batch += txn
+                batchTasks += txn.tasks.size
+            }
+            commit(batch, batchTasks, readTime)
+        } finally {
+            metrics.resetPendingTasks()
+        }
+    }
+
+    /** Stops the parser threads. */
+    def close(): Unit = {
+        executor.shutdown()
+        if (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+            executor.shutdownNow()
+        }
+    }
+
+    private def commit(batch: Seq[Transaction], tasks: Int,
+                       readTime: Long): Unit = {
+        if (batch.isEmpty) {
+            return
+        }
+        val start = System.nanoTime()
+        if (!storageManager.interpretAndExecTxns(batch)) {
+            metrics.batchFallbacksMeter.mark()
+        }
+        metrics.batchCommitted(batch.size, tasks, readTime,
+                               System.nanoTime() - start)
+        log.debug("Committed {} transactions with {} tasks",
+                  Int.box(batch.size), Int.box(tasks))
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.cluster.services.c3po
+
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+import com.codahale.metrics.MetricRegistry.name
+import com.codahale.metrics.{Gauge, MetricRegistry}
+
+import org.midonet.cluster.services.c3po.C3POMetrics._
+
+object C3POMetrics {
+
+    /**
+      * Class names to publish metrics, acting as markers to organize the
+      * metrics when exported via JMX.
+      */
+    trait C3POMeter
+    trait C3POGauge
+    trait C3POHistogram
+    trait C3POTimer
+
+}
+
+/**
+  * Metrics of the Neutron importer: the throughput of imported tasks and
+  * transactions, the size and latency of the storage commits, the batches
+  * committed one transaction at a time after their coalesced commit failed,
+  * and the lag of the importer, as the number of tasks read from the Neutron
+  * DB and not yet committed and the time between reading a task and
+  * committing it.
+  */
+class C3POMetrics(registry: MetricRegistry) {
+
+    private val pending = new AtomicInteger()
+
+    val tasksMeter =
+        registry.meter(name(classOf[C3POMeter], "tasks"))
+    val transactionsMeter =
+        registry.meter(name(classOf[C3POMeter], "transactions"))
+    val batchFallbacksMeter =
+        registry.meter(name(classOf[C3POMeter], "batchFallbacks"))
+    val batchSizeHistogram =
+        registry.histogram(name(classOf[C3POHistogram], "batchSize"))
+    val importLagHistogram =
+        registry.histogram(name(classOf[C3POHistogram], "importLagMillis"))
+    val commitTimer =
+        registry.timer(name(classOf[C3POTimer], "commit"))
+
+    registry.register(name(classOf[C3POGauge], "pendingTasks"),
+                      new Gauge[Int] {
+                          override def getValue: Int = pending.get()
+                      })
+
+    /** Records that the given number of tasks have been read from the
+      * Neutron DB. */
+    def tasksRead(tasks: Int): Unit = {
+        pending.addAndGet(tasks)
+    }
+
+    /** Records the commit of a batch of transactions, with the time when
+      * their tasks were read and the commit latency, both in nanoseconds. */
+    def batchCommitted(transactions: Int, tasks: Int, readTime: Long,
+                       latency: Long): Unit = {
+        pending.addAndGet(-tasks)
+        tasksMeter.mark(tasks)
+        transactionsMeter.mark(transactions)
+        batchSizeHistogram.update(tasks)
+        commitTimer.update(latency, TimeUnit.NANOSECONDS)
+        importLagHistogram.update(
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - readTime))
+    }
+
+    /** Clears the pending tasks when the importer finishes with the tasks
+      * read from the Neutron DB, including those abandoned after a failure,
+      * which are read again on the next poll. */
+    def resetPendingTasks(): Unit = {
+        pending.set(0)
+    }
+
+    def pendingTasks: Int = pending.get()
+}
@@ -20,10 +20,11 @@ import java.sql.Driver
 
 import javax.sql.DataSource
 
+import scala.collection.mutable.ListBuffer
 import scala.util.control.NonFatal
 
+import com.codahale.metrics.MetricRegistry
 import com.google.inject.Inject
-import com.google.protobuf.Message
 
 import org.apache.curator.framework.CuratorFramework
 import org.apache.curator.framework.recipes.leader.LeaderLatch
@@ -31,11 +32,8 @@ import org.slf4j.LoggerFactory
 
 import org.midonet.cluster.data.neutron.{DataStateUpdater, SqlNeutronImporter, importer}
 import org.midonet.cluster.services.MidonetBackend
-import org.midonet.cluster.services.c3po.C3POStorageManager._
-import org.midonet.cluster.services.c3po.NeutronDeserializer.toMessage
-import org.midonet.cluster.services.c3po.NeutronTranslatorManager._
 import org.midonet.cluster.storage.MidonetBackendConfig
-import org.midonet.cluster.util.{SequenceDispenser, UUIDUtil}
+import org.midonet.cluster.util.SequenceDispenser
 import org.midonet.cluster.{C3POConfig, C3poLog, ClusterConfig}
 import org.midonet.minion.MinionService.TargetNode
 import org.midonet.minion.ScheduledMinion.checkConfigParamDefined
@@ -50,6 +48,7 @@ import org.midonet.minion.{Context, MinionService, ScheduledMinion}
   * @param backend The MidoNet backend service
   * @param curator API for access to ZK for internal uses of the C3PO service
   * @param backendCfg the Backend configuration
+  * @param metrics the metric registry of the Cluster Node
   */
 @MinionService(name = "neutron-importer", runsOn = TargetNode.CLUSTER)
 class C3POMinion @Inject()(nodeContext: Context,
@@ -57,7 +56,8 @@ class C3POMinion @Inject()(nodeContext: Context,
                            dataSrc: DataSource,
                            backend: MidonetBackend,
                            curator: CuratorFramework,
-                           backendCfg: MidonetBackendConfig)
+                           backendCfg: MidonetBackendConfig,
+                           metrics: MetricRegistry)
     extends ScheduledMinion(nodeContext, config.c3po) {
 
     protected override val log = LoggerFactory.getLogger(C3poLog)
@@ -69,6 +69,10 @@ class C3POMinion @Inject()(nodeContext: Context,
     private val dataMgr = C3POMinion.initDataManager(config,
                                                      backend,
                                                      seqDispenser)
+    private val pipeline = new C3POImportPipeline(dataMgr,
+                                                  config.c3po.parserThreads,
+                                                  config.c3po.maxBatchSize,
+                                                  new C3POMetrics(metrics))
 
     private val LEADER_LATCH_PATH = backendCfg.rootKey + "/leader-latch"
     private val leaderLatch = new LeaderLatch(curator, LEADER_LATCH_PATH,
@@ -88,6 +92,7 @@ class C3POMinion @Inject()(nodeContext: Context,
         }
         leaderLatch.close()
         super.doStop()
+        pipeline.close()
     }
 
     // Delegates to a static method to enable testing without creating a
@@ -110,15 +115,20 @@ class C3POMinion @Inject()(nodeContext: Context,
             val txns = neutronImporter.getTasksSince(lastTaskId)
             log.debug(".. {} transaction(s) to import: {}", txns.size, txns)
 
+            // The transactions between flushes are imported by the pipeline.
+            val pending = new ListBuffer[importer.Transaction]
             for (txn <- txns) {
                 if (txn.isFlushTxn) {
+                    pipeline.process(pending.toList)
+                    pending.clear()
                     log.info(".. flushing storage")
                     dataMgr.flushTopology()
                     neutronImporter.deleteTask(txn.lastTaskId)
                 } else {
-                    dataMgr.interpretAndExecTxn(translateTxn(txn))
+                    pending += txn
                 }
             }
+            pipeline.process(pending.toList)
 
             val newLastTaskId = dataMgr.lastProcessedTaskId
             log.debug(".. updating last processed task ID: {}.", newLastTaskId)
@@ -129,26 +139,6 @@ class C3POMinion @Inject()(nodeContext: Context,
                 log.error("Unexpected exception in NeutronDB polling thread", t)
         }
     }
-
-    private def translateTxn(txn: importer.Transaction) =
-        Transaction(txn.id, txn.tasks.map(translateTask))
-
-    private def translateTask(task: importer.Task)
-    : Task[_ <: Message] = {
-        val c3poOp: Operation[_ <: Message] = task match {
-            case importer.Create(_, rsrcType, json) =>
-                Create(toMessage(json, rsrcType.clazz))
-            case importer.Update(_, rsrcType, json) =>
-                Update(toMessage(json, rsrcType.clazz))
-            case importer.Delete(_, rsrcType, objId) =>
-                Delete(rsrcType.clazz, UUIDUtil.toProto(objId))
-            case importer.Flush(_) =>
-                // TODO: Trigger a rebuild, because this shouldn't happen.
-                throw new IllegalArgumentException(
-                    "Flush operation not in its own transaction: " + task)
-        }
-        Task(task.taskId, c3poOp)
-    }
 }
 
 object C3POMinion {
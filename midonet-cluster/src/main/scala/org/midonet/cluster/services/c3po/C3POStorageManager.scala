@@ -192,4 +192,59 @@ class C3POStorageManager(config: ClusterConfig,
                 s"in transaction ${txn.txnId}.", e)
         }
     }
+
+    /** Interprets a sequence of consecutive transactions, translating and
+      * executing all their tasks in order in a single storage transaction.
+      * Since a storage transaction reads its own pending writes, a task may
+      * refer to the objects created by the previous tasks of the batch.
+      *
+      * If the coalesced transaction fails, for instance because a
+      * translation fails or because the storage transaction is too large,
+      * nothing is committed and the transactions are executed again one at a
+      * time with [[interpretAndExecTxn]], such that the transactions before
+      * the offending task are still committed and the failure is reported
+      * for that task.
+      *
+      * @return True if the transactions were committed in a single storage
+      *         transaction, false if they were executed separately. */
+    @throws[ProcessingException]
+    def interpretAndExecTxns(txns: Seq[Transaction]): Boolean = {
+        assert(initialized)
+
+        if (txns.isEmpty) {
+            return true
+        } else if (txns.size == 1) {
+            interpretAndExecTxn(txns.head)
+            return true
+        }
+
+        val committed = try {
+            val tx = backend.store.transaction(ZoomOwner.ClusterNeutron)
+            try {
+                for (txn <- txns; task <- txn.tasks) {
+                    translate(tx, task.op)
+                }
+                tx.update(C3POState.at(txns.last.lastTaskId))
+                tx.commit()
+            } finally {
+                tx.close()
+            }
+            true
+        } catch {
+            case NonFatal(e) =>
+                log.warn(s"Failed to execute ${txns.size} coalesced " +
+                         s"transactions ${txns.head.txnId} to " +
+                         s"${txns.last.txnId}: executing them separately", e)
+                false
+        }
+
+        if (committed) {
+            log.info(s"Executed C3PO tasks with IDs up to " +
+                     s"${txns.last.lastTaskId} from ${txns.size} " +
+                     "transactions.")
+        } else {
+            txns foreach interpretAndExecTxn
+        }
+        committed
+    }
 }
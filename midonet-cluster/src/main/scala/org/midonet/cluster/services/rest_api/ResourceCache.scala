@@ -0,0 +1,166 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.cluster.services.rest_api
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+import scala.concurrent.{ExecutionContext, Future}
+
+import com.google.protobuf.Message
+
+import rx.subscriptions.CompositeSubscription
+import rx.{Observable, Observer, Subscriber}
+
+import org.midonet.cluster.services.MidonetBackend
+
+/**
+  * A read cache for the list requests of the REST API, which holds the list
+  * of all stored objects of a class. A class is cached on its first list
+  * request, when the cache subscribes to the storage observables of that
+  * class. Any notification for the class, that is the creation, update or
+  * deletion of an object, invalidates the cached list, such that the next
+  * request loads it again from storage.
+  *
+  * The cache holds the stored messages rather than the converted API
+  * resources, because the resources are modified by the resource filters of
+  * every request. Because the storage notifications are asynchronous, a list
+  * may not include a change made immediately before by the same client,
+  * which is why the cache is disabled by default.
+  *
+  * The subscription to an object is removed when the object is deleted. If
+  * the storage observable of a class completes or fails, the class is
+  * dropped from the cache, and it is subscribed again on the next request.
+  */
+class ResourceCache(backend: MidonetBackend, enabled: Boolean) {
+
+    private class Entry(clazz: Class[_ <: Message]) {
+
+        private val version = new AtomicLong()
+        @volatile private var messages: Seq[Message] = null
+        @volatile var closed = false
+        val subscription = new CompositeSubscription()
+
+        private val invalidate = new Observer[AnyRef] {
+            override def onNext(value: AnyRef): Unit = {
+                version.incrementAndGet()
+                messages = null
+            }
+            override def onCompleted(): Unit = onNext(null)
+            override def onError(e: Throwable): Unit = onNext(null)
+        }
+
+        // Subscribe before loading the class from storage, such that no
+        // change is missed. The first notification of every object is its
+        // current state, which does not change the cached list.
+        subscription add backend.store
+            .observable(clazz)
+            .subscribe(new Observer[Observable[_ <: Message]] {
+                override def onNext(o: Observable[_ <: Message]): Unit = {
+                    invalidate.onNext(o)
+                    subscribeObject(o)
+                }
+                override def onCompleted(): Unit = {
+                    invalidate.onCompleted()
+                    close()
+                }
+                override def onError(e: Throwable): Unit = {
+                    invalidate.onError(e)
+                    close()
+                }
+            })
+
+        /** Subscribes to the notifications of an object, until the object is
+          * deleted. The subscriber is added before subscribing, such that it
+          * is also removed if the object observable completes immediately. */
+        private def subscribeObject(o: Observable[_ <: Message]): Unit = {
+            val subscriber = new Subscriber[Message] {
+                override def onNext(value: Message): Unit =
+                    invalidate.onNext(value)
+                override def onCompleted(): Unit = {
+                    invalidate.onCompleted()
+                    subscription remove this
+                }
+                override def onError(e: Throwable): Unit = {
+                    invalidate.onError(e)
+                    subscription remove this
+                }
+            }
+            subscription add subscriber
+            o.skip(1).subscribe(subscriber)
+        }
+
+        /** Drops this entry from the cache and unsubscribes from storage. */
+        def close(): Unit = {
+            closed = true
+            messages = null
+            entries.remove(clazz, this)
+            subscription.unsubscribe()
+        }
+
+        def get(implicit ec: ExecutionContext): Future[Seq[Message]] = {
+            val cached = messages
+            if (cached ne null) {
+                return Future.successful(cached)
+            }
+            val current = version.get()
+            backend.store.getAll(clazz).map { result =>
+                // Cache the result only if there was no change while loading.
+                if (version.get() == current && !closed) {
+                    messages = result
+                }
+                result
+            }
+        }
+    }
+
+    private val entries = new ConcurrentHashMap[Class[_], Entry]()
+
+    /** Returns all stored objects of the given class, from the cache if
+      * enabled, or otherwise from storage. */
+    def getAll[T <: Message](clazz: Class[T])
+                            (implicit ec: ExecutionContext): Future[Seq[T]] = {
+        if (!enabled) {
+            return backend.store.getAll(clazz)
+        }
+        var entry = entries.get(clazz)
+        if (entry eq null) {
+            val newEntry = new Entry(clazz)
+            entry = entries.putIfAbsent(clazz, newEntry)
+            if (entry eq null) {
+                entry = newEntry
+                // The entry may have been closed before it was added.
+                if (entry.closed) {
+                    entries.remove(clazz, entry)
+                }
+            } else {
+                newEntry.subscription.unsubscribe()
+            }
+        }
+        entry.get.asInstanceOf[Future[Seq[T]]]
+    }
+
+    /** Unsubscribes from storage and clears the cache. */
+    def close(): Unit = {
+        val iterator = entries.values().iterator()
+        while (iterator.hasNext) {
+            iterator.next().subscription.unsubscribe()
+        }
+        entries.clear()
+    }
+
+}
@@ -74,6 +74,7 @@ object RestApi {
     def servletModule(backend: MidonetBackend, ec: ExecutionContext,
                       curator: CuratorFramework, config: ClusterConfig,
                       reflections: Reflections, authService: AuthService,
+                      resourceCache: ResourceCache,
                       log: Logger) = new JerseyServletModule {
 
         val resProvider = new ResourceProvider(reflections, log)
@@ -94,6 +95,7 @@ object RestApi {
             bind(classOf[MidonetBackend]).toInstance(backend)
             bind(classOf[MidonetBackendConfig]).toInstance(config.backend)
             bind(classOf[SequenceDispenser]).toInstance(sequenceDispenser)
+            bind(classOf[ResourceCache]).toInstance(resourceCache)
             bind(classOf[MidoNodeConfigurator])
                 .toInstance(MidoNodeConfigurator(
                 curator.usingNamespace(config.backend.rootKey.stripPrefix("/")),
@@ -139,6 +141,8 @@ class RestApi @Inject()(nodeContext: Context,
     private val log = Logger(LoggerFactory.getLogger(RestApiLog))
     private val executor = createThreadPool()
     private val executionContext = ExecutionContext.fromExecutor(executor)
+    private val resourceCache =
+        new ResourceCache(backend, config.restApi.listCacheEnabled)
 
     override def isEnabled = config.restApi.isEnabled
 
@@ -175,6 +179,7 @@ class RestApi @Inject()(nodeContext: Context,
             if (server ne null) {
                 server.join()
             }
+            resourceCache.close()
         } finally {
             if (server ne null) {
                 server.destroy()
@@ -195,7 +200,8 @@ class RestApi @Inject()(nodeContext: Context,
         context.addEventListener(new GuiceServletContextListener {
             override def getInjector: Injector = {
                 createInjector(servletModule(backend, executionContext, curator,
-                                             config, reflections, authService, log))
+                                             config, reflections, authService,
+                                             resourceCache, log))
             }
         })
         val allDispatchers = util.EnumSet.allOf(classOf[DispatcherType])
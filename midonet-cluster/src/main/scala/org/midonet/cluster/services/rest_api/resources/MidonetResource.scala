@@ -18,7 +18,7 @@ package org.midonet.cluster.services.rest_api.resources
 
 import java.lang.annotation.Annotation
 import java.net.URI
-import java.util.{ConcurrentModificationException, List => JList, Set => JSet}
+import java.util.{ArrayList => JArrayList, Collections, ConcurrentModificationException, List => JList, PriorityQueue, Set => JSet}
 
 import javax.validation.{ConstraintViolation, Validator}
 import javax.ws.rs._
@@ -42,12 +42,14 @@ import org.midonet.cluster._
 import org.midonet.cluster.data.ZoomConvert
 import org.midonet.cluster.data.ZoomConvert.ConvertException
 import org.midonet.cluster.data.ZoomMetadata.ZoomOwner
+import org.midonet.cluster.data.getIdString
 import org.midonet.cluster.data.storage._
 import org.midonet.cluster.rest_api.ResponseUtils.buildErrorResponse
 import org.midonet.cluster.rest_api._
 import org.midonet.cluster.rest_api.annotation.{AllowCreate, AllowGet, AllowList, AllowUpdate}
 import org.midonet.cluster.rest_api.models.UriResource
 import org.midonet.cluster.services.MidonetBackend
+import org.midonet.cluster.services.rest_api.ResourceCache
 import org.midonet.cluster.services.rest_api.resources.MidonetResource._
 import org.midonet.cluster.util.SequenceDispenser
 import org.midonet.cluster.util.logging.ProtoTextPrettifier.makeReadable
@@ -70,6 +72,9 @@ object MidonetResource {
         case e: WebApplicationException => e.getResponse
     }
 
+    final val LimitParam = "limit"
+    final val MarkerParam = "marker"
+
     final class FutureOps[T](val future: Future[T]) extends AnyVal {
         def getOrThrow(implicit timeout: FiniteDuration, log: Logger): T = {
             tryRead { Await.result(future, timeout) }
@@ -131,7 +136,8 @@ object MidonetResource {
                                           executionContext: ExecutionContext,
                                           uriInfo: UriInfo,
                                           validator: Validator,
-                                          seqDispenser: SequenceDispenser)
+                                          seqDispenser: SequenceDispenser,
+                                          resourceCache: ResourceCache = null)
 
 }
 
@@ -214,16 +220,50 @@ abstract class MidonetResource[T >: Null <: UriResource]
         getFilter(getResource(tag.runtimeClass.asInstanceOf[Class[T]], id))
     }
 
+    /**
+      * Lists the resources, optionally paginated with the `limit` and
+      * `marker` query parameters. When paginated, the resources are ordered
+      * by identifier, or in the order of [[listIds]] if defined, and a page
+      * returns up to `limit` resources following the resource with the
+      * `marker` identifier. A page lists the identifiers of the resources
+      * and then reads, converts and filters only the resources of the page.
+      *
+      * The response is not streamed: the resources are converted before the
+      * response is written, such that a conversion error is returned as an
+      * error response. A listing without a `limit` therefore holds all
+      * converted resources in memory, and clients listing large collections
+      * should request pages instead.
+      */
     @GET
     def list(@HeaderParam("Accept") accept: String): JList[T] = {
         validateMediaType(accept, getAnnotation(classOf[AllowList]).value())
+        val clazz = tag.runtimeClass.asInstanceOf[Class[T]]
+        val zoomClass = UriResource.getZoomClass(clazz)
+        val params = uriInfo.getQueryParameters
+        val limit = if (params eq null) 0
+                    else parseLimit(params.getFirst(LimitParam))
+        val marker = if (params eq null) null
+                     else params.getFirst(MarkerParam)
+
         val ids = listIds
-        val list = if (ids eq null) {
-            listFilter(listResources(tag.runtimeClass.asInstanceOf[Class[T]]))
+        if ((limit > 0) || (marker ne null)) {
+            val cursor =
+                if (ids eq null) {
+                    new IdCursor(store.getAllIds(zoomClass).getOrThrow,
+                                 sorted = true, marker)
+                } else {
+                    new IdCursor(ids, sorted = false, marker)
+                }
+            listPage(clazz, zoomClass, cursor,
+                     if (limit > 0) limit else Int.MaxValue)
         } else {
-            listFilter(listResources(tag.runtimeClass.asInstanceOf[Class[T]], ids))
+            val messages: Seq[Message] = if (ids eq null) {
+                listMessages(zoomClass)
+            } else {
+                store.getAll(zoomClass, ids).getOrThrow
+            }
+            listFilter(messages.map(fromProto(_, clazz))).asJava
         }
-        list.asJava
     }
 
     @POST
@@ -327,9 +367,7 @@ abstract class MidonetResource[T >: Null <: UriResource]
 
     protected def listResources[U >: Null <: UriResource](clazz: Class[U])
     : Seq[U] = {
-        store.getAll(UriResource.getZoomClass(clazz))
-             .map(_.map(fromProto(_, clazz)))
-             .getOrThrow
+        listMessages(UriResource.getZoomClass(clazz)).map(fromProto(_, clazz))
     }
 
     protected def listResources[U >: Null <: UriResource](clazz: Class[U],
@@ -389,6 +427,93 @@ abstract class MidonetResource[T >: Null <: UriResource]
         }
     }
 
+    private def listMessages(clazz: Class[_ <: Message]): Seq[Message] = {
+        val cache = resContext.resourceCache
+        val messages = if (cache eq null) store.getAll(clazz)
+                       else cache.getAll(clazz)
+        messages.getOrThrow
+    }
+
+    @throws[BadRequestHttpException]
+    private def parseLimit(value: String): Int = {
+        if (value eq null) {
+            return 0
+        }
+        val limit = try value.toInt catch {
+            case e: NumberFormatException => 0
+        }
+        if (limit <= 0) {
+            throw new BadRequestHttpException(
+                s"Invalid $LimitParam $value: must be a positive integer")
+        }
+        limit
+    }
+
+    /** Iterates over the identifiers following the marker. If `sorted` is
+      * set, the identifiers are returned in order, where every call selects
+      * the `count` smallest identifiers following the last returned one, such
+      * that the identifiers are never sorted as a whole. Otherwise, the
+      * identifiers are returned in their order, and the marker must be one
+      * of them. */
+    private class IdCursor(ids: Seq[Any], sorted: Boolean, marker: String) {
+
+        private var last = marker
+        private var position = 0
+
+        if (!sorted && (marker ne null)) {
+            val index = ids.indexWhere(getIdString(_) == marker)
+            if (index < 0) {
+                throw new BadRequestHttpException(
+                    s"Invalid $MarkerParam $marker: resource not found")
+            }
+            position = index + 1
+        }
+
+        def next(count: Int): Seq[Any] = {
+            if (!sorted) {
+                val page = ids.drop(position).take(count)
+                position += page.size
+                return page
+            }
+            val heap = new PriorityQueue[String](
+                Math.max(Math.min(count, ids.size), 1),
+                Collections.reverseOrder[String]())
+            for (id <- ids) {
+                val value = getIdString(id)
+                if ((last eq null) || value > last) {
+                    if (heap.size < count) {
+                        heap.add(value)
+                    } else if (value < heap.peek()) {
+                        heap.poll()
+                        heap.add(value)
+                    }
+                }
+            }
+            val page = heap.asScala.toVector.sorted
+            if (page.nonEmpty) {
+                last = page.last
+            }
+            page
+        }
+    }
+
+    /** Reads, converts and filters the resources in chunks, until the page
+      * has `limit` resources. The chunks are filtered with [[listFilter]],
+      * which is therefore expected to filter every resource independently. */
+    private def listPage(clazz: Class[T], zoomClass: Class[_ <: Message],
+                         cursor: IdCursor, limit: Int): JList[T] = {
+        val page = new JArrayList[T]()
+        var ids = cursor.next(limit)
+        while (ids.nonEmpty) {
+            val messages: Seq[Message] =
+                store.getAll(zoomClass, ids).getOrThrow
+            page.addAll(listFilter(messages.map(fromProto(_, clazz))).asJava)
+            ids = if (page.size < limit) cursor.next(limit - page.size)
+                  else Seq.empty
+        }
+        page
+    }
+
     /** Guaranteed to return a non-null value, or throw 405
       */
     private def getAnnotation[U >: Null <: Annotation](clazz: Class[U]): U = {
@@ -50,9 +50,9 @@ object StateTableCache {
       * wraps a single Rx subscriber that will receive notifications from the
       * state table cache.
       */
-    private class Subscription(override val id: Long,
-                               cache: StateTableCache,
-                               observer: StateTableObserver)
+    private[state] class Subscription(override val id: Long,
+                                      cache: StateTableCache,
+                                      observer: StateTableObserver)
         extends StateTableSubscription {
 
         private val unsubscribed = new AtomicBoolean()
@@ -108,10 +108,12 @@ object StateTableCache {
         }
 
         /**
-          * Emits to the underlying subscriber a snapshot of the current table
-          * entries. This method is always called on the cache dispatcher thread.
+          * Emits to the underlying subscriber either a snapshot of the current
+          * table entries, or the differential updates since the version last
+          * seen by the subscriber, discarding any queued notifications. This
+          * method is always called on the cache dispatcher thread.
           */
-        def snapshot(updates: Array[Update], currentVersion: Long): Unit = {
+        def reset(updates: Array[Update], currentVersion: Long): Unit = {
             val currentQueue = queue
             if (currentQueue ne null) {
                 currentQueue.clear()
@@ -138,6 +140,9 @@ object StateTableCache {
                         enqueue(updates)
                     }
                 } else {
+                    // The reset discards the queued notifications, which
+                    // may include updates after the last version sent to
+                    // the observer: request a snapshot.
                     refresh(None)
                 }
             }
@@ -303,7 +308,28 @@ object StateTableCache {
     private class TableEntry(val cacheKey: String,
                              val key: KeyValue,
                              val value: KeyValue,
-                             val version: Int)
+                             val version: Int) {
+
+        /** The notification entry when the entry is added or updated, built
+          * once and shared by all snapshots and updates. */
+        lazy val added: Notify.Entry = Notify.Entry.newBuilder()
+            .setKey(key)
+            .setValue(value)
+            .setVersion(version)
+            .build()
+
+        /** The notification entry when the entry is removed. */
+        lazy val removed: Notify.Entry = Notify.Entry.newBuilder()
+            .setKey(key)
+            .setVersion(version)
+            .build()
+    }
+
+    /**
+      * A differential change of the table from `lastVersion` to the version
+      * of the updates, stored in the delta log of the cache.
+      */
+    private class Delta(val lastVersion: Long, val updates: Array[Update])
 
     private type TableEntries = util.HashMap[String, TableEntry]
 
@@ -365,11 +391,22 @@ class StateTableCache(val config: StateProxyConfig,
         config.initialSubscriberQueueSize
     private[state] val notifyBatchSize =
         config.notifyBatchSize
+    private val deltaLogSize = config.deltaLogSize
 
     // The local cache map.
     @volatile private var cache = new TableEntries
+    // The entries of the cache indexed by their storage path, such that the
+    // entries that have not changed are not decoded again on every update.
+    private var paths = new util.HashMap[String, TableEntry]()
     // The current table version.
     private var version = -1L
+    // The log of the most recent differential updates: a subscriber that
+    // refreshes from a version in the log receives only the changes since
+    // that version, instead of a full snapshot.
+    private val deltaLog = new util.ArrayDeque[Delta](Math.max(deltaLogSize, 1))
+    // The snapshot updates for the current version, shared by all
+    // subscribers requesting a snapshot until the table changes.
+    private var snapshotUpdates: Array[Update] = null
     // Stores the subscriptions received before the cache is synchronized
     // with the backend. We use scala immutable sets, but the overhead is
     // acceptable since this is expected only for few subscriptions.
@@ -414,9 +451,9 @@ class StateTableCache(val config: StateProxyConfig,
       * Subscribes to this state table cache for notifications. Upon
       * subscription, the observer will receive one or more notifications with
       * the current contents of the table as follows:
-      * - If `lastVersion` is specified and versioning is supported, then
-      *   the observer will receive the differential updates since the specified
-      *   version.
+      * - If `lastVersion` is specified and the cache has the changes since
+      *   that version in its delta log, then the observer will receive the
+      *   differential updates since the specified version.
       * - Otherwise, the observer will receive a snapshot with all the entries
       */
     @throws[StateTableCacheClosedException]
@@ -709,13 +746,20 @@ class StateTableCache(val config: StateProxyConfig,
         diffRemoveCache.clear()
         // create a table that can hold all the entries without resizing.
         val newCache = new TableEntries(entries.size()*2)
+        val lastPaths = paths
+        val newPaths = new util.HashMap[String, TableEntry](entries.size()*2)
 
         // Add/update new entries in the cache.
         val entryIterator = entries.iterator()
         while (entryIterator.hasNext) {
-            val newEntry = decodeEntry(entryIterator.next())
+            val entryPath = entryIterator.next()
+            var newEntry = lastPaths.get(entryPath)
+            if (newEntry eq null) {
+                newEntry = decodeEntry(entryPath)
+            }
             // Ignore entries that cannot be decoded.
             if (newEntry != null) {
+                newPaths.put(entryPath, newEntry)
                 // Compute the diff with respect to the previous version
                 // of the cache.
                 val currentEntry = newCache.get(newEntry.cacheKey)
@@ -751,6 +795,7 @@ class StateTableCache(val config: StateProxyConfig,
 
         // Update the cache.
         cache = newCache
+        paths = newPaths
 
         // Compute the differential updates based on the current batch size.
         val updateCount = diffAddCache.size() + diffRemoveCache.size()
@@ -782,10 +827,7 @@ class StateTableCache(val config: StateProxyConfig,
 
             while (inIndex < diffAddCache.size()) {
                 val entry = diffAddCache.get(inIndex)
-                builder.addEntries(Notify.Entry.newBuilder()
-                                       .setKey(entry.key)
-                                       .setValue(entry.value)
-                                       .setVersion(entry.version))
+                builder.addEntries(entry.added)
                 inIndex += 1
                 if (builder.getEntriesCount == notifyBatchSize) {
                     updates(outIndex) = builder.build()
@@ -797,9 +839,7 @@ class StateTableCache(val config: StateProxyConfig,
 
             while (inIndex < diffRemoveCache.size()) {
                 val entry = diffRemoveCache.get(inIndex)
-                builder.addEntries(Notify.Entry.newBuilder()
-                                       .setKey(entry.key)
-                                       .setVersion(entry.version))
+                builder.addEntries(entry.removed)
                 inIndex += 1
                 if (builder.getEntriesCount == notifyBatchSize) {
                     updates(outIndex) = builder.build()
@@ -817,6 +857,17 @@ class StateTableCache(val config: StateProxyConfig,
             NoUpdates
         }
 
+        // Record the change in the delta log, including when there are no
+        // updates, such that the logged versions remain contiguous. The
+        // snapshot of the previous version is no longer valid.
+        if (lastVersion >= 0 && deltaLogSize > 0) {
+            if (deltaLog.size() >= deltaLogSize) {
+                deltaLog.poll()
+            }
+            deltaLog.offer(new Delta(lastVersion, updates))
+        }
+        snapshotUpdates = null
+
         if (pending.get eq null) {
             // Send the updates to all current subscribers.
             val currentSubscriptions = subscriptions
@@ -891,9 +942,9 @@ class StateTableCache(val config: StateProxyConfig,
 
     /**
       * Requests a notification update of the current state table for the given
-      * subscriber and optional requested version. If the server supports
-      * versioning, then it should return a differential update for the given
-      * version. Otherwise, it should return a full snapshot of the table. The
+      * subscriber and optional requested version. If the requested version
+      * is in the delta log, the method returns the differential updates since
+      * that version. Otherwise, it returns a full snapshot of the table. The
       * notification must be done on the dispatcher thread to provide an
       * ordering with respect to other updates.
       */
@@ -937,13 +988,93 @@ class StateTableCache(val config: StateProxyConfig,
     @throws[Exception]
     private def requestRefreshUnsafe(subscription: Subscription,
                                      lastVersion: Option[Long]): Unit = {
-        // TODO: Add versioning support.
-
-        val currentCache = cache
-        if (currentCache eq null) {
+        if (cache eq null) {
             return
         }
 
+        val updates = lastVersion match {
+            case Some(v) =>
+                val deltas = deltaUpdates(v)
+                if (deltas ne null) deltas else snapshot()
+            case None => snapshot()
+        }
+
+        subscription.reset(updates, version)
+    }
+
+    /**
+      * Returns the differential updates from the specified version to the
+      * current version of the table, or `null` if the version is not in the
+      * delta log, in which case the subscriber must receive a snapshot. The
+      * updates always include at least one update, even if empty, such that
+      * the subscriber learns the current version.
+      */
+    private def deltaUpdates(lastVersion: Long): Array[Update] = {
+        if (lastVersion == version) {
+            return Array(emptyRelativeUpdate())
+        }
+
+        var found = false
+        var count = 0
+        var iterator = deltaLog.iterator()
+        while (iterator.hasNext) {
+            val delta = iterator.next()
+            if (delta.lastVersion == lastVersion) {
+                found = true
+            }
+            if (found) {
+                count += delta.updates.length
+            }
+        }
+        if (!found) {
+            return null
+        }
+        if (count == 0) {
+            return Array(emptyRelativeUpdate())
+        }
+
+        val updates = new Array[Update](count)
+        var index = 0
+        found = false
+        iterator = deltaLog.iterator()
+        while (iterator.hasNext) {
+            val delta = iterator.next()
+            if (delta.lastVersion == lastVersion) {
+                found = true
+            }
+            if (found) {
+                System.arraycopy(delta.updates, 0, updates, index,
+                                 delta.updates.length)
+                index += delta.updates.length
+            }
+        }
+        updates
+    }
+
+    /**
+      * @return An empty [[Update.Type.RELATIVE]] update for the current
+      *         version.
+      */
+    private def emptyRelativeUpdate(): Update = {
+        Update.newBuilder()
+            .setType(Update.Type.RELATIVE)
+            .setCurrentVersion(version)
+            .setBegin(true)
+            .setEnd(true)
+            .build()
+    }
+
+    /**
+      * Returns the snapshot updates for the current version of the table. The
+      * updates are built once per version, and shared by all subscribers.
+      */
+    private def snapshot(): Array[Update] = {
+        if (snapshotUpdates ne null) {
+            return snapshotUpdates
+        }
+
+        val currentCache = cache
+
         // Build the list of updates for the current snapshot: a snapshot
         // always emits one update, even if empty.
         val batchCount =
@@ -972,14 +1103,9 @@ class StateTableCache(val config: StateProxyConfig,
         val updates = new Array[Update](batchCount)
         var builder = newUpdateBuilder(index)
 
-        val iterator = cache.values().iterator()
+        val iterator = currentCache.values().iterator()
         while (iterator.hasNext) {
-            val entry = iterator.next()
-
-            builder.addEntries(Notify.Entry.newBuilder()
-                                   .setKey(entry.key)
-                                   .setValue(entry.value)
-                                   .setVersion(entry.version))
+            builder.addEntries(iterator.next().added)
             if (builder.getEntriesCount == notifyBatchSize) {
                 updates(index) = builder.build()
                 index += 1
@@ -991,7 +1117,8 @@ class StateTableCache(val config: StateProxyConfig,
             updates(index) = builder.build()
         }
 
-        subscription.snapshot(updates, version)
+        snapshotUpdates = updates
+        updates
     }
 
 }
@@ -41,6 +41,7 @@ import org.midonet.cluster.models.Topology._
 import org.midonet.cluster.rpc.Commands.Response.{Info, Redirect, Snapshot, Update}
 import org.midonet.cluster.rpc.Commands.{Response, ResponseType}
 import org.midonet.cluster.services.topology.common.TopologyMappings.typeOf
+import org.midonet.cluster.services.topology.server.SessionInventory.ObjectUpdate
 import org.midonet.cluster.util.UUIDUtil.{fromProto, toProto}
 import org.midonet.util.concurrent.SpscRwdRingBuffer.SequencedItem
 import org.midonet.util.concurrent.{BlockingSpscRwdRingBuffer, CallingThreadExecutionContext, NamedThreadFactory}
@@ -57,8 +58,13 @@ object SessionInventory {
     class SessionExpirationException
         extends TimeoutException("session expired")
 
-    /** generate an update response */
-    def updateBuilder(m: Message, reqId: UUID = null): Response.Builder = {
+    /** An update of a topology object, built once from the stored message
+      * and shared by the responses to all the sessions watching the
+      * object. */
+    case class ObjectUpdate(objType: Type, objId: Commons.UUID, update: Update)
+
+    /** generate the update of a topology object */
+    def objectUpdate(m: Message): ObjectUpdate = {
         val u: Update = m match {
             case h: BgpNetwork => Update.newBuilder().setBgpNetwork(h).build()
             case h: BgpPeer => Update.newBuilder().setBgpPeer(h).build()
@@ -92,11 +98,20 @@ object SessionInventory {
             case _ => throw new UnknownTopologyEntityException
         }
         val objInfo = extractId(m)
+        ObjectUpdate(typeOf(objInfo.ofType).get, toProto(objInfo.id), u)
+    }
+
+    /** generate an update response */
+    def updateBuilder(m: Message, reqId: UUID = null): Response.Builder =
+        updateBuilder(objectUpdate(m), reqId)
+
+    /** generate an update response from a shared object update */
+    def updateBuilder(u: ObjectUpdate, reqId: UUID): Response.Builder = {
         val response = Response.newBuilder()
                                .setType(ResponseType.UPDATE)
-                               .setObjType(typeOf(objInfo.ofType).get)
-                               .setObjId(toProto(objInfo.id))
-                               .setUpdate(u)
+                               .setObjType(u.objType)
+                               .setObjId(u.objId)
+                               .setUpdate(u.update)
         if (reqId != null)
             response.setReqId(toProto(reqId))
         response
@@ -111,6 +126,14 @@ object SessionInventory {
             .setObjType(typeOf(k).get)
             .setObjId(toProto(id))
 
+    /** generate a deletion response for the object of a shared update */
+    def deletionBuilder(u: ObjectUpdate, reqId: UUID): Response.Builder =
+        Response.newBuilder()
+            .setType(ResponseType.DELETION)
+            .setReqId(toProto(reqId))
+            .setObjType(u.objType)
+            .setObjId(u.objId)
+
     /** generate a snapshot response */
     def snapshotBuilder[T <: Message](ids: Seq[UUID], k: Class[T], reqId: UUID)
         : Response.Builder =
@@ -182,17 +205,17 @@ object SessionInventory {
 }
 
 /**
- * Transformer class for the storage observables, converting completions into
- * object deletion events and adding the necessary information to updates to
- * build proper protocol responses.
+ * Transformer class for the object update observables, converting completions
+ * into object deletion events and adding the necessary information to updates
+ * to build proper protocol responses.
  *
  * @param reqId is the request originating this stream (used for notifications
  *              to user)
  */
 protected class StorageTransformer(val reqId: UUID)
-    extends Observable.Transformer[Message, Response.Builder] {
+    extends Observable.Transformer[ObjectUpdate, Response.Builder] {
 
-    override def call(s: Observable[Message])
+    override def call(s: Observable[ObjectUpdate])
     : Observable[Response.Builder] = {
         val onSubscribe = new StorageOnSubscribe(s, reqId)
         Observable.create(onSubscribe)
@@ -206,7 +229,7 @@ protected class StorageTransformer(val reqId: UUID)
      * errors and completions in the source can be passed to the subscriber
      * with additional information.
      */
-    class StorageOnSubscribe(val source: Observable[_ <: Message],
+    class StorageOnSubscribe(val source: Observable[ObjectUpdate],
                              val reqId: UUID)
         extends OnSubscribe[Response.Builder] {
         /* Remember the subscription to the source observable */
@@ -233,14 +256,14 @@ protected class StorageTransformer(val reqId: UUID)
       */
     class StorageEventConverter(val observer: Observer[Response.Builder],
                                 val reqId: UUID)
-        extends Observer[Message] {
+        extends Observer[ObjectUpdate] {
         import org.midonet.cluster.services.topology.server.SessionInventory._
 
-        private var oId: ObservableId = null
+        private var last: ObjectUpdate = null
 
         override def onCompleted(): Unit = {
-            if (oId != null)
-                observer.onNext(deletionBuilder(oId.id, oId.ofType, reqId))
+            if (last != null)
+                observer.onNext(deletionBuilder(last, reqId))
             observer.onCompleted()
         }
         override def onError(exc: Throwable): Unit = exc match {
@@ -251,9 +274,8 @@ protected class StorageTransformer(val reqId: UUID)
                 observer.onNext(errorBuilder(reqId, "error on watch"))
                 observer.onError(t)
         }
-        override def onNext(data: Message): Unit = {
-            if (oId == null)
-                oId = extractId(data)
+        override def onNext(data: ObjectUpdate): Unit = {
+            last = data
             observer.onNext(updateBuilder(data, reqId))
         }
     }
@@ -362,10 +384,8 @@ class SessionInventory(private val store: Storage,
       * point in time. */
     private val inventory = new ConcurrentHashMap[Any, Session]()
 
-    /** Action for backpressure overflows */
-    private val logOverflow = makeAction0 {
-        log.error("excessive backpressure from topology updates")
-    }
+    /** The updates of the watched objects, shared by all sessions */
+    private val broadcaster = new UpdateBroadcaster(store)
 
     def claim(sessionId: UUID): Session = {
         inventory.getOrElseUpdate(sessionId, {
@@ -384,9 +404,11 @@ class SessionInventory(private val store: Storage,
 
         private val funnel = new Aggregator[ObservableId, Response.Builder]()
         private val buffer = new Buffer(bufferSize, senderExecutor)
+        // The object updates are coalesced to their latest version when
+        // the session buffer falls behind, such that a slow session skips
+        // the intermediate versions instead of overflowing.
         private val bufferSubscription =
             funnel.observable()
-                .onBackpressureBuffer(bufferSize, logOverflow)
                 .observeOn(scheduler)
                 .subscribe(buffer)
 
@@ -512,10 +534,11 @@ class SessionInventory(private val store: Storage,
                                          reqId: UUID): Unit = {
             log.debug("Watch: " + id + " ({})",  ofType)
             val obsId = ObservableId(id, ofType)
-            val src = store.observable(ofType.asInstanceOf[Class[Message]], id)
+            val src = broadcaster.observable(id, ofType)
             try {
                 val oldReq = funnel.add(
-                    obsId, src.compose(new StorageTransformer(reqId)), reqId)
+                    obsId, src.compose(new StorageTransformer(reqId))
+                              .onBackpressureLatest(), reqId)
                 if (reqId == oldReq)
                     funnel.inject(ackBuilder(accept = true, reqId))
                 else
@@ -543,7 +566,11 @@ class SessionInventory(private val store: Storage,
             val obsId = ObservableId(null, ofType)
             val src: Observable[Observable[Response.Builder]] =
                 store.observable(ofType.asInstanceOf[Class[Message]]).map(
-                    makeFunc1 {_.compose(new StorageTransformer(reqId))}
+                    makeFunc1 {
+                        _.map[ObjectUpdate](makeFunc1(objectUpdate))
+                         .compose(new StorageTransformer(reqId))
+                         .onBackpressureLatest()
+                    }
                 )
             try {
                 val oldReq = funnel.add(obsId, Observable.merge(src), reqId)
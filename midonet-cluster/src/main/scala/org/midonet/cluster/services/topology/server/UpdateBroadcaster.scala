@@ -0,0 +1,72 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.cluster.services.topology.server
+
+import java.util.UUID
+import java.util.concurrent.ConcurrentHashMap
+
+import com.google.protobuf.Message
+
+import rx.Observable
+
+import org.midonet.cluster.data.storage.Storage
+import org.midonet.cluster.services.topology.server.SessionInventory.{ObjectUpdate, ObservableId, objectUpdate}
+import org.midonet.util.functors.{makeAction0, makeFunc1}
+
+/**
+ * Shares the storage subscription of a topology object among all the
+ * sessions watching that object, such that the update sent to the sessions
+ * is built once for every change of the object, rather than once per
+ * session. The update protobuf is immutable and it memoizes its serialized
+ * size, so every session response reuses it as is.
+ *
+ * The broadcast of an object replays the latest update to new subscribers,
+ * and it is disposed of, together with the storage subscription, when the
+ * last session unsubscribes.
+ */
+class UpdateBroadcaster(store: Storage) {
+
+    private val broadcasts =
+        new ConcurrentHashMap[ObservableId, Observable[ObjectUpdate]]()
+
+    /** Returns the shared observable emitting the updates of the given
+      * object, which completes when the object is deleted. */
+    def observable(id: UUID, ofType: Class[_ <: Message])
+    : Observable[ObjectUpdate] = {
+        val key = ObservableId(id, ofType)
+        val broadcast = broadcasts.get(key)
+        if (broadcast ne null) {
+            return broadcast
+        }
+
+        var newBroadcast: Observable[ObjectUpdate] = null
+        newBroadcast = store.observable(ofType.asInstanceOf[Class[Message]], id)
+            .map[ObjectUpdate](makeFunc1(objectUpdate))
+            .doOnUnsubscribe(makeAction0 {
+                broadcasts.remove(key, newBroadcast)
+            })
+            .replay(1)
+            .refCount()
+
+        val previous = broadcasts.putIfAbsent(key, newBroadcast)
+        if (previous eq null) newBroadcast else previous
+    }
+
+    /** The number of objects with a shared broadcast. */
+    def size: Int = broadcasts.size()
+
+}
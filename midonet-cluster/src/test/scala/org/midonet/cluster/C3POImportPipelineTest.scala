@@ -0,0 +1,168 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.cluster
+
+import java.util.UUID
+
+import com.codahale.metrics.MetricRegistry
+
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+import org.midonet.cluster.data.neutron.NeutronResourceType.{AgentMembership => AgentMembershipType, Config => ConfigType, Network => NetworkType, Port => PortType}
+import org.midonet.cluster.data.neutron.importer
+import org.midonet.cluster.models.Neutron.NeutronConfig.TunnelProtocol
+import org.midonet.cluster.models.Topology.{Host, Network, Port, TunnelZone}
+import org.midonet.cluster.services.c3po._
+import org.midonet.cluster.util.UUIDUtil._
+import org.midonet.util.concurrent.toFutureOps
+
+/** Tests the pipelined import of Neutron transactions into the in-memory
+  * storage. */
+@RunWith(classOf[JUnitRunner])
+class C3POImportPipelineTest extends C3POMinionTestBase {
+
+    private var storageManager: C3POStorageManager = _
+    private var metrics: C3POMetrics = _
+
+    before {
+        storageManager = C3POMinion.initDataManager(config, backend,
+                                                    sequenceDispenser)
+        metrics = new C3POMetrics(new MetricRegistry)
+    }
+
+    private def newPipeline(maxBatchSize: Int): C3POImportPipeline =
+        new C3POImportPipeline(storageManager, parserThreads = 4,
+                               maxBatchSize, metrics)
+
+    private def createNetwork(taskId: Int, id: UUID,
+                              name: String = "net"): importer.Transaction =
+        new importer.Transaction(s"txn$taskId", List(importer.Create(
+            taskId, NetworkType, networkJson(id, name = name).toString)))
+
+    "C3PO import pipeline" should "coalesce consecutive transactions" in {
+        val networkId = UUID.randomUUID()
+        val portId = UUID.randomUUID()
+        val txns = List(
+            createNetwork(2, networkId),
+            new importer.Transaction("txn3", List(importer.Create(
+                3, PortType,
+                portJson(id = portId, networkId = networkId).toString))),
+            new importer.Transaction("txn4", List(importer.Update(
+                4, NetworkType,
+                networkJson(networkId, name = "renamed").toString))))
+
+        val pipeline = newPipeline(maxBatchSize = 64)
+        try pipeline.process(txns) finally pipeline.close()
+
+        val network = storage.get(classOf[Network], networkId).await()
+        network.getName shouldBe "renamed"
+        network.getPortIdsList should contain (toProto(portId))
+        storage.exists(classOf[Port], portId).await() shouldBe true
+        storageManager.lastProcessedTaskId shouldBe 4
+
+        metrics.transactionsMeter.getCount shouldBe 3
+        metrics.tasksMeter.getCount shouldBe 3
+        metrics.batchSizeHistogram.getCount shouldBe 1
+        metrics.batchFallbacksMeter.getCount shouldBe 0
+        metrics.pendingTasks shouldBe 0
+    }
+
+    it should "list the objects created earlier in the same batch" in {
+        val configId = UUID.randomUUID()
+        val hostId = UUID.randomUUID()
+        storage.create(Host.newBuilder.setId(hostId).build())
+
+        // Adding the agent membership lists the Neutron configurations to
+        // find the default tunnel zone.
+        val txns = List(
+            new importer.Transaction("txn2", List(importer.Create(
+                2, ConfigType,
+                configJson(configId, TunnelProtocol.VXLAN).toString))),
+            new importer.Transaction("txn3", List(importer.Create(
+                3, AgentMembershipType,
+                agentMembershipJson(hostId, "192.168.0.1").toString))))
+
+        val pipeline = newPipeline(maxBatchSize = 64)
+        try pipeline.process(txns) finally pipeline.close()
+
+        val tunnelZone = storage.get(classOf[TunnelZone], configId).await()
+        tunnelZone.getHostIdsList should contain only toProto(hostId)
+        storageManager.lastProcessedTaskId shouldBe 3
+
+        metrics.batchSizeHistogram.getCount shouldBe 1
+        metrics.batchFallbacksMeter.getCount shouldBe 0
+    }
+
+    it should "limit the number of tasks in a storage transaction" in {
+        val ids = Seq.fill(5)(UUID.randomUUID())
+        val txns = for ((id, index) <- ids.zipWithIndex)
+            yield createNetwork(index + 2, id)
+
+        val pipeline = newPipeline(maxBatchSize = 2)
+        try pipeline.process(txns) finally pipeline.close()
+
+        for (id <- ids) {
+            storage.exists(classOf[Network], id).await() shouldBe true
+        }
+        storageManager.lastProcessedTaskId shouldBe 6
+
+        metrics.transactionsMeter.getCount shouldBe 5
+        metrics.batchSizeHistogram.getCount shouldBe 3
+        metrics.batchSizeHistogram.getSnapshot.getMax shouldBe 2
+    }
+
+    it should "commit the transactions before a failed transaction" in {
+        val networkId1 = UUID.randomUUID()
+        val networkId2 = UUID.randomUUID()
+        val txns = List(
+            createNetwork(2, networkId1),
+            new importer.Transaction("txn3", List(importer.Create(
+                3, NetworkType, "{ not json"))),
+            createNetwork(4, networkId2))
+
+        val pipeline = newPipeline(maxBatchSize = 64)
+        try {
+            intercept[NeutronDeserializationException] {
+                pipeline.process(txns)
+            }
+        } finally pipeline.close()
+
+        storage.exists(classOf[Network], networkId1).await() shouldBe true
+        storage.exists(classOf[Network], networkId2).await() shouldBe false
+        storageManager.lastProcessedTaskId shouldBe 2
+        metrics.pendingTasks shouldBe 0
+    }
+
+    it should "execute the transactions separately when a batch fails" in {
+        val networkId = UUID.randomUUID()
+        val txns = List(
+            createNetwork(2, networkId),
+            new importer.Transaction("txn3", List(importer.Create(
+                3, NetworkType, networkJson(networkId).toString))))
+
+        val pipeline = newPipeline(maxBatchSize = 64)
+        try {
+            intercept[C3POStorageManager.ProcessingException] {
+                pipeline.process(txns)
+            }
+        } finally pipeline.close()
+
+        storage.exists(classOf[Network], networkId).await() shouldBe true
+        storageManager.lastProcessedTaskId shouldBe 2
+    }
+}
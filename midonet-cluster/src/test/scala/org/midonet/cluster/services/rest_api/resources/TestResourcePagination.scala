@@ -0,0 +1,165 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.cluster.services.rest_api.resources
+
+import java.net.URI
+import java.util.UUID
+
+import javax.ws.rs.WebApplicationException
+import javax.ws.rs.core.Response.Status
+import javax.ws.rs.core.UriInfo
+
+import scala.collection.JavaConverters._
+import scala.concurrent.ExecutionContext
+
+import com.sun.jersey.core.util.MultivaluedMapImpl
+import com.typesafe.config.ConfigFactory
+
+import org.junit.runner.RunWith
+import org.mockito.Mockito
+import org.scalatest.concurrent.Eventually
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{BeforeAndAfter, FlatSpec, Matchers}
+
+import org.midonet.cluster.ClusterConfig
+import org.midonet.cluster.data.storage.KeyType
+import org.midonet.cluster.models.Topology.{PoolMember => PPoolMember}
+import org.midonet.cluster.services.MidonetBackend
+import org.midonet.cluster.services.MidonetBackend.StatusKey
+import org.midonet.cluster.services.rest_api.MidonetMediaTypes.APPLICATION_POOL_MEMBER_COLLECTION_JSON
+import org.midonet.cluster.services.rest_api.ResourceCache
+import org.midonet.cluster.services.rest_api.resources.MidonetResource.{LimitParam, MarkerParam, ResourceContext}
+import org.midonet.cluster.storage.MidonetTestBackend
+import org.midonet.cluster.util.IPAddressUtil.richIPAddress
+import org.midonet.cluster.util.UUIDUtil.RichJavaUuid
+import org.midonet.packets.IPv4Addr
+
+@RunWith(classOf[JUnitRunner])
+class TestResourcePagination extends FlatSpec
+                                     with BeforeAndAfter
+                                     with Matchers
+                                     with Eventually {
+
+    private var backend: MidonetBackend = _
+    private var params: MultivaluedMapImpl = _
+    private var cache: ResourceCache = _
+    private var resource: PoolMemberResource = _
+
+    private implicit val executionCtx = ExecutionContext.global
+
+    before {
+        val config = ClusterConfig.forTests(ConfigFactory.empty)
+
+        backend = new MidonetTestBackend
+        backend.store.registerClass(classOf[PPoolMember])
+        backend.stateStore.registerKey(classOf[PPoolMember], StatusKey,
+                                       KeyType.FailFast)
+        backend.store.build()
+
+        params = new MultivaluedMapImpl
+        val mockUriInfo = Mockito.mock(classOf[UriInfo])
+        Mockito.when(mockUriInfo.getBaseUri).thenReturn(new URI("http://test"))
+        Mockito.when(mockUriInfo.getQueryParameters).thenReturn(params)
+
+        cache = new ResourceCache(backend, enabled = true)
+        val resCtx = ResourceContext(config.restApi, backend, executionCtx,
+                                     mockUriInfo, null, null, cache)
+        resource = new PoolMemberResource(resCtx)
+    }
+
+    after {
+        cache.close()
+    }
+
+    private def createPoolMember(): UUID = {
+        val id = UUID.randomUUID()
+        backend.store.create(PPoolMember.newBuilder
+                                 .setId(id.asProto)
+                                 .setAddress(IPv4Addr.random.asProto)
+                                 .build())
+        id
+    }
+
+    private def list(limit: String = null, marker: String = null)
+    : Seq[UUID] = {
+        params.clear()
+        if (limit ne null) params.putSingle(LimitParam, limit)
+        if (marker ne null) params.putSingle(MarkerParam, marker)
+        resource.list(APPLICATION_POOL_MEMBER_COLLECTION_JSON).asScala.map(_.id)
+    }
+
+    "List" should "return all resources without a limit" in {
+        val ids = Seq.fill(5)(createPoolMember())
+        list() should contain theSameElementsAs ids
+    }
+
+    it should "return pages ordered by identifier" in {
+        val ids = Seq.fill(5)(createPoolMember())
+            .sortBy(_.toString)
+
+        val page1 = list(limit = "2")
+        page1 shouldBe ids.take(2)
+
+        val page2 = list(limit = "2", marker = page1.last.toString)
+        page2 shouldBe ids.slice(2, 4)
+
+        val page3 = list(limit = "2", marker = page2.last.toString)
+        page3 shouldBe ids.drop(4)
+
+        list(limit = "2", marker = page3.last.toString) shouldBe empty
+    }
+
+    it should "return a page limited by the number of resources" in {
+        val ids = Seq.fill(3)(createPoolMember())
+            .sortBy(_.toString)
+
+        list(limit = "1000000000") shouldBe ids
+        list(limit = "10", marker = ids.head.toString) shouldBe ids.tail
+    }
+
+    it should "return the resources following a marker without a limit" in {
+        val ids = Seq.fill(5)(createPoolMember())
+            .sortBy(_.toString)
+
+        list(marker = ids(1).toString) shouldBe ids.drop(2)
+    }
+
+    it should "reject an invalid limit" in {
+        createPoolMember()
+        for (limit <- Seq("0", "-1", "none")) {
+            val e = intercept[WebApplicationException] {
+                list(limit = limit)
+            }
+            e.getResponse.getStatus shouldBe Status.BAD_REQUEST.getStatusCode
+        }
+    }
+
+    "Resource cache" should "reload the objects after a change" in {
+        val id1 = createPoolMember()
+        list() should contain theSameElementsAs Seq(id1)
+
+        val id2 = createPoolMember()
+        eventually {
+            list() should contain theSameElementsAs Seq(id1, id2)
+        }
+
+        backend.store.delete(classOf[PPoolMember], id1)
+        eventually {
+            list() should contain theSameElementsAs Seq(id2)
+        }
+    }
+}
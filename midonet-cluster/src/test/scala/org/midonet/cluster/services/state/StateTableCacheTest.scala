@@ -150,6 +150,7 @@ class StateTableCacheTest extends FeatureSpec with Matchers with GivenWhenThen
             s"""
                |cluster.state_proxy.initial_subscriber_queue_size : 16
                |cluster.state_proxy.notify_batch_size : 4
+               |cluster.state_proxy.delta_log_size : 4
              """.stripMargin))
     }
 
@@ -480,6 +481,65 @@ class StateTableCacheTest extends FeatureSpec with Matchers with GivenWhenThen
             cache.close()
         }
 
+        scenario("Observer subscribes from a previous version") {
+            Given("A state table cache")
+            val id = UUID.randomUUID()
+            val cache = newCache(create = true, id) { }
+
+            And("A first entry")
+            val key1 = MAC.random()
+            val value1 = UUID.randomUUID()
+            addEntry(id, key1, value1)
+
+            And("A first observer")
+            val observer1 = new TestObserver
+            cache.subscribe(observer1, lastVersion = None)
+            observer1.awaitOnNext(1, timeout) shouldBe true
+            val version1 =
+                observer1.getOnNextEvents.get(0).getUpdate.getCurrentVersion
+
+            When("Adding a second entry")
+            val key2 = MAC.random()
+            val value2 = UUID.randomUUID()
+            addEntry(id, key2, value2)
+            observer1.awaitOnNext(2, timeout) shouldBe true
+            val version2 =
+                observer1.getOnNextEvents.get(1).getUpdate.getCurrentVersion
+
+            And("A second observer subscribes from the first version")
+            val observer2 = new TestObserver
+            cache.subscribe(observer2, lastVersion = Some(version1))
+
+            Then("The observer receives the changes since that version")
+            observer2.awaitOnNext(1, timeout) shouldBe true
+            observer2.getOnNextEvents.get(0) shouldBeUpdateFor(begin = true,
+                end = true, key2 -> value2)
+            observer2.getOnNextEvents.get(0).getUpdate
+                .getCurrentVersion shouldBe version2
+
+            When("A third observer subscribes from the current version")
+            val observer3 = new TestObserver
+            cache.subscribe(observer3, lastVersion = Some(version2))
+
+            Then("The observer receives an empty update")
+            observer3.awaitOnNext(1, timeout) shouldBe true
+            observer3.getOnNextEvents.get(0) shouldBeUpdateFor(begin = true,
+                end = true)
+            observer3.getOnNextEvents.get(0).getUpdate
+                .getCurrentVersion shouldBe version2
+
+            When("A fourth observer subscribes from an unknown version")
+            val observer4 = new TestObserver
+            cache.subscribe(observer4, lastVersion = Some(1L))
+
+            Then("The observer receives a snapshot")
+            observer4.awaitOnNext(1, timeout) shouldBe true
+            observer4.getOnNextEvents.get(0) shouldBeSnapshotFor(begin = true,
+                end = true, key1 -> value1, key2 -> value2)
+
+            cache.close()
+        }
+
         scenario("State table with multiple observers") {
             Given("A state table cache")
             var closed = false
@@ -882,6 +942,56 @@ class StateTableCacheTest extends FeatureSpec with Matchers with GivenWhenThen
 
             cache.close()
         }
+
+        scenario("Cache sends a snapshot on a version mismatch") {
+            Given("A state table cache")
+            val id = UUID.randomUUID()
+            val cache = newCache(create = true, id) { }
+
+            And("A first entry")
+            val key1 = MAC.random()
+            val value1 = UUID.randomUUID()
+            addEntry(id, key1, value1)
+
+            And("An observer with back-pressure")
+            val observer1 = new TestObserver(auto = false)
+            val subscription = cache.subscribe(observer1, lastVersion = None)
+                .asInstanceOf[StateTableCache.Subscription]
+            observer1.awaitOnNext(1, timeout) shouldBe true
+
+            And("A second observer")
+            val observer2 = new TestObserver
+            cache.subscribe(observer2, lastVersion = None)
+            observer2.awaitOnNext(1, timeout) shouldBe true
+
+            When("Adding two entries")
+            val key2 = MAC.random()
+            val value2 = UUID.randomUUID()
+            addEntry(id, key2, value2)
+            observer2.awaitOnNext(2, timeout) shouldBe true
+            val key3 = MAC.random()
+            val value3 = UUID.randomUUID()
+            addEntry(id, key3, value3)
+            observer2.awaitOnNext(3, timeout) shouldBe true
+
+            Then("The updates are queued for the first observer")
+            observer1.getOnNextEvents.size() shouldBe 1
+
+            When("The first observer receives an update for another version")
+            subscription.diff(Array.empty, lastVersion = 0L,
+                              currentVersion = 1L)
+
+            And("The observer completes its first promise")
+            observer1.promise.trySuccess(None)
+
+            Then("The observer receives a snapshot with all entries")
+            observer1.awaitOnNext(2, timeout) shouldBe true
+            observer1.getOnNextEvents.get(1) shouldBeSnapshotFor(begin = true,
+                end = true, key1 -> value1, key2 -> value2, key3 -> value3)
+            observer1.getOnNextEvents.size() shouldBe 2
+
+            cache.close()
+        }
     }
 
     feature("Cache handles connection changes") {
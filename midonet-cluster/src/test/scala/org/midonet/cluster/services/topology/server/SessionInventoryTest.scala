@@ -373,6 +373,47 @@ class SessionInventoryTest extends FeatureSpec
 
         }
 
+        scenario("watch an entity from several sessions")
+        {
+            val session1 = inv.claim(UUID.randomUUID())
+            val session2 = inv.claim(UUID.randomUUID())
+            val collector1 = new TestAwaitableObserver[Response]
+            val collector2 = new TestAwaitableObserver[Response]
+            val subs1 = session1.observable().subscribe(collector1)
+            val subs2 = session2.observable().subscribe(collector2)
+
+            val req1 = UUID.randomUUID()
+            val req2 = UUID.randomUUID()
+            val oId = UUID.randomUUID()
+
+            store.create(bridge(oId, "bridge"))
+            session1.watch(oId, classOf[Network], req1)
+            session2.watch(oId, classOf[Network], req2)
+
+            collector1.awaitOnNext(2, WAIT_TIME) shouldBe true
+            collector2.awaitOnNext(2, WAIT_TIME) shouldBe true
+
+            store.update(bridge(oId, "bridge-update"))
+
+            collector1.awaitOnNext(3, WAIT_TIME) shouldBe true
+            collector2.awaitOnNext(3, WAIT_TIME) shouldBe true
+            subs1.unsubscribe()
+            subs2.unsubscribe()
+
+            val events1 = collectionAsScalaIterable(collector1.getOnNextEvents)
+            val events2 = collectionAsScalaIterable(collector2.getOnNextEvents)
+            val update1 = events1.find(isBridge(_, oId, "bridge-update")).get
+            val update2 = events2.find(isBridge(_, oId, "bridge-update")).get
+
+            // The responses carry their own request, but share the update.
+            UUIDUtil.fromProto(update1.getReqId) shouldBe req1
+            UUIDUtil.fromProto(update2.getReqId) shouldBe req2
+            (update1.getUpdate eq update2.getUpdate) shouldBe true
+
+            session1.terminate()
+            session2.terminate()
+        }
+
         scenario("unwatch non-registered")
         {
             val sId = UUID.randomUUID()
@@ -23,6 +23,7 @@ import java.util.List;
 
 import com.sun.jna.LastErrorException;
 import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
 import com.sun.jna.Platform;
 import com.sun.jna.Pointer;
 import com.sun.jna.Structure;
@@ -74,6 +75,63 @@ public final class CLibrary {
 
     public static class UnixPathByVal extends UnixPath implements ByValue {}
 
+    public static class IoVec extends Structure {
+        public Pointer iov_base;
+        public NativeLong iov_len;
+
+        @Override
+        protected List getFieldOrder() {
+            return Arrays.asList("iov_base", "iov_len");
+        }
+    }
+
+    public static class MsgHdr extends Structure {
+        public Pointer msg_name;
+        public int msg_namelen;
+        public Pointer msg_iov;
+        public NativeLong msg_iovlen;
+        public Pointer msg_control;
+        public NativeLong msg_controllen;
+        public int msg_flags;
+
+        @Override
+        protected List getFieldOrder() {
+            return Arrays.asList("msg_name", "msg_namelen", "msg_iov",
+                                 "msg_iovlen", "msg_control", "msg_controllen",
+                                 "msg_flags");
+        }
+
+        public int flagsOffset() {
+            return fieldOffset("msg_flags");
+        }
+    }
+
+    public static class MMsgHdr extends Structure {
+        public MsgHdr msg_hdr;
+        public int msg_len;
+
+        @Override
+        protected List getFieldOrder() {
+            return Arrays.asList("msg_hdr", "msg_len");
+        }
+
+        /**
+         * Returns the offset of the message flags set by the kernel, relative
+         * to the start of the structure.
+         */
+        public int flagsOffset() {
+            return fieldOffset("msg_hdr") + msg_hdr.flagsOffset();
+        }
+
+        /**
+         * Returns the offset of the received message length, relative to the
+         * start of the structure.
+         */
+        public int lengthOffset() {
+            return fieldOffset("msg_len");
+        }
+    }
+
     public static class UnixDomainSockAddress extends Structure {
         public short sun_family;
         public UnixPathByVal sun_path;
@@ -111,6 +169,10 @@ public final class CLibrary {
     public static final int NETLINK_BROADCAST_ERROR = 4;
     public static final int NETLINK_NO_ENOBUFS = 5;
 
+    public static final int MSG_TRUNC = 0x20;
+    public static final int MSG_DONTWAIT = 0x40;
+    public static final int MSG_WAITFORONE = 0x10000;
+
     public static final int MCL_CURRENT = 1;
     public static final int MCL_FUTURE = 2;
 
@@ -178,6 +240,21 @@ public final class CLibrary {
                                     int type,
                                     int protocol) throws LastErrorException;
 
+    /**
+     * Creates a pair of connected sockets.
+     * @param domain The communication domain, which must be AF_UNIX.
+     * @param type The socket type, as for {@link #socket(int, int, int)}.
+     * @param protocol The protocol for the specified family and type.
+     * @param sv The array where the method sets the file descriptors of the
+     *           two sockets.
+     * @return Zero, if the method is successful. On error, it throws a
+     * {@code LastErrorException}.
+     */
+    public static native int socketpair(int domain,
+                                        int type,
+                                        int protocol,
+                                        int[] sv) throws LastErrorException;
+
     /**
      * Connects the socket specified by the file descriptor to the specified
      * Netlink socket address.
@@ -348,6 +425,27 @@ public final class CLibrary {
                                   int len,
                                   int flags);
 
+    /**
+     * Receives multiple messages from a socket with a single system call.
+     * @param fd The socket file descriptor.
+     * @param msgvec Pointer to an array of mmsghdr structures, where each
+     *               entry describes the buffer for one message. On return,
+     *               the kernel sets the length and the flags of every
+     *               received message.
+     * @param vlen The number of entries in the array.
+     * @param flags Operations flags, see:
+     *              http://man7.org/linux/man-pages/man2/recvmmsg.2.html
+     * @param timeout The timeout for the operation, or null to block
+     *                according to the socket and the flags.
+     * @return The number of messages received, if successful. On error, it
+     * returns -1 and errno indicates the last error.
+     */
+    public static native int recvmmsg(int fd,
+                                      Pointer msgvec,
+                                      int vlen,
+                                      int flags,
+                                      Pointer timeout);
+
     /**
      * Returns the number of bytes in a memory page.
      */
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.packets;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A read-only view over the bytes of an Ethernet frame, which decodes the
+ * packet headers on demand without allocating the {@link Ethernet} object
+ * graph. The view is a flyweight: it can be reset to view another frame with
+ * {@link #wrap(byte[], int, int)}, and it does not copy the frame data.
+ *
+ * The methods return -1 when the frame does not contain the requested header,
+ * for instance the IP protocol of an ARP frame. The frame is materialized
+ * into an {@link Ethernet} only when needed with {@link #materialize()}.
+ */
+public final class PacketView {
+
+    private static final int ETHER_TYPE_OFFSET = 12;
+
+    private byte[] data;
+    private int offset;
+    private int length;
+
+    // The offset of the L3 header relative to the frame start, or -1 if not
+    // computed.
+    private int l3Offset = -1;
+    private short etherType;
+
+    public PacketView() { }
+
+    public PacketView(byte[] data) {
+        wrap(data, 0, data.length);
+    }
+
+    /**
+     * Resets the view to the frame stored in the specified array range.
+     */
+    public PacketView wrap(byte[] data, int offset, int length) {
+        this.data = data;
+        this.offset = offset;
+        this.length = length;
+        this.l3Offset = -1;
+        return this;
+    }
+
+    public byte[] data() {
+        return data;
+    }
+
+    public int offset() {
+        return offset;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Indicates whether the frame can be deserialized as an {@link Ethernet}
+     * frame, that is whether it has a complete Ethernet header including
+     * all VLAN tags.
+     */
+    public boolean isValid() {
+        return l3Offset() >= 0;
+    }
+
+    /**
+     * Returns the Ethernet type after any VLAN tags, or -1 if the frame is
+     * malformed.
+     */
+    public int etherType() {
+        return l3Offset() >= 0 ? etherType & 0xffff : -1;
+    }
+
+    /**
+     * Indicates whether the frame has one or more VLAN tags.
+     */
+    public boolean hasVlanTags() {
+        return l3Offset() > Ethernet.MIN_HEADER_LEN;
+    }
+
+    /**
+     * Returns the IP protocol number of an IPv4 packet, or -1 if the frame
+     * is not an IPv4 packet.
+     */
+    public int ipProtocol() {
+        int l3 = ipv4Offset();
+        return l3 >= 0 ? data[offset + l3 + 9] & 0xff : -1;
+    }
+
+    /**
+     * Indicates whether an IPv4 packet is a fragment other than the first
+     * fragment, which does not include the L4 header.
+     */
+    public boolean isLaterFragment() {
+        int l3 = ipv4Offset();
+        return l3 >= 0 && (getShort(l3 + 6) & 0x1fff) != 0;
+    }
+
+    /**
+     * Returns the TCP flags of an IPv4 TCP packet, or -1 if the frame is not
+     * a TCP packet or it does not include the TCP header.
+     */
+    public int tcpFlags() {
+        int l4 = l4Offset(TCP.PROTOCOL_NUMBER);
+        return l4 >= 0 && l4 + 14 <= length ? getShort(l4 + 12) & 0x01ff : -1;
+    }
+
+    /**
+     * Indicates whether the specified TCP flag is set. Returns false if the
+     * frame is not a TCP packet.
+     */
+    public boolean hasTcpFlag(TCP.Flag flag) {
+        int flags = tcpFlags();
+        return flags >= 0 && (flags & flag.bit) != 0;
+    }
+
+    /**
+     * Deserializes the viewed frame into a new {@link Ethernet} object.
+     */
+    public Ethernet materialize() throws MalformedPacketException {
+        Ethernet eth = new Ethernet();
+        eth.deserialize(ByteBuffer.wrap(data, offset, length));
+        return eth;
+    }
+
+    private int l3Offset() {
+        if (l3Offset >= 0) {
+            return l3Offset;
+        }
+        if (length < Ethernet.MIN_HEADER_LEN) {
+            return -1;
+        }
+        int position = ETHER_TYPE_OFFSET;
+        short type = getShort(position);
+        while (type == Ethernet.VLAN_TAGGED_FRAME ||
+               type == Ethernet.PROVIDER_BRIDGING_TAG) {
+            position += Ethernet.HEADER_TPID_LEN;
+            if (position + 2 > length) {
+                return -1;
+            }
+            type = getShort(position);
+        }
+        etherType = type;
+        l3Offset = position + 2;
+        return l3Offset;
+    }
+
+    private int ipv4Offset() {
+        int l3 = l3Offset();
+        if (l3 < 0 || etherType != IPv4.ETHERTYPE ||
+            l3 + IPv4.MIN_HEADER_LEN > length) {
+            return -1;
+        }
+        return l3;
+    }
+
+    private int l4Offset(byte protocol) {
+        int l3 = ipv4Offset();
+        if (l3 < 0 || data[offset + l3 + 9] != protocol ||
+            (getShort(l3 + 6) & 0x1fff) != 0) {
+            return -1;
+        }
+        return l3 + (data[offset + l3] & 0x0f) * 4;
+    }
+
+    private short getShort(int position) {
+        return (short) (((data[offset + position] & 0xff) << 8) |
+                        (data[offset + position + 1] & 0xff));
+    }
+
+}
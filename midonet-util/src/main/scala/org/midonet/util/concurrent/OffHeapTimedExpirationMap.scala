@@ -0,0 +1,488 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.util.concurrent
+
+import java.nio.{ByteBuffer, ByteOrder}
+
+import scala.collection.mutable
+import scala.concurrent.duration.Duration
+
+import org.midonet.util.collection.Reducer
+import org.midonet.util.logging.Logger
+
+object OffHeapTimedExpirationMap {
+
+    /**
+     * Encodes and decodes keys or values of a fixed width to and from an
+     * off-heap buffer. Implementations must write at most `width` bytes,
+     * starting at the given offset, and the encoding of equal objects must
+     * be identical, because the map compares keys by their encoded bytes.
+     */
+    trait Codec[T] {
+        def width: Int
+        def encode(value: T, buf: ByteBuffer, offset: Int): Unit
+        def decode(buf: ByteBuffer, offset: Int): T
+    }
+
+    private final val SlotEmpty = 0
+    private final val SlotUsed = 1
+    private final val SlotDeleted = 2
+
+    private final val StatusOffset = 0
+    private final val RefCountOffset = 4
+    private final val ExpirationOffset = 8
+    private final val PeriodOffset = 16
+    private final val KeyOffset = 24
+
+    private final val MaxLoadFactor = 0.75
+    private final val MinCapacity = 16
+
+    private def align(width: Int): Int = (width + 7) & ~7
+
+    /**
+     * A growable FIFO queue of (slot, expiration) pairs, backed by primitive
+     * arrays. Entries are checked against the table when they are polled, so
+     * stale entries are harmless.
+     */
+    private final class ExpirationQueue {
+        private var slots = new Array[Int](MinCapacity)
+        private var expirations = new Array[Long](MinCapacity)
+        private var head = 0
+        private var count = 0
+
+        def isEmpty: Boolean = count == 0
+
+        def offer(slot: Int, expiration: Long): Unit = {
+            if (count == slots.length)
+                grow()
+            val index = (head + count) & (slots.length - 1)
+            slots(index) = slot
+            expirations(index) = expiration
+            count += 1
+        }
+
+        def peekSlot: Int = slots(head)
+
+        def peekExpiration: Long = expirations(head)
+
+        def poll(): Unit = {
+            head = (head + 1) & (slots.length - 1)
+            count -= 1
+        }
+
+        private def grow(): Unit = {
+            val newSlots = new Array[Int](slots.length * 2)
+            val newExpirations = new Array[Long](slots.length * 2)
+            var i = 0
+            while (i < count) {
+                val index = (head + i) & (slots.length - 1)
+                newSlots(i) = slots(index)
+                newExpirations(i) = expirations(index)
+                i += 1
+            }
+            slots = newSlots
+            expirations = newExpirations
+            head = 0
+        }
+    }
+}
+
+/**
+ * An implementation of the [[TimedExpirationMap]] that stores fixed-width
+ * keys and values in an open-addressed hash table allocated outside of the
+ * Java heap. Each slot of the table holds the reference count, the
+ * expiration time, the expiration period and the encoded key and value, such
+ * that a map with millions of entries only places a handful of objects on the
+ * heap. Keys and values are materialized through their [[Codec]] only when
+ * they are returned to the caller.
+ *
+ * Unlike the [[OnHeapTimedExpirationMap]], synchronization relies on the
+ * map's monitor. This is uncontended in the common case, where a map backs a
+ * flow state shard owned by a single packet worker, and where the other
+ * threads only read from it when looking up a key missing in their own shard.
+ * The obliterateIdleEntries() and fold() operations call into the reducer
+ * while holding the monitor.
+ */
+final class OffHeapTimedExpirationMap[K <: AnyRef, V >: Null]
+    (log: Logger, expirationFor: K => Duration,
+     keyCodec: OffHeapTimedExpirationMap.Codec[K],
+     valueCodec: OffHeapTimedExpirationMap.Codec[V],
+     initialCapacity: Int)
+    extends TimedExpirationMap[K, V] {
+
+    import OffHeapTimedExpirationMap._
+
+    private val keyWidth = align(keyCodec.width)
+    private val valueOffset = KeyOffset + keyWidth
+    private val slotSize = valueOffset + align(valueCodec.width)
+    private val maxCapacity = Integer.highestOneBit(Int.MaxValue / slotSize)
+
+    private var capacity = {
+        val capacity = Integer.highestOneBit(
+            Math.max(initialCapacity, MinCapacity) - 1) << 1
+        Math.min(capacity, maxCapacity)
+    }
+    private var table = allocate(capacity)
+    private var used = 0
+    private var deleted = 0
+    private var generation = 0
+
+    private val scratch = ByteBuffer.allocateDirect(keyWidth)
+                                    .order(ByteOrder.nativeOrder())
+
+    /*
+     * Track the slots that need to be deleted and the time at which they
+     * should be deleted, with one queue per expiration period such that each
+     * queue is sorted by expiration time. As for the on-heap map, the queue is
+     * just a flag to say "check this slot, it's probably expired".
+     */
+    private val expiring = new mutable.LongMap[ExpirationQueue]()
+    // The same queues in insertion order, such that expiring the idle entries
+    // iterates by index without copying the queues. Queues are only appended,
+    // or cleared together with the map when the table is rehashed.
+    private val expiringQueues = new mutable.ArrayBuffer[ExpirationQueue]()
+
+    private def logger = log.wrapper
+
+    private def allocate(capacity: Int): ByteBuffer =
+        ByteBuffer.allocateDirect(capacity * slotSize)
+                  .order(ByteOrder.nativeOrder())
+
+    /** Returns the number of entries in the map. */
+    def size: Int = synchronized { used }
+
+    /** Returns the amount of off-heap memory used by the map's table. */
+    def memoryUsage: Long = synchronized { table.capacity().toLong }
+
+    private def hash(buf: ByteBuffer, offset: Int): Int = {
+        var h = 0L
+        var i = 0
+        while (i < keyWidth) {
+            h = (h ^ buf.getLong(offset + i)) * 0x9E3779B97F4A7C15L
+            i += 8
+        }
+        h ^= h >>> 32
+        (h ^ (h >>> 16)).toInt
+    }
+
+    private def status(slot: Int): Int =
+        table.getInt(slot * slotSize + StatusOffset)
+
+    private def refCountOf(slot: Int): Int =
+        table.getInt(slot * slotSize + RefCountOffset)
+
+    private def setRefCount(slot: Int, count: Int): Unit =
+        table.putInt(slot * slotSize + RefCountOffset, count)
+
+    private def valueOf(slot: Int): V =
+        valueCodec.decode(table, slot * slotSize + valueOffset)
+
+    private def keyOf(slot: Int): K =
+        keyCodec.decode(table, slot * slotSize + KeyOffset)
+
+    private def encodeKey(key: K): Unit = {
+        var i = 0
+        while (i < keyWidth) {
+            scratch.putLong(i, 0L)
+            i += 8
+        }
+        keyCodec.encode(key, scratch, 0)
+    }
+
+    private def keyEquals(slot: Int): Boolean = {
+        val offset = slot * slotSize + KeyOffset
+        var i = 0
+        while (i < keyWidth) {
+            if (table.getLong(offset + i) != scratch.getLong(i))
+                return false
+            i += 8
+        }
+        true
+    }
+
+    /**
+     * Finds the slot of the key encoded in the scratch buffer, or returns -1
+     * if the key is not in the map.
+     */
+    private def find(): Int = {
+        val mask = capacity - 1
+        var slot = hash(scratch, 0) & mask
+        var probes = 0
+        while (probes < capacity) {
+            val s = status(slot)
+            if (s == SlotEmpty)
+                return -1
+            if (s == SlotUsed && keyEquals(slot))
+                return slot
+            slot = (slot + 1) & mask
+            probes += 1
+        }
+        -1
+    }
+
+    private def lookup(key: K): Int = {
+        encodeKey(key)
+        find()
+    }
+
+    /**
+     * Inserts the key encoded in the scratch buffer, which must not be in the
+     * map, with the given value and a reference count of one.
+     */
+    private def insert(key: K, value: V): Unit = {
+        if (used + deleted + 1 > capacity * MaxLoadFactor)
+            rehash()
+        val mask = capacity - 1
+        var slot = hash(scratch, 0) & mask
+        while (status(slot) == SlotUsed) {
+            slot = (slot + 1) & mask
+        }
+        if (status(slot) == SlotDeleted)
+            deleted -= 1
+        used += 1
+
+        val offset = slot * slotSize
+        table.putInt(offset + StatusOffset, SlotUsed)
+        table.putInt(offset + RefCountOffset, 1)
+        table.putLong(offset + ExpirationOffset, Long.MaxValue)
+        table.putLong(offset + PeriodOffset, 0L)
+        var i = 0
+        while (i < keyWidth) {
+            table.putLong(offset + KeyOffset + i, scratch.getLong(i))
+            i += 8
+        }
+        valueCodec.encode(value, table, offset + valueOffset)
+        logger.debug(log.marker, s"Incrementing reference count of $key to 1")
+    }
+
+    private def remove(slot: Int): Unit = {
+        table.putInt(slot * slotSize + StatusOffset, SlotDeleted)
+        used -= 1
+        deleted += 1
+    }
+
+    /**
+     * Rebuilds the table, growing it if it is more than half full, otherwise
+     * only purging the deleted slots. The expiration queues are rebuilt from
+     * the slots whose reference count is zero.
+     */
+    private def rehash(): Unit = {
+        val newCapacity =
+            if (used + 1 > capacity / 2 && capacity < maxCapacity) capacity * 2
+            else capacity
+        if (used + 1 > newCapacity * MaxLoadFactor)
+            throw new IllegalStateException(
+                s"Off-heap map exceeded its maximum capacity of $maxCapacity")
+        val newTable = allocate(newCapacity)
+        val mask = newCapacity - 1
+        val idle = new mutable.LongMap[mutable.ArrayBuffer[(Long, Int)]]()
+
+        var slot = 0
+        while (slot < capacity) {
+            if (status(slot) == SlotUsed) {
+                val offset = slot * slotSize
+                var newSlot = hash(table, offset + KeyOffset) & mask
+                while (newTable.getInt(newSlot * slotSize + StatusOffset) ==
+                       SlotUsed) {
+                    newSlot = (newSlot + 1) & mask
+                }
+                val newOffset = newSlot * slotSize
+                var i = 0
+                while (i < slotSize) {
+                    newTable.putLong(newOffset + i, table.getLong(offset + i))
+                    i += 8
+                }
+                if (refCountOf(slot) == 0) {
+                    val period = table.getLong(offset + PeriodOffset)
+                    idle.getOrElseUpdate(period, new mutable.ArrayBuffer) +=
+                        ((table.getLong(offset + ExpirationOffset), newSlot))
+                }
+            }
+            slot += 1
+        }
+
+        logger.debug(log.marker, s"Rehashed off-heap map from $capacity to " +
+                                 s"$newCapacity slots with $used entries")
+        table = newTable
+        capacity = newCapacity
+        deleted = 0
+        generation += 1
+
+        expiring.clear()
+        expiringQueues.clear()
+        for ((period, entries) <- idle) {
+            val queue = new ExpirationQueue
+            for ((expiration, s) <- entries.sortBy(_._1)) {
+                queue.offer(s, expiration)
+            }
+            expiring.put(period, queue)
+            expiringQueues += queue
+        }
+    }
+
+    override def putAndRef(key: K, value: V): V = synchronized {
+        val slot = lookup(key)
+        if (slot >= 0) {
+            val oldValue = valueOf(slot)
+            incrementRefCount(key, slot)
+            valueCodec.encode(value, table, slot * slotSize + valueOffset)
+            oldValue
+        } else {
+            insert(key, value)
+            null
+        }
+    }
+
+    override def putIfAbsentAndRef(key: K, value: V): Int = synchronized {
+        val slot = lookup(key)
+        if (slot >= 0) {
+            incrementRefCount(key, slot)
+        } else {
+            insert(key, value)
+            1
+        }
+    }
+
+    override def get(key: K): V = synchronized {
+        val slot = lookup(key)
+        if (slot >= 0) valueOf(slot) else null
+    }
+
+    override def getRefCount(key: K): Int = refCount(key)
+
+    override def fold[U](seed: U, func: Reducer[K, V, U]): U = synchronized {
+        var acc = seed
+        var slot = 0
+        while (slot < capacity) {
+            if (status(slot) == SlotUsed)
+                acc = func.apply(acc, keyOf(slot), valueOf(slot))
+            slot += 1
+        }
+        acc
+    }
+
+    override def ref(key: K): V = synchronized {
+        val slot = lookup(key)
+        if (slot >= 0) {
+            incrementRefCount(key, slot)
+            valueOf(slot)
+        } else {
+            null
+        }
+    }
+
+    override def refAndGetCount(key: K): Int = synchronized {
+        val slot = lookup(key)
+        if (slot >= 0) incrementRefCount(key, slot) else 0
+    }
+
+    override def refCount(key: K): Int = synchronized {
+        val slot = lookup(key)
+        if (slot >= 0) refCountOf(slot) else 0
+    }
+
+    private def incrementRefCount(key: K, slot: Int): Int = {
+        val newCount = refCountOf(slot) + 1
+        setRefCount(slot, newCount)
+        logger.debug(log.marker, s"Incrementing ref count of $key to $newCount")
+        if (newCount == 1)
+            logger.debug(log.marker, s"Unscheduling removal of $key")
+        newCount
+    }
+
+    override def unref(key: K, currentTimeMillis: Long): V = synchronized {
+        val slot = lookup(key)
+        if (slot < 0) {
+            null
+        } else {
+            val count = refCountOf(slot)
+            if (count <= 0) {
+                logger.error(log.marker, s"Decrement a ref count past 0 for $key")
+            } else {
+                setRefCount(slot, count - 1)
+                logger.debug(log.marker,
+                             s"Decrementing reference count of $key to ${count - 1}")
+                if (count == 1) {
+                    logger.debug(log.marker, s"Scheduling removal of $key")
+                    val expirationPeriod = expirationFor(key).toMillis
+                    val expiration = currentTimeMillis + expirationPeriod
+                    val offset = slot * slotSize
+                    table.putLong(offset + ExpirationOffset, expiration)
+                    table.putLong(offset + PeriodOffset, expirationPeriod)
+                    getExpirationQueueFor(expirationPeriod)
+                        .offer(slot, expiration)
+                }
+            }
+            valueOf(slot)
+        }
+    }
+
+    private def getExpirationQueueFor(expirationPeriod: Long) = {
+        var expirationQ = expiring.getOrNull(expirationPeriod)
+        if (expirationQ eq null) {
+            expirationQ = new ExpirationQueue
+            expiring.put(expirationPeriod, expirationQ)
+            expiringQueues += expirationQ
+        }
+        expirationQ
+    }
+
+    private val identityReducer = new Reducer[K, V, Unit] {
+        override def apply(acc: Unit, key: K, value: V): Unit = ()
+    }
+
+    override def obliterateIdleEntries[U](currentTimeMillis: Long): Unit =
+        obliterateIdleEntries(currentTimeMillis, (), identityReducer)
+
+    /**
+     * Cleans up entries that have had their reference count at 0 for longer
+     * than their expiration period. The entry is removed from the table before
+     * calling into the reducer. If the reducer causes the table to be rebuilt,
+     * the remaining entries are checked on the next call.
+     */
+    override def obliterateIdleEntries[U](currentTimeMillis: Long, seed: U,
+                                          reducer: Reducer[K, V, U]): U =
+        synchronized {
+            var acc = seed
+            // A queue added by the reducer is checked on the next call.
+            val count = expiringQueues.length
+            val startGeneration = generation
+            var i = 0
+            while (i < count && generation == startGeneration) {
+                val expirationQ = expiringQueues(i)
+                while (!expirationQ.isEmpty &&
+                       expirationQ.peekExpiration <= currentTimeMillis &&
+                       generation == startGeneration) {
+                    val slot = expirationQ.peekSlot
+                    expirationQ.poll()
+                    val offset = slot * slotSize
+                    if (status(slot) == SlotUsed &&
+                        refCountOf(slot) == 0 &&
+                        table.getLong(offset + ExpirationOffset) <=
+                            currentTimeMillis) {
+                        val key = keyOf(slot)
+                        val value = valueOf(slot)
+                        logger.debug(log.marker, s"Forgetting entry $key")
+                        remove(slot)
+                        acc = reducer(acc, key, value)
+                    }
+                }
+                i += 1
+            }
+            acc
+        }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.packets;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class TestPacketView {
+
+    private static Ethernet tcpPacket(boolean syn, Short... vlanIds) {
+        TCP tcp = new TCP();
+        tcp.setSourcePort(1234);
+        tcp.setDestinationPort(80);
+        tcp.setFlag(TCP.Flag.Syn, syn);
+        tcp.setFlag(TCP.Flag.Ack, !syn);
+        tcp.setPayload(new Data(new byte[] { 1, 2, 3, 4 }));
+        IPv4 ip = new IPv4();
+        ip.setSourceAddress(0x0a000001);
+        ip.setDestinationAddress(0x0a000002);
+        ip.setProtocol(TCP.PROTOCOL_NUMBER);
+        ip.setPayload(tcp);
+        Ethernet eth = new Ethernet();
+        eth.setSourceMACAddress(MAC.fromString("02:00:00:00:00:01"));
+        eth.setDestinationMACAddress(MAC.fromString("02:00:00:00:00:02"));
+        eth.setEtherType(IPv4.ETHERTYPE);
+        eth.setVlanIDs(Arrays.asList(vlanIds));
+        eth.setPayload(ip);
+        return eth;
+    }
+
+    @Test
+    public void testTcpHeaders() throws Exception {
+        byte[] frame = tcpPacket(true).serialize();
+        PacketView view = new PacketView(frame);
+
+        assertThat(view.isValid(), is(true));
+        assertThat(view.hasVlanTags(), is(false));
+        assertThat(view.etherType(), is((int) IPv4.ETHERTYPE));
+        assertThat(view.ipProtocol(), is((int) TCP.PROTOCOL_NUMBER));
+        assertThat(view.isLaterFragment(), is(false));
+        assertThat(view.hasTcpFlag(TCP.Flag.Syn), is(true));
+        assertThat(view.hasTcpFlag(TCP.Flag.Ack), is(false));
+        assertThat(view.materialize().serialize(), is(frame));
+    }
+
+    @Test
+    public void testVlanTags() throws Exception {
+        byte[] frame = tcpPacket(false, (short) 10, (short) 20).serialize();
+        PacketView view = new PacketView(frame);
+
+        assertThat(view.isValid(), is(true));
+        assertThat(view.hasVlanTags(), is(true));
+        assertThat(view.etherType(), is((int) IPv4.ETHERTYPE));
+        assertThat(view.hasTcpFlag(TCP.Flag.Syn), is(false));
+        assertThat(view.hasTcpFlag(TCP.Flag.Ack), is(true));
+        assertThat(view.materialize().serialize(), is(frame));
+    }
+
+    @Test
+    public void testArp() throws Exception {
+        Ethernet eth = ARP.makeArpReply(MAC.fromString("02:00:00:00:00:01"),
+                                        MAC.fromString("02:00:00:00:00:02"),
+                                        new byte[] { 10, 0, 0, 1 },
+                                        new byte[] { 10, 0, 0, 2 });
+        PacketView view = new PacketView(eth.serialize());
+
+        assertThat(view.etherType(), is((int) ARP.ETHERTYPE));
+        assertThat(view.ipProtocol(), is(-1));
+        assertThat(view.tcpFlags(), is(-1));
+    }
+
+    @Test
+    public void testWrapRange() throws Exception {
+        byte[] frame = tcpPacket(true).serialize();
+        byte[] data = new byte[frame.length + 8];
+        System.arraycopy(frame, 0, data, 4, frame.length);
+        PacketView view = new PacketView().wrap(data, 4, frame.length);
+
+        assertThat(view.ipProtocol(), is((int) TCP.PROTOCOL_NUMBER));
+        assertThat(view.hasTcpFlag(TCP.Flag.Syn), is(true));
+        assertThat(view.materialize().serialize(), is(frame));
+    }
+
+    @Test
+    public void testMalformed() {
+        PacketView view = new PacketView(new byte[10]);
+        assertThat(view.isValid(), is(false));
+        assertThat(view.etherType(), is(-1));
+
+        byte[] truncatedVlan = new byte[15];
+        truncatedVlan[12] = (byte) 0x81;
+        view.wrap(truncatedVlan, 0, truncatedVlan.length);
+        assertThat(view.isValid(), is(false));
+    }
+}
@@ -16,6 +16,7 @@
 
 package org.midonet.util.concurrent
 
+import java.nio.ByteBuffer
 import java.util.concurrent.{CountDownLatch, ThreadLocalRandom}
 
 import scala.concurrent.duration._
@@ -220,3 +221,31 @@ class OnHeapTimedExpirationMapTest extends TimedExpirationMapTest {
         Logger(NOPLogger.NOP_LOGGER), expirationFor)
 }
 
+
+class OffHeapTimedExpirationMapTest extends TimedExpirationMapTest {
+
+    private val codec = new OffHeapTimedExpirationMap.Codec[String] {
+        override val width = 16
+        override def encode(value: String, buf: ByteBuffer, offset: Int): Unit = {
+            buf.put(offset, value.length.toByte)
+            var i = 0
+            while (i < value.length) {
+                buf.put(offset + i + 1, value.charAt(i).toByte)
+                i += 1
+            }
+        }
+        override def decode(buf: ByteBuffer, offset: Int): String = {
+            val chars = new Array[Char](buf.get(offset))
+            var i = 0
+            while (i < chars.length) {
+                chars(i) = buf.get(offset + i + 1).toChar
+                i += 1
+            }
+            new String(chars)
+        }
+    }
+
+    override val map = new OffHeapTimedExpirationMap[String, String](
+        Logger(NOPLogger.NOP_LOGGER), expirationFor, codec, codec,
+        initialCapacity = 16)
+}
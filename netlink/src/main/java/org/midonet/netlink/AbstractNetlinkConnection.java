@@ -66,6 +66,10 @@ public abstract class AbstractNetlinkConnection {
     private ByteBuffer reply =
         BytesUtil.instance.allocateDirect(NETLINK_READ_BUFSIZE);
 
+    // When set, the non-blocking reads receive multiple datagrams with a
+    // single system call.
+    private ReceiveBatch receiveBatch = null;
+
     private final BufferPool requestPool;
     private final NetlinkMetrics metrics;
     private final NetlinkChannel channel;
@@ -123,6 +127,15 @@ public abstract class AbstractNetlinkConnection {
         this.dispatcher = dispatcher;
     }
 
+    /**
+     * Sets the batch into which the read events receive the datagrams of
+     * this connection with a single recvmmsg(2) system call. The batch may
+     * be shared with other connections read from the same thread.
+     */
+    public void setReceiveBatch(ReceiveBatch batch) {
+        this.receiveBatch = batch;
+    }
+
     public void bypassSendQueue(final boolean bypass) {
         this.bypassSendQueue = bypass;
     }
@@ -291,7 +304,7 @@ public abstract class AbstractNetlinkConnection {
 
         try {
             while (!ongoingTransaction.isEmpty()) {
-                if (processReadFromChannel(Bucket.BOTTOMLESS) <= 0)
+                if (processReadFromChannel(reply, Bucket.BOTTOMLESS) <= 0)
                     break;
             }
         } catch (IOException e) {
@@ -354,10 +367,16 @@ public abstract class AbstractNetlinkConnection {
     }
 
     public void handleReadEvent(final Bucket bucket) throws IOException {
+        metrics.readWakeups().mark();
         try {
             bucket.prepare();
-            for (int i = 0; i < maxBatchIoOps; i++) {
-                final int ret = processReadFromChannel(bucket);
+            // With a receive batch, the limit applies to the datagrams rather
+            // than the system calls.
+            final ReceiveBatch batch = receiveBatch;
+            for (int i = 0; i < maxBatchIoOps; ) {
+                final int ret = batch != null
+                                ? processBatchFromChannel(batch, bucket)
+                                : processReadFromChannel(reply, bucket);
                 if (ret <= 0) {
                     if (ret < 0) {
                         log.info("NETLINK read() error: {}",
@@ -365,6 +384,7 @@ public abstract class AbstractNetlinkConnection {
                     }
                     break;
                 }
+                i += batch != null ? ret : 1;
             }
         } catch (IOException e) {
             log.error("NETLINK read() exception: {}", e);
@@ -378,13 +398,43 @@ public abstract class AbstractNetlinkConnection {
 
     protected void endBatch() {}
 
-    private synchronized int processReadFromChannel(final Bucket bucket)
+    private synchronized int processReadFromChannel(final ByteBuffer reply,
+                                                    final Bucket bucket)
             throws IOException {
 
         reply.clear();
         int nbytes = channel.read(reply);
 
         reply.flip(); // sets the effective final limit for any number of msgs
+        int upcalls = processMessages(reply, bucket);
+        if (nbytes > 0) {
+            metrics.upcallsPerRead().update(upcalls);
+        }
+        return nbytes;
+    }
+
+    /* Reads the available datagrams into the receive batch with a single
+     * system call and processes their messages. Returns the number of
+     * datagrams read. */
+    private synchronized int processBatchFromChannel(final ReceiveBatch batch,
+                                                     final Bucket bucket)
+            throws IOException {
+
+        int count = channel.read(batch);
+        int upcalls = 0;
+        for (int i = 0; i < count; i++) {
+            upcalls += processMessages(batch.get(i), bucket);
+        }
+        if (count > 0) {
+            metrics.upcallsPerRead().update(upcalls);
+        }
+        return count;
+    }
+
+    /* Processes the netlink messages in the buffer, between its position and
+     * its limit, and returns the number of notifications handled. */
+    private int processMessages(final ByteBuffer reply, final Bucket bucket) {
+        int upcalls = 0;
         reply.mark();
         int finalLimit = reply.limit();
 
@@ -441,6 +491,7 @@ public abstract class AbstractNetlinkConnection {
                     metrics.netlinkNotifications().mark();
                     if (seq == 0) {
                         // if the seq number is zero we are handling a PacketIn.
+                        upcalls++;
                         if (bucket.consumeToken()) {
                             try {
                                 if (!handleNotification(type, cmd, seq,
@@ -464,7 +515,7 @@ public abstract class AbstractNetlinkConnection {
             reply.limit(finalLimit);
             reply.position(nextPosition);
         }
-        return nbytes;
+        return upcalls;
     }
 
     private void processSuccessfulRequest(NetlinkRequest request) {
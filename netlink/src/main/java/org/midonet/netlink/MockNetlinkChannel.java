@@ -32,6 +32,8 @@ public class MockNetlinkChannel extends NetlinkChannel {
     public Queue<ByteBuffer> written = new LinkedList<>();
     public AtomicInteger packetsWritten = new AtomicInteger();
     public Queue<ByteBuffer> toRead = new LinkedList<>();
+    /** The number of subsequent writes that fail with an IOException. */
+    public int failingWrites = 0;
 
     public Netlink.Address address;
 
@@ -80,6 +82,10 @@ public class MockNetlinkChannel extends NetlinkChannel {
 
     @Override
     public int write(ByteBuffer src) throws IOException {
+        if (failingWrites > 0) {
+            failingWrites--;
+            throw new IOException("Mock write failure");
+        }
         final int size = src.remaining();
         final ByteBuffer clone = src.isDirect()
                                ? ByteBuffer.allocateDirect(size)
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.midonet.netlink;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import sun.nio.ch.IOStatus;
+
+import org.midonet.ErrorCode;
+import org.midonet.jna.CLibrary;
+
+/**
+ * A batch of receive buffers, used to read several datagrams from a
+ * {@link UnixChannel} with a single recvmmsg(2) system call.
+ *
+ * The buffers are direct buffers taken from a {@link BufferPool} when the
+ * batch is created, and they are kept until the batch is closed, such that
+ * the native message headers pointing to them are written only once. A batch
+ * is not thread-safe, but it can be shared by all the channels read from the
+ * same thread, because the received datagrams are only valid until the next
+ * read.
+ */
+public final class ReceiveBatch {
+
+    private static final Logger log =
+        LoggerFactory.getLogger("org.midonet.netlink.receive-batch");
+
+    /** The size of the receive buffers, which is the same as the size of the
+     *  read buffer of a netlink connection. */
+    public static final int BUFFER_SIZE = 0x10000;
+
+    private final BufferPool pool;
+    private final ByteBuffer[] buffers;
+    private final CLibrary.MMsgHdr[] headers;
+    private final CLibrary.IoVec[] iovecs;
+    private final Pointer headersPointer;
+    private final int headerSize;
+    private final int lengthOffset;
+    private final int flagsOffset;
+
+    private int count = 0;
+
+    /**
+     * Creates a batch of the specified size, taking its buffers from the
+     * given pool. The pool must be able to provide the direct buffers for the
+     * whole batch.
+     */
+    public ReceiveBatch(BufferPool pool, int size) {
+        if (size <= 0)
+            throw new IllegalArgumentException("Invalid batch size " + size);
+
+        this.pool = pool;
+        this.buffers = new ByteBuffer[size];
+        this.headers = (CLibrary.MMsgHdr[]) new CLibrary.MMsgHdr().toArray(size);
+        this.iovecs = (CLibrary.IoVec[]) new CLibrary.IoVec().toArray(size);
+
+        for (int i = 0; i < size; i++) {
+            ByteBuffer buffer = pool.take();
+            if (!buffer.isDirect()) {
+                for (int j = 0; j < i; j++)
+                    pool.release(buffers[j]);
+                throw new IllegalArgumentException(
+                    "The buffer pool cannot provide " + size +
+                    " direct buffers");
+            }
+            buffers[i] = buffer;
+
+            iovecs[i].iov_base = Native.getDirectBufferPointer(buffer);
+            iovecs[i].iov_len = new NativeLong(buffer.capacity());
+            iovecs[i].write();
+
+            headers[i].msg_hdr.msg_iov = iovecs[i].getPointer();
+            headers[i].msg_hdr.msg_iovlen = new NativeLong(1);
+            headers[i].write();
+        }
+
+        this.headersPointer = headers[0].getPointer();
+        this.headerSize = headers[0].size();
+        this.lengthOffset = headers[0].lengthOffset();
+        this.flagsOffset = headers[0].flagsOffset();
+    }
+
+    /**
+     * Creates a batch of the specified size with a dedicated pool of
+     * {@link #BUFFER_SIZE} buffers.
+     */
+    public static ReceiveBatch allocate(int size) {
+        return new ReceiveBatch(new BufferPool(size, size, BUFFER_SIZE), size);
+    }
+
+    /** Returns the maximum number of datagrams read in one system call. */
+    public int capacity() {
+        return buffers.length;
+    }
+
+    /** Returns the number of datagrams received by the last read. */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the buffer with the datagram at the specified index, positioned
+     * at the start of the datagram and limited to its length.
+     */
+    public ByteBuffer get(int index) {
+        return buffers[index];
+    }
+
+    /** Returns the buffers of the batch to the pool. */
+    public void close() {
+        for (int i = 0; i < buffers.length; i++) {
+            pool.release(buffers[i]);
+        }
+        count = 0;
+    }
+
+    /**
+     * Receives the available datagrams from the specified socket, without
+     * blocking once the first datagram is received. Returns the number of
+     * datagrams, or an {@link IOStatus} code if the call did not complete.
+     */
+    int receive(int fd) throws IOException {
+        count = 0;
+        int n = CLibrary.recvmmsg(fd, headersPointer, buffers.length,
+                                  CLibrary.MSG_WAITFORONE, null);
+        if (n < 0) {
+            int errno = Native.getLastError();
+            if (errno == ErrorCode.EAGAIN.ordinal())
+                return IOStatus.UNAVAILABLE;
+            if (errno == ErrorCode.EINTR.ordinal())
+                return IOStatus.INTERRUPTED;
+            throw new IOException(CLibrary.strerror(errno));
+        }
+
+        for (int i = 0; i < n; i++) {
+            long offset = (long) i * headerSize;
+            int length = headersPointer.getInt(offset + lengthOffset);
+            int flags = headersPointer.getInt(offset + flagsOffset);
+            buffers[i].clear();
+            if ((flags & CLibrary.MSG_TRUNC) != 0) {
+                // A truncated datagram is left empty, such that its partial
+                // messages are never parsed.
+                log.warn("Dropping truncated datagram of {} bytes", length);
+                buffers[i].limit(0);
+            } else {
+                buffers[i].limit(length);
+            }
+        }
+        count = n;
+        return n;
+    }
+
+    /** Returns the total number of bytes received by the last read. */
+    long bytes() {
+        long bytes = 0;
+        for (int i = 0; i < count; i++) {
+            bytes += buffers[i].limit();
+        }
+        return bytes;
+    }
+}
@@ -221,6 +221,32 @@ public abstract class UnixChannel<Address> extends AbstractSelectableChannel
         }
     }
 
+    /**
+     * Reads the available datagrams into the specified batch with a single
+     * recvmmsg(2) system call, and returns the number of datagrams read.
+     */
+    public int read(ReceiveBatch batch) throws IOException {
+        if (batch == null)
+            throw new NullPointerException();
+
+        synchronized (recvLock) {
+            ensureConnected();
+            int n = 0;
+            try {
+                if (!prepareRead())
+                    return n;
+                do {
+                    n = batch.receive(fdVal);
+                } while ((n == IOStatus.INTERRUPTED) && isOpen());
+                if (n > 0)
+                    rxBytes += batch.bytes();
+                return IOStatus.normalize(n);
+            } finally {
+                finishRead(n);
+            }
+        }
+    }
+
     private boolean prepareWrite() {
         begin();
         if (isOpen()) {
@@ -17,6 +17,7 @@ package org.midonet.odp;
 
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.midonet.netlink.AttributeHandler;
@@ -24,6 +25,10 @@ import org.midonet.netlink.NetlinkMessage;
 import org.midonet.netlink.NetlinkSerializable;
 import org.midonet.netlink.Reader;
 import org.midonet.odp.flows.*;
+import org.midonet.packets.IPFragmentType;
+import org.midonet.packets.IPv4Addr;
+import org.midonet.packets.IPv6Addr;
+import org.midonet.packets.MAC;
 
 import static org.midonet.odp.OpenVSwitch.FlowKey.Attr.*;
 
@@ -348,6 +353,125 @@ public class FlowMask implements NetlinkSerializable, AttributeHandler {
         }
     }
 
+    /**
+     * Returns a copy of the specified FlowMatch where the fields wildcarded
+     * by this mask are set to zero, which is the match the kernel returns
+     * for a megaflow when dumping the flows of the datapath. The fields only
+     * known to MidoNet are not used in the copy, and its FlowKeys are not
+     * masked, such that the copy is only suitable for comparisons.
+     */
+    public FlowMatch applyTo(FlowMatch fmatch) {
+        FlowMatch masked = fmatch.clone();
+
+        FlowKeyTunnel tunnel = key(Tunnel);
+        if (tunnel.tun_id == 0)
+            masked.setTunnelKey(0L);
+        if (tunnel.ipv4_src == 0)
+            masked.setTunnelSrc(0);
+        if (tunnel.ipv4_dst == 0)
+            masked.setTunnelDst(0);
+        if (tunnel.ipv4_tos == 0)
+            masked.setTunnelTOS((byte) 0);
+        if (tunnel.ipv4_ttl == 0)
+            masked.setTunnelTTL((byte) 0);
+
+        FlowKeyEthernet ethernet = key(Ethernet);
+        if (ethernet.eth_src[0] == 0)
+            masked.setEthSrc(MAC.ALL_ZEROS);
+        if (ethernet.eth_dst[0] == 0)
+            masked.setEthDst(MAC.ALL_ZEROS);
+        if (this.<FlowKeyVLAN>key(VLan).vlan == 0)
+            Collections.fill(masked.getVlanIds(), (short) 0);
+        if (this.<FlowKeyEtherType>key(Ethertype).etherType == 0)
+            masked.setEtherType((short) 0);
+
+        short etherType = masked.getEtherType();
+        if (etherType == org.midonet.packets.IPv4.ETHERTYPE) {
+            FlowKeyIPv4 ipv4 = key(IPv4);
+            if (ipv4.ipv4_src == 0)
+                masked.setNetworkSrc(IPv4Addr.fromInt(0));
+            if (ipv4.ipv4_dst == 0)
+                masked.setNetworkDst(IPv4Addr.fromInt(0));
+            if (ipv4.ipv4_proto == 0)
+                masked.setNetworkProto((byte) 0);
+            if (ipv4.ipv4_tos == 0)
+                masked.setNetworkTOS((byte) 0);
+            if (ipv4.ipv4_ttl == 0)
+                masked.setNetworkTTL((byte) 0);
+            if (ipv4.ipv4_frag == 0)
+                masked.setIpFragmentType(IPFragmentType.None);
+        } else if (etherType == org.midonet.packets.IPv6.ETHERTYPE) {
+            FlowKeyIPv6 ipv6 = key(IPv6);
+            if (ipv6.ipv6_src[0] == 0)
+                masked.setNetworkSrc(IPv6Addr.fromInts(new int[4]));
+            if (ipv6.ipv6_dst[0] == 0)
+                masked.setNetworkDst(IPv6Addr.fromInts(new int[4]));
+            if (ipv6.ipv6_proto == 0)
+                masked.setNetworkProto((byte) 0);
+            if (ipv6.ipv6_tclass == 0)
+                masked.setNetworkTOS((byte) 0);
+            if (ipv6.ipv6_hlimit == 0)
+                masked.setNetworkTTL((byte) 0);
+            if (ipv6.ipv6_frag == 0)
+                masked.setIpFragmentType(IPFragmentType.None);
+        } else if (etherType == org.midonet.packets.ARP.ETHERTYPE) {
+            FlowKeyARP arp = key(ARP);
+            if (arp.arp_sip == 0)
+                masked.setNetworkSrc(IPv4Addr.fromInt(0));
+            if (arp.arp_tip == 0)
+                masked.setNetworkDst(IPv4Addr.fromInt(0));
+            if (arp.arp_op == 0)
+                masked.setNetworkProto((byte) 0);
+        } else {
+            // The kernel omits the network key when the EtherType is
+            // wildcarded.
+            masked.fieldUnused(FlowMatch.Field.NetworkSrc);
+            masked.fieldUnused(FlowMatch.Field.NetworkDst);
+            masked.fieldUnused(FlowMatch.Field.NetworkProto);
+            masked.fieldUnused(FlowMatch.Field.NetworkTOS);
+            masked.fieldUnused(FlowMatch.Field.NetworkTTL);
+            masked.fieldUnused(FlowMatch.Field.FragmentType);
+        }
+
+        byte proto = masked.getNetworkProto();
+        if (proto == org.midonet.packets.TCP.PROTOCOL_NUMBER) {
+            FlowKeyTCP tcp = key(TCP);
+            if (tcp.tcp_src == 0)
+                masked.setSrcPort(0);
+            if (tcp.tcp_dst == 0)
+                masked.setDstPort(0);
+        } else if (proto == org.midonet.packets.UDP.PROTOCOL_NUMBER) {
+            FlowKeyUDP udp = key(UDP);
+            if (udp.udp_src == 0)
+                masked.setSrcPort(0);
+            if (udp.udp_dst == 0)
+                masked.setDstPort(0);
+        } else if (proto == org.midonet.packets.ICMP.PROTOCOL_NUMBER) {
+            FlowKeyICMP icmp = key(ICMP);
+            if (icmp.icmp_type == 0)
+                masked.setSrcPort(0);
+            if (icmp.icmp_code == 0)
+                masked.setDstPort(0);
+        } else {
+            // Likewise for the transport key when the protocol is
+            // wildcarded.
+            masked.fieldUnused(FlowMatch.Field.SrcPort);
+            masked.fieldUnused(FlowMatch.Field.DstPort);
+        }
+
+        // Setting a field uses it, so only keep the fields used by the
+        // original match, except for the userspace fields.
+        long usedFields = fmatch.getUsedFields();
+        for (FlowMatch.Field field : FlowMatch.Field.values()) {
+            if ((usedFields & (1L << field.ordinal())) == 0)
+                masked.fieldUnused(field);
+        }
+        masked.fieldUnused(FlowMatch.Field.IcmpId);
+        masked.fieldUnused(FlowMatch.Field.IcmpData);
+        masked.fieldUnused(FlowMatch.Field.UserspaceMark);
+        return masked;
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder("FlowMask[");
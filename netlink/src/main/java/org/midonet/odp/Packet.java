@@ -21,12 +21,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.midonet.packets.Ethernet;
+import org.midonet.packets.MalformedPacketException;
+import org.midonet.packets.PacketView;
 
 /**
  * An abstraction over the Ovs kernel datapath Packet entity. Contains an
  * {@link FlowMatch} object and a <code>byte[] data</code> member when triggered
  * via a kernel notification.
  *
+ * A packet received from the kernel keeps the frame bytes, and it only
+ * deserializes them into an {@link Ethernet} object when first requested,
+ * since most packets are simulated using only their flow match. Until then,
+ * the headers can be read without allocations through the packet view, and
+ * the packet is executed with the original bytes.
+ *
  * @see FlowMatch
  */
 public class Packet {
@@ -42,6 +50,8 @@ public class Packet {
     private Long userData;
     private Reason reason;
     private Ethernet eth;
+    private byte[] data;
+    private PacketView view;
     public final int packetLen;
 
     // user field used by midolman packet pipeline to track time statistics,
@@ -58,16 +68,66 @@ public class Packet {
         this(eth, match, (eth != null) ? eth.length() : 0);
     }
 
+    /**
+     * Creates a packet for the specified frame data, which is deserialized
+     * lazily. The packet takes ownership of the data array.
+     */
+    public Packet(byte[] data, FlowMatch match) {
+        this.data = data;
+        this.match = match;
+        this.packetLen = data.length;
+    }
+
+    /**
+     * Returns the Ethernet frame of this packet, deserializing the frame
+     * data on first use.
+     */
     public Ethernet getEthernet() {
+        if (eth == null && data != null) {
+            try {
+                eth = view().materialize();
+            } catch (MalformedPacketException e) {
+                log.warn("Failed to deserialize packet", e);
+                data = null;
+            }
+        }
         return eth;
     }
 
     public void setEthernet(Ethernet eth) {
         this.eth = eth;
+        this.data = null;
+        this.view = null;
+    }
+
+    /**
+     * Indicates whether the Ethernet frame has been deserialized, in which
+     * case it may have been modified.
+     */
+    public boolean isMaterialized() {
+        return eth != null || data == null;
+    }
+
+    /**
+     * Returns a view over the original frame data of a packet that has not
+     * been deserialized, or null otherwise.
+     */
+    public PacketView view() {
+        if (eth != null || data == null) {
+            return null;
+        }
+        if (view == null) {
+            view = new PacketView(data);
+        }
+        return view;
     }
 
+    /**
+     * Returns the frame data: the original data if the frame has not been
+     * deserialized, or the serialized frame otherwise.
+     */
     public byte[] getData() {
-        return eth.serialize();
+        return eth == null && data != null ? data : getEthernet().serialize();
     }
 
     public FlowMatch getMatch() {
@@ -99,7 +159,7 @@ public class Packet {
         @SuppressWarnings("unchecked")
         Packet that = (Packet) o;
 
-        return Objects.equals(this.eth, that.eth)
+        return Objects.equals(this.getEthernet(), that.getEthernet())
             && Objects.equals(this.match, that.match)
             && Objects.equals(this.userData, that.userData)
             && (this.reason == that.reason);
@@ -107,7 +167,7 @@ public class Packet {
 
     @Override
     public int hashCode() {
-        int result = Objects.hashCode(eth);
+        int result = Objects.hashCode(getEthernet());
         result = 31 * result + Objects.hashCode(match);
         result = 31 * result + Objects.hashCode(userData);
         result = 31 * result + Objects.hashCode(reason);
@@ -117,7 +177,8 @@ public class Packet {
     @Override
     public String toString() {
         return "Packet{" +
-            "data=" + eth +
+            "data=" + (eth == null && data != null
+                           ? "[" + data.length + " bytes]" : eth) +
             ", match=" + match +
             ", userData=" + userData +
             ", reason=" + reason +
@@ -335,6 +335,25 @@ public class FlowKeys {
         return keys;
     }
 
+    /**
+     * Indicates whether the keys include ICMP keys, including in the
+     * encapsulated keys, which need the userspace fields added by
+     * {@link #addUserspaceKeys(Ethernet, List)}.
+     */
+    public static boolean hasIcmpKeys(List<FlowKey> keys) {
+        for (int i = 0; i < keys.size(); ++i) {
+            FlowKey key = keys.get(i);
+            if (key instanceof FlowKeyICMP) {
+                return true;
+            }
+            if (key instanceof FlowKeyEncap &&
+                hasIcmpKeys(((FlowKeyEncap) key).keys)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public static void addUserspaceKeys(Ethernet ethPkt, List<FlowKey> keys) {
         FlowKey icmpUserSpace = null;
         if (ethPkt.getPayload() != null &&
@@ -16,7 +16,6 @@
 package org.midonet.odp.protos;
 
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
@@ -48,6 +47,8 @@ import org.midonet.odp.flows.FlowAction;
 import org.midonet.odp.flows.FlowKey;
 import org.midonet.odp.flows.FlowKeys;
 import org.midonet.packets.Ethernet;
+import org.midonet.packets.MalformedPacketException;
+import org.midonet.packets.PacketView;
 import org.midonet.util.BatchCollector;
 
 /**
@@ -73,42 +74,56 @@ public class OvsDatapathConnectionImpl extends OvsDatapathConnection {
         packetFamily = ovsNetlinkFamilies.packetFamily();
     }
 
+    /**
+     * Builds the packets received in upcalls. The frame data is copied out of
+     * the receive buffer, which is reused for the next upcall, but it is only
+     * deserialized when the flow keys need fields that the kernel does not
+     * provide, such as the ICMP identifier. Otherwise, the packet is
+     * deserialized lazily, if and when the simulation needs it.
+     */
     static class PacketBuilder implements AttributeHandler {
         private ArrayList<FlowKey> keys = new ArrayList<>(16);
-        private Ethernet eth;
+        private final PacketView view = new PacketView();
+        private byte[] data;
         private Long userData;
-        private int packetLen = 0;
 
         public Packet buildFrom(ByteBuffer buf) {
             int datapathIndex = buf.getInt(); // ignored
             NetlinkMessage.scanAttributes(buf, this);
-            if (eth == null) {
-                keys.clear();
-                return null;
+            Packet p = data != null ? build() : null;
+            if (p != null) {
+                p.setUserData(userData);
             }
-            FlowKeys.addUserspaceKeys(eth, keys);
-            Packet p = new Packet(eth, new FlowMatch(keys), packetLen);
-            p.setUserData(userData);
-            eth = null;
+            data = null;
             keys.clear();
             userData = null;
             return p;
         }
 
+        private Packet build() {
+            if (!FlowKeys.hasIcmpKeys(keys)) {
+                return new Packet(data, new FlowMatch(keys));
+            }
+            try {
+                Ethernet eth = view.wrap(data, 0, data.length).materialize();
+                FlowKeys.addUserspaceKeys(eth, keys);
+                return new Packet(eth, new FlowMatch(keys), data.length);
+            } catch (MalformedPacketException e) {
+                log.warn("Dropping malformed packet", e);
+                return null;
+            }
+        }
+
         @Override
         public void use(ByteBuffer buffer, short id) {
             switch(NetlinkMessage.unnest(id)) {
                 case OpenVSwitch.Packet.Attr.Packet:
-                    ByteOrder originalOrder = buffer.order();
-                    try {
-                        eth = new Ethernet();
-                        packetLen = buffer.remaining();
-                        eth.deserialize(buffer);
-                    } catch (Exception e) {
-                        log.warn("Dropping malformed packet", e);
-                        this.eth = null;
-                    } finally {
-                        buffer.order(originalOrder);
+                    data = new byte[buffer.remaining()];
+                    buffer.get(data);
+                    if (!view.wrap(data, 0, data.length).isValid()) {
+                        log.warn("Dropping malformed packet of {} bytes",
+                                 data.length);
+                        data = null;
                     }
                     break;
 
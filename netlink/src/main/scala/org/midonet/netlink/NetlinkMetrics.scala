@@ -20,6 +20,7 @@ import com.codahale.metrics.MetricRegistry
 import com.codahale.metrics.MetricRegistry.name
 
 trait NetlinkMeter
+trait NetlinkHistogram
 
 class NetlinkMetrics(val registry: MetricRegistry) {
 
@@ -31,6 +32,14 @@ class NetlinkMetrics(val registry: MetricRegistry) {
 
     val htbDrops = registry.meter(
         name(classOf[NetlinkMeter], "htbDrops"))
+
+    /** The select loop wakeups that read a channel. */
+    val readWakeups = registry.meter(
+        name(classOf[NetlinkMeter], "readWakeups"))
+
+    /** The number of upcalls delivered by every read system call. */
+    val upcallsPerRead = registry.histogram(
+        name(classOf[NetlinkHistogram], "upcallsPerRead"))
 }
 
 class NullNetlinkMetrics extends NetlinkMetrics(new MetricRegistry())
@@ -35,7 +35,7 @@ import org.midonet.odp.OpenVSwitch.FlowKey.{Attr => KeyAttr}
 import org.midonet.odp.ports.NetDevPort
 import org.midonet.odp.util.TapWrapper
 import org.midonet.packets.util.PacketBuilder._
-import org.midonet.packets.{IPv4Addr, MAC}
+import org.midonet.packets.{Ethernet, IPv4Addr, MAC, TCP}
 import org.midonet.util.concurrent.NanoClock
 
 object OvsBenchmark {
@@ -270,3 +270,39 @@ class FlowCreateAndDeleteWithBroker {
 
 @Threads(2)
 class ConcurrentFlowCreate2 extends FlowCreate
+
+/**
+  * Measures the construction of the packets received in upcalls, comparing
+  * the eager deserialization of the frame with the lazy packet view. Run
+  * with `-prof gc` to compare the allocation rate.
+  */
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+class UpcallPacket {
+    private val ethernet = ({ eth src MAC.random dst MAC.random } <<
+                             { ip4 src IPv4Addr.random dst IPv4Addr.random } <<
+                             { tcp src 80 dst 1001 flags 0x10.toShort } <<
+                             payload(new Array[Byte](1000))).packet
+    private val frame = ethernet.serialize()
+    private val wcmatch = FlowMatches.fromEthernetPacket(ethernet)
+
+    @Benchmark
+    def eagerPacket(): Packet = {
+        val eth = new Ethernet()
+        eth.deserialize(ByteBuffer.wrap(frame))
+        new Packet(eth, new FlowMatch(wcmatch.getKeys), frame.length)
+    }
+
+    @Benchmark
+    def lazyPacket(): Packet = {
+        val data = new Array[Byte](frame.length)
+        System.arraycopy(frame, 0, data, 0, frame.length)
+        val packet = new Packet(data, new FlowMatch(wcmatch.getKeys))
+        packet.view.hasTcpFlag(TCP.Flag.Syn)
+        packet
+    }
+}
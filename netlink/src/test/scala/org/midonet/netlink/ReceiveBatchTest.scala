@@ -0,0 +1,168 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.netlink
+
+import java.nio.ByteBuffer
+
+import com.sun.jna.Platform
+
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+import org.scalatest.{BeforeAndAfter, FeatureSpec, GivenWhenThen, Matchers}
+
+import org.midonet.jna.{CLibrary, Socket}
+
+@RunWith(classOf[JUnitRunner])
+class ReceiveBatchTest extends FeatureSpec
+                       with BeforeAndAfter
+                       with GivenWhenThen
+                       with Matchers {
+
+    private var sender: Int = _
+    private var channel: UnixDomainChannel = _
+
+    before {
+        val fds = new Array[Int](2)
+        CLibrary.socketpair(Socket.AF_UNIX,
+                            CLibrary.SOCK_DGRAM | CLibrary.SOCK_NONBLOCK, 0,
+                            fds)
+        sender = fds(0)
+        channel = Netlink.selectorProvider()
+                         .openUnixDomainSocketChannel(null, null, fds(1))
+    }
+
+    after {
+        channel.close()
+        CLibrary.close(sender)
+    }
+
+    private def send(length: Int, fill: Int): Unit = {
+        val buffer = ByteBuffer.allocateDirect(length)
+        for (i <- 0 until length) {
+            buffer.put(i, fill.toByte)
+        }
+        CLibrary.send(sender, buffer, length, 0) shouldBe length
+    }
+
+    private def checkDatagram(batch: ReceiveBatch, index: Int, length: Int,
+                              fill: Int): Unit = {
+        val buffer = batch.get(index)
+        buffer.position() shouldBe 0
+        buffer.limit() shouldBe length
+        for (i <- 0 until length) {
+            buffer.get(i) shouldBe fill.toByte
+        }
+    }
+
+    feature("Receive batch") {
+        scenario("The message headers match the native layout") {
+            assume(Platform.isLinux && Platform.is64Bit)
+
+            Given("A batch message header")
+            val header = new CLibrary.MMsgHdr()
+
+            Then("The header has the layout of the 64-bit struct mmsghdr")
+            header.size() shouldBe 64
+            header.flagsOffset() shouldBe 48
+            header.lengthOffset() shouldBe 56
+        }
+
+        scenario("A read returns zero when there are no datagrams") {
+            Given("A batch")
+            val batch = ReceiveBatch.allocate(4)
+
+            try {
+                Then("Reading from an empty socket returns zero")
+                channel.read(batch) shouldBe 0
+                batch.size() shouldBe 0
+            } finally {
+                batch.close()
+            }
+        }
+
+        scenario("A read returns the datagrams in order") {
+            Given("A batch")
+            val batch = ReceiveBatch.allocate(4)
+
+            try {
+                When("Sending three datagrams of different lengths")
+                send(100, 1)
+                send(1, 2)
+                send(3000, 3)
+
+                Then("A single read returns the three datagrams")
+                channel.read(batch) shouldBe 3
+                batch.size() shouldBe 3
+
+                And("Each buffer is limited to the length of its datagram")
+                checkDatagram(batch, 0, 100, 1)
+                checkDatagram(batch, 1, 1, 2)
+                checkDatagram(batch, 2, 3000, 3)
+
+                And("The next read returns zero")
+                channel.read(batch) shouldBe 0
+            } finally {
+                batch.close()
+            }
+        }
+
+        scenario("Datagrams exceeding the batch are read by the next call") {
+            Given("A batch of two buffers")
+            val batch = ReceiveBatch.allocate(2)
+
+            try {
+                When("Sending three datagrams")
+                send(10, 1)
+                send(20, 2)
+                send(30, 3)
+
+                Then("The first read returns the first two datagrams")
+                channel.read(batch) shouldBe 2
+                checkDatagram(batch, 0, 10, 1)
+                checkDatagram(batch, 1, 20, 2)
+
+                And("The second read returns the third datagram")
+                channel.read(batch) shouldBe 1
+                checkDatagram(batch, 0, 30, 3)
+            } finally {
+                batch.close()
+            }
+        }
+
+        scenario("Truncated datagrams are left empty") {
+            Given("A batch")
+            val batch = ReceiveBatch.allocate(4)
+
+            try {
+                When("Sending a datagram larger than a receive buffer")
+                send(10, 1)
+                send(ReceiveBatch.BUFFER_SIZE + 1000, 2)
+                send(10, 3)
+
+                Then("The read returns all datagrams")
+                channel.read(batch) shouldBe 3
+
+                And("The truncated datagram is empty")
+                checkDatagram(batch, 0, 10, 1)
+                batch.get(1).limit() shouldBe 0
+                checkDatagram(batch, 2, 10, 3)
+            } finally {
+                batch.close()
+            }
+        }
+    }
+}
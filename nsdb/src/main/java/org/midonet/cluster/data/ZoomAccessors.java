@@ -0,0 +1,207 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.cluster.data;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.UndeclaredThrowableException;
+
+import com.google.common.primitives.Primitives;
+
+/**
+ * Method handle based accessors for the fields and constructors of ZOOM
+ * objects, used by {@link ZoomConvert} instead of the core reflection API.
+ * The handles are adapted to erased signatures such that they are called with
+ * invokeExact, which the JIT compiler can inline like a direct field access.
+ * The accessors are implemented in Java because Scala does not support
+ * signature polymorphic method calls.
+ *
+ * When a handle cannot be created, or when a value requires a conversion
+ * that the handle does not perform (such as a primitive widening or a null
+ * primitive), the accessors fall back to the reflective field or constructor,
+ * such that they behave the same as the core reflection API. The values are
+ * checked before calling the handle, such that an exception thrown by a
+ * constructor is never mistaken for an adaptation failure.
+ */
+final class ZoomAccessors {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final MethodType GETTER_TYPE =
+        MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE =
+        MethodType.methodType(void.class, Object.class, Object.class);
+    private static final MethodType CONSTRUCTOR_TYPE =
+        MethodType.methodType(Object.class, Object[].class);
+
+    static final Object[] NO_ARGS = new Object[0];
+
+    private ZoomAccessors() { }
+
+    /**
+     * Indicates whether the handle adaptation of an Object to the given type
+     * succeeds for the value: a primitive type only accepts a non-null value
+     * of its exact wrapper class, without widening.
+     */
+    static boolean isAssignable(Class<?> type, Object value) {
+        if (type.isPrimitive()) {
+            return value != null && value.getClass() == Primitives.wrap(type);
+        }
+        return value == null || type.isInstance(value);
+    }
+
+    /**
+     * Reads and writes a field of a ZOOM object.
+     */
+    static final class FieldAccessor {
+
+        private final Field field;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        FieldAccessor(Field field) {
+            this.field = field;
+            field.setAccessible(true);
+            this.getter = getter(field);
+            this.setter = setter(field);
+        }
+
+        Field field() {
+            return field;
+        }
+
+        Object get(Object obj) throws IllegalAccessException {
+            if (getter == null || !field.getDeclaringClass().isInstance(obj)) {
+                return field.get(obj);
+            }
+            try {
+                return (Object) getter.invokeExact(obj);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new UndeclaredThrowableException(e);
+            }
+        }
+
+        void set(Object obj, Object value) throws IllegalAccessException {
+            if (setter == null || !field.getDeclaringClass().isInstance(obj) ||
+                !isAssignable(field.getType(), value)) {
+                field.set(obj, value);
+                return;
+            }
+            try {
+                setter.invokeExact(obj, value);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new UndeclaredThrowableException(e);
+            }
+        }
+
+        private static MethodHandle getter(Field field) {
+            if (Modifier.isStatic(field.getModifiers())) {
+                return null;
+            }
+            try {
+                return LOOKUP.unreflectGetter(field).asType(GETTER_TYPE);
+            } catch (IllegalAccessException e) {
+                return null;
+            }
+        }
+
+        private static MethodHandle setter(Field field) {
+            if (Modifier.isStatic(field.getModifiers())) {
+                return null;
+            }
+            try {
+                return LOOKUP.unreflectSetter(field).asType(SETTER_TYPE);
+            } catch (IllegalAccessException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Creates instances of a ZOOM object using a given constructor.
+     */
+    static final class ConstructorAccessor {
+
+        private final Constructor<?> constructor;
+        private final Class<?>[] parameterTypes;
+        private final MethodHandle handle;
+
+        ConstructorAccessor(Constructor<?> constructor) {
+            this.constructor = constructor;
+            this.parameterTypes = constructor.getParameterTypes();
+            constructor.setAccessible(true);
+            this.handle = handle(constructor);
+        }
+
+        Constructor<?> constructor() {
+            return constructor;
+        }
+
+        Object newInstance(Object[] args)
+            throws InstantiationException, IllegalAccessException,
+                   InvocationTargetException {
+            if (handle == null || !isAssignable(args)) {
+                return constructor.newInstance(args);
+            }
+            try {
+                return (Object) handle.invokeExact(args);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+
+        private boolean isAssignable(Object[] args) {
+            if (args == null) {
+                return parameterTypes.length == 0;
+            }
+            if (args.length != parameterTypes.length) {
+                return false;
+            }
+            for (int index = 0; index < args.length; index++) {
+                if (!ZoomAccessors.isAssignable(parameterTypes[index],
+                                                args[index])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static MethodHandle handle(Constructor<?> constructor) {
+            if (Modifier.isAbstract(
+                    constructor.getDeclaringClass().getModifiers())) {
+                return null;
+            }
+            try {
+                return LOOKUP.unreflectConstructor(constructor)
+                             .asSpreader(Object[].class,
+                                         constructor.getParameterCount())
+                             .asType(CONSTRUCTOR_TYPE);
+            } catch (IllegalAccessException e) {
+                return null;
+            }
+        }
+    }
+}
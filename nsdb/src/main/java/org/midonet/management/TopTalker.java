@@ -0,0 +1,49 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.midonet.management;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * An entry of a top talkers table: the key, such as an IP address, a port
+ * or a device identifier, and its estimated count during the last interval.
+ */
+public class TopTalker {
+    public final String key;
+    public final long count;
+
+    @ConstructorProperties({"key", "count"})
+    public TopTalker(String key, long count) {
+        this.key = key;
+        this.count = count;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "TopTalker{" +
+            "key=" + key +
+            ", count=" + count +
+            '}';
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.midonet.management;
+
+public interface TopTalkersMXBean {
+    String NAME = "org.midonet.midolman:type=TopTalkers";
+
+    /** The number of new flows by source IP address. */
+    TopTalker[] getFlowSources();
+    /** The number of new flows by destination IP address. */
+    TopTalker[] getFlowDestinations();
+    /** The number of new flows by protocol and destination port. */
+    TopTalker[] getFlowPorts();
+    /** The number of simulations by ingress virtual port. */
+    TopTalker[] getSimulationDevices();
+    /** The bytes of the deleted flows by source IP address. */
+    TopTalker[] getByteSources();
+    /** The bytes of the deleted flows by destination IP address. */
+    TopTalker[] getByteDestinations();
+    /** The time of the last interval, in milliseconds since the epoch. */
+    long getLastUpdate();
+}
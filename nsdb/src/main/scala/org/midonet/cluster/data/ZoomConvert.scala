@@ -17,6 +17,7 @@ package org.midonet.cluster.data
 
 import java.lang.reflect.{Array => JArray, _}
 import java.lang.{Byte => JByte}
+import java.util.concurrent.ConcurrentHashMap
 import java.util.{ArrayList => JArrayList, HashSet => JHashSet, List => JList, Set => JSet, UUID}
 
 import scala.annotation.meta.{field, param}
@@ -24,12 +25,14 @@ import scala.collection.JavaConversions._
 import scala.collection.concurrent.TrieMap
 
 import com.google.common.base.Defaults
-import com.google.protobuf.Descriptors.{EnumDescriptor, EnumValueDescriptor}
+import com.google.protobuf.Descriptors.FieldDescriptor.JavaType
+import com.google.protobuf.Descriptors.{Descriptor, EnumDescriptor, EnumValueDescriptor}
 import com.google.protobuf.GeneratedMessage.Builder
 import com.google.protobuf.{ByteString, Descriptors, Message}
 
 import org.slf4j.LoggerFactory
 
+import org.midonet.cluster.data.ZoomAccessors.{ConstructorAccessor, FieldAccessor}
 import org.midonet.cluster.models.Commons
 import org.midonet.cluster.util.UUIDUtil
 
@@ -42,6 +45,12 @@ import org.midonet.cluster.util.UUIDUtil
  *
  * The Java object class must extend the [[ZoomObject]] class, and provide a
  * parameter-less constructor.
+ *
+ * The annotations, constructors and field descriptors of a Java class are
+ * resolved only once, when the class is first converted to or from a given
+ * message type, into a conversion plan cached with the class. The fields and
+ * constructors are then accessed through method handles, such that a
+ * conversion does not use reflection or look up converters by type.
  */
 object ZoomConvert {
 
@@ -49,7 +58,7 @@ object ZoomConvert {
 
     private final val log = LoggerFactory.getLogger(this.getClass)
 
-    private final val BuilderMethod = "newBuilder"
+    private final val DefaultInstanceMethod = "getDefaultInstance"
     private final val DescriptorMethod = "getDescriptor"
 
     private final val ByteClass = classOf[Byte]
@@ -61,10 +70,130 @@ object ZoomConvert {
     private type ProtoBuilder = Builder[_ <: Builder[_ <: AnyRef]]
 
     private case class ConverterKey(clazz: Class[_], converter: Class[_])
-    private case class FieldInfo(field: Field, zoomField: ZoomField)
-    private case class ClassInfo(clazz: Class[_], zoomClass: ZoomClass,
-                                 zoomOneOf: ZoomOneOf,
-                                 fieldsInfo: Seq[FieldInfo])
+
+    /**
+      * A field or constructor parameter of a Java class, annotated with
+      * [[ZoomField]], mapped to the field of a Protocol Buffers message. The
+      * converter is resolved the first time it is used.
+      */
+    private final class FieldPlan(val accessor: FieldAccessor,
+                                  val zoomField: ZoomField,
+                                  val fieldType: Class[_],
+                                  val genericType: Type,
+                                  val protoField: Descriptors.FieldDescriptor) {
+        /** Indicates whether the field is converted only when set. */
+        val checkPresence = !protoField.isRepeated && !protoField.hasDefaultValue
+        lazy val converter: Converter[_,_] =
+            getConverter(fieldType, genericType, protoField, zoomField)
+    }
+
+    /**
+      * The conversion plan for a Java class at a given level in the object's
+      * inheritance hierarchy, to and from the message with the given input
+      * descriptor.
+      *
+      * @param clazz The Java class at this level.
+      * @param superPlan The plan for the super class, or null if the super
+      *                  class fields are not converted.
+      * @param oneOfField The one-of field containing the message for this
+      *                   class, or null if the class is not a one-of.
+      * @param descriptor The descriptor of the message for this class.
+      * @param fields The plans for the converted fields.
+      */
+    private final class ClassPlan(val clazz: Class[_],
+                                  val superPlan: ClassPlan,
+                                  val oneOfField: Descriptors.FieldDescriptor,
+                                  val descriptor: Descriptor,
+                                  val fields: Array[FieldPlan])
+
+    /**
+      * The plan for constructing a Java class using its [[Zoom]] constructor
+      * from the message with a given descriptor.
+      */
+    private final class ConstructorPlan(val constructor: ConstructorAccessor,
+                                        val params: Array[FieldPlan])
+
+    /**
+      * Caches the plans of a class by message descriptor. Since a class is
+      * nearly always converted to and from a single message type, the last
+      * plan is checked before the map.
+      */
+    private final class PlanCache[P <: AnyRef](compile: Descriptor => P) {
+        private final class Entry(val descriptor: Descriptor, val plan: P)
+        @volatile private var last: Entry = null
+        private val plans = new ConcurrentHashMap[Descriptor, P]
+
+        def get(descriptor: Descriptor): P = {
+            val entry = last
+            if ((entry ne null) && (entry.descriptor eq descriptor)) {
+                return entry.plan
+            }
+            var plan = plans.get(descriptor)
+            if (plan == null) {
+                plan = compile(descriptor)
+                plans.putIfAbsent(descriptor, plan)
+            }
+            last = new Entry(descriptor, plan)
+            plan
+        }
+    }
+
+    /**
+      * The conversion information for a Java class, read once from the class
+      * annotations.
+      */
+    private final class ClassInfo(val clazz: Class[_]) {
+        val zoomClass = clazz.getAnnotation(classOf[ZoomClass])
+        val zoomOneOf = clazz.getAnnotation(classOf[ZoomOneOf])
+        val hasSuper = clazz != classOf[ZoomObject] &&
+                       clazz.getSuperclass != classOf[ZoomObject] &&
+                       (zoomClass == null || !zoomClass.skipSuper)
+
+        lazy val fields: Array[(FieldAccessor, ZoomField)] =
+            for (field <- clazz.getDeclaredFields;
+                 zoomField = field.getAnnotation(classOf[ZoomField])
+                 if zoomField ne null)
+                yield (new FieldAccessor(field), zoomField)
+
+        lazy val factory: Factory[_ <: ZoomObject, Message] =
+            if ((zoomClass ne null) &&
+                zoomClass.factory != classOf[DefaultFactory]) {
+                zoomClass.factory.getDeclaredConstructor().newInstance()
+                    .asInstanceOf[Factory[_ <: ZoomObject, Message]]
+            } else null
+
+        lazy val defaultConstructor: ConstructorAccessor = {
+            val constructor = getDefaultConstructor(clazz)
+            if (constructor ne null) new ConstructorAccessor(constructor)
+            else null
+        }
+
+        val plans = new PlanCache[ClassPlan](compilePlan(this, _))
+        val constructorPlans =
+            new PlanCache[ConstructorPlan](compileConstructorPlan(this, _))
+    }
+
+    private val classes = new ClassValue[ClassInfo] {
+        override def computeValue(clazz: Class[_]): ClassInfo = {
+            new ClassInfo(clazz)
+        }
+    }
+
+    private val defaultInstances = new ClassValue[Message] {
+        override def computeValue(clazz: Class[_]): Message = {
+            try {
+                clazz.getMethod(ZoomConvert.DefaultInstanceMethod)
+                     .invoke(null).asInstanceOf[Message]
+            } catch {
+                case e @ (_ : NoSuchMethodException |
+                          _ : IllegalAccessException |
+                          _ : InvocationTargetException |
+                          _ : ClassCastException) =>
+                    throw new ConvertException(
+                        s"Class $clazz failed to convert: internal error", e)
+            }
+        }
+    }
 
     private val converters =
         new TrieMap[Class[_ <: Converter[_,_]], Converter[_,_]]
@@ -76,7 +205,6 @@ object ZoomConvert {
     private val setConverters = new TrieMap[ConverterKey, SetConverter]
     private val jSetConverters = new TrieMap[ConverterKey, JavaSetConverter]
 
-    private val factories = new TrieMap[Class[_ <: Factory[_,_]], Factory[_,_]]
 
     /**
      * Converts a Java object to a Protocol Buffers message.
@@ -122,15 +250,16 @@ object ZoomConvert {
         if (proto eq null) {
             return null
         }
-        val clazz = newFactory(proto, pojoClass)
-        val defaultConstructor = getDefaultConstructor(clazz)
+        val info = classes.get(newFactory(proto, pojoClass))
+        val defaultConstructor = info.defaultConstructor
         if (defaultConstructor ne null) {
-            val pojo = clazz.getDeclaredConstructor().newInstance().asInstanceOf[T]
-            from(proto, pojo, pojo.getClass)
+            val pojo = defaultConstructor.newInstance(ZoomAccessors.NO_ARGS)
+                                         .asInstanceOf[T]
+            from(proto, pojo, info.plans.get(proto.getDescriptorForType))
             pojo.afterFromProto(proto)
             pojo
         } else {
-            val pojo = fromNew(proto, clazz.asInstanceOf[Class[T]])
+            val pojo = fromNew[T](proto, info)
             pojo.afterFromProto(proto)
             pojo
         }
@@ -174,8 +303,8 @@ object ZoomConvert {
 
     /**
      * Internal method to convert a Java object to the corresponding Protocol
-     * Buffers message. The method is called recursively to convert the fields
-     * from all classes in the object's inheritance hierarchy.
+     * Buffers message. The method gets the conversion plan of the class for
+     * the message type of the builder.
      *
      * @param pojo The Java object.
      * @param clazz The Java object class, representing the level in the
@@ -183,76 +312,84 @@ object ZoomConvert {
      *              performed.
      * @param topBuilder The Protocol Buffers builder for the final message.
      */
-    private def to[T <: ZoomObject, U <: Message](
-            pojo: T, clazz: Class[_], topBuilder: ProtoBuilder): ProtoBuilder = {
+    private def to[T <: ZoomObject](pojo: T, clazz: Class[_],
+                                    topBuilder: ProtoBuilder): ProtoBuilder = {
+        to(pojo, classes.get(clazz).plans.get(topBuilder.getDescriptorForType),
+           topBuilder)
+    }
 
-        val zoomClass = clazz.getAnnotation(classOf[ZoomClass])
+    /**
+     * Internal method to convert a Java object to the corresponding Protocol
+     * Buffers message. The method is called recursively to convert the fields
+     * from all classes in the object's inheritance hierarchy.
+     *
+     * @param pojo The Java object.
+     * @param plan The conversion plan for the level in the object's
+     *             inheritance hierarchy at which the conversion is performed.
+     * @param topBuilder The Protocol Buffers builder for the final message.
+     */
+    private def to[T <: ZoomObject](pojo: T, plan: ClassPlan,
+                                    topBuilder: ProtoBuilder): ProtoBuilder = {
         // Recursively iterate over all superclasses in the objects inheritance
         // hierarchy, and get the corresponding Protocol Buffers message.
         val superBuilder =
-            if (clazz != classOf[ZoomObject] &&
-                clazz.getSuperclass != classOf[ZoomObject] &&
-                (zoomClass == null || !zoomClass.skipSuper))
-                to(pojo, clazz.getSuperclass, topBuilder)
+            if (plan.superPlan ne null) to(pojo, plan.superPlan, topBuilder)
             else topBuilder
 
         // If the class has a one-of annotation, get the builder from the one-of
         // field.
-        val zoomOneOf = clazz.getAnnotation(classOf[ZoomOneOf])
-        val thisBuilder = if (zoomOneOf ne null) {
-            val superDescriptor = superBuilder.getDescriptorForType
-            val oneOfField = superDescriptor.findFieldByName(zoomOneOf.name)
-            if (oneOfField eq null) {
-                throw new ConvertException(
-                    s"Message ${superDescriptor.getName} does not have a " +
-                    s"one-of field ${zoomOneOf.name}")
-            }
-            superBuilder.getFieldBuilder(oneOfField).asInstanceOf[ProtoBuilder]
-        } else superBuilder
-
-        // Get the descriptor for the current builder.
-        val descriptor = thisBuilder.getDescriptorForType
-
-        for (pojoField <- clazz.getDeclaredFields;
-             zoomField = pojoField.getAnnotation(classOf[ZoomField])
-             if zoomField ne null) {
-            val protoField = descriptor.findFieldByName(zoomField.name)
-
-            // Verify the field exists.
-            if (protoField eq null) {
-                throw new ConvertException(
-                    s"Message ${descriptor.getName} does not have a " +
-                    s"field with name ${zoomField.name}")
-            }
+        val thisBuilder =
+            if (plan.oneOfField ne null)
+                superBuilder.getFieldBuilder(plan.oneOfField)
+                            .asInstanceOf[ProtoBuilder]
+            else superBuilder
+
+        val fields = plan.fields
+        var index = 0
+        while (index < fields.length) {
+            val field = fields(index)
             try {
                 // Get the field value.
-                val pojoValue = pojo.getField(pojoField)
+                val pojoValue = field.accessor.get(pojo)
                 // Ignore the null fields.
                 if (null != pojoValue) {
-                    val converter = getConverter(pojoField.getType,
-                                                 pojoField.getGenericType,
-                                                 protoField, zoomField)
-                    val protoValue = converter.to(pojoValue,
-                                                  pojoField.getGenericType)
-                    thisBuilder.setField(protoField, protoValue)
+                    val protoValue = field.converter.to(pojoValue,
+                                                        field.genericType)
+                    thisBuilder.setField(field.protoField, protoValue)
                 }
             } catch {
                 case e @ (_ : InstantiationException |
                           _ : IllegalAccessException |
                           _ : IllegalArgumentException |
                           _ : ClassCastException) =>
-                    val msg = s"Class $clazz failed to convert field " +
-                              s"${zoomField.name} from Java type " +
-                              s"${pojoField.getType} to Protocol Buffers " +
-                              s"type ${protoField.getType}"
+                    val msg = s"Class ${plan.clazz} failed to convert field " +
+                              s"${field.zoomField.name} from Java type " +
+                              s"${field.fieldType} to Protocol Buffers " +
+                              s"type ${field.protoField.getType}"
                     log.error(msg, e)
                     throw new ConvertException(msg, e)
             }
+            index += 1
         }
 
         thisBuilder
     }
 
+    /**
+     * Internal method to convert a Protocol Buffers message to the
+     * corresponding Java object. The method gets the conversion plan of the
+     * class for the message type.
+     *
+     * @param proto The Protocol Buffers message.
+     * @param pojo The Java object.
+     * @param clazz The Java class corresponding to the current inheritance
+     *              level.
+     */
+    private def from[T <: ZoomObject](proto: Message, pojo: T,
+                                      clazz: Class[_]): Message = {
+        from(proto, pojo, classes.get(clazz).plans.get(proto.getDescriptorForType))
+    }
+
     /**
      * Internal method to convert a Protocol Buffers message to the
      * corresponding Java object. The method is called recursively to convert
@@ -262,70 +399,36 @@ object ZoomConvert {
      * and [[ZoomOneOf]] annotations.
      *
      * @param proto The Protocol Buffers message.
-     * @param pojo The Java object class, representing the level in the object's
+     * @param pojo The Java object.
+     * @param plan The conversion plan for the level in the object's
      *             inheritance hierarchy at which the conversion is performed.
-     * @param clazz The Java class corresponding to the current inheritance
-     *              level.
      */
-    private def from[T <: ZoomObject, U <: Message]
-                    (proto: U, pojo: T, clazz: Class[_]): Message = {
-        val zoomClass = clazz.getAnnotation(classOf[ZoomClass])
-
+    private def from[T <: ZoomObject](proto: Message, pojo: T,
+                                      plan: ClassPlan): Message = {
         // Recursively iterate over all superclasses in the objects inheritance
         // hierarchy, and get the corresponding Protocol Buffers message.
         var message =
-            if (clazz != classOf[ZoomObject] &&
-                clazz.getSuperclass != classOf[ZoomObject] &&
-                (zoomClass == null || !zoomClass.skipSuper))
-                from(proto, pojo, clazz.getSuperclass)
+            if (plan.superPlan ne null) from(proto, pojo, plan.superPlan)
             else proto
 
-        // Get the descriptor for the current message.
-        var descriptor = message.getDescriptorForType
-
         // If the class has a one-of annotation, extract the message from
         // the one-of field.
-        val zoomOneOf = clazz.getAnnotation(classOf[ZoomOneOf])
-        if (zoomOneOf ne null) {
-            val oneOfField = descriptor.findFieldByName(zoomOneOf.name)
-            message = if (oneOfField eq null) {
-                throw new ConvertException(
-                    s"Message ${descriptor.getName} does not have a " +
-                    s"one-of field ${zoomOneOf.name}")
-            } else message.getField(oneOfField) match {
-                case msg: Message =>
-                    descriptor = msg.getDescriptorForType
-                    msg
-                case _ =>
-                    throw new ConvertException(
-                        s"Message ${descriptor.getName} one-of field " +
-                        s"${zoomOneOf.name} is not a Protocol Buffers " +
-                        s"message")
-            }
+        if (plan.oneOfField ne null) {
+            message = message.getField(plan.oneOfField).asInstanceOf[Message]
         }
 
-        for (pojoField <- clazz.getDeclaredFields;
-             zoomField = pojoField.getAnnotation(classOf[ZoomField])
-             if zoomField ne null) {
-            val protoField = descriptor.findFieldByName(zoomField.name)
-
-            // Verify the field exists.
-            if (protoField eq null) {
-                throw new ConvertException(
-                    s"Message ${descriptor.getName} does not have a " +
-                    s"field ${zoomField.name}")
-            } else if (protoField.isRepeated || protoField.hasDefaultValue ||
-                       message.hasField(protoField)) {
-                // We ignore unset message fields, and let the corresponding
-                // Java object field set to the its type-default value.
+        val fields = plan.fields
+        var index = 0
+        while (index < fields.length) {
+            val field = fields(index)
+            // We ignore unset message fields, and let the corresponding
+            // Java object field set to the its type-default value.
+            if (!field.checkPresence || message.hasField(field.protoField)) {
                 try {
-                    val protoValue = message.getField(protoField)
-                    val converter = getConverter(pojoField.getType,
-                                                 pojoField.getGenericType,
-                                                 protoField, zoomField)
-                    val pojoValue = converter.from(protoValue,
-                                                   pojoField.getGenericType)
-                    pojo.setField(pojoField, pojoValue)
+                    val protoValue = message.getField(field.protoField)
+                    val pojoValue = field.converter.from(protoValue,
+                                                         field.genericType)
+                    field.accessor.set(pojo, pojoValue)
                 } catch {
                     case e @ (_ : InstantiationException |
                               _ : IllegalAccessException |
@@ -333,11 +436,12 @@ object ZoomConvert {
                               _ : NullPointerException) =>
                         throw new ConvertException(
                             s"Class ${pojo.getClass} failed to convert " +
-                            s"field ${zoomField.name} from Protocol Buffers " +
-                            s"type ${protoField.getType} to Java type " +
-                            s"${pojoField.getType}", e)
+                            s"field ${field.zoomField.name} from Protocol " +
+                            s"Buffers type ${field.protoField.getType} to " +
+                            s"Java type ${field.fieldType}", e)
                 }
             }
+            index += 1
         }
 
         message
@@ -348,66 +452,134 @@ object ZoomConvert {
      * corresponding Java object using a non-default constructor.
      *
      * @param proto The Protocol Buffers message.
-     * @param clazz The Java object class.
+     * @param info The Java object class information.
      * @return The converted object.
      */
-    private def fromNew[T <: ZoomObject, U <: Message]
-                       (proto: U, clazz: Class[T]): T = {
-        val constructor = getZoomConstructor(clazz)
+    private def fromNew[T <: ZoomObject](proto: Message, info: ClassInfo): T = {
+        val plan = info.constructorPlans.get(proto.getDescriptorForType)
+        val params = new Array[Object](plan.params.length)
+
+        var index = 0
+        while (index < params.length) {
+            val param = plan.params(index)
+            // We ignore unset message fields, and let the corresponding
+            // Java object field set to the its type-default value.
+            if (!param.checkPresence || proto.hasField(param.protoField)) {
+                try {
+                    val protoValue = proto.getField(param.protoField)
+                    params(index) = param.converter.from(protoValue,
+                                                         param.genericType)
+                                                   .asInstanceOf[AnyRef]
+                } catch {
+                    case e @ (_ : InstantiationException |
+                              _ : IllegalAccessException |
+                              _ : IllegalArgumentException |
+                              _ : NullPointerException) =>
+                        throw new ConvertException(
+                            s"Class ${info.clazz} failed to convert " +
+                            s"constructor parameter ${param.zoomField.name} " +
+                            s"from Protocol Buffers type " +
+                            s"${param.protoField.getType} to Java type " +
+                            s"${param.fieldType}", e)
+                }
+            } else {
+                params(index) = Defaults.defaultValue(param.fieldType)
+                                        .asInstanceOf[Object]
+            }
+            index += 1
+        }
+
+        plan.constructor.newInstance(params).asInstanceOf[T]
+    }
+
+    /**
+     * Compiles the conversion plan for a Java class to and from the message
+     * with the given descriptor, including the plans for its super classes.
+     * The method verifies that all fields annotated with [[ZoomField]] exist
+     * in the message.
+     *
+     * @param info The Java class information.
+     * @param inputDescriptor The descriptor of the top message.
+     */
+    private def compilePlan(info: ClassInfo, inputDescriptor: Descriptor)
+    : ClassPlan = {
+        val superPlan =
+            if (info.hasSuper)
+                classes.get(info.clazz.getSuperclass).plans.get(inputDescriptor)
+            else null
+        val superDescriptor =
+            if (superPlan ne null) superPlan.descriptor else inputDescriptor
+
+        // If the class has a one-of annotation, the fields are converted from
+        // the message of the one-of field.
+        val zoomOneOf = info.zoomOneOf
+        val oneOfField =
+            if (zoomOneOf ne null) {
+                val field = superDescriptor.findFieldByName(zoomOneOf.name)
+                if (field eq null) {
+                    throw new ConvertException(
+                        s"Message ${superDescriptor.getName} does not have a " +
+                        s"one-of field ${zoomOneOf.name}")
+                }
+                if (field.getJavaType != JavaType.MESSAGE) {
+                    throw new ConvertException(
+                        s"Message ${superDescriptor.getName} one-of field " +
+                        s"${zoomOneOf.name} is not a Protocol Buffers message")
+                }
+                field
+            } else null
+        val descriptor =
+            if (oneOfField ne null) oneOfField.getMessageType
+            else superDescriptor
+
+        val fields = for ((accessor, zoomField) <- info.fields) yield {
+            val field = accessor.field
+            new FieldPlan(accessor, zoomField, field.getType,
+                          field.getGenericType,
+                          getProtoField(descriptor, zoomField))
+        }
+        new ClassPlan(info.clazz, superPlan, oneOfField, descriptor, fields)
+    }
 
-        // Get the descriptor for the current message.
-        val descriptor = proto.getDescriptorForType
+    /**
+     * Compiles the plan for creating a Java class with its [[Zoom]]
+     * constructor from the message with the given descriptor.
+     */
+    private def compileConstructorPlan(info: ClassInfo, descriptor: Descriptor)
+    : ConstructorPlan = {
+        val constructor = getZoomConstructor(info.clazz)
 
         val paramTypes = constructor.getParameterTypes
         val paramGenericTypes = constructor.getGenericParameterTypes
         val paramAnnotations = constructor.getParameterAnnotations
-        val params = new Array[Object](paramTypes.length)
 
-        for (index <- params.indices) {
+        val params = for (index <- paramTypes.indices.toArray) yield {
             val zoomField = paramAnnotations(index)
                 .find(_.annotationType() == classOf[ZoomField])
                 .getOrElse(throw new ConvertException(
                     s"Constructor parameter $index requires a ZoomField " +
                     s"annotation"))
                 .asInstanceOf[ZoomField]
-
-            val protoField = descriptor.findFieldByName(zoomField.name)
-
-            // Verify the field exists.
-            if (protoField eq null) {
-                throw new ConvertException(
-                    s"Message ${descriptor.getName} does not have a " +
-                    s"field ${zoomField.name}")
-            } else if (protoField.isRepeated || protoField.hasDefaultValue ||
-                       proto.hasField(protoField)) {
-                // We ignore unset message fields, and let the corresponding
-                // Java object field set to the its type-default value.
-                try {
-                    val protoValue = proto.getField(protoField)
-                    val converter = getConverter(paramTypes(index),
-                                                 paramGenericTypes(index),
-                                                 protoField, zoomField)
-                    params(index) = converter.from(protoValue,
-                                                   paramGenericTypes(index))
-                                             .asInstanceOf[AnyRef]
-                } catch {
-                    case e @ (_ : InstantiationException |
-                              _ : IllegalAccessException |
-                              _ : IllegalArgumentException |
-                              _ : NullPointerException) =>
-                        throw new ConvertException(
-                            s"Class $clazz failed to convert constructor" +
-                            s"parameter ${zoomField.name} from Protocol Buffers " +
-                            s"type ${protoField.getType} to Java type " +
-                            s"${paramTypes(index)}", e)
-                }
-            } else {
-                params(index) = Defaults.defaultValue(paramTypes(index))
-                                        .asInstanceOf[Object]
-            }
+            new FieldPlan(null, zoomField, paramTypes(index),
+                          paramGenericTypes(index),
+                          getProtoField(descriptor, zoomField))
         }
+        new ConstructorPlan(new ConstructorAccessor(constructor), params)
+    }
 
-        constructor.newInstance(params: _*).asInstanceOf[T]
+    /**
+     * Returns the field of a message corresponding to a [[ZoomField]], or
+     * throws a [[ConvertException]] if the field does not exist.
+     */
+    private def getProtoField(descriptor: Descriptor, zoomField: ZoomField)
+    : Descriptors.FieldDescriptor = {
+        val protoField = descriptor.findFieldByName(zoomField.name)
+        if (protoField eq null) {
+            throw new ConvertException(
+                s"Message ${descriptor.getName} does not have a " +
+                s"field ${zoomField.name}")
+        }
+        protoField
     }
 
     /**
@@ -416,16 +588,7 @@ object ZoomConvert {
      * @return A Protocol Buffers builder for the given message class.
      */
     private def newBuilder[U <: Message](clazz: Class[U]): ProtoBuilder = {
-        try {
-            clazz.getMethod(ZoomConvert.BuilderMethod)
-                .invoke(null).asInstanceOf[ProtoBuilder]
-        } catch {
-            case e @ (_ : NoSuchMethodException |
-                      _ : IllegalAccessException |
-                      _ : InvocationTargetException) =>
-                throw new ConvertException(
-                    s"Class $getClass failed to convert: internal error", e);
-        }
+        defaultInstances.get(clazz).newBuilderForType().asInstanceOf[ProtoBuilder]
     }
 
     /**
@@ -438,23 +601,14 @@ object ZoomConvert {
      *              to specify abstract classes.
      * @return A factory class.
      */
-    private def newFactory[T <: ZoomObject, U <: Message]
-                          (proto: U, clazz: Class[_]): Class[_] = {
-        var factory = clazz
-        val zoomClass = clazz.getAnnotation(classOf[ZoomClass])
-
-        if (null != zoomClass &&
-            !zoomClass.factory().equals(classOf[DefaultFactory])) {
-            factories.getOrElseUpdate(zoomClass.factory(),
-                                      zoomClass.factory().getDeclaredConstructor().newInstance())
-                .asInstanceOf[Factory[_, U]]
-                .getType(proto) match {
-                case c: Class[_] if clazz != c =>
-                    factory = newFactory(proto, c)
-                case _ =>
+    private def newFactory[U <: Message](proto: U, clazz: Class[_]): Class[_] = {
+        val factory = classes.get(clazz).factory
+        if (factory ne null) {
+            factory.getType(proto) match {
+                case c: Class[_] if clazz != c => newFactory(proto, c)
+                case _ => clazz
             }
-        }
-        factory
+        } else clazz
     }
 
     /**
@@ -671,40 +825,10 @@ object ZoomConvert {
                 ByteString.copyFrom(pojoValue.asInstanceOf[Array[Byte]])
             case UuidClass => UUIDUtil.toProto(pojoValue.asInstanceOf[UUID])
             case enumClass: Class[_] if enumClass.isEnum =>
-                val protoEnum =
-                    enumClass.getAnnotation(classOf[ZoomEnum]) match {
-                        case zoomEnum: ZoomEnum => zoomEnum.clazz
-                        case _ => throw new ConvertException(
-                            s"Enumeration $clazz requires a ZoomEnum " +
-                            s"annotation or a custom converter")
-                    }
                 val pojoEnumVal = pojoValue.asInstanceOf[Enum[_]]
-                val enumValue = enumClass.getField(pojoEnumVal.name) match {
-                    case field: Field =>
-                        field.getAnnotation(classOf[ZoomEnumValue]) match {
-                            case zoomValue: ZoomEnumValue => zoomValue.value
-                            case _ => throw new ConvertException(
-                                s"Enumeration $clazz field $pojoValue does " +
-                                s"not have a ZoomEnumValue annotation")
-                        }
-                    case _ => throw new ConvertException(
-                        s"Enumeration $clazz does not have field $pojoValue")
-                }
-                try {
-                    protoEnum.getMethod(ZoomConvert.DescriptorMethod)
-                             .invoke(null)
-                             .asInstanceOf[EnumDescriptor]
-                             .findValueByName(enumValue)
-                } catch {
-                    case e @ (_ : NoSuchMethodException |
-                              _ : IllegalAccessException |
-                              _ : ClassCastException |
-                              _ : NullPointerException) =>
-                        throw new ConvertException(
-                            s"Enumeration $clazz cannot convert field " +
-                            s"$pojoValue because the message is not an " +
-                            s"enumeration or does not contain the value");
-                }
+                val protoValue = enums.get(enumClass).protoValues(pojoEnumVal.ordinal)
+                if (protoValue ne null) protoValue
+                else enumToProto(pojoEnumVal, enumClass)
             case _ => pojoValue
         }
 
@@ -715,35 +839,141 @@ object ZoomConvert {
             case ByteArrayClass => protoValue.asInstanceOf[ByteString].toByteArray
             case UuidClass => UUIDUtil.fromProto(protoValue.asInstanceOf[Commons.UUID])
             case enumClass: Class[_] if enumClass.isEnum =>
-                val protoEnum =
-                    enumClass.getAnnotation(classOf[ZoomEnum]) match {
-                        case zoomEnum: ZoomEnum => zoomEnum.clazz
-                        case _ => throw new ConvertException(
-                            s"Enumeration $clazz requires a ZoomEnum " +
-                            s"annotation or a custom converter")
+                val info = enums.get(enumClass)
+                protoValue match {
+                    case value: EnumValueDescriptor
+                        if (info.pojoValues ne null) &&
+                           (value.getType eq info.descriptor) &&
+                           (info.pojoValues(value.getIndex) ne null) =>
+                        info.pojoValues(value.getIndex)
+                    case _ => enumFromProto(protoValue, enumClass)
+                }
+            case _ => protoValue
+        }
+    }
+
+    /**
+      * The conversion of a Java enumeration annotated with [[ZoomEnum]],
+      * computed once per enumeration class. The Protocol Buffers values are
+      * indexed by the ordinal of the Java constants, and the Java constants
+      * by the index of the Protocol Buffers values. A value is null when it
+      * cannot be converted, in which case the converter uses the slow path
+      * to report the error.
+      */
+    private final class EnumInfo(enumClass: Class[_]) {
+        val descriptor: EnumDescriptor =
+            try {
+                val protoEnum = enumClass.getAnnotation(classOf[ZoomEnum]).clazz
+                protoEnum.getMethod(ZoomConvert.DescriptorMethod)
+                         .invoke(null).asInstanceOf[EnumDescriptor]
+            } catch {
+                case _: ReflectiveOperationException |
+                     _: ClassCastException |
+                     _: NullPointerException => null
+            }
+
+        val protoValues: Array[AnyRef] = {
+            val constants = enumClass.getEnumConstants
+            val values = new Array[AnyRef](constants.length)
+            for (index <- constants.indices) {
+                values(index) = try {
+                    enumToProto(constants(index).asInstanceOf[Enum[_]],
+                                enumClass).asInstanceOf[AnyRef]
+                } catch {
+                    case _: ConvertException => null
+                }
+            }
+            values
+        }
+
+        val pojoValues: Array[AnyRef] =
+            if ((descriptor ne null) &&
+                enumClass.getFields.forall(field =>
+                    !field.isEnumConstant ||
+                    (field.getAnnotation(classOf[ZoomEnumValue]) ne null))) {
+                val values = new Array[AnyRef](descriptor.getValues.size)
+                for (field <- enumClass.getFields if field.isEnumConstant) {
+                    val value = descriptor.findValueByName(
+                        field.getAnnotation(classOf[ZoomEnumValue]).value)
+                    if ((value ne null) && (values(value.getIndex) eq null)) {
+                        values(value.getIndex) = field.get(null)
                     }
-                val protoEnumName = protoValue match {
-                    case value: EnumValueDescriptor => value.getName
-                    case _ => throw new ConvertException(
-                        s"Cannot convert $protoValue to enumeration $clazz " +
-                        s"because is not a Protocol Buffers enum value")
                 }
-                enumClass.getFields.find(field => {
-                    field.isEnumConstant &&
-                    (field.getAnnotation(classOf[ZoomEnumValue]) match {
-                        case zoomValue: ZoomEnumValue =>
-                            zoomValue.value.equals(protoEnumName)
-                        case _ => throw new ConvertException(
-                            s"Enumeration $clazz field $field does not have " +
-                            s"a ZoomEnumValue annotation")
-                    })
-                }) match {
-                    case Some(pojoField) => pojoField.get(null)
-                    case None => throw new ConvertException(
-                        s"Enumeration $clazz does not have a field matching " +
-                        s"value $protoValue of Protocol Buffers $protoEnum")
+                values
+            } else null
+    }
+
+    private val enums = new ClassValue[EnumInfo] {
+        override def computeValue(clazz: Class[_]): EnumInfo = {
+            new EnumInfo(clazz)
+        }
+    }
+
+    private def enumToProto(pojoEnumVal: Enum[_], enumClass: Class[_])
+    : EnumValueDescriptor = {
+        val protoEnum =
+            enumClass.getAnnotation(classOf[ZoomEnum]) match {
+                case zoomEnum: ZoomEnum => zoomEnum.clazz
+                case _ => throw new ConvertException(
+                    s"Enumeration $enumClass requires a ZoomEnum " +
+                    s"annotation or a custom converter")
+            }
+        val enumValue = enumClass.getField(pojoEnumVal.name) match {
+            case field: Field =>
+                field.getAnnotation(classOf[ZoomEnumValue]) match {
+                    case zoomValue: ZoomEnumValue => zoomValue.value
+                    case _ => throw new ConvertException(
+                        s"Enumeration $enumClass field $pojoEnumVal does " +
+                        s"not have a ZoomEnumValue annotation")
                 }
-            case _ => protoValue
+            case _ => throw new ConvertException(
+                s"Enumeration $enumClass does not have field $pojoEnumVal")
+        }
+        try {
+            protoEnum.getMethod(ZoomConvert.DescriptorMethod)
+                     .invoke(null)
+                     .asInstanceOf[EnumDescriptor]
+                     .findValueByName(enumValue)
+        } catch {
+            case e @ (_ : NoSuchMethodException |
+                      _ : IllegalAccessException |
+                      _ : ClassCastException |
+                      _ : NullPointerException) =>
+                throw new ConvertException(
+                    s"Enumeration $enumClass cannot convert field " +
+                    s"$pojoEnumVal because the message is not an " +
+                    s"enumeration or does not contain the value");
+        }
+    }
+
+    private def enumFromProto(protoValue: Any, enumClass: Class[_]): Any = {
+        val protoEnum =
+            enumClass.getAnnotation(classOf[ZoomEnum]) match {
+                case zoomEnum: ZoomEnum => zoomEnum.clazz
+                case _ => throw new ConvertException(
+                    s"Enumeration $enumClass requires a ZoomEnum " +
+                    s"annotation or a custom converter")
+            }
+        val protoEnumName = protoValue match {
+            case value: EnumValueDescriptor => value.getName
+            case _ => throw new ConvertException(
+                s"Cannot convert $protoValue to enumeration $enumClass " +
+                s"because is not a Protocol Buffers enum value")
+        }
+        enumClass.getFields.find(field => {
+            field.isEnumConstant &&
+            (field.getAnnotation(classOf[ZoomEnumValue]) match {
+                case zoomValue: ZoomEnumValue =>
+                    zoomValue.value.equals(protoEnumName)
+                case _ => throw new ConvertException(
+                    s"Enumeration $enumClass field $field does not have " +
+                    s"a ZoomEnumValue annotation")
+            })
+        }) match {
+            case Some(pojoField) => pojoField.get(null)
+            case None => throw new ConvertException(
+                s"Enumeration $enumClass does not have a field matching " +
+                s"value $protoValue of Protocol Buffers $protoEnum")
         }
     }
 
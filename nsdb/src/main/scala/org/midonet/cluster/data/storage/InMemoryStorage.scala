@@ -607,6 +607,13 @@ class InMemoryStorage extends Storage with StateStorage with StateTableStorage
         classes.get(clazz).asInstanceOf[ClassNode[T]].getAll
     }
 
+    override def getAllIds(clazz: Class[_]): Future[Seq[String]] = {
+        assertBuilt()
+        assertRegistered(clazz)
+
+        Future.successful(classes.get(clazz).ids.toSeq)
+    }
+
     override def exists(clazz: Class[_], id: ObjId): Future[Boolean] = {
         assertBuilt()
         assertRegistered(clazz)
@@ -19,6 +19,7 @@ import java.util.Properties
 
 import scala.collection.JavaConverters._
 import scala.collection.mutable
+import scala.concurrent.Future
 import scala.util.control.NonFatal
 
 import com.google.common.collect.{ArrayListMultimap, ImmutableListMultimap, Multimap, Multimaps}
@@ -314,6 +315,12 @@ trait Storage extends ReadOnlyStorage {
      */
     def observable[T](clazz: Class[T]): Observable[Observable[T]]
 
+    /**
+      * Asynchronously gets the identifiers of all instances of the specified
+      * class, in no particular order, without reading the instances.
+      */
+    def getAllIds(clazz: Class[_]): Future[Seq[String]]
+
     /**
       * Tries to execute a transaction using the current write and retry policy.
       */
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.cluster.data.storage
+
+import java.io._
+import java.nio.file.{Files, Path, StandardCopyOption}
+import java.util.Collections
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
+
+import scala.collection.JavaConverters._
+import scala.util.control.NonFatal
+
+import org.apache.zookeeper.data.Stat
+import org.slf4j.LoggerFactory
+
+import org.midonet.cluster.data.storage.TransactionManager.Key
+
+object StorageSnapshot {
+
+    private final val Magic = 0x4d4e5353
+    private final val FormatVersion = 1
+
+    /**
+      * A snapshot entry, with the data of an object and the version and the
+      * modification transaction identifier of its node.
+      */
+    case class Entry(version: Int, mzxid: Long, data: Array[Byte]) {
+        def stat: Stat = {
+            val stat = new Stat
+            stat.setVersion(version)
+            stat.setMzxid(mzxid)
+            stat
+        }
+    }
+
+}
+
+/**
+  * A local snapshot of the objects watched through a [[ZookeeperObjectMapper]],
+  * persisted to the given file. The object observables requested with the
+  * snapshot emit the snapshot data for an object before the data read from
+  * ZooKeeper, and skip the latter if the object has not been modified since
+  * the snapshot. This allows a restarted client to use the objects it was
+  * watching without waiting for ZooKeeper.
+  *
+  * Only the objects watched since the previous write are written to file,
+  * such that the objects a client no longer uses, including those loaded
+  * from file and not watched again, do not accumulate in the snapshot.
+  *
+  * The snapshot is bound to the ZOOM path of the storage, such that a
+  * snapshot written for a different NSDB or data version is discarded.
+  * Reading and updating the snapshot is thread-safe.
+  */
+class StorageSnapshot(path: Path, zoomPath: String) {
+
+    import StorageSnapshot._
+
+    private val log = LoggerFactory.getLogger("org.midonet.nsdb.snapshot")
+
+    private val entries = new ConcurrentHashMap[Key, Entry]
+    private val dirty = new AtomicBoolean(false)
+    private val watched =
+        Collections.newSetFromMap(new ConcurrentHashMap[Key, java.lang.Boolean])
+    private val released =
+        Collections.newSetFromMap(new ConcurrentHashMap[Key, java.lang.Boolean])
+
+    /** The number of objects in the snapshot. */
+    def size: Int = entries.size
+
+    /** Returns the snapshot entry for an object, or null if none. */
+    def get(clazz: Class[_], id: String): Entry = {
+        entries.get(Key(clazz, id))
+    }
+
+    /**
+      * Records the data for an object at the given node version and
+      * modification transaction identifier.
+      */
+    def put(clazz: Class[_], id: String, stat: Stat, data: Array[Byte]): Unit = {
+        if (data eq null) {
+            return
+        }
+        val key = Key(clazz, id)
+        val entry = entries.get(key)
+        if ((entry eq null) || entry.mzxid != stat.getMzxid) {
+            entries.put(key, Entry(stat.getVersion, stat.getMzxid, data))
+            dirty.set(true)
+        }
+    }
+
+    /** Removes an object from the snapshot. */
+    def remove(clazz: Class[_], id: String): Unit = {
+        if (entries.remove(Key(clazz, id)) ne null) {
+            dirty.set(true)
+        }
+    }
+
+    /** Marks an object as watched, such that it is kept in the snapshot. */
+    def watch(clazz: Class[_], id: String): Unit = {
+        watched.add(Key(clazz, id))
+    }
+
+    /**
+      * Marks an object as no longer watched. The object is written to file
+      * one more time, and then removed from the snapshot unless it is watched
+      * again.
+      */
+    def unwatch(clazz: Class[_], id: String): Unit = {
+        val key = Key(clazz, id)
+        watched.remove(key)
+        released.add(key)
+    }
+
+    /**
+      * Loads the snapshot from file, replacing the current entries, and
+      * returns the number of objects loaded. Objects whose class cannot be
+      * loaded are skipped. If the file does not exist, or if it is invalid
+      * or was written for a different ZOOM path, the snapshot is empty.
+      */
+    def load(): Int = {
+        entries.clear()
+        dirty.set(false)
+        if (!Files.exists(path)) {
+            return 0
+        }
+        val start = System.nanoTime()
+        val input = new DataInputStream(
+            new BufferedInputStream(Files.newInputStream(path)))
+        try {
+            if (input.readInt() != Magic ||
+                input.readInt() != FormatVersion ||
+                input.readUTF() != zoomPath) {
+                log.info(s"Ignoring incompatible topology snapshot $path")
+                return 0
+            }
+            val count = input.readInt()
+            var index = 0
+            while (index < count) {
+                val className = input.readUTF()
+                val id = input.readUTF()
+                val version = input.readInt()
+                val mzxid = input.readLong()
+                val data = new Array[Byte](input.readInt())
+                input.readFully(data)
+                try {
+                    entries.put(Key(Class.forName(className), id),
+                                Entry(version, mzxid, data))
+                } catch {
+                    case _: ClassNotFoundException =>
+                        log.debug(s"Ignoring object $id of unknown class " +
+                                  s"$className")
+                }
+                index += 1
+            }
+            log.info(s"Loaded ${entries.size} objects from topology " +
+                     s"snapshot $path in " +
+                     s"${(System.nanoTime() - start) / 1000000} ms")
+            entries.size
+        } catch {
+            case NonFatal(e) =>
+                log.warn(s"Failed to load topology snapshot $path", e)
+                entries.clear()
+                0
+        } finally {
+            input.close()
+        }
+    }
+
+    /**
+      * Removes from the snapshot the objects that have not been watched since
+      * the last write.
+      */
+    private def prune(): Unit = {
+        val iterator = entries.keySet.iterator()
+        while (iterator.hasNext) {
+            val key = iterator.next()
+            if (!watched.contains(key) && !released.contains(key)) {
+                iterator.remove()
+                dirty.set(true)
+            }
+        }
+        released.clear()
+    }
+
+    /**
+      * Writes the snapshot to file if it has been modified since the last
+      * write, after removing the objects that are no longer watched. The
+      * snapshot is written to a temporary file which then replaces
+      * the snapshot file, such that a failed write never leaves a partial
+      * snapshot.
+      */
+    @throws[IOException]
+    def write(): Unit = {
+        prune()
+        if (!dirty.getAndSet(false)) {
+            return
+        }
+        val start = System.nanoTime()
+        if (path.getParent ne null) {
+            Files.createDirectories(path.getParent)
+        }
+        val temp = path.resolveSibling(path.getFileName + ".tmp")
+        val snapshot = entries.asScala.toSeq
+        val output = new DataOutputStream(
+            new BufferedOutputStream(Files.newOutputStream(temp)))
+        try {
+            output.writeInt(Magic)
+            output.writeInt(FormatVersion)
+            output.writeUTF(zoomPath)
+            output.writeInt(snapshot.size)
+            for ((key, entry) <- snapshot) {
+                output.writeUTF(key.clazz.getName)
+                output.writeUTF(key.id)
+                output.writeInt(entry.version)
+                output.writeLong(entry.mzxid)
+                output.writeInt(entry.data.length)
+                output.write(entry.data)
+            }
+        } catch {
+            case NonFatal(e) =>
+                dirty.set(true)
+                output.close()
+                Files.deleteIfExists(temp)
+                throw e
+        }
+        output.close()
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE)
+        log.debug(s"Wrote ${snapshot.size} objects to topology snapshot " +
+                  s"$path in ${(System.nanoTime() - start) / 1000000} ms")
+    }
+
+}
@@ -197,12 +197,18 @@ abstract class TransactionManager(classes: ClassesMap, bindings: BindingsMap)
     /** Gets all objects of the specified class within the context of the
       * current transaction. The objects are either guaranteed to not be
       * modified until the transaction is committed, or the transaction will
-      * fail with a [[ConcurrentModificationException]]. */
+      * fail with a [[ConcurrentModificationException]]. The objects include
+      * those created and exclude those deleted by this transaction. */
     @throws[InternalObjectMapperException]
     @throws[ConcurrentModificationException]
     override def getAll[T](clazz: Class[T]): Seq[T] = {
         val ids = getIds(clazz).filterNot { id => isDeleted(getKey(clazz, id)) }
-        getAll(clazz, ids)
+        val storedIds = ids.map(getIdString).toSet
+        val createdIds = ops.collect {
+            case (Key(c, id), TxCreate(_, _))
+                if c == clazz && !storedIds.contains(id) => id
+        }
+        getAll(clazz, ids ++ createdIds)
     }
 
     /** Gets the specified objects within the context of the current transaction.
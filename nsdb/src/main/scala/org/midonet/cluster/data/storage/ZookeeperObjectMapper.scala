@@ -15,14 +15,15 @@
  */
 package org.midonet.cluster.data.storage
 
+import java.nio.file.Path
 import java.util.ConcurrentModificationException
 import java.util.concurrent.Executors._
 import java.util.concurrent.TimeUnit
-import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.{AtomicInteger, AtomicLong}
 
 import scala.annotation.tailrec
 import scala.collection.JavaConverters._
-import scala.collection.{breakOut, mutable}
+import scala.collection.mutable
 import scala.collection.concurrent.TrieMap
 import scala.concurrent.{Future, Promise}
 import scala.util.control.NonFatal
@@ -33,6 +34,7 @@ import com.google.common.util.concurrent.SettableFuture
 import org.apache.curator.framework.CuratorFramework
 import org.apache.curator.framework.api.transaction.CuratorTransactionFinal
 import org.apache.curator.framework.api.{BackgroundCallback, CuratorEvent, CuratorEventType}
+import org.apache.curator.framework.recipes.cache.ChildData
 import org.apache.curator.framework.recipes.locks.InterProcessSemaphoreMutex
 import org.apache.curator.utils.ZKPaths
 import org.apache.zookeeper.KeeperException._
@@ -43,7 +45,7 @@ import org.apache.zookeeper.data.Stat
 import org.slf4j.{Logger, LoggerFactory}
 
 import rx.Observable.OnSubscribe
-import rx.{Notification, Observable, Subscriber}
+import rx.{Notification, Observable, Observer, Subscriber}
 
 import org.midonet.cluster.data.ZoomMetadata.ZoomOwner
 import org.midonet.cluster.data.storage.TransactionManager._
@@ -53,9 +55,9 @@ import org.midonet.cluster.data.{Obj, ObjId, getIdString}
 import org.midonet.cluster.services.state.client.StateTableClient
 import org.midonet.cluster.storage.MidonetBackendConfig
 import org.midonet.cluster.util.{NodeObservable, NodeObservableClosedException, PathCacheClosedException}
-import org.midonet.util.concurrent.{CallingThreadExecutionContext, NamedThreadFactory}
+import org.midonet.util.concurrent.{CallingThreadExecutionContext, Executors, NamedThreadFactory}
 import org.midonet.util.eventloop.Reactor
-import org.midonet.util.functors.makeFunc1
+import org.midonet.util.functors.{makeFunc0, makeFunc1, makeRunnable}
 import org.midonet.util.{ImmediateRetriable, Retriable}
 
 /**
@@ -126,13 +128,19 @@ class ZookeeperObjectMapper(config: MidonetBackendConfig,
     private[storage] val modelPath = zoomPath + s"/models"
     private[storage] val objectsPath = zoomPath + s"/objects"
     @volatile private var lockFree = false
+    private val binaryStorage = config.binaryStorage
 
     private val executor = newSingleThreadExecutor(
         new NamedThreadFactory("zoom", isDaemon = true))
+    private val bulkReadWindow = Math.max(config.bulkReadWindow, 1)
+    private val deserializeExecutor = newFixedThreadPool(
+        Math.max(config.bulkReadThreads, 1),
+        new NamedThreadFactory("zoom-deserializer", isDaemon = true))
 
     private val objectObservableRef = new AtomicLong()
 
     private val objectObservables = new TrieMap[Key, ObjectObservable]
+    private val snapshotObservables = new TrieMap[Key, ObjectObservable]
     private val classObservables = new TrieMap[Class[_], ClassObservable]
 
     private val topologyLockWatcher = new Watcher {
@@ -309,7 +317,7 @@ class ZookeeperObjectMapper(config: MidonetBackendConfig,
                 case TxCreate(obj, change) =>
                     var path = objectPath(key.clazz, key.id)
                     Log.debug(s"Create: $path")
-                    txn.create.forPath(path, serialize(obj))
+                    txn.create.forPath(path, serialize(obj, binaryStorage))
 
                     path = altObjectPath(key.clazz, key.id)
                     Log.debug(s"Create: $path")
@@ -318,7 +326,8 @@ class ZookeeperObjectMapper(config: MidonetBackendConfig,
                 case TxUpdate(obj, ver, change) =>
                     var path = objectPath(key.clazz, key.id)
                     Log.debug(s"Update ($ver): $path")
-                    txn.setData().withVersion(ver).forPath(path, serialize(obj))
+                    txn.setData().withVersion(ver)
+                       .forPath(path, serialize(obj, binaryStorage))
 
                     path = altObjectPath(key.clazz, key.id)
                     raw.get(key) match {
@@ -537,6 +546,16 @@ class ZookeeperObjectMapper(config: MidonetBackendConfig,
         metrics.build(this)
     }
 
+    /**
+      * Stops the threads deserializing the bulk reads. The bulk reads
+      * issued after this call fail.
+      */
+    def shutdown(): Unit = {
+        Executors.shutdown(deserializeExecutor) { _ =>
+            Log warn "Exception while stopping the deserializer executor"
+        }
+    }
+
     /**
       * Enables the topology lock.
       */
@@ -544,6 +563,18 @@ class ZookeeperObjectMapper(config: MidonetBackendConfig,
         ZKPaths.mkdirs(curator.getZookeeperClient.getZooKeeper, topologyLockPath)
     }
 
+    /**
+      * Returns a local snapshot for this storage stored in the given file,
+      * after loading it from file. The snapshot is only used by the object
+      * observables requested with the snapshot, and the caller is responsible
+      * for writing it to file.
+      */
+    def loadSnapshot(path: Path): StorageSnapshot = {
+        val snapshot = new StorageSnapshot(path, zoomPath)
+        snapshot.load()
+        snapshot
+    }
+
     /**
      * Ensures that the class nodes in Zookeeper for each provided class exist,
      * creating them if needed.
@@ -661,12 +692,19 @@ class ZookeeperObjectMapper(config: MidonetBackendConfig,
         p.future
     }
 
+    /**
+      * Gets the specified instances of the specified class from ZooKeeper.
+      * The reads are pipelined in a window of at most `bulk_read_window`
+      * outstanding reads, and large batches are deserialized in parallel.
+      * The objects are returned in the order of the identifiers.
+      */
     @throws[ServiceUnavailableException]
     override def getAll[T](clazz: Class[T], ids: Seq[_ <: ObjId])
     : Future[Seq[T]] = {
         assertBuilt()
         assertRegistered(clazz)
-        Future.sequence(ids.map(get(clazz, _)))(breakOut, CallingThreadExecutionContext)
+        if (ids.isEmpty) Future.successful(Seq.empty)
+        else new BulkRead[T](clazz, ids.toIndexedSeq).start()
     }
 
     /**
@@ -703,6 +741,43 @@ class ZookeeperObjectMapper(config: MidonetBackendConfig,
         all.future
     }
 
+    /**
+      * Gets the identifiers of all instances of the specified class from
+      * ZooKeeper, by reading the children of the class node.
+      */
+    @throws[ServiceUnavailableException]
+    override def getAllIds(clazz: Class[_]): Future[Seq[String]] = {
+        assertBuilt()
+        assertRegistered(clazz)
+
+        val ids = Promise[Seq[String]]()
+        val start = System.nanoTime()
+        val cb = new BackgroundCallback {
+            override def processResult(client: CuratorFramework,
+                                       evt: CuratorEvent): Unit = {
+                metrics.performance.addReadChildrenLatency(
+                    System.nanoTime() - start)
+                if (evt.getResultCode == Code.OK.intValue()) {
+                    ids trySuccess evt.getChildren.asScala
+                } else {
+                    ids tryFailure new InternalObjectMapperException(
+                        KeeperException.create(Code.get(evt.getResultCode),
+                                               evt.getPath))
+                }
+            }
+        }
+
+        val path = classPath(clazz)
+        try {
+            curator.getChildren.inBackground(cb).forPath(path)
+        } catch {
+            case ex: Exception => // Should have been created on build()
+                throw new InternalObjectMapperException(
+                    s"Node $path does not exist in Zookeeper.", ex)
+        }
+        ids.future
+    }
+
     /**
      * Returns true if the specified object exists in Zookeeper.
      */
@@ -799,6 +874,33 @@ class ZookeeperObjectMapper(config: MidonetBackendConfig,
         })
     }
 
+    /**
+      * Returns an observable for the specified object that emits the data of
+      * the object from the given snapshot first, and then the data from
+      * ZooKeeper only if the object has been modified since the snapshot was
+      * taken. The data received from ZooKeeper updates the snapshot, and the
+      * object is marked as watched in the snapshot while the observable has
+      * subscribers.
+      *
+      * These observables are cached separately from the ones returned by
+      * [[observable(Class, ObjId)]], such that only the callers of this
+      * method receive the snapshot data. All callers must use the same
+      * snapshot.
+      */
+    @throws[ServiceUnavailableException]
+    def observable[T](clazz: Class[T], id: ObjId, snapshot: StorageSnapshot)
+    : Observable[T] = {
+        assertBuilt()
+        assertRegistered(clazz)
+
+        Observable.create(new OnSubscribe[T] {
+            override def call(child: Subscriber[_ >: T]): Unit = {
+                cachedObservable[T](clazz, id, snapshot, OnCloseDefault)
+                    .subscribe(child)
+            }
+        })
+    }
+
     /**
       * Returns a cache-able, recoverable observable for the specified object.
       * If an observable for the object already exists in the cache, then
@@ -809,25 +911,44 @@ class ZookeeperObjectMapper(config: MidonetBackendConfig,
     protected override def internalObservable[T](clazz: Class[T], id: ObjId,
                                                  onClose: => Unit)
     : Observable[T] = {
+        cachedObservable(clazz, id, snapshot = null, onClose)
+    }
+
+    /**
+      * Returns the cached observable for the specified object, using the
+      * snapshot observables cache if a snapshot is given.
+      */
+    private def cachedObservable[T](clazz: Class[T], id: ObjId,
+                                    snapshot: StorageSnapshot,
+                                    onClose: => Unit): Observable[T] = {
         val key = Key(clazz, getIdString(id))
         val path = objectPath(clazz, id)
+        val cache =
+            if (snapshot eq null) objectObservables else snapshotObservables
 
-        objectObservables.getOrElse(key, {
+        cache.getOrElse(key, {
             val ref = objectObservableRef.getAndIncrement()
 
             val nodeObservable = NodeObservable.create(
                 curator, path, metrics, completeOnDelete = true, {
-                    objectObservables.remove(key, ObjectObservable(ref))
+                    if (cache.remove(key, ObjectObservable(ref)) &&
+                        (snapshot ne null)) {
+                        snapshot.unwatch(key.clazz, key.id)
+                    }
                     onClose
                 })
 
-            val objectObservable = nodeObservable
+            val dataObservable =
+                if (snapshot eq null) nodeObservable
+                else snapshotObservable(snapshot, key, path, nodeObservable)
+
+            val objectObservable = dataObservable
                 .map[Notification[T]](deserializerOf(clazz))
                 .dematerialize().asInstanceOf[Observable[T]]
                 .onErrorResumeNext(makeFunc1((t: Throwable) => t match {
                     case e: NodeObservableClosedException =>
                         metrics.error.objectObservableClosedCounter.inc()
-                        internalObservable(clazz, id, OnCloseDefault)
+                        cachedObservable(clazz, id, snapshot, OnCloseDefault)
                     case e: NoNodeException =>
                         metrics.error.objectNotFoundExceptionCounter.inc()
                         Observable.error(new NotFoundException(clazz, id))
@@ -838,10 +959,117 @@ class ZookeeperObjectMapper(config: MidonetBackendConfig,
 
             val entry = ObjectObservable(ref, nodeObservable, objectObservable)
 
-            objectObservables.putIfAbsent(key, entry).getOrElse(entry)
+            val cached = cache.putIfAbsent(key, entry).getOrElse(entry)
+            if ((cached eq entry) && (snapshot ne null)) {
+                snapshot.watch(key.clazz, key.id)
+            }
+            cached
         }).objectObservable.asInstanceOf[Observable[T]]
     }
 
+    /**
+      * Reads a batch of objects of the same class. The read keeps at most
+      * `bulkReadWindow` outstanding requests, issuing the next read from the
+      * callback of a completed one. Batches of at least
+      * `ParallelDeserializeThreshold` objects are deserialized on the
+      * deserialization executor, otherwise on the callback thread. The
+      * results are stored by index, and the future completes when all
+      * objects are deserialized, or with the first failure.
+      */
+    private class BulkRead[T](clazz: Class[T], ids: IndexedSeq[ObjId])
+        extends BackgroundCallback {
+
+        private val results = new Array[Any](ids.size)
+        private val promise = Promise[Seq[T]]()
+        private val next = new AtomicInteger()
+        private val remaining = new AtomicInteger(ids.size)
+        private val parallel = ids.size >= ParallelDeserializeThreshold
+        private val startTime = System.nanoTime()
+
+        def start(): Future[Seq[T]] = {
+            var index = 0
+            while (index < bulkReadWindow && index < ids.size) {
+                issue()
+                index += 1
+            }
+            promise.future
+        }
+
+        private def issue(): Unit = {
+            val index = next.getAndIncrement()
+            if (index < ids.size && !promise.isCompleted) {
+                try {
+                    curator.getData.inBackground(this, Int.box(index))
+                           .forPath(objectPath(clazz, ids(index)))
+                } catch {
+                    case NonFatal(e) =>
+                        promise.tryFailure(new InternalObjectMapperException(e))
+                }
+            }
+        }
+
+        override def processResult(client: CuratorFramework,
+                                   event: CuratorEvent): Unit = {
+            val index = event.getContext.asInstanceOf[Integer].intValue()
+            issue()
+            if (parallel) {
+                try deserializeExecutor.execute(makeRunnable {
+                    complete(index, event)
+                }) catch {
+                    case NonFatal(e) => promise.tryFailure(e)
+                }
+            } else {
+                complete(index, event)
+            }
+        }
+
+        private def complete(index: Int, event: CuratorEvent): Unit = {
+            try {
+                results(index) = tryDeserialize(clazz, ids(index), event)
+                if (remaining.decrementAndGet() == 0) {
+                    metrics.performance.addBulkReadLatency(
+                        ids.size, System.nanoTime() - startTime)
+                    promise.trySuccess(results.toSeq.asInstanceOf[Seq[T]])
+                }
+            } catch {
+                case NonFatal(e) => promise.tryFailure(e)
+            }
+        }
+    }
+
+    /**
+      * Returns an observable that emits the snapshot data of an object, if
+      * any, followed by the node data from ZooKeeper. The node data is
+      * skipped while it has the same modification transaction as the last
+      * emitted data, such that an object that has not changed since the
+      * snapshot is emitted once. The node data updates the snapshot, and the
+      * object is removed from the snapshot when deleted.
+      */
+    private def snapshotObservable(snapshot: StorageSnapshot, key: Key,
+                                   path: String,
+                                   nodeObservable: Observable[ChildData])
+    : Observable[ChildData] = {
+        val recorded = nodeObservable.doOnEach(new Observer[ChildData] {
+            override def onNext(data: ChildData): Unit = {
+                snapshot.put(key.clazz, key.id, data.getStat, data.getData)
+            }
+            override def onCompleted(): Unit = {
+                snapshot.remove(key.clazz, key.id)
+            }
+            override def onError(e: Throwable): Unit = e match {
+                case _: NoNodeException => snapshot.remove(key.clazz, key.id)
+                case _ =>
+            }
+        })
+        Observable.defer(makeFunc0 {
+            val entry = snapshot.get(key.clazz, key.id)
+            if (entry eq null) recorded
+            else recorded.startWith(new ChildData(path, entry.stat, entry.data))
+                         .distinctUntilChanged(makeFunc1((data: ChildData) =>
+                             Long.box(data.getStat.getMzxid)))
+        })
+    }
+
     /**
      * Refer to the interface documentation for functionality.
      *
@@ -962,6 +1190,10 @@ object ZookeeperObjectMapper {
 
     private case class ObjRaw(data: Array[Byte], version: Int)
 
+    /** The minimum number of objects read in bulk that are deserialized in
+      * parallel. */
+    private final val ParallelDeserializeThreshold = 32
+
     protected val Log = LoggerFactory.getLogger("org.midonet.nsdb")
     private val OnCloseDefault = { }
 
@@ -26,7 +26,7 @@ import scala.util.control.NonFatal
 
 import com.fasterxml.jackson.core.JsonFactory
 import com.fasterxml.jackson.databind.ObjectMapper
-import com.google.protobuf.{Message, TextFormat}
+import com.google.protobuf.{CodedOutputStream, Message, TextFormat}
 
 import org.apache.curator.framework.recipes.cache.ChildData
 
@@ -40,6 +40,13 @@ import org.midonet.util.functors.makeFunc1
 
 private[storage] object ZoomSerializer {
 
+    /**
+      * The first byte of a message stored in the protobuf binary wire format.
+      * Messages stored in the protobuf text format never start with this
+      * byte, such that objects stored in both formats can coexist.
+      */
+    final val BinaryHeader: Byte = 0x00
+
     private val JsonFactory = new JsonFactory(new ObjectMapper())
     private val ProtoParser = createProtoParser
     private val Utf8 = Charset.forName("UTF-8")
@@ -47,18 +54,32 @@ private[storage] object ZoomSerializer {
 
     private val Deserializers =
         new TrieMap[Class[_], Func1[ChildData, Notification[_]]]
+    private val DefaultInstances = new TrieMap[Class[_], Message]
 
     /**
-      * Serializes an object to a byte array for writing to storage.
+      * Serializes an object to a byte array for writing to storage. If
+      * `binary` is true, protobuf messages are serialized in the binary wire
+      * format, which can only be read by this or newer versions. Otherwise,
+      * they are serialized in the text format.
       */
     @throws[InternalObjectMapperException]
-    def serialize(obj: Obj): Array[Byte] = {
+    def serialize(obj: Obj, binary: Boolean = false): Array[Byte] = {
         obj match {
+            case message: Message if binary => serializeBinaryMessage(message)
             case message: Message => serializeMessage(message)
             case _ => serializeJava(obj)
         }
     }
 
+    /**
+      * Indicates whether the data read from storage is a message serialized
+      * in the binary wire format.
+      */
+    @inline
+    def isBinary(data: Array[Byte]): Boolean = {
+        (data ne null) && data.length > 0 && data(0) == BinaryHeader
+    }
+
     /**
       * Deserializes an object from a byte array read from storage.
       */
@@ -197,14 +218,31 @@ private[storage] object ZoomSerializer {
         builder.toString.getBytes(Utf8)
     }
 
+    private def serializeBinaryMessage(message: Message): Array[Byte] = {
+        val data = new Array[Byte](message.getSerializedSize + 1)
+        data(0) = BinaryHeader
+        val output = CodedOutputStream.newInstance(data, 1, data.length - 1)
+        message.writeTo(output)
+        output.checkNoSpaceLeft()
+        data
+    }
+
     @throws[InternalObjectMapperException]
     private def deserializeMessage[T](data: Array[Byte], clazz: Class[T]): T = {
         try {
-            val builder = clazz.getMethod("newBuilder").invoke(null)
-                .asInstanceOf[Message.Builder]
-            ProtoParser.merge(new String(data, Utf8), builder)
-            builder.build().asInstanceOf[T]
+            if (isBinary(data)) {
+                defaultInstanceOf(clazz).getParserForType
+                    .parseFrom(data, 1, data.length - 1).asInstanceOf[T]
+            } else {
+                val builder = defaultInstanceOf(clazz).newBuilderForType()
+                ProtoParser.merge(new String(data, Utf8), builder)
+                builder.build().asInstanceOf[T]
+            }
         } catch {
+            case NonFatal(e) if isBinary(data) =>
+                throw new InternalObjectMapperException(
+                    s"Could not parse ${data.length} bytes of binary data " +
+                    s"from ZooKeeper for ${clazz.getSimpleName}", e)
             case NonFatal(e) =>
                 throw new InternalObjectMapperException(
                     s"Could not parse data from ZooKeeper:\n " +
@@ -212,6 +250,12 @@ private[storage] object ZoomSerializer {
         }
     }
 
+    private def defaultInstanceOf(clazz: Class[_]): Message = {
+        DefaultInstances.getOrElseUpdate(
+            clazz, clazz.getMethod("getDefaultInstance").invoke(null)
+                        .asInstanceOf[Message])
+    }
+
     private def createProtoParser: TextFormat.Parser = {
         val builder = TextFormat.Parser.newBuilder()
         val builderClass = builder.getClass
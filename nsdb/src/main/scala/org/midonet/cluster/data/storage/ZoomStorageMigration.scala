@@ -0,0 +1,136 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.midonet.cluster.data.storage
+
+import scala.collection.JavaConverters._
+
+import com.google.protobuf.Message
+import com.typesafe.scalalogging.Logger
+
+import org.apache.curator.framework.CuratorFramework
+import org.apache.zookeeper.KeeperException.{BadVersionException, NoNodeException}
+import org.apache.zookeeper.data.Stat
+import org.slf4j.LoggerFactory
+
+import org.midonet.cluster.data.Obj
+import org.midonet.cluster.data.storage.ZoomSerializer.{deserialize, isBinary, serialize}
+
+object ZoomStorageMigration {
+
+    /**
+      * The statistics of a migration.
+      * @param objects The number of objects read.
+      * @param migrated The number of objects rewritten in the binary format.
+      * @param conflicts The number of objects that were modified or deleted
+      *                  concurrently with the migration, and which have not
+      *                  been rewritten.
+      * @param bytesBefore The total size of the objects before the migration.
+      * @param bytesAfter The total size of the objects after the migration.
+      */
+    case class MigrationStats(objects: Long, migrated: Long, conflicts: Long,
+                              bytesBefore: Long, bytesAfter: Long) {
+        def +(that: MigrationStats): MigrationStats = {
+            MigrationStats(objects + that.objects, migrated + that.migrated,
+                           conflicts + that.conflicts,
+                           bytesBefore + that.bytesBefore,
+                           bytesAfter + that.bytesAfter)
+        }
+    }
+
+    final val NoStats = MigrationStats(0L, 0L, 0L, 0L, 0L)
+
+}
+
+/**
+  * Rewrites the Protocol Buffers objects of a [[ZookeeperObjectMapper]] that
+  * are stored in the text format using the binary format. The migration can
+  * run while the NSDB is in use: every object is rewritten conditionally on
+  * the version read, such that an object modified concurrently is skipped
+  * and left with the data written by the concurrent update. Objects that are
+  * already stored in the binary format are not modified, such that the
+  * migration can be resumed or repeated.
+  *
+  * The objects should only be migrated when all MidoNet nodes can read the
+  * binary format.
+  */
+class ZoomStorageMigration(store: ZookeeperObjectMapper,
+                           curator: CuratorFramework) {
+
+    import ZoomStorageMigration._
+
+    private val log = Logger(LoggerFactory.getLogger("org.midonet.nsdb"))
+
+    /**
+      * Migrates the objects of all registered message classes, and returns
+      * the migration statistics.
+      */
+    def migrate(): MigrationStats = {
+        store.objectClasses.keys.foldLeft(NoStats) { (stats, clazz) =>
+            if (classOf[Message].isAssignableFrom(clazz))
+                stats + migrate(clazz)
+            else stats
+        }
+    }
+
+    /**
+      * Migrates the objects of the given message class, and returns the
+      * migration statistics.
+      */
+    def migrate(clazz: Class[_]): MigrationStats = {
+        val classPath = store.classPath(clazz)
+        val ids = try curator.getChildren.forPath(classPath).asScala
+                  catch { case _: NoNodeException => Seq.empty }
+
+        var objects = 0L
+        var migrated = 0L
+        var conflicts = 0L
+        var bytesBefore = 0L
+        var bytesAfter = 0L
+
+        for (id <- ids) {
+            val path = s"$classPath/$id"
+            val stat = new Stat
+            try {
+                val data = curator.getData.storingStatIn(stat).forPath(path)
+                objects += 1
+                if (isBinary(data)) {
+                    bytesBefore += data.length
+                    bytesAfter += data.length
+                } else {
+                    val binaryData =
+                        serialize(deserialize(data, clazz).asInstanceOf[Obj],
+                                  binary = true)
+                    curator.setData().withVersion(stat.getVersion)
+                           .forPath(path, binaryData)
+                    migrated += 1
+                    bytesBefore += data.length
+                    bytesAfter += binaryData.length
+                }
+            } catch {
+                case _: BadVersionException | _: NoNodeException =>
+                    log.debug(s"Object ${clazz.getSimpleName}:$id modified " +
+                              "during migration: skipping")
+                    conflicts += 1
+            }
+        }
+
+        log.info(s"Migrated $migrated of $objects ${clazz.getSimpleName} " +
+                 s"objects to binary storage with $conflicts conflicts")
+        MigrationStats(objects, migrated, conflicts, bytesBefore, bytesAfter)
+    }
+
+}
@@ -54,6 +54,10 @@ class StoragePerformanceMetrics(registry: MetricRegistry) {
         registry.timer(name(classOf[StorageTimer], "write"))
     private val multiTimer =
         registry.timer(name(classOf[StorageTimer], "multi"))
+    private val bulkReadTimer =
+        registry.timer(name(classOf[StorageTimer], "bulkRead"))
+    private val bulkReadSize =
+        registry.histogram(name(classOf[StorageHistogram], "bulkReadSize"))
 
     private val stateTableReadLatency =
         registry.histogram(name(classOf[StorageHistogram], "stateTable",
@@ -77,6 +81,15 @@ class StoragePerformanceMetrics(registry: MetricRegistry) {
     def addMultiLatency(latencyInNanos: Long): Unit =
         multiTimer.update(latencyInNanos, NANOSECONDS)
 
+    /**
+      * Records the latency of reading a batch of objects, from issuing the
+      * first read until all objects are deserialized.
+      */
+    def addBulkReadLatency(count: Int, latencyInNanos: Long): Unit = {
+        bulkReadTimer.update(latencyInNanos, NANOSECONDS)
+        bulkReadSize.update(count)
+    }
+
     def addStateTableReadLatency(latencyInNanos: Long): Unit =
         stateTableReadLatency.update(latencyInNanos)
 
@@ -250,6 +250,7 @@ class MidonetBackendService(config: MidonetBackendConfig,
 
         connectionSubscriber.unsubscribe()
         reactor.shutDownNow()
+        zoom.shutdown()
 
         curator.close()
         if (config.enableFailFast) {
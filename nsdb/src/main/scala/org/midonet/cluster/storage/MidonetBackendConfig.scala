@@ -67,6 +67,9 @@ class MidonetBackendConfig(val conf: Config,
     def stateClient = new StateProxyClientConfig(conf)
     def lockTimeoutMs = conf.getDuration("zookeeper.lock_timeout", TimeUnit.MILLISECONDS)
     def transactionAttempts = conf.getInt("zookeeper.transaction_attempts")
+    def binaryStorage = conf.getBoolean("zookeeper.binary_storage")
+    def bulkReadWindow = conf.getInt("zookeeper.bulk_read_window")
+    def bulkReadThreads = conf.getInt("zookeeper.bulk_read_threads")
 }
 
 class CassandraConfig(val conf: Config) {
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.midonet.management
+
+import scala.util.control.NonFatal
+
+import com.codahale.metrics.MetricRegistry
+
+import org.apache.curator.framework.CuratorFrameworkFactory
+import org.apache.curator.retry.ExponentialBackoffRetry
+import org.rogach.scallop._
+
+import org.midonet.cluster.data.storage.metrics.StorageMetrics
+import org.midonet.cluster.data.storage.{ZookeeperObjectMapper, ZoomStorageMigration}
+import org.midonet.cluster.services.MidonetBackend
+import org.midonet.cluster.services.state.client.StateTableClient
+import org.midonet.cluster.storage.MidonetBackendConfig
+import org.midonet.conf.{HostIdGenerator, MidoNodeConfigurator}
+import org.midonet.util.eventloop.TryCatchReactor
+
+/**
+  * Rewrites the topology objects stored in the NSDB using the Protocol
+  * Buffers text format in the binary format. The tool can run while the
+  * NSDB is in use, and it can be repeated to migrate the objects that were
+  * modified during a previous run.
+  */
+object ZoomMigrate extends App {
+
+    System.setProperty("logback.configurationFile", "logback-disabled.xml")
+
+    val opts = new ScallopConf(args) {
+        val force = opt[Boolean]("force", short = 'f', default = Some(false),
+                                 descr = "Migrate the objects even if the " +
+                                         "binary storage is not enabled")
+
+        printedName = "mn-zoom-migrate"
+
+        footer("Copyright (c) 2017 Midokura SARL, All Rights Reserved.")
+    }
+
+    val ERROR = s"[\033[31m${opts.printedName}\033[0m]"
+    val INFO = s"[\033[32m${opts.printedName}\033[0m]"
+
+    val ret = try {
+        val configurator =
+            MidoNodeConfigurator(MidoNodeConfigurator.bootstrapConfig())
+        val config = new MidonetBackendConfig(configurator.runtimeConfig)
+
+        if (!config.binaryStorage && !opts.force()) {
+            System.err.println(
+                s"$ERROR The binary storage is not enabled: set " +
+                "zookeeper.binary_storage once all nodes have been upgraded, " +
+                "or use --force")
+            2
+        } else {
+            val curator = CuratorFrameworkFactory.newClient(
+                config.hosts, new ExponentialBackoffRetry(
+                    config.retryMs.toInt, config.maxRetries))
+            val reactor = new TryCatchReactor("mn-zoom-migrate", 1)
+            curator.start()
+            val store = new ZookeeperObjectMapper(
+                config, HostIdGenerator.getHostId.toString, curator,
+                curator, StateTableClient.DisabledStateTableClient,
+                reactor, new StorageMetrics(new MetricRegistry))
+            try {
+                MidonetBackend.setupBindings(store, store)
+
+                val start = System.nanoTime()
+                val stats = new ZoomStorageMigration(store, curator).migrate()
+                val time = (System.nanoTime() - start) / 1000000
+
+                println(s"$INFO Migrated ${stats.migrated} of ${stats.objects} " +
+                        s"objects in $time ms")
+                println(s"$INFO Objects modified during the migration: " +
+                        s"${stats.conflicts}")
+                println(s"$INFO Storage size: ${stats.bytesBefore} bytes " +
+                        s"before, ${stats.bytesAfter} bytes after")
+                if (stats.conflicts > 0) 1 else 0
+            } finally {
+                store.shutdown()
+                reactor.shutDownNow()
+                curator.close()
+            }
+        }
+    } catch {
+        case NonFatal(e) =>
+            System.err.println(s"$ERROR Migration failed: ${e.getMessage}")
+            3
+    }
+
+    System.exit(ret)
+}
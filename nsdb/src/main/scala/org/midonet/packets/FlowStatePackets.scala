@@ -16,6 +16,7 @@
 
 package org.midonet.packets
 
+import java.lang.{Long => JLong}
 import java.util.ArrayList
 import java.util.UUID
 
@@ -242,6 +243,38 @@ trait FlowStatePackets[ConnTrackKeyT <: ConnTrackKeyStore,
         trace.dstIpType(ipSbeType(key.networkDst))
     }
 
+    /**
+     * Returns a hash of the connection described by a decoded flow state
+     * message. The hash is computed over the first connection tracking key
+     * of the message or, if there is none, over its first NAT key, such that
+     * all messages for the same connection have the same hash. The hash is
+     * read directly from the encoded message without allocating, and it is
+     * zero if the message has neither connection tracking nor NAT keys.
+     */
+    def connectionHash(msg: FlowStateSbe): Int = {
+        val conntrackIter = msg.conntrack
+        if (conntrackIter.hasNext) {
+            val conntrack = conntrackIter.next()
+            var hash = JLong.hashCode(conntrack.device(0) ^ conntrack.device(1))
+            hash = 31 * hash + JLong.hashCode(conntrack.srcIp(0))
+            hash = 31 * hash + JLong.hashCode(conntrack.dstIp(0))
+            hash = 31 * hash + conntrack.srcPort
+            hash = 31 * hash + conntrack.dstPort
+            return 31 * hash + conntrack.protocol
+        }
+        val natIter = msg.nat
+        if (natIter.hasNext) {
+            val nat = natIter.next()
+            var hash = JLong.hashCode(nat.keyDevice(0) ^ nat.keyDevice(1))
+            hash = 31 * hash + JLong.hashCode(nat.keySrcIp(0))
+            hash = 31 * hash + JLong.hashCode(nat.keyDstIp(0))
+            hash = 31 * hash + nat.keySrcPort
+            hash = 31 * hash + nat.keyDstPort
+            return 31 * hash + nat.keyProtocol
+        }
+        0
+    }
+
     def parseDatagram(p: Ethernet): Data = {
         if (p.getDestinationMACAddress != DST_MAC ||
             p.getSourceMACAddress != SRC_MAC) {
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2017 Midokura SARL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.midonet.cluster.data;
+
+import java.lang.reflect.InvocationTargetException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.midonet.cluster.data.ZoomAccessors.ConstructorAccessor;
+import org.midonet.cluster.data.ZoomAccessors.FieldAccessor;
+
+public class ZoomAccessorsTest {
+
+    static class Fields {
+        int number;
+        long wide;
+        String text;
+    }
+
+    static class Counted {
+        static int instances = 0;
+        final int number;
+        final String text;
+
+        Counted(int number, String text) {
+            instances++;
+            this.number = number;
+            this.text = text;
+        }
+    }
+
+    static class Failing {
+        static int instances = 0;
+
+        Failing(String text) {
+            instances++;
+            if (text == null) {
+                throw new NullPointerException("text");
+            }
+            throw new ClassCastException(text);
+        }
+    }
+
+    @Test
+    public void testFieldAccess() throws Exception {
+        FieldAccessor number =
+            new FieldAccessor(Fields.class.getDeclaredField("number"));
+        FieldAccessor text =
+            new FieldAccessor(Fields.class.getDeclaredField("text"));
+        Fields obj = new Fields();
+
+        number.set(obj, 1);
+        text.set(obj, "text");
+        assertEquals(1, number.get(obj));
+        assertEquals("text", text.get(obj));
+
+        text.set(obj, null);
+        assertNull(text.get(obj));
+    }
+
+    @Test
+    public void testFieldWidening() throws Exception {
+        FieldAccessor wide =
+            new FieldAccessor(Fields.class.getDeclaredField("wide"));
+        Fields obj = new Fields();
+
+        // The handle does not widen an Integer to a long: the accessor falls
+        // back to the reflective field.
+        wide.set(obj, 1);
+        assertEquals(1L, obj.wide);
+    }
+
+    @Test
+    public void testFieldInvalidValues() throws Exception {
+        FieldAccessor number =
+            new FieldAccessor(Fields.class.getDeclaredField("number"));
+        Fields obj = new Fields();
+
+        // The invalid values fail as with the reflective field.
+        try {
+            number.set(obj, null);
+            fail("Setting a null primitive should fail");
+        } catch (IllegalArgumentException e) { }
+        try {
+            number.set(obj, "text");
+            fail("Setting a value of another type should fail");
+        } catch (IllegalArgumentException e) { }
+    }
+
+    @Test
+    public void testConstructor() throws Exception {
+        ConstructorAccessor accessor = new ConstructorAccessor(
+            Counted.class.getDeclaredConstructor(int.class, String.class));
+        Counted.instances = 0;
+
+        Counted obj = (Counted) accessor.newInstance(new Object[] { 1, "text" });
+        assertEquals(1, obj.number);
+        assertEquals("text", obj.text);
+
+        // A null reference and a widened primitive are accepted.
+        obj = (Counted) accessor.newInstance(new Object[] { (short) 2, null });
+        assertEquals(2, obj.number);
+        assertNull(obj.text);
+        assertEquals(2, Counted.instances);
+    }
+
+    @Test
+    public void testConstructorInvalidArguments() throws Exception {
+        ConstructorAccessor accessor = new ConstructorAccessor(
+            Counted.class.getDeclaredConstructor(int.class, String.class));
+        Counted.instances = 0;
+
+        try {
+            accessor.newInstance(new Object[] { null, "text" });
+            fail("A null primitive argument should fail");
+        } catch (IllegalArgumentException e) { }
+        try {
+            accessor.newInstance(new Object[] { 1 });
+            fail("A missing argument should fail");
+        } catch (IllegalArgumentException e) { }
+        assertEquals(0, Counted.instances);
+    }
+
+    @Test
+    public void testConstructorExceptions() throws Exception {
+        ConstructorAccessor accessor = new ConstructorAccessor(
+            Failing.class.getDeclaredConstructor(String.class));
+        Failing.instances = 0;
+
+        // The exceptions thrown by the constructor are wrapped, and the
+        // constructor is called only once.
+        try {
+            accessor.newInstance(new Object[] { null });
+            fail("The constructor should fail");
+        } catch (InvocationTargetException e) {
+            assertTrue(e.getCause() instanceof NullPointerException);
+        }
+        assertEquals(1, Failing.instances);
+
+        try {
+            accessor.newInstance(new Object[] { "text" });
+            fail("The constructor should fail");
+        } catch (InvocationTargetException e) {
+            assertTrue(e.getCause() instanceof ClassCastException);
+            assertEquals("text", e.getCause().getMessage());
+        }
+        assertEquals(2, Failing.instances);
+    }
+}
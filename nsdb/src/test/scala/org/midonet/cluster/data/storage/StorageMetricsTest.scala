@@ -435,6 +435,28 @@ class StorageMetricsTest extends FeatureSpec
             And("There was a write for each object")
             getCountForTimer("write") shouldBe objects.length
         }
+
+        scenario("Zoom bulk reads") {
+            Given("A set of bridges")
+            val bridges = for (index <- 0 until 40) yield {
+                val bridge = createPojoBridge()
+                zoom.create(bridge)
+                bridge
+            }
+
+            When("Reading all bridges")
+            val result = Await.result(
+                zoom.getAll(classOf[PojoBridge], bridges.map(_.id)), timeout)
+            result.map(_.id) shouldBe bridges.map(_.id)
+
+            Then("The storage records the latency of one batch")
+            getCountForTimer("bulkRead") shouldBe 1
+
+            And("The size of the batch")
+            registry.getHistograms
+                .filterKeys(_ contains "bulkReadSize")
+                .head._2.getSnapshot.getMax shouldBe bridges.size
+        }
     }
 
     feature("Zoom state storage metrics") {
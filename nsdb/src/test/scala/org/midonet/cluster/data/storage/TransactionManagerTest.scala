@@ -178,6 +178,26 @@ class TransactionManagerTest extends FeatureSpec with Matchers
             manager.getAll(classOf[FakeDevice]) should have size 0
         }
 
+        scenario("Transaction manager returns created objects in getAll()") {
+            Given("A transaction manager")
+            val manager = new TestableTransactionManager
+
+            When("Creating an object")
+            val id = UUID.newBuilder().setLsb(2L).setMsb(2L).build()
+            val device = FakeDevice.newBuilder().setId(id).build()
+            manager.create(device)
+
+            Then("Requesting all objects returns the stored and created objects")
+            manager.getAll(classOf[FakeDevice]) should contain theSameElementsAs
+                Seq(defaultDevice, device)
+
+            When("Deleting the created object")
+            manager.delete(classOf[FakeDevice], id)
+
+            Then("Requesting all objects returns the stored object")
+            manager.getAll(classOf[FakeDevice]) should contain only defaultDevice
+        }
+
         scenario("Transaction manager returns true for exists()") {
             Given("A transaction manager")
             val manager = new TestableTransactionManager
@@ -15,13 +15,16 @@
  */
 package org.midonet.cluster.data.storage
 
+import java.nio.file.Files
 import java.util.{ConcurrentModificationException, UUID}
 
 import scala.concurrent.duration._
 
 import com.codahale.metrics.MetricRegistry
+import com.typesafe.config.ConfigFactory
 
 import org.apache.curator.utils.ZKPaths
+import org.apache.zookeeper.data.Stat
 import org.junit.runner.RunWith
 import org.scalatest.GivenWhenThen
 import org.scalatest.concurrent.Eventually
@@ -31,9 +34,12 @@ import rx.Observable
 import rx.observers.TestObserver
 
 import org.midonet.cluster.data.ZoomMetadata.{ZoomChange, ZoomOwner}
+import org.midonet.cluster.data.getIdString
 import org.midonet.cluster.data.storage.StorageTestClasses._
 import org.midonet.cluster.data.storage.metrics.StorageMetrics
+import org.midonet.cluster.models.Topology.Network
 import org.midonet.cluster.models.Zoom.ZoomObject
+import org.midonet.cluster.storage.MidonetBackendConfig
 import org.midonet.cluster.util.MidonetBackendTest
 import org.midonet.cluster.util.UUIDUtil._
 import org.midonet.util.reactivex.{AwaitableObserver, TestAwaitableObserver}
@@ -1037,4 +1043,330 @@ class ZookeeperObjectMapperTest extends StorageTest with MidonetBackendTest
             obj.getProvenance(2).getChangeType shouldBe ZoomChange.Data.id
         }
     }
+
+    feature("Test binary storage") {
+        scenario("Objects are written in the binary format if enabled") {
+            Given("A storage with binary storage enabled")
+            val binaryConfig = new MidonetBackendConfig(
+                ConfigFactory.parseString("zookeeper.binary_storage : true")
+                    .withFallback(config.conf))
+            val binaryZoom = new ZookeeperObjectMapper(
+                binaryConfig, hostId, curator, curator, stateTables, reactor,
+                new StorageMetrics(new MetricRegistry))
+            initAndBuildStorage(binaryZoom)
+
+            When("Creating a network")
+            val network = createProtoNetwork(name = "network")
+            binaryZoom.create(network)
+
+            Then("The network is stored in the binary format")
+            val path = zoom.objectPath(classOf[Network], network.getId)
+            ZoomSerializer.isBinary(curator.getData.forPath(path)) shouldBe true
+
+            And("Both storages read the network")
+            await(binaryZoom.get(classOf[Network], network.getId.asJava)) shouldBe
+                network
+            await(zoom.get(classOf[Network], network.getId.asJava)) shouldBe
+                network
+
+            When("The network is updated by the text storage")
+            val network2 = network.toBuilder.setName("network2").build()
+            zoom.update(network2)
+
+            Then("The network is stored in the text format")
+            ZoomSerializer.isBinary(curator.getData.forPath(path)) shouldBe false
+            await(binaryZoom.get(classOf[Network], network.getId.asJava)) shouldBe
+                network2
+        }
+
+        scenario("Migration rewrites text objects in the binary format") {
+            Given("Networks stored in the text format")
+            val networks = for (index <- 0 until 10) yield {
+                val network = createProtoNetwork(name = s"network-$index")
+                zoom.create(network)
+                network
+            }
+            And("A java object")
+            val bridge = createPojoBridge(name = "bridge")
+            zoom.create(bridge)
+
+            When("Migrating the storage")
+            val migration = new ZoomStorageMigration(zoom, curator)
+            val stats = migration.migrate()
+
+            Then("All networks are migrated")
+            stats.objects shouldBe 10
+            stats.migrated shouldBe 10
+            stats.conflicts shouldBe 0
+            stats.bytesAfter should be < stats.bytesBefore
+
+            And("The networks are stored in the binary format")
+            for (network <- networks) {
+                val path = zoom.objectPath(classOf[Network], network.getId)
+                ZoomSerializer.isBinary(
+                    curator.getData.forPath(path)) shouldBe true
+                await(zoom.get(classOf[Network], network.getId.asJava)) shouldBe
+                    network
+            }
+
+            And("The java object is not modified")
+            await(zoom.get(classOf[PojoBridge], bridge.id)) shouldBe bridge
+
+            When("Migrating the storage again")
+            val stats2 = migration.migrate()
+
+            Then("No objects are migrated")
+            stats2.objects shouldBe 10
+            stats2.migrated shouldBe 0
+            stats2.bytesAfter shouldBe stats.bytesAfter
+        }
+    }
+
+    feature("Test snapshot") {
+        def snapshotStorage(): ZookeeperObjectMapper = {
+            val storage = new ZookeeperObjectMapper(
+                config, hostId, curator, curator, stateTables, reactor,
+                new StorageMetrics(new MetricRegistry))
+            initAndBuildStorage(storage)
+            storage
+        }
+
+        scenario("Snapshot records and skips unmodified objects") {
+            Given("A network and a storage with a snapshot")
+            val network1 = createProtoNetwork(name = "network1")
+            zoom.create(network1)
+            val file = Files.createTempFile("zoom", ".snapshot")
+            Files.delete(file)
+            val storage1 = snapshotStorage()
+            val snapshot1 = storage1.loadSnapshot(file)
+            snapshot1.size shouldBe 0
+
+            When("Subscribing to the network")
+            val observer1 = new TestAwaitableObserver[Network]
+            val sub = storage1.observable(classOf[Network],
+                                          network1.getId.asJava, snapshot1)
+                              .subscribe(observer1)
+            observer1.awaitOnNext(1, timeout)
+
+            Then("The network is recorded in the snapshot")
+            snapshot1.size shouldBe 1
+
+            When("Writing the snapshot")
+            sub.unsubscribe()
+            snapshot1.write()
+
+            And("Loading the snapshot in a new storage")
+            val storage2 = snapshotStorage()
+            val snapshot2 = storage2.loadSnapshot(file)
+            snapshot2.size shouldBe 1
+
+            And("Subscribing to the network")
+            val observer2 = new TestAwaitableObserver[Network]
+            storage2.observable(classOf[Network], network1.getId.asJava,
+                                snapshot2)
+                    .subscribe(observer2)
+            observer2.awaitOnNext(1, timeout)
+
+            And("Updating the network")
+            val network2 = network1.toBuilder.setName("network2").build()
+            zoom.update(network2)
+
+            Then("The observer receives the snapshot and the update only")
+            observer2.awaitOnNext(2, timeout)
+            observer2.getOnNextEvents should contain theSameElementsInOrderAs
+                Seq(network1, network2)
+
+            Files.deleteIfExists(file)
+        }
+
+        scenario("Snapshot emits modified objects") {
+            Given("A network recorded in a snapshot")
+            val network1 = createProtoNetwork(name = "network1")
+            zoom.create(network1)
+            val file = Files.createTempFile("zoom", ".snapshot")
+            Files.delete(file)
+            val storage1 = snapshotStorage()
+            val snapshot1 = storage1.loadSnapshot(file)
+            val observer1 = new TestAwaitableObserver[Network]
+            storage1.observable(classOf[Network], network1.getId.asJava,
+                                snapshot1)
+                    .subscribe(observer1)
+            observer1.awaitOnNext(1, timeout)
+            snapshot1.write()
+
+            When("The network is updated while not watched")
+            val network2 = network1.toBuilder.setName("network2").build()
+            zoom.update(network2)
+
+            And("Subscribing to the network from a storage with the snapshot")
+            val storage2 = snapshotStorage()
+            val snapshot2 = storage2.loadSnapshot(file)
+            val observer2 = new TestAwaitableObserver[Network]
+            storage2.observable(classOf[Network], network1.getId.asJava,
+                                snapshot2)
+                    .subscribe(observer2)
+
+            Then("The observer receives the snapshot and the current network")
+            observer2.awaitOnNext(2, timeout)
+            observer2.getOnNextEvents should contain theSameElementsInOrderAs
+                Seq(network1, network2)
+
+            Files.deleteIfExists(file)
+        }
+
+        scenario("Snapshot for a different path is ignored") {
+            Given("A snapshot written for a different path")
+            val file = Files.createTempFile("zoom", ".snapshot")
+            Files.delete(file)
+            val network = createProtoNetwork()
+            val snapshot = new StorageSnapshot(file, "/other/zoom/0")
+            snapshot.put(classOf[Network], getIdString(network.getId),
+                         new Stat, ZoomSerializer.serialize(network))
+            snapshot.watch(classOf[Network], getIdString(network.getId))
+            snapshot.write()
+
+            Then("Loading the snapshot in the storage ignores the objects")
+            zoom.loadSnapshot(file).size shouldBe 0
+
+            Files.deleteIfExists(file)
+        }
+
+        scenario("Snapshot data is not emitted by the storage observables") {
+            Given("A network recorded in a snapshot")
+            val network1 = createProtoNetwork(name = "network1")
+            zoom.create(network1)
+            val file = Files.createTempFile("zoom", ".snapshot")
+            Files.delete(file)
+            val storage1 = snapshotStorage()
+            val snapshot1 = storage1.loadSnapshot(file)
+            val observer1 = new TestAwaitableObserver[Network]
+            storage1.observable(classOf[Network], network1.getId.asJava,
+                                snapshot1)
+                    .subscribe(observer1)
+            observer1.awaitOnNext(1, timeout)
+            snapshot1.write()
+
+            When("The network is updated")
+            val network2 = network1.toBuilder.setName("network2").build()
+            zoom.update(network2)
+
+            And("Subscribing to the network without the snapshot")
+            val storage2 = snapshotStorage()
+            val snapshot2 = storage2.loadSnapshot(file)
+            snapshot2.size shouldBe 1
+            val observer2 = new TestAwaitableObserver[Network]
+            storage2.observable(classOf[Network], network1.getId.asJava)
+                    .subscribe(observer2)
+
+            Then("The observer receives the current network only")
+            observer2.awaitOnNext(1, timeout)
+            observer2.getOnNextEvents should contain theSameElementsInOrderAs
+                Seq(network2)
+
+            When("Subscribing to the network with the snapshot")
+            val observer3 = new TestAwaitableObserver[Network]
+            storage2.observable(classOf[Network], network1.getId.asJava,
+                                snapshot2)
+                    .subscribe(observer3)
+
+            Then("The observer receives the snapshot and the current network")
+            observer3.awaitOnNext(2, timeout)
+            observer3.getOnNextEvents should contain theSameElementsInOrderAs
+                Seq(network1, network2)
+
+            Files.deleteIfExists(file)
+        }
+
+        scenario("Snapshot prunes the objects no longer watched") {
+            Given("A storage with a snapshot")
+            val network = createProtoNetwork()
+            zoom.create(network)
+            val file = Files.createTempFile("zoom", ".snapshot")
+            Files.delete(file)
+            val storage1 = snapshotStorage()
+            val snapshot1 = storage1.loadSnapshot(file)
+
+            When("Subscribing to and unsubscribing from the network")
+            val observer = new TestAwaitableObserver[Network]
+            val sub = storage1.observable(classOf[Network],
+                                          network.getId.asJava, snapshot1)
+                              .subscribe(observer)
+            observer.awaitOnNext(1, timeout)
+            sub.unsubscribe()
+
+            Then("The next write keeps the network")
+            snapshot1.write()
+            snapshot1.size shouldBe 1
+            snapshotStorage().loadSnapshot(file).size shouldBe 1
+
+            And("The following write removes the network")
+            snapshot1.write()
+            snapshot1.size shouldBe 0
+            snapshotStorage().loadSnapshot(file).size shouldBe 0
+
+            When("Loading the snapshot with an object not watched")
+            val snapshot2 = new StorageSnapshot(file, zoom.zoomPath)
+            snapshot2.put(classOf[Network], getIdString(network.getId),
+                          new Stat, ZoomSerializer.serialize(network))
+            snapshot2.watch(classOf[Network], getIdString(network.getId))
+            snapshot2.write()
+            val snapshot3 = storage1.loadSnapshot(file)
+            snapshot3.size shouldBe 1
+
+            Then("Writing the snapshot removes the object")
+            snapshot3.write()
+            snapshot3.size shouldBe 0
+
+            Files.deleteIfExists(file)
+        }
+    }
+
+    feature("Test bulk reads") {
+        scenario("Get all returns objects in order with a small window") {
+            Given("A storage with a small read window")
+            val windowConfig = new MidonetBackendConfig(
+                ConfigFactory.parseString(
+                    """
+                      |zookeeper.bulk_read_window : 4
+                      |zookeeper.bulk_read_threads : 2
+                    """.stripMargin).withFallback(config.conf))
+            val windowZoom = new ZookeeperObjectMapper(
+                windowConfig, hostId, curator, curator, stateTables, reactor,
+                new StorageMetrics(new MetricRegistry))
+            initAndBuildStorage(windowZoom)
+
+            And("Many networks")
+            val networks = for (index <- 0 until 100) yield {
+                val network = createProtoNetwork(name = s"network-$index")
+                zoom.create(network)
+                network
+            }
+
+            When("Reading the networks in random order")
+            val shuffled = scala.util.Random.shuffle(networks)
+            val ids = shuffled.map(_.getId.asJava)
+
+            Then("The networks are returned in the order of the identifiers")
+            await(windowZoom.getAll(classOf[Network], ids)) shouldBe shuffled
+
+            And("Reading all networks returns all networks")
+            await(windowZoom.getAll(classOf[Network])) should
+                contain theSameElementsAs networks
+        }
+
+        scenario("Get all fails if any object does not exist") {
+            Given("Many networks")
+            val networks = for (index <- 0 until 50) yield {
+                val network = createProtoNetwork()
+                zoom.create(network)
+                network
+            }
+
+            Then("Reading the networks and a missing one fails")
+            val ids = networks.map(_.getId.asJava) :+ UUID.randomUUID()
+            intercept[NotFoundException] {
+                await(zoom.getAll(classOf[Network], ids))
+            }
+        }
+    }
 }
@@ -82,6 +82,59 @@ class ZoomSerializerTest extends FeatureSpec with Matchers with GivenWhenThen {
         message1 shouldBe message2
     }
 
+    scenario("Test Protobuf message binary serializer") {
+        Given("A message")
+        val message1 = createProtoNetwork(name = "network")
+
+        Then("Serializing the message should return binary data")
+        val data = ZoomSerializer.serialize(message1, binary = true)
+        data(0) shouldBe ZoomSerializer.BinaryHeader
+        ZoomSerializer.isBinary(data) shouldBe true
+
+        And("Deserializing the byte array should return a message")
+        val message2 = ZoomSerializer.deserialize(data, classOf[Network])
+
+        And("The messages should be equal")
+        message1 shouldBe message2
+    }
+
+    scenario("Test Protobuf message deserializer reads both formats") {
+        Given("A message serialized in the text and binary formats")
+        val message = createProtoNetwork(name = "network")
+        val textData = ZoomSerializer.serialize(message)
+        val binaryData = ZoomSerializer.serialize(message, binary = true)
+
+        Then("Only the binary data is detected as binary")
+        ZoomSerializer.isBinary(textData) shouldBe false
+        ZoomSerializer.isBinary(binaryData) shouldBe true
+
+        And("Both can be deserialized to the same message")
+        ZoomSerializer.deserialize(textData, classOf[Network]) shouldBe message
+        ZoomSerializer.deserialize(binaryData, classOf[Network]) shouldBe message
+
+        And("The binary data should be smaller")
+        binaryData.length should be < textData.length
+
+        And("The cacheable deserializer should handle both formats")
+        val func = ZoomSerializer.deserializerOf(classOf[Network])
+        func.call(new ChildData("/", null, textData)) shouldBe Notification
+            .createOnNext(message)
+        func.call(new ChildData("/", null, binaryData)) shouldBe Notification
+            .createOnNext(message)
+    }
+
+    scenario("Test Java object binary serializer") {
+        Given("A java object")
+        val obj1 = createPojoBridge()
+
+        Then("Serializing the object in binary ignores the binary format")
+        val data = ZoomSerializer.serialize(obj1, binary = true)
+        ZoomSerializer.isBinary(data) shouldBe false
+
+        And("Deserializing the byte array should return an object")
+        ZoomSerializer.deserialize(data, classOf[PojoBridge]) shouldBe obj1
+    }
+
     scenario("Test create object") {
         Given("An owner and change number")
         val owner = ZoomOwner.ClusterContainers
@@ -28,6 +28,7 @@ import org.apache.curator.test.TestingServer
 import org.scalatest.{BeforeAndAfterAll, BeforeAndAfterEach, Suite}
 
 import org.midonet.cluster.storage.MidonetBackendConfig
+import org.midonet.conf.ResourceConf
 
 /**
  * Provides boilerplate for:
@@ -56,7 +57,8 @@ trait CuratorTestFramework extends BeforeAndAfterEach
         s"""
             |zookeeper.root_key=$zkRoot
             |$configParams
-        """.stripMargin))
+        """.stripMargin).withFallback(
+            new ResourceConf("org/midonet/conf/schemas/nsdb.conf").get))
     protected var zk: TestingServer = _
     implicit protected var curator: CuratorFramework = _
     protected var failFastCurator: CuratorFramework = _